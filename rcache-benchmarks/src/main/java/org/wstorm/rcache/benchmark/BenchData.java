@@ -0,0 +1,59 @@
+package org.wstorm.rcache.benchmark;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.utils.CacheUtils;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试共用的数据与外部依赖
+ * <p>
+ * Redis地址通过 -Dredis.host, -Dredis.port 指定, 默认 127.0.0.1:6379
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+final class BenchData {
+
+    static final CacheConfig CACHE_CONFIG = CacheUtils.getCacheAnnotation(BenchObj.class);
+
+    static final DataPicker<String, BenchObj> DATA_PICKER = new DataPicker<String, BenchObj>() {
+        @Override
+        public BenchObj pickup(String key) {
+            return new BenchObj(key);
+        }
+
+        @Override
+        public BenchObj makeEmptyData() {
+            return new BenchObj();
+        }
+    };
+
+    private BenchData() {
+    }
+
+    /**
+     * @param count 个数
+     * @return id0 ~ id(count-1)
+     */
+    static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add("id" + i);
+        }
+        return ids;
+    }
+
+    static JedisPool jedisPool() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(64);
+        config.setMaxIdle(64);
+        return new JedisPool(config, System.getProperty("redis.host", "127.0.0.1"),
+                Integer.getInteger("redis.port", 6379));
+    }
+}
@@ -0,0 +1,51 @@
+package org.wstorm.rcache.benchmark;
+
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.annotation.CacheConfig;
+
+/**
+ * 基准测试用的缓存对象, 大小接近线上常见的小对象
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@CacheConfig(region = "bench:obj", keyPrefix = "bench", expiredTime = 600)
+public class BenchObj implements RObject<String> {
+
+    private String id;
+    private String name;
+    private long updated;
+    private int score;
+
+    public BenchObj() {
+    }
+
+    public BenchObj(String id) {
+        this.id = id;
+        this.name = "name-of-" + id;
+        this.updated = 1465900000000L;
+        this.score = id.hashCode();
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,86 @@
+package org.wstorm.rcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.apache.commons.lang3.StringUtils;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.utils.CacheKeyGenerator;
+import org.wstorm.rcache.utils.CacheUtils;
+import redis.clients.util.SafeEncoder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * CacheUtils生成缓存KEY的耗时, legacy开头的方法是改为{@link CacheKeyGenerator}之前的拼接方式, 作为对比
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    @Param({"100"})
+    private int batchSize;
+
+    private List<String> ids;
+
+    @Setup
+    public void setUp() {
+        ids = BenchData.ids(batchSize);
+    }
+
+    @Benchmark
+    public String genCacheKey() {
+        return CacheUtils.genCacheKey(BenchData.CACHE_CONFIG, "id9527");
+    }
+
+    @Benchmark
+    public List<String> genCacheKeys() {
+        return CacheUtils.genCacheKeys(BenchData.CACHE_CONFIG, ids);
+    }
+
+    @Benchmark
+    public byte[] genCacheKeyBytes() {
+        return CacheUtils.genCacheKeyBytes(BenchData.CACHE_CONFIG, "id9527");
+    }
+
+    @Benchmark
+    public String legacyGenCacheKey() {
+        return legacyKey(BenchData.CACHE_CONFIG, "id9527");
+    }
+
+    @Benchmark
+    public List<String> legacyGenCacheKeys() {
+        CacheConfig cacheConfig = BenchData.CACHE_CONFIG;
+        String pp = StringUtils.join(new String[]{cacheConfig.region(), cacheConfig.keyPrefix()}, ":"), ahead = pp + ":";
+        return ids.stream().map(key -> key.startsWith(ahead) ? key : StringUtils.join(new String[]{pp, key}, ":"))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] legacyGenCacheKeyBytes() {
+        return SafeEncoder.encode(legacyKey(BenchData.CACHE_CONFIG, "id9527"));
+    }
+
+    private static String legacyKey(CacheConfig cacheConfig, String key) {
+        String ahead = StringUtils.join(new String[]{cacheConfig.region(), cacheConfig.keyPrefix()}, ":");
+        return key.startsWith(ahead + ":") ? key : StringUtils.join(new String[]{ahead, key}, ":");
+    }
+}
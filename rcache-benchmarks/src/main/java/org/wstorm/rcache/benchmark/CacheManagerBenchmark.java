@@ -0,0 +1,72 @@
+package org.wstorm.rcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wstorm.rcache.CacheManager;
+import org.wstorm.rcache.cache.nulls.NullCacheProvider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各L1提供者命中时CacheManager.get的耗时, 4个线程并发读
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CacheManagerBenchmark {
+
+    private static final int LEVEL_1 = 1;
+    private static final int KEYS = 1000;
+
+    @Param({"ehcache", "tinylfu", "offheap"})
+    private String l1Provider;
+
+    private CacheManager cacheManager;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cacheManager = new CacheManager(new NullCacheProvider(), l1Provider, l1Provider + "-bench." + configSuffix());
+        ids = BenchData.ids(KEYS);
+        for (String id : ids) {
+            cacheManager.set(LEVEL_1, BenchData.CACHE_CONFIG, id, new BenchObj(id), null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheManager.shutdown(LEVEL_1);
+    }
+
+    @Benchmark
+    public BenchObj getL1Hit() {
+        String id = ids.get(ThreadLocalRandom.current().nextInt(KEYS));
+        return cacheManager.get(LEVEL_1, BenchData.CACHE_CONFIG, id, null, null);
+    }
+
+    private String configSuffix() {
+        return "ehcache".equals(l1Provider) ? "xml" : "properties";
+    }
+}
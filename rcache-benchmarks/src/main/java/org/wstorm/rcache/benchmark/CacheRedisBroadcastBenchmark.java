@@ -0,0 +1,114 @@
+package org.wstorm.rcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wstorm.rcache.CacheManager;
+import org.wstorm.rcache.broadcast.CacheRedisBroadcast;
+import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.cache.offheap.OffHeapCacheProvider;
+import org.wstorm.rcache.cache.redis.RedisCacheProvider;
+import org.wstorm.rcache.entity.CacheObject;
+import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.jedis.JedisWrapper;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheRedisBroadcast.get/getList在L1命中与L2命中时的耗时
+ * <p>
+ * level=L2时L1使用none提供者, 每次读取都落到L2. l2=offheap时以进程内的堆外缓存代替Redis,
+ * 包含Kryo反序列化但不含网络IO; l2=redis时需要本地Redis(-Dredis.host/-Dredis.port).
+ * 广播的订阅连接总是指向该Redis, 不可用时只会在后台重试, 不影响读路径.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CacheRedisBroadcastBenchmark {
+
+    private static final int LEVEL_2 = 2;
+    private static final int KEYS = 1000;
+    private static final int BATCH = 20;
+
+    @Param({"L1", "L2"})
+    private String level;
+
+    @Param({"offheap", "redis"})
+    private String l2;
+
+    private JedisPool pool;
+    private CacheRedisBroadcast broadcast;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = BenchData.jedisPool();
+        CacheProvider l2Provider;
+        if ("redis".equals(l2)) {
+            l2Provider = new RedisCacheProvider(new JedisWrapper(pool));
+            l2Provider.start(null);
+        } else {
+            l2Provider = new OffHeapCacheProvider();
+            l2Provider.start("offheap-bench.properties");
+        }
+        CacheManager cacheManager = "L1".equals(level)
+                ? new CacheManager(l2Provider, CacheProviderType.tinylfu.name(), "tinylfu-bench.properties")
+                : new CacheManager(l2Provider, CacheProviderType.none.name(), null);
+        broadcast = new CacheRedisBroadcast(pool, () -> Collections.singletonList(BenchData.CACHE_CONFIG.region()), cacheManager);
+
+        ids = BenchData.ids(KEYS);
+        for (String id : ids) {
+            cacheManager.set(LEVEL_2, BenchData.CACHE_CONFIG, id, new BenchObj(id), broadcast);
+        }
+        // 预热L1
+        for (String id : ids) {
+            broadcast.get(BenchData.CACHE_CONFIG, id, null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        try {
+            broadcast.close();
+        } catch (Exception ignored) {
+            // 订阅未成功时取消订阅会失败
+        }
+        pool.close();
+    }
+
+    @Benchmark
+    public CacheObject<BenchObj> get() {
+        String id = ids.get(ThreadLocalRandom.current().nextInt(KEYS));
+        return broadcast.get(BenchData.CACHE_CONFIG, id, null);
+    }
+
+    @Benchmark
+    public CacheObject<Map<String, BenchObj>> getList() {
+        int from = ThreadLocalRandom.current().nextInt(KEYS - BATCH);
+        return broadcast.getList(BenchData.CACHE_CONFIG, ids.subList(from, from + BATCH), null);
+    }
+}
@@ -0,0 +1,67 @@
+package org.wstorm.rcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wstorm.rcache.broadcast.CommandCodec;
+import org.wstorm.rcache.entity.Command;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播清除命令的编解码耗时, keys为1时是单个KEY的清除, 大于1时是批量清除;
+ * format为compact时是{@link CommandCodec}的紧凑格式, kryo时是旧的Kryo格式
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    private static final String HOST_ID = "5760f3a1c0ffee0012345678";
+
+    @Param({"1", "100"})
+    private int keys;
+
+    @Param({"compact", "kryo"})
+    private String format;
+
+    private CommandCodec codec;
+    private Command command;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        Object key = keys == 1
+                ? CacheUtils.genCacheKey(BenchData.CACHE_CONFIG, "id0")
+                : CacheUtils.genCacheKeys(BenchData.CACHE_CONFIG, BenchData.ids(keys));
+        codec = new CommandCodec("compact".equals(format));
+        command = new Command(HOST_ID, Command.OPT_DELETE_KEY, BenchData.CACHE_CONFIG.region(), key);
+        message = codec.encode(command);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return codec.encode(command);
+    }
+
+    @Benchmark
+    public Command decode() throws Exception {
+        return codec.decode(message);
+    }
+}
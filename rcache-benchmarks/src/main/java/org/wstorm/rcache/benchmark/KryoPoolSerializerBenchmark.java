@@ -0,0 +1,56 @@
+package org.wstorm.rcache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KryoPoolSerializer序列化/反序列化一个缓存对象的耗时
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月14日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KryoPoolSerializerBenchmark {
+
+    private final KryoPoolSerializer serializer = new KryoPoolSerializer();
+    private BenchObj obj;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        obj = new BenchObj("id9527");
+        bytes = serializer.serialize(obj);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return serializer.serialize(obj);
+    }
+
+    @Benchmark
+    public int serializeLent() throws Exception {
+        return serializer.serialize(obj, (buffer, offset, length) -> length);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return serializer.deserialize(bytes);
+    }
+}
@@ -5,17 +5,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wstorm.rcache.annotation.CacheConfig;
 import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
 import org.wstorm.rcache.cache.CacheExpiredListener;
 import org.wstorm.rcache.cache.CacheProvider;
 import org.wstorm.rcache.cache.DataPicker;
 import org.wstorm.rcache.cache.ehcache.EhCacheProvider;
 import org.wstorm.rcache.cache.nulls.NullCacheProvider;
+import org.wstorm.rcache.cache.offheap.OffHeapCacheProvider;
+import org.wstorm.rcache.cache.tinylfu.TinyLfuCacheProvider;
 import org.wstorm.rcache.enums.CacheProviderType;
 import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.metrics.CacheMetrics;
+import org.wstorm.rcache.metrics.RegionMetrics;
 import org.wstorm.rcache.utils.CollectionsUtils;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
 
 /**
  * 缓存管理器
@@ -29,6 +42,12 @@ public class CacheManager {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private CacheProvider l1_provider;
     private CacheProvider l2_provider;
+    /**
+     * 异步接口执行阻塞IO的线程池, 未设置时使用内部创建的守护线程池
+     */
+    private volatile Executor asyncExecutor;
+    private ExecutorService ownedAsyncExecutor;
+    private final CacheMetrics metrics = new CacheMetrics();
 
     public CacheManager(CacheProvider l2_provider, String l1_provider, String l1_configFile) {
 
@@ -52,6 +71,10 @@ public class CacheManager {
     private CacheProvider getProviderInstance(String value) throws Exception {
         if (CacheProviderType.ehcache.name().equalsIgnoreCase(value))
             return new EhCacheProvider();
+        if (CacheProviderType.tinylfu.name().equalsIgnoreCase(value))
+            return new TinyLfuCacheProvider();
+        if (CacheProviderType.offheap.name().equalsIgnoreCase(value))
+            return new OffHeapCacheProvider();
         if (CacheProviderType.none.name().equalsIgnoreCase(value))
             return new NullCacheProvider();
         return (CacheProvider) Class.forName(value).newInstance();
@@ -63,6 +86,54 @@ public class CacheManager {
 
     public final void shutdown(int level) {
         ((level == 1) ? l1_provider : l2_provider).stop();
+        if (level != 1) {
+            metrics.shutdown();
+            synchronized (this) {
+                if (ownedAsyncExecutor != null) {
+                    ownedAsyncExecutor.shutdown();
+                    ownedAsyncExecutor = null;
+                    asyncExecutor = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 异步接口使用的线程池
+     */
+    public Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if ((executor = asyncExecutor) == null) {
+                    AtomicInteger seq = new AtomicInteger();
+                    int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+                    ownedAsyncExecutor = Executors.newFixedThreadPool(threads, r -> {
+                        Thread t = new Thread(r, "rcache-async-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    asyncExecutor = executor = ownedAsyncExecutor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 设置异步接口执行阻塞IO的线程池, 线程池的生命周期由调用方管理
+     *
+     * @param asyncExecutor 线程池
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        Preconditions.checkNotNull(asyncExecutor, "asyncExecutor can not be null!");
+        synchronized (this) {
+            if (ownedAsyncExecutor != null) {
+                ownedAsyncExecutor.shutdown();
+                ownedAsyncExecutor = null;
+            }
+            this.asyncExecutor = asyncExecutor;
+        }
     }
 
     /**
@@ -80,15 +151,22 @@ public class CacheManager {
         // System.out.println("GET1 => " + name+":"+id);
         if (id != null) {
             Cache cache = _GetCache(level, cacheConfig.region(), listener);
-            if (cache != null)
+            if (cache != null) {
+                RegionMetrics regionMetrics = metrics.region(cacheConfig.region());
+                long start = System.nanoTime();
                 try {
-                    return cache.get(cacheConfig, id, dataPicker);
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    T value = cache.get(cacheConfig, id, picker);
+                    record(regionMetrics, level, getTimer(level), start, value == null ? 0 : 1, 1, picker);
+                    return value;
                 } catch (Exception e) {
+                    regionMetrics.error(level);
                     log.warn("get {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
                         log.error("get", e);
                     }
                 }
+            }
         }
         return null;
     }
@@ -108,25 +186,140 @@ public class CacheManager {
         // System.out.println("GET1 => " + name+":"+key);
         if (ids != null) {
             Cache cache = _GetCache(level, cacheConfig.region(), listener);
-            if (cache != null)
+            if (cache != null) {
+                RegionMetrics regionMetrics = metrics.region(cacheConfig.region());
+                long start = System.nanoTime();
                 try {
-                    return cache.getAll(cacheConfig, ids, dataPicker);
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    Map<String, T> values = cache.getAll(cacheConfig, ids, picker);
+                    record(regionMetrics, level, getAllTimer(level), start, values == null ? 0 : values.size(), ids.size(), picker);
+                    return values;
                 } catch (Exception e) {
+                    regionMetrics.error(level);
                     log.warn("getAll {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
                         log.error("get", e);
                     }
                 }
+            }
         }
         return null;
     }
 
     public final <T extends RObject<String>> void setAll(int level, CacheConfig cacheConfig, Map<String, T> objects, CacheExpiredListener listener) {
+        setAllEntries(level, cacheConfig, objects, 0, listener);
+    }
+
+    public final <T extends RObject<String>> void set(int level, CacheConfig cacheConfig, String id, T value, CacheExpiredListener listener) {
+        setEntry(level, cacheConfig, id, value, 0, listener);
+    }
+
+    /**
+     * 获取缓存中的数据及其版本号
+     *
+     * @param level       Cache Level: L1 and L2
+     * @param cacheConfig Cache region name
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param listener    listener
+     * @param dataPicker  数据提取器 用于缓存失效后回调
+     * @param <T>         缓存对象类型
+     * @return Cache entry, 版本号为0表示未知
+     * @see Cache#getEntry(CacheConfig, String, DataPicker)
+     */
+    public final <T extends RObject<String>> CacheEntry<T> getEntry(int level, CacheConfig cacheConfig, String id, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        try {
+            return getEntryOrThrow(level, cacheConfig, id, listener, dataPicker);
+        } catch (CacheException e) {
+            log.warn("getEntry {} exception: {}", e.getCause().getClass(), e.getCause().getLocalizedMessage());
+            if (log.isDebugEnabled()) {
+                log.error("getEntry", e.getCause());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取缓存中的数据及其版本号, 读取或回源失败时抛出异常, 用于区分失败与Miss
+     *
+     * @return Cache entry, Miss时为null
+     * @throws CacheException 读取或回源失败, cause为原始异常
+     * @see #getEntry(int, CacheConfig, String, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> CacheEntry<T> getEntryOrThrow(int level, CacheConfig cacheConfig, String id, CacheExpiredListener listener, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id != null) {
+            Cache cache = _GetCache(level, cacheConfig.region(), listener);
+            if (cache != null) {
+                RegionMetrics regionMetrics = metrics.region(cacheConfig.region());
+                long start = System.nanoTime();
+                try {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    CacheEntry<T> entry = cache.getEntry(cacheConfig, id, picker);
+                    record(regionMetrics, level, getTimer(level), start, entry == null ? 0 : 1, 1, picker);
+                    return entry;
+                } catch (Exception e) {
+                    regionMetrics.error(level);
+                    throw new CacheException("getEntry", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 批量获取缓存中的数据及其版本号
+     *
+     * @see #getEntry(int, CacheConfig, String, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(int level, CacheConfig cacheConfig, List<String> ids, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        try {
+            return getAllEntriesOrThrow(level, cacheConfig, ids, listener, dataPicker);
+        } catch (CacheException e) {
+            log.warn("getAllEntries {} exception: {}", e.getCause().getClass(), e.getCause().getLocalizedMessage());
+            if (log.isDebugEnabled()) {
+                log.error("getAllEntries", e.getCause());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 批量获取缓存中的数据及其版本号, 读取或回源失败时抛出异常, 用于区分失败与Miss
+     *
+     * @throws CacheException 读取或回源失败, cause为原始异常
+     * @see #getAllEntries(int, CacheConfig, List, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntriesOrThrow(int level, CacheConfig cacheConfig, List<String> ids, CacheExpiredListener listener, DataPicker<String, T> dataPicker) throws CacheException {
+        if (ids != null) {
+            Cache cache = _GetCache(level, cacheConfig.region(), listener);
+            if (cache != null) {
+                RegionMetrics regionMetrics = metrics.region(cacheConfig.region());
+                long start = System.nanoTime();
+                try {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    Map<String, CacheEntry<T>> entries = cache.getAllEntries(cacheConfig, ids, picker);
+                    record(regionMetrics, level, getAllTimer(level), start, entries == null ? 0 : entries.size(), ids.size(), picker);
+                    return entries;
+                } catch (Exception e) {
+                    regionMetrics.error(level);
+                    throw new CacheException("getAllEntries", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 以同一版本号写入多个对象
+     *
+     * @param version 版本号, 0表示不保存版本号
+     * @see Cache#putAllEntries(CacheConfig, Map, long)
+     */
+    public final <T extends RObject<String>> void setAllEntries(int level, CacheConfig cacheConfig, Map<String, T> objects, long version, CacheExpiredListener listener) {
         if (CollectionsUtils.isNotEmpty(objects)) {
             Cache cache = _GetCache(level, cacheConfig.region(), listener);
             if (cache != null)
                 try {
-                    cache.putAll(cacheConfig, objects);
+                    cache.putAllEntries(cacheConfig, objects, version);
                 } catch (Exception e) {
                     log.warn("setAll {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
@@ -136,12 +329,18 @@ public class CacheManager {
         }
     }
 
-    public final <T extends RObject<String>> void set(int level, CacheConfig cacheConfig, String id, T value, CacheExpiredListener listener) {
+    /**
+     * 以指定版本号写入对象
+     *
+     * @param version 版本号, 0表示不保存版本号
+     * @see Cache#putEntry(CacheConfig, String, RObject, long)
+     */
+    public final <T extends RObject<String>> void setEntry(int level, CacheConfig cacheConfig, String id, T value, long version, CacheExpiredListener listener) {
         if (id != null && value != null) {
             Cache cache = _GetCache(level, cacheConfig.region(), listener);
             if (cache != null)
                 try {
-                    cache.put(cacheConfig, id, value);
+                    cache.putEntry(cacheConfig, id, value, version);
                 } catch (Exception e) {
                     log.warn("set {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
@@ -167,7 +366,9 @@ public class CacheManager {
             if (cache != null)
                 try {
                     cache.evict(cacheConfig, id);
+                    metrics.region(name).evicted(level, 1);
                 } catch (Exception e) {
+                    metrics.region(name).error(level);
                     log.warn("evict {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
                         log.error("get", e);
@@ -194,7 +395,9 @@ public class CacheManager {
             if (cache != null)
                 try {
                     cache.evict(cacheConfig, ids);
+                    metrics.region(name).evicted(level, ids.size());
                 } catch (Exception e) {
+                    metrics.region(name).error(level);
                     log.warn("batchEvict {} exception: {}", e.getClass(), e.getLocalizedMessage());
                     if (log.isDebugEnabled()) {
                         log.error("get", e);
@@ -203,6 +406,307 @@ public class CacheManager {
         }
     }
 
+    /**
+     * 异步获取缓存中的数据, 与{@link #get(int, CacheConfig, String, CacheExpiredListener, DataPicker)}一样
+     * 屏蔽异常, 失败时以null完成. 异步接口不在调用线程抛出异常, 包括构建缓存region的异常
+     *
+     * @param level       Cache Level: L1 and L2
+     * @param cacheConfig Cache region name
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param listener    listener
+     * @param dataPicker  数据提取器 用于缓存失效后回调
+     * @param <T>         缓存对象类型
+     * @return Cache object future
+     */
+    public final <T extends RObject<String>> CompletableFuture<T> getAsync(int level, CacheConfig cacheConfig, String id, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        if (id != null) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null) {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    long start = System.nanoTime();
+                    return cache.getAsync(cacheConfig, id, picker, getAsyncExecutor())
+                            .whenComplete(recorder(level, cacheConfig, getTimer(level), start, 1, value -> 1, picker))
+                            .exceptionally(e -> asyncFailed("getAsync", e));
+                }
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("getAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步批量获取缓存中的数据, 失败时以null完成
+     *
+     * @param level       Cache Level: L1 and L2
+     * @param cacheConfig Cache配置
+     * @param ids         object ids, is not the finally key in cached Object identifier
+     * @param listener    缓存过期监听器
+     * @param dataPicker  缓存失效后的数据提取回调接口
+     * @param <T>         缓存对象类型
+     * @return 返回缓存Key, Value Map future
+     */
+    public final <T extends RObject<String>> CompletableFuture<Map<String, T>> getAllAsync(int level, CacheConfig cacheConfig, List<String> ids, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        if (ids != null) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null) {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    long start = System.nanoTime();
+                    return cache.getAllAsync(cacheConfig, ids, picker, getAsyncExecutor())
+                            .whenComplete(recorder(level, cacheConfig, getAllTimer(level), start, ids.size(), Map::size, picker))
+                            .exceptionally(e -> asyncFailed("getAllAsync", e));
+                }
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("getAllAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步获取缓存中的数据及其版本号, 失败时以null完成
+     *
+     * @see #getEntry(int, CacheConfig, String, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> CompletableFuture<CacheEntry<T>> getEntryAsync(int level, CacheConfig cacheConfig, String id, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        return getEntryOrThrowAsync(level, cacheConfig, id, listener, dataPicker).exceptionally(e -> asyncFailed("getEntryAsync", e));
+    }
+
+    /**
+     * 异步获取缓存中的数据及其版本号, 读取或回源失败时异常完成, 用于区分失败与Miss
+     *
+     * @see #getEntryOrThrow(int, CacheConfig, String, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> CompletableFuture<CacheEntry<T>> getEntryOrThrowAsync(int level, CacheConfig cacheConfig, String id, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        if (id != null) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null) {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    long start = System.nanoTime();
+                    return cache.getEntryAsync(cacheConfig, id, picker, getAsyncExecutor())
+                            .whenComplete(recorder(level, cacheConfig, getTimer(level), start, 1, entry -> 1, picker));
+                }
+            } catch (Exception e) {
+                return failed(e);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步批量获取缓存中的数据及其版本号, 失败时以null完成
+     *
+     * @see #getAllEntries(int, CacheConfig, List, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> CompletableFuture<Map<String, CacheEntry<T>>> getAllEntriesAsync(int level, CacheConfig cacheConfig, List<String> ids, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        return getAllEntriesOrThrowAsync(level, cacheConfig, ids, listener, dataPicker).exceptionally(e -> asyncFailed("getAllEntriesAsync", e));
+    }
+
+    /**
+     * 异步批量获取缓存中的数据及其版本号, 读取或回源失败时异常完成, 用于区分失败与Miss
+     *
+     * @see #getAllEntriesOrThrow(int, CacheConfig, List, CacheExpiredListener, DataPicker)
+     */
+    public final <T extends RObject<String>> CompletableFuture<Map<String, CacheEntry<T>>> getAllEntriesOrThrowAsync(int level, CacheConfig cacheConfig, List<String> ids, CacheExpiredListener listener, DataPicker<String, T> dataPicker) {
+        if (ids != null) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null) {
+                    DataPicker<String, T> picker = metered(level, cacheConfig, dataPicker);
+                    long start = System.nanoTime();
+                    return cache.getAllEntriesAsync(cacheConfig, ids, picker, getAsyncExecutor())
+                            .whenComplete(recorder(level, cacheConfig, getAllTimer(level), start, ids.size(), Map::size, picker));
+                }
+            } catch (Exception e) {
+                return failed(e);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public final <T extends RObject<String>> CompletableFuture<Void> setAllAsync(int level, CacheConfig cacheConfig, Map<String, T> objects, CacheExpiredListener listener) {
+        return setAllEntriesAsync(level, cacheConfig, objects, 0, listener);
+    }
+
+    public final <T extends RObject<String>> CompletableFuture<Void> setAsync(int level, CacheConfig cacheConfig, String id, T value, CacheExpiredListener listener) {
+        return setEntryAsync(level, cacheConfig, id, value, 0, listener);
+    }
+
+    /**
+     * 异步以同一版本号写入多个对象
+     *
+     * @see #setAllEntries(int, CacheConfig, Map, long, CacheExpiredListener)
+     */
+    public final <T extends RObject<String>> CompletableFuture<Void> setAllEntriesAsync(int level, CacheConfig cacheConfig, Map<String, T> objects, long version, CacheExpiredListener listener) {
+        if (CollectionsUtils.isNotEmpty(objects)) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null)
+                    return cache.putAllEntriesAsync(cacheConfig, objects, version, getAsyncExecutor())
+                            .exceptionally(e -> asyncFailed("setAllAsync", e));
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("setAllAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步以指定版本号写入对象
+     *
+     * @see #setEntry(int, CacheConfig, String, RObject, long, CacheExpiredListener)
+     */
+    public final <T extends RObject<String>> CompletableFuture<Void> setEntryAsync(int level, CacheConfig cacheConfig, String id, T value, long version, CacheExpiredListener listener) {
+        if (id != null && value != null) {
+            try {
+                Cache cache = _GetCache(level, cacheConfig.region(), listener);
+                if (cache != null)
+                    return cache.putEntryAsync(cacheConfig, id, value, version, getAsyncExecutor())
+                            .exceptionally(e -> asyncFailed("setAsync", e));
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("setAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步清除缓存中的某个数据
+     *
+     * @param level Cache Level: L1 and L2
+     * @param name  Cache region name
+     * @param id    object id, is not the finally key in cached Object identifier
+     */
+    public final CompletableFuture<Void> evictAsync(int level, CacheConfig cacheConfig, String name, String id, CacheExpiredListener listener) {
+        if (name == null && cacheConfig != null) {
+            name = cacheConfig.region();
+        }
+        if (name != null && id != null) {
+            try {
+                Cache cache = _GetCache(level, name, listener);
+                RegionMetrics regionMetrics = metrics.region(name);
+                if (cache != null)
+                    return cache.evictAsync(cacheConfig, id, getAsyncExecutor())
+                            .thenRun(() -> regionMetrics.evicted(level, 1))
+                            .exceptionally(e -> asyncFailed("evictAsync", e));
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("evictAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步批量删除缓存中的一些数据
+     *
+     * @param level       Cache Level： L1 and L2
+     * @param cacheConfig cache 配置
+     * @param name        Cache region name
+     * @param ids         object id, is not the finally key in cached Object identifier
+     * @param listener    过期监听器
+     */
+    public final CompletableFuture<Void> batchEvictAsync(int level, CacheConfig cacheConfig, String name, List<String> ids, CacheExpiredListener listener) {
+        if (cacheConfig != null) {
+            name = cacheConfig.region();
+        }
+        if (name != null && ids != null && ids.size() > 0) {
+            try {
+                Cache cache = _GetCache(level, name, listener);
+                RegionMetrics regionMetrics = metrics.region(name);
+                if (cache != null)
+                    return cache.evictAsync(cacheConfig, ids, getAsyncExecutor())
+                            .thenRun(() -> regionMetrics.evicted(level, ids.size()))
+                            .exceptionally(e -> asyncFailed("batchEvictAsync", e));
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(asyncFailed("batchEvictAsync", e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static RegionMetrics.Timer getTimer(int level) {
+        return level == 1 ? RegionMetrics.Timer.L1_GET : RegionMetrics.Timer.L2_GET;
+    }
+
+    private static RegionMetrics.Timer getAllTimer(int level) {
+        return level == 1 ? RegionMetrics.Timer.L1_GET : RegionMetrics.Timer.L2_GET_ALL;
+    }
+
+    /**
+     * @param found      返回的对象数
+     * @param dataPicker 本次读取使用的提取器, L2 Miss后经它回源得到的对象计为Miss
+     */
+    private static void record(RegionMetrics regionMetrics, int level, RegionMetrics.Timer timer, long start, int found, int total,
+                               DataPicker<String, ?> dataPicker) {
+        regionMetrics.record(timer, System.nanoTime() - start);
+        int hits = (int) Math.max(0, found - CacheMetrics.pickedCount(dataPicker));
+        regionMetrics.hit(level, hits);
+        regionMetrics.miss(level, total - hits);
+    }
+
+    /**
+     * @return 在异步读取完成时记录延迟与命中的回调
+     */
+    private <R> BiConsumer<R, Throwable> recorder(int level, CacheConfig cacheConfig, RegionMetrics.Timer timer, long start,
+                                                  int total, ToIntFunction<R> found, DataPicker<String, ?> dataPicker) {
+        RegionMetrics regionMetrics = metrics.region(cacheConfig.region());
+        return (value, e) -> {
+            if (e != null) regionMetrics.error(level);
+            else record(regionMetrics, level, timer, start, value == null ? 0 : found.applyAsInt(value), total, dataPicker);
+        };
+    }
+
+    /**
+     * L2的回源记录加载次数与耗时; L1不回源, 不包装以免增加命中路径的开销
+     */
+    private <T extends RObject<String>> DataPicker<String, T> metered(int level, CacheConfig cacheConfig, DataPicker<String, T> dataPicker) {
+        return level == 1 || dataPicker == null ? dataPicker : metrics.metered(cacheConfig.region(), dataPicker);
+    }
+
+    /**
+     * @return 各region的命中、回源、清除、广播与延迟指标
+     */
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static <R> CompletableFuture<R> failed(Throwable e) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private <R> R asyncFailed(String operation, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) e = e.getCause();
+        log.warn("{} {} exception: {}", operation, e.getClass(), e.getLocalizedMessage());
+        if (log.isDebugEnabled()) {
+            log.error(operation, e);
+        }
+        return null;
+    }
+
+    /**
+     * 清空缓存区域
+     *
+     * @param level Cache level
+     * @param name  cache region name
+     */
+    public final void clear(int level, String name, CacheExpiredListener listener) {
+        Cache cache = _GetCache(level, name, listener);
+        if (cache != null)
+            try {
+                cache.clear();
+            } catch (Exception e) {
+                log.warn("clear {} exception: {}", e.getClass(), e.getLocalizedMessage());
+                if (log.isDebugEnabled()) {
+                    log.error("clear", e);
+                }
+            }
+    }
+
     /**
      * list cache keys
      *
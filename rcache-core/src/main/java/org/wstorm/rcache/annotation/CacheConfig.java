@@ -30,4 +30,41 @@ public @interface CacheConfig {
      * @return 缓存所属区域
      */
     String region();
+
+    /**
+     * @return 提前刷新的比例, 对象在过期时间的最后该比例内被读取时立即返回当前值, 并在后台通过DataPicker重新加载.
+     * 如0.2表示剩余寿命不足20%时刷新. 默认0, 不提前刷新
+     */
+    float refreshAhead() default 0;
+
+    /**
+     * @return 概率提前过期(XFetch)的beta, 大于0时L2保存加载耗时与过期时间, 每次读取按概率提前重新加载,
+     * 越接近过期概率越高, 各节点的回源因此错开. 通常取1, 越大越早. 默认0, 不开启.
+     * 开启后Redis中的值带新的头, 旧版本节点无法读取
+     */
+    float earlyExpiration() default 0;
+
+    /**
+     * @return stale-while-revalidate宽限期, 单位秒. 值过期后在该时间内被读取时立即返回过期值, 并在后台重新加载一次.
+     * 默认0, 不开启. 开启后L2中的值实际保留过期时间加宽限期
+     */
+    int staleWhileRevalidate() default 0;
+
+    /**
+     * @return stale-if-error宽限期, 单位秒. 值过期后在该时间内重新加载失败时返回过期值. 默认0, 不开启
+     */
+    int staleIfError() default 0;
+
+    /**
+     * @return 空对象(DataPicker回源得到的{@link org.wstorm.rcache.cache.DataPicker#makeEmptyData()})在L2中的过期时间, 单位秒.
+     * 默认0, 与正常对象相同. 大于0时L2中以一个字节的标记代替序列化的空对象, 空对象也不再写入L1
+     */
+    int emptyExpiredTime() default 0;
+
+    /**
+     * @return 热点KEY的本地钉住时间, 单位秒. 达到热点阈值的KEY从L2读到的值在本地另外保留该时间,
+     * L1过期后直接返回, 不再读L2, 其他节点的写入仍通过清除广播生效. 默认0, 不钉住
+     * @see org.wstorm.rcache.broadcast.HotKeys
+     */
+    int hotKeyPinTime() default 0;
 }
@@ -0,0 +1,450 @@
+package org.wstorm.rcache.broadcast;
+
+/**
+ * 缓存广播配置
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月20日
+ */
+public class BroadcastConfig {
+
+    /**
+     * 默认清除广播的合并窗口, 单位毫秒
+     */
+    public static final long DEFAULT_EVICT_BATCH_WINDOW = 10L;
+    /**
+     * 默认每个region一次合并发送的最大KEY数
+     */
+    public static final int DEFAULT_EVICT_BATCH_KEYS = 500;
+    /**
+     * 默认处理收到的广播消息的工作线程数
+     */
+    public static final int DEFAULT_DISPATCH_THREADS = 2;
+    /**
+     * 默认每个工作线程的消息队列长度
+     */
+    public static final int DEFAULT_DISPATCH_QUEUE_SIZE = 10000;
+    /**
+     * 默认的提前刷新线程数
+     */
+    public static final int DEFAULT_REFRESH_THREADS = 2;
+    /**
+     * 默认等待执行的提前刷新任务数上限
+     */
+    public static final int DEFAULT_REFRESH_QUEUE_SIZE = 1000;
+    /**
+     * 默认的stream key前缀
+     */
+    public static final String DEFAULT_STREAM_KEY_PREFIX = "rcache:stream:";
+    /**
+     * 默认每个stream保留的近似条目数
+     */
+    public static final long DEFAULT_STREAM_MAX_LEN = 10000L;
+    /**
+     * 默认每次XREAD最多读取的条目数
+     */
+    public static final int DEFAULT_STREAM_BATCH_SIZE = 100;
+    /**
+     * 默认XREAD的阻塞时间, 单位毫秒, 须小于连接池的socket超时(Jedis默认2秒)
+     */
+    public static final long DEFAULT_STREAM_BLOCK_MILLIS = 1000L;
+    /**
+     * 默认的全局分片频道前缀
+     */
+    public static final String DEFAULT_GLOBAL_CHANNEL_PREFIX = "rcache:evict";
+
+    private long evictBatchWindow = DEFAULT_EVICT_BATCH_WINDOW;
+    private int evictBatchKeys = DEFAULT_EVICT_BATCH_KEYS;
+    private boolean compactCommand = false;
+    private int dispatchThreads = DEFAULT_DISPATCH_THREADS;
+    private int dispatchQueueSize = DEFAULT_DISPATCH_QUEUE_SIZE;
+    private boolean resyncOnGap = true;
+    private int tombstoneSlots = VersionTombstones.DEFAULT_SLOTS;
+    private long tombstoneWindow = VersionTombstones.DEFAULT_WINDOW;
+    private int refreshThreads = DEFAULT_REFRESH_THREADS;
+    private int refreshQueueSize = DEFAULT_REFRESH_QUEUE_SIZE;
+    private int staleValuesSize = StaleValues.DEFAULT_MAX_SIZE;
+    private long membershipExpectedInsertions = MembershipFilters.DEFAULT_EXPECTED_INSERTIONS;
+    private double membershipFpp = MembershipFilters.DEFAULT_FPP;
+    private int hotKeyTopK = HotKeys.DEFAULT_TOP_K;
+    private long hotKeyWindow = HotKeys.DEFAULT_WINDOW;
+    private long hotKeyThreshold = HotKeys.DEFAULT_THRESHOLD;
+    private int hotKeySketchWidth = HotKeys.DEFAULT_SKETCH_WIDTH;
+    private int hotKeyMaxPinned = HotKeys.DEFAULT_MAX_PINNED;
+    private Transport transport = Transport.pubsub;
+    private String streamKeyPrefix = DEFAULT_STREAM_KEY_PREFIX;
+    private long streamMaxLen = DEFAULT_STREAM_MAX_LEN;
+    private int streamBatchSize = DEFAULT_STREAM_BATCH_SIZE;
+    private long streamBlockMillis = DEFAULT_STREAM_BLOCK_MILLIS;
+    private boolean streamStartFromLatest = true;
+    private ShardMode shardMode = ShardMode.none;
+    private int channelShards = 1;
+    private String globalChannelPrefix = DEFAULT_GLOBAL_CHANNEL_PREFIX;
+    private int subscriberConnections = 1;
+
+    public long getEvictBatchWindow() {
+        return evictBatchWindow;
+    }
+
+    /**
+     * @param evictBatchWindow 清除广播的合并窗口, 单位毫秒, &lt;=0时每次清除立即发送广播(不合并)
+     */
+    public BroadcastConfig setEvictBatchWindow(long evictBatchWindow) {
+        this.evictBatchWindow = evictBatchWindow;
+        return this;
+    }
+
+    public int getEvictBatchKeys() {
+        return evictBatchKeys;
+    }
+
+    /**
+     * @param evictBatchKeys 每个region缓冲的KEY达到该数量时不等窗口结束立即发送
+     */
+    public BroadcastConfig setEvictBatchKeys(int evictBatchKeys) {
+        this.evictBatchKeys = evictBatchKeys;
+        return this;
+    }
+
+    public boolean isCompactCommand() {
+        return compactCommand;
+    }
+
+    /**
+     * @param compactCommand 是否以{@link CommandCodec}紧凑格式发送广播命令, 默认false, 按旧的Kryo格式发送.
+     *                       旧版本节点解析不了紧凑格式, 须分两步升级: 先以false部署所有节点, 全部升级后再打开.
+     *                       命令的序号与版本号只由紧凑格式传输, 关闭时订阅端的缺口检测({@link #setResyncOnGap(boolean)})
+     *                       与版本号墓碑({@link #setTombstoneSlots(int)})收不到数据, 不起作用
+     */
+    public BroadcastConfig setCompactCommand(boolean compactCommand) {
+        this.compactCommand = compactCommand;
+        return this;
+    }
+
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * @param dispatchThreads 处理收到的广播消息的工作线程数, &lt;=0时在Redis订阅线程中直接处理
+     */
+    public BroadcastConfig setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+        return this;
+    }
+
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    /**
+     * @param dispatchQueueSize 每个工作线程的消息队列长度, 满时订阅线程等待该工作线程腾出位置
+     */
+    public BroadcastConfig setDispatchQueueSize(int dispatchQueueSize) {
+        this.dispatchQueueSize = dispatchQueueSize;
+        return this;
+    }
+
+    public boolean isResyncOnGap() {
+        return resyncOnGap;
+    }
+
+    /**
+     * @param resyncOnGap 收到的广播命令序号不连续时是否失效整个region的L1, 关闭时只记录缺口次数.
+     *                    订阅断线重连后总是失效L1
+     */
+    public BroadcastConfig setResyncOnGap(boolean resyncOnGap) {
+        this.resyncOnGap = resyncOnGap;
+        return this;
+    }
+
+    public int getTombstoneSlots() {
+        return tombstoneSlots;
+    }
+
+    /**
+     * @param tombstoneSlots 版本号墓碑的槽位数, 决定墓碑占用的内存(每个槽位8字节)与哈希冲突的概率; &lt;=0时不记录墓碑
+     * @see VersionTombstones
+     */
+    public BroadcastConfig setTombstoneSlots(int tombstoneSlots) {
+        this.tombstoneSlots = tombstoneSlots;
+        return this;
+    }
+
+    public long getTombstoneWindow() {
+        return tombstoneWindow;
+    }
+
+    /**
+     * @param tombstoneWindow 收到清除广播后拒绝以旧版本回填L1的时间, 单位毫秒, 应大于一次L2读写与广播延迟之和
+     */
+    public BroadcastConfig setTombstoneWindow(long tombstoneWindow) {
+        this.tombstoneWindow = tombstoneWindow;
+        return this;
+    }
+
+    public int getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    /**
+     * @param refreshThreads 提前刷新({@link org.wstorm.rcache.annotation.CacheConfig#refreshAhead()})的后台线程数
+     */
+    public BroadcastConfig setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+        return this;
+    }
+
+    public int getRefreshQueueSize() {
+        return refreshQueueSize;
+    }
+
+    /**
+     * @param refreshQueueSize 等待执行的提前刷新任务数上限, 超出时放弃刷新, 对象到期后正常回源
+     */
+    public BroadcastConfig setRefreshQueueSize(int refreshQueueSize) {
+        this.refreshQueueSize = refreshQueueSize;
+        return this;
+    }
+
+    public int getStaleValuesSize() {
+        return staleValuesSize;
+    }
+
+    /**
+     * @param staleValuesSize L1最多保留的过期值数, 只有开启宽限的region占用
+     * @see org.wstorm.rcache.annotation.CacheConfig#staleWhileRevalidate()
+     */
+    public BroadcastConfig setStaleValuesSize(int staleValuesSize) {
+        this.staleValuesSize = staleValuesSize;
+        return this;
+    }
+
+    public long getMembershipExpectedInsertions() {
+        return membershipExpectedInsertions;
+    }
+
+    /**
+     * @param membershipExpectedInsertions 成员过滤器第一级的容量, 超过后自动扩容
+     * @see CacheRedisBroadcast#rebuildMembershipFilter(org.wstorm.rcache.annotation.CacheConfig, org.wstorm.rcache.cache.IdStreamDataPicker)
+     */
+    public BroadcastConfig setMembershipExpectedInsertions(long membershipExpectedInsertions) {
+        this.membershipExpectedInsertions = membershipExpectedInsertions;
+        return this;
+    }
+
+    public double getMembershipFpp() {
+        return membershipFpp;
+    }
+
+    /**
+     * @param membershipFpp 成员过滤器的误判率
+     */
+    public BroadcastConfig setMembershipFpp(double membershipFpp) {
+        this.membershipFpp = membershipFpp;
+        return this;
+    }
+
+    public int getHotKeyTopK() {
+        return hotKeyTopK;
+    }
+
+    /**
+     * @param hotKeyTopK 每个region统计的热点KEY数, 0为不统计
+     * @see CacheRedisBroadcast#getHotKeys()
+     */
+    public BroadcastConfig setHotKeyTopK(int hotKeyTopK) {
+        this.hotKeyTopK = hotKeyTopK;
+        return this;
+    }
+
+    public long getHotKeyWindow() {
+        return hotKeyWindow;
+    }
+
+    /**
+     * @param hotKeyWindow 热点统计的衰减窗口, 单位毫秒, 每个窗口结束时访问次数减半
+     */
+    public BroadcastConfig setHotKeyWindow(long hotKeyWindow) {
+        this.hotKeyWindow = hotKeyWindow;
+        return this;
+    }
+
+    public long getHotKeyThreshold() {
+        return hotKeyThreshold;
+    }
+
+    /**
+     * @param hotKeyThreshold 判定为热点的估算访问次数, 稳定访问时估算值约为每窗口次数的2倍
+     */
+    public BroadcastConfig setHotKeyThreshold(long hotKeyThreshold) {
+        this.hotKeyThreshold = hotKeyThreshold;
+        return this;
+    }
+
+    public int getHotKeySketchWidth() {
+        return hotKeySketchWidth;
+    }
+
+    /**
+     * @param hotKeySketchWidth 每个region的Count-Min Sketch每行的计数器数, 共4行
+     */
+    public BroadcastConfig setHotKeySketchWidth(int hotKeySketchWidth) {
+        this.hotKeySketchWidth = hotKeySketchWidth;
+        return this;
+    }
+
+    public int getHotKeyMaxPinned() {
+        return hotKeyMaxPinned;
+    }
+
+    /**
+     * @param hotKeyMaxPinned 最多钉住的热点值数, 只有配置了钉住时间的region占用
+     * @see org.wstorm.rcache.annotation.CacheConfig#hotKeyPinTime()
+     */
+    public BroadcastConfig setHotKeyMaxPinned(int hotKeyMaxPinned) {
+        this.hotKeyMaxPinned = hotKeyMaxPinned;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param transport 以JedisPool构造{@link CacheRedisBroadcast}时使用的传输通道
+     */
+    public BroadcastConfig setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public String getStreamKeyPrefix() {
+        return streamKeyPrefix;
+    }
+
+    public BroadcastConfig setStreamKeyPrefix(String streamKeyPrefix) {
+        this.streamKeyPrefix = streamKeyPrefix;
+        return this;
+    }
+
+    public long getStreamMaxLen() {
+        return streamMaxLen;
+    }
+
+    /**
+     * @param streamMaxLen 每个stream保留的近似条目数, 断线超过这些条目后仍会丢消息
+     */
+    public BroadcastConfig setStreamMaxLen(long streamMaxLen) {
+        this.streamMaxLen = streamMaxLen;
+        return this;
+    }
+
+    public int getStreamBatchSize() {
+        return streamBatchSize;
+    }
+
+    public BroadcastConfig setStreamBatchSize(int streamBatchSize) {
+        this.streamBatchSize = streamBatchSize;
+        return this;
+    }
+
+    public long getStreamBlockMillis() {
+        return streamBlockMillis;
+    }
+
+    public BroadcastConfig setStreamBlockMillis(long streamBlockMillis) {
+        this.streamBlockMillis = streamBlockMillis;
+        return this;
+    }
+
+    public boolean isStreamStartFromLatest() {
+        return streamStartFromLatest;
+    }
+
+    /**
+     * @param streamStartFromLatest 首次订阅时是否跳过stream中的历史消息, false时从头回放
+     */
+    public BroadcastConfig setStreamStartFromLatest(boolean streamStartFromLatest) {
+        this.streamStartFromLatest = streamStartFromLatest;
+        return this;
+    }
+
+    public ShardMode getShardMode() {
+        return shardMode;
+    }
+
+    /**
+     * @param shardMode 清除命令的频道分片方式, 所有节点须一致
+     */
+    public BroadcastConfig setShardMode(ShardMode shardMode) {
+        this.shardMode = shardMode;
+        return this;
+    }
+
+    public int getChannelShards() {
+        return channelShards;
+    }
+
+    /**
+     * @param channelShards 分片频道数, &lt;=1时不分片, 所有节点须一致
+     */
+    public BroadcastConfig setChannelShards(int channelShards) {
+        this.channelShards = channelShards;
+        return this;
+    }
+
+    public String getGlobalChannelPrefix() {
+        return globalChannelPrefix;
+    }
+
+    public BroadcastConfig setGlobalChannelPrefix(String globalChannelPrefix) {
+        this.globalChannelPrefix = globalChannelPrefix;
+        return this;
+    }
+
+    public int getSubscriberConnections() {
+        return subscriberConnections;
+    }
+
+    /**
+     * @param subscriberConnections 订阅连接(线程)数, 频道轮流分给各连接, 不超过频道数
+     */
+    public BroadcastConfig setSubscriberConnections(int subscriberConnections) {
+        this.subscriberConnections = subscriberConnections;
+        return this;
+    }
+
+    /**
+     * 清除命令的频道分片方式
+     */
+    public enum ShardMode {
+        /**
+         * 每个region一个频道
+         */
+        none,
+        /**
+         * 每个region按KEY的hash分为channelShards个频道
+         */
+        region,
+        /**
+         * 所有region共用channelShards个频道, 订阅端丢弃未订阅region的命令
+         */
+        global
+    }
+
+    /**
+     * 广播命令的传输方式
+     */
+    public enum Transport {
+        /**
+         * Redis发布订阅, 断线期间的消息丢失
+         */
+        pubsub,
+        /**
+         * Redis Streams, 断线重连后补收(需要Redis 5.0及以上)
+         */
+        stream
+    }
+}
@@ -0,0 +1,60 @@
+package org.wstorm.rcache.broadcast;
+
+import java.util.List;
+
+/**
+ * 广播命令的传输通道, 使{@link CacheRedisBroadcast}与具体的发布订阅方式无关
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月24日
+ * @see PubSubTransport
+ * @see StreamTransport
+ */
+public interface BroadcastTransport {
+
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     * @throws Exception 发布失败
+     */
+    void publish(String channel, byte[] message) throws Exception;
+
+    /**
+     * 订阅频道并阻塞当前线程, 直到{@link #unsubscribe()}或连接断开(抛出异常)
+     *
+     * @param listener 消息监听器
+     * @param channels 频道列表
+     */
+    void subscribe(Listener listener, List<String> channels);
+
+    /**
+     * 结束订阅, 使{@link #subscribe(Listener, List)}返回
+     */
+    void unsubscribe();
+
+    /**
+     * @return true 断线重新订阅后能补收断线期间的消息, 此时不需要因重连而失效L1
+     */
+    boolean isReplayable();
+
+    /**
+     * 消息监听器
+     */
+    interface Listener {
+
+        /**
+         * @param channel 来源频道
+         * @param message 消息
+         */
+        void onMessage(byte[] channel, byte[] message);
+
+        /**
+         * @param channel            订阅成功的频道
+         * @param subscribedChannels 当前已订阅的频道数
+         */
+        void onSubscribe(byte[] channel, int subscribedChannels);
+    }
+}
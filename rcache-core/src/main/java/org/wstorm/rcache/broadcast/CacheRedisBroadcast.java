@@ -8,23 +8,35 @@ import org.slf4j.LoggerFactory;
 import org.wstorm.rcache.CacheManager;
 import org.wstorm.rcache.RObject;
 import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.CacheEntry;
 import org.wstorm.rcache.cache.CacheExpiredListener;
 import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.cache.IdStreamDataPicker;
+import org.wstorm.rcache.cache.SingleFlightLoader;
+import org.wstorm.rcache.cache.StalePolicy;
+import org.wstorm.rcache.cache.VersionClock;
 import org.wstorm.rcache.entity.CacheObject;
 import org.wstorm.rcache.entity.Command;
 import org.wstorm.rcache.exception.CacheException;
-import org.wstorm.rcache.jedis.PubSuber;
-import org.wstorm.rcache.serializer.KryoPoolSerializer;
+import org.wstorm.rcache.metrics.RegionMetrics;
 import org.wstorm.rcache.utils.CacheUtils;
 import org.wstorm.rcache.utils.CollectionsUtils;
-import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.JedisPool;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,26 +47,70 @@ import java.util.stream.Stream;
  * @version 1.0
  * @created 2016年5月07日
  */
-public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpiredListener {
+public class CacheRedisBroadcast implements CacheExpiredListener, BroadcastTransport.Listener {
 
     public final static byte LEVEL_1 = 1;
     public final static byte LEVEL_2 = 2;
-    private final KryoPoolSerializer serializer = new KryoPoolSerializer();
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final String hostId;
     private CacheManager cacheManager;
-    private PubSuber pubSuber;
-    private boolean retryWhenSubscribeFail = (true);
+    private final BroadcastTransport transport;
+    private final EvictPublisher evictPublisher;
+    private final CommandCodec commandCodec;
+    private final MessageDispatcher dispatcher;
+    private final SequenceTracker sequences = new SequenceTracker();
+    private final boolean resyncOnGap;
+    /**
+     * 收到清除广播的KEY的版本号墓碑, 为null时不检查
+     */
+    private final VersionTombstones tombstones;
+    private final RefreshScheduler refresher;
+    private final StaleValues staleValues;
+    private final MembershipFilters membership;
+    private final HotKeys hotKeys;
+    /**
+     * 提前刷新的回源加载器, 与读取Miss的回源相互独立
+     */
+    private final SingleFlightLoader refreshLoader = new SingleFlightLoader();
+    private volatile boolean retryWhenSubscribeFail = (true);
+    /**
+     * 订阅断开后等待重新订阅成功的频道, 订阅成功时需要失效对应region的L1
+     */
+    private final Set<String> resubscribing = ConcurrentHashMap.newKeySet();
+    private final ChannelRouter router;
+    private final Set<String> subscribedRegions;
     /**
      * 发布/订阅的缓存频道
      */
     private List<String> cacheRegions;
 
     public CacheRedisBroadcast(JedisPool cachePublishJedisPool, SubscribeCacheRegionConfig subCacheRegionConfig, CacheManager cacheManager) {
+        this(cachePublishJedisPool, subCacheRegionConfig, cacheManager, new BroadcastConfig());
+    }
+
+    public CacheRedisBroadcast(JedisPool cachePublishJedisPool, SubscribeCacheRegionConfig subCacheRegionConfig, CacheManager cacheManager,
+                               BroadcastConfig broadcastConfig) {
+        this(createTransport(Preconditions.checkNotNull(cachePublishJedisPool, "cachePublishJedisPool can not be null!"),
+                Preconditions.checkNotNull(broadcastConfig, "broadcastConfig can not be null!")),
+                subCacheRegionConfig, cacheManager, broadcastConfig);
+    }
+
+    /**
+     * @param transport            广播命令的传输通道
+     * @param subCacheRegionConfig 订阅的缓存区域
+     * @param cacheManager         缓存管理器
+     * @param broadcastConfig      广播配置
+     */
+    public CacheRedisBroadcast(BroadcastTransport transport, SubscribeCacheRegionConfig subCacheRegionConfig, CacheManager cacheManager,
+                               BroadcastConfig broadcastConfig) {
+        Preconditions.checkNotNull(broadcastConfig, "broadcastConfig can not be null!");
         Preconditions.checkNotNull(cacheManager, "cacheManager can not be null!");
-        Preconditions.checkNotNull(cachePublishJedisPool, "cachePublishJedisPool can not be null!");
+        Preconditions.checkNotNull(transport, "transport can not be null!");
         Preconditions.checkArgument(subCacheRegionConfig.getSubscribeCacheRegions() != null && !subCacheRegionConfig.getSubscribeCacheRegions().isEmpty(), "subCacheRegionConfig can not be null!");
         cacheRegions = subCacheRegionConfig.getSubscribeCacheRegions();
+        subscribedRegions = new HashSet<>(cacheRegions);
+        router = new ChannelRouter(broadcastConfig.getShardMode(), broadcastConfig.getChannelShards(),
+                broadcastConfig.getGlobalChannelPrefix(), cacheRegions);
 
         this.cacheManager = cacheManager;
 
@@ -66,22 +122,57 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
 
         this.hostId = buf.toString();
 
-        pubSuber = new PubSuber(cachePublishJedisPool);
-        // 开始订阅
-        (new Thread(() -> {
-            while (retryWhenSubscribeFail) {
-                String[] channels = new String[cacheRegions.size()];
-                for (int i = 0; i < cacheRegions.size(); i++) {
-                    channels[i] = cacheRegions.get(i);
-                }
-                pubSuber.subscribeAndBlock(CacheRedisBroadcast.this, channels);
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ignored) {
-                }
+        commandCodec = new CommandCodec(broadcastConfig.isCompactCommand());
+        if (!broadcastConfig.isCompactCommand() && (broadcastConfig.isResyncOnGap() || broadcastConfig.getTombstoneSlots() > 0))
+            log.warn("compactCommand is off, commands carry no sequence or version: gap resync and version tombstones are disabled| hostId={}", hostId);
+        dispatcher = new MessageDispatcher(this::handleMessage, broadcastConfig.getDispatchThreads(), broadcastConfig.getDispatchQueueSize());
+        this.transport = transport;
+        evictPublisher = new EvictPublisher(this::_sendEvictCmd, broadcastConfig.getEvictBatchWindow(), broadcastConfig.getEvictBatchKeys());
+        resyncOnGap = broadcastConfig.isResyncOnGap();
+        tombstones = broadcastConfig.getTombstoneSlots() > 0
+                ? new VersionTombstones(broadcastConfig.getTombstoneSlots(), broadcastConfig.getTombstoneWindow()) : null;
+        refresher = new RefreshScheduler(broadcastConfig.getRefreshThreads(), broadcastConfig.getRefreshQueueSize());
+        staleValues = new StaleValues(broadcastConfig.getStaleValuesSize());
+        membership = new MembershipFilters(broadcastConfig.getMembershipExpectedInsertions(), broadcastConfig.getMembershipFpp());
+        hotKeys = new HotKeys(broadcastConfig.getHotKeyTopK(), broadcastConfig.getHotKeyWindow(), broadcastConfig.getHotKeyThreshold(),
+                broadcastConfig.getHotKeySketchWidth(), broadcastConfig.getHotKeyMaxPinned());
+        // 开始订阅, 每个订阅连接一个线程
+        List<List<String>> groups = router.partition(broadcastConfig.getSubscriberConnections());
+        for (int i = 0; i < groups.size(); i++) {
+            List<String> channels = groups.get(i);
+            Thread subscriber = new Thread(() -> subscribeLoop(channels), "rcache-broadcast-subscriber-" + i);
+            subscriber.setDaemon(true);
+            subscriber.start();
+        }
+
+    }
+
+    private void subscribeLoop(List<String> channels) {
+        while (retryWhenSubscribeFail) {
+            try {
+                transport.subscribe(this, channels);
+            } catch (Exception e) {
+                log.warn("subscribe failed| hostId={}| {}", hostId, e.getLocalizedMessage());
+            }
+            if (!retryWhenSubscribeFail) break;
+            sequences.reconnected();
+            resubscribing.addAll(channels);
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ignored) {
             }
-        })).start();
+        }
+    }
 
+    private static BroadcastTransport createTransport(JedisPool jedisPool, BroadcastConfig config) {
+        switch (config.getTransport()) {
+            case stream:
+                return new StreamTransport(jedisPool, config.getStreamKeyPrefix(), config.getStreamMaxLen(),
+                        config.getStreamBatchSize(), config.getStreamBlockMillis(), config.isStreamStartFromLatest());
+            case pubsub:
+            default:
+                return new PubSubTransport(jedisPool);
+        }
     }
 
     public void setCacheManager(CacheManager cacheManager) {
@@ -93,30 +184,88 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
     public void notifyElementExpired(String region, Object key) {
 
         if (log.isDebugEnabled()) log.debug("Cache data expired| hostId={}| region={}| key={}", hostId, region, key);
+        cacheManager.getMetrics().region(region).evicted(LEVEL_1, key instanceof List ? ((List) key).size() : 1);
+
+        // 开启宽限的region由L2自己按逻辑过期时间处理, 不能随L1过期删除
+        if (staleValues.isTracked(region)) return;
 
         // 删除二级缓存
         if (key instanceof List) cacheManager.batchEvict(LEVEL_2, null, region, (List<String>) key, this);
         else cacheManager.evict(LEVEL_2, null, region, String.valueOf(key), this);
 
         // 发送广播
-        _publishEvictCmd(region, key);
+        _publishEvictCmd(region, key, VersionClock.next());
     }
 
     /**
-     * 发布清除缓存的命令
+     * 发布清除缓存的命令, 开启合并时只登记到{@link EvictPublisher}, 由其在合并窗口结束后发送
      *
-     * @param region Cache region name
-     * @param key    cache key
+     * @param region  Cache region name
+     * @param key     cache key
+     * @param version 清除后写入L2的新值的版本号, 删除时为删除的时间
      */
-    private void _publishEvictCmd(String region, Object key) {
+    private void _publishEvictCmd(String region, Object key, long version) {
+        recordTombstones(region, key, version); // 本节点收不到自己的命令, 在此记录以拒绝更早的后台刷新
+        evictPublisher.evict(region, key, version);
+    }
+
+    /**
+     * 立即发送清除缓存的命令
+     *
+     * @param region  Cache region name
+     * @param key     cache key or key list
+     * @param version 新值的版本号
+     */
+    private void _sendEvictCmd(String region, Object key, long version) {
         // 发送广播
-        if (log.isDebugEnabled()) log.debug("_publishEvictCmd| hostId={}| region=={}| key={}", hostId, region, key);
-        Command cmd = new Command(hostId, Command.OPT_DELETE_KEY, region, key);
-        try {
-            pubSuber.publish(region, serializer.serialize(cmd));
-        } catch (Exception e) {
-            log.error("Unable to delete cache| region={}| key={}", region, key, e);
+        if (log.isDebugEnabled()) log.debug("_sendEvictCmd| hostId={}| region=={}| key={}", hostId, region, key);
+        RegionMetrics metrics = cacheManager.getMetrics().region(region);
+        router.route(region, key).forEach((channel, keys) -> {
+            Command cmd = new Command(hostId, Command.OPT_DELETE_KEY, region, keys);
+            cmd.setVersion(version);
+            AtomicLong sequence = sequences.publisherSequence(channel);
+            // 序号分配与发布在同一把锁内, 保证订阅端收到的序号有序; 发布失败的序号也被消耗, 订阅端会因缺口而失效L1
+            synchronized (sequence) {
+                cmd.setSequence(sequence.incrementAndGet());
+                long start = System.nanoTime();
+                try {
+                    transport.publish(channel, commandCodec.encode(cmd));
+                    metrics.published();
+                    metrics.record(RegionMetrics.Timer.PUBLISH, System.nanoTime() - start);
+                } catch (Exception e) {
+                    log.error("Unable to delete cache| channel={}| key={}", channel, keys, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 订阅成功的回调. 重连后断开期间的清除广播都已丢失, 失效该频道对应region的L1; 可补收的传输通道不需要
+     *
+     * @param channel            频道
+     * @param subscribedChannels 当前订阅的频道数
+     */
+    @Override
+    public void onSubscribe(byte[] channel, int subscribedChannels) {
+        String name = new String(channel, StandardCharsets.UTF_8);
+        if (resubscribing.remove(name) && !transport.isReplayable()) resync(name);
+    }
+
+    /**
+     * 失效频道上各region的全部L1, 用于清除命令可能丢失的场景
+     *
+     * @param channel 频道
+     */
+    private void resync(String channel) {
+        for (String region : router.regionsOf(channel)) {
+            if (!subscribedRegions.contains(region)) continue;
+            log.warn("resync L1| hostId={}| channel={}| region={}", hostId, channel, region);
+            if (tombstones != null) tombstones.invalidateAll(region);
+            cacheManager.clear(LEVEL_1, region, this);
+            staleValues.clear(region);
+            hotKeys.clear(region);
         }
+        sequences.resynced(channel);
     }
 
     /**
@@ -132,18 +281,249 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
         obj.setRegion(cacheConfig.region());
         obj.setKey(id);
         if (id != null) {
-            obj.setValue(cacheManager.get(LEVEL_1, cacheConfig, id, this, dataPicker));
-            if (obj.getValue() == null) {
-                obj.setValue(cacheManager.get(LEVEL_2, cacheConfig, id, this, dataPicker));
+            if (isRefreshAhead(cacheConfig, dataPicker)) {
+                CacheEntry<T> l1 = cacheManager.getEntry(LEVEL_1, cacheConfig, id, this, dataPicker);
+                if (l1 != null) {
+                    obj.setValue(l1.getValue());
+                    obj.setLevel(LEVEL_1);
+                    refreshIfNearExpiry(cacheConfig, id, l1, dataPicker);
+                    return obj;
+                }
+            } else {
+                obj.setValue(cacheManager.get(LEVEL_1, cacheConfig, id, this, dataPicker));
                 if (obj.getValue() != null) {
-                    obj.setLevel(LEVEL_2);
-                    cacheManager.set(LEVEL_1, cacheConfig, id, obj.getValue(), this);
+                    obj.setLevel(LEVEL_1);
+                    return obj;
                 }
-            } else obj.setLevel(LEVEL_1);
+            }
+            if (!membership.mightContain(cacheConfig, id)) {
+                obj.setValue(emptyOf(dataPicker));
+                return obj;
+            }
+            T pinned = hotKeys.access(cacheConfig, id);
+            if (pinned != null) {
+                obj.setValue(pinned);
+                obj.setLevel(LEVEL_1);
+                return obj;
+            }
+            CacheEntry<T> stale = staleValues.get(cacheConfig, id);
+            if (serveWhileRevalidate(cacheConfig, id, stale, dataPicker)) {
+                obj.setValue(stale.getValue());
+                obj.setLevel(LEVEL_1);
+                return obj;
+            }
+            CacheEntry<T> entry;
+            try {
+                entry = cacheManager.getEntryOrThrow(LEVEL_2, cacheConfig, id, this, dataPicker);
+            } catch (CacheException e) {
+                entry = null;
+                if (serveIfError(cacheConfig, stale, dataPicker, e)) {
+                    obj.setValue(stale.getValue());
+                    obj.setLevel(LEVEL_1);
+                }
+            }
+            if (entry != null) {
+                obj.setValue(entry.getValue());
+                obj.setLevel(LEVEL_2);
+                fillL1(cacheConfig, id, entry);
+                refreshIfNearExpiry(cacheConfig, id, entry, dataPicker);
+            }
         }
         return obj;
     }
 
+    /**
+     * 异步获取缓存中的数据, L1在调用线程中检查, 未命中时L2的IO在异步线程池中执行
+     *
+     * @param cacheConfig Cache Region name
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param dataPicker  数据提取器
+     * @return cacheObject include cacheObject T future
+     * @see #get(CacheConfig, String, DataPicker)
+     */
+    public <T extends RObject<String>> CompletableFuture<CacheObject<T>> getAsync(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) {
+        CacheObject<T> obj = new CacheObject<>();
+        obj.setRegion(cacheConfig.region());
+        obj.setKey(id);
+        if (id == null) return CompletableFuture.completedFuture(obj);
+
+        if (isRefreshAhead(cacheConfig, dataPicker)) {
+            CacheEntry<T> l1 = cacheManager.getEntry(LEVEL_1, cacheConfig, id, this, dataPicker);
+            if (l1 != null) {
+                obj.setValue(l1.getValue());
+                refreshIfNearExpiry(cacheConfig, id, l1, dataPicker);
+            }
+        } else {
+            obj.setValue(cacheManager.get(LEVEL_1, cacheConfig, id, this, dataPicker));
+        }
+        if (obj.getValue() == null && !membership.mightContain(cacheConfig, id)) {
+            obj.setValue(emptyOf(dataPicker));
+            return CompletableFuture.completedFuture(obj);
+        }
+        if (obj.getValue() == null) obj.setValue(hotKeys.access(cacheConfig, id));
+        CacheEntry<T> stale = obj.getValue() == null ? staleValues.get(cacheConfig, id) : null;
+        if (obj.getValue() != null || serveWhileRevalidate(cacheConfig, id, stale, dataPicker)) {
+            if (obj.getValue() == null) obj.setValue(stale.getValue());
+            obj.setLevel(LEVEL_1);
+            return CompletableFuture.completedFuture(obj);
+        }
+        return cacheManager.getEntryOrThrowAsync(LEVEL_2, cacheConfig, id, this, dataPicker).handle((entry, e) -> {
+            if (e != null) {
+                if (serveIfError(cacheConfig, stale, dataPicker, e)) {
+                    obj.setValue(stale.getValue());
+                    obj.setLevel(LEVEL_1);
+                }
+            } else if (entry != null) {
+                obj.setValue(entry.getValue());
+                obj.setLevel(LEVEL_2);
+                fillL1(cacheConfig, id, entry);
+                refreshIfNearExpiry(cacheConfig, id, entry, dataPicker);
+            }
+            return obj;
+        });
+    }
+
+    /**
+     * 异步批量获取, L1在调用线程中检查
+     *
+     * @param cacheConfig cache config annotation
+     * @param ids         object ids, is not the finally key in cached Object identifier
+     * @param dataPicker  cache data pick from db layer
+     * @param <T>         cache object type
+     * @return cacheObject include map<String,T> future
+     * @see #getList(CacheConfig, List, DataPicker)
+     */
+    public <T extends RObject<String>> CompletableFuture<CacheObject<Map<String, T>>> getListAsync(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+        CacheObject<Map<String, T>> obj = new CacheObject<>();
+        obj.setKey(StringUtils.join(ids, ","));
+        obj.setRegion(cacheConfig.region());
+        if (ids == null || ids.isEmpty()) return CompletableFuture.completedFuture(obj);
+
+        Map<String, T> l1 = getAllL1(cacheConfig, ids, dataPicker);
+        if (CollectionsUtils.isNotEmpty(l1) && l1.size() >= ids.size()) {
+            obj.setLevel(LEVEL_1);
+            obj.setValue(l1);
+            return CompletableFuture.completedFuture(obj);
+        }
+        List<String> members = membership.filter(cacheConfig, ids);
+        Map<String, T> pinned = hotKeys.accessAll(cacheConfig, members);
+        List<String> remote = without(members, pinned);
+        CompletableFuture<Map<String, CacheEntry<T>>> l2 = remote.isEmpty() ? CompletableFuture.completedFuture(new LinkedHashMap<>())
+                : cacheManager.getAllEntriesOrThrowAsync(LEVEL_2, cacheConfig, remote, this, dataPicker);
+        return l2.handle((entries, e) -> {
+            Map<String, T> bulk = valuesOf(entries);
+            if (remote.isEmpty() && !pinned.isEmpty()) {
+                obj.setLevel(LEVEL_1);
+            } else if (CollectionsUtils.isNotEmpty(bulk) && bulk.size() == remote.size()) {
+                obj.setLevel(LEVEL_2);
+                fillL1(cacheConfig, entries);
+            }
+            if (e != null) bulk = staleIfError(cacheConfig, remote, dataPicker, e);
+            else if (entries != null) refreshIfNearExpiry(cacheConfig, entries, dataPicker);
+            obj.setValue(withEmpty(withPinned(bulk, pinned), ids, members, dataPicker));
+            return obj;
+        });
+    }
+
+    /**
+     * 异步写入缓存, L1在调用线程中写入, L2写入与清除广播在异步线程池中执行
+     *
+     * @param cacheConfig cache config
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param value       cache object, 为null时删除
+     * @return L2写入和广播都完成时完成
+     */
+    public <T extends RObject<String>> CompletableFuture<Void> setAsync(CacheConfig cacheConfig, String id, T value) {
+        if (id == null) return CompletableFuture.completedFuture(null);
+        if (value == null) return evictAsync(cacheConfig, cacheConfig.region(), id);
+
+        long version = VersionClock.next();
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        membership.add(cacheConfig.region(), cacheKey);
+        hotKeys.remove(cacheConfig.region(), cacheKey);
+        cacheManager.set(LEVEL_1, cacheConfig, id, value, this);
+        staleValues.put(cacheConfig, id, value);
+        return CompletableFuture.allOf(
+                _publishEvictCmdAsync(cacheConfig.region(), cacheKey, version),
+                cacheManager.setEntryAsync(LEVEL_2, cacheConfig, id, value, version, this));
+    }
+
+    /**
+     * 异步批量写入缓存
+     *
+     * @see #setAsync(CacheConfig, String, RObject)
+     */
+    public <T extends RObject<String>> CompletableFuture<Void> setAllAsync(CacheConfig cacheConfig, Map<String, T> objects) {
+        if (objects == null) return CompletableFuture.completedFuture(null);
+
+        long version = VersionClock.next();
+        List<String> cacheKeys = CacheUtils.genCacheKeys(cacheConfig, Lists.newArrayList(objects.keySet().iterator()));
+        membership.add(cacheConfig.region(), cacheKeys);
+        hotKeys.remove(cacheConfig.region(), cacheKeys);
+        cacheManager.setAll(LEVEL_1, cacheConfig, objects, this);
+        objects.forEach((id, value) -> staleValues.put(cacheConfig, id, value));
+        return CompletableFuture.allOf(
+                _publishEvictCmdAsync(cacheConfig.region(), cacheKeys, version),
+                cacheManager.setAllEntriesAsync(LEVEL_2, cacheConfig, objects, version, this));
+    }
+
+    /**
+     * 异步删除缓存, L1在调用线程中删除
+     *
+     * @param cacheConfig 配置项
+     * @param id          object id, is not the finally key in cached Object identifier
+     */
+    public CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, String id) {
+        return evictAsync(cacheConfig, cacheConfig.region(), id);
+    }
+
+    /**
+     * 异步删除缓存, L1在调用线程中删除
+     *
+     * @param region Cache Region name
+     * @param id     object id, is not the finally key in cached Object identifier
+     */
+    public CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, String region, String id) {
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        cacheManager.evict(LEVEL_1, cacheConfig, region, id, this);
+        staleValues.remove(region, cacheKey);
+        hotKeys.remove(region, cacheKey);
+        return CompletableFuture.allOf(
+                cacheManager.evictAsync(LEVEL_2, cacheConfig, region, id, this),
+                _publishEvictCmdAsync(region, cacheKey, VersionClock.next()));
+    }
+
+    /**
+     * 异步批量删除缓存, L1在调用线程中删除
+     *
+     * @param cacheConfig cache config
+     * @param ids         object id, is not the finally key in cached Object identifier
+     */
+    public CompletableFuture<Void> batchEvictAsync(CacheConfig cacheConfig, List<String> ids) {
+        return batchEvictAsync(cacheConfig, cacheConfig.region(), ids);
+    }
+
+    /**
+     * 异步批量删除缓存, L1在调用线程中删除
+     *
+     * @param cacheConfig cache config
+     * @param region      Cache region name
+     * @param ids         object id, is not the finally key in cached Object identifier
+     */
+    public CompletableFuture<Void> batchEvictAsync(CacheConfig cacheConfig, String region, List<String> ids) {
+        List<String> cacheKeys = cacheConfig != null ? CacheUtils.genCacheKeys(cacheConfig, ids) : ids;
+        cacheManager.batchEvict(LEVEL_1, cacheConfig, region, ids, this);
+        staleValues.remove(region, cacheKeys);
+        hotKeys.remove(region, cacheKeys);
+        return CompletableFuture.allOf(
+                cacheManager.batchEvictAsync(LEVEL_2, cacheConfig, region, ids, this),
+                _publishEvictCmdAsync(region, cacheKeys, VersionClock.next()));
+    }
+
+    private CompletableFuture<Void> _publishEvictCmdAsync(String region, Object key, long version) {
+        return CompletableFuture.runAsync(() -> _publishEvictCmd(region, key, version), cacheManager.getAsyncExecutor());
+    }
+
     /**
      * 写入缓存
      *
@@ -160,9 +540,15 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
                 // 2. L1 有 L2 没有（这种情况不存在，除非是写 L2 的时候失败
                 // 3. L1 没有，L2 有
                 // 4. L1 和 L2 都有
-                _publishEvictCmd(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id));// 清除原有的一级缓存的内容
+                // 清除命令带上新值的版本号, 其他节点据此拒绝以更早的L2值回填L1
+                long version = VersionClock.next();
+                String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+                membership.add(cacheConfig.region(), cacheKey);
+                hotKeys.remove(cacheConfig.region(), cacheKey);
+                _publishEvictCmd(cacheConfig.region(), cacheKey, version);// 清除原有的一级缓存的内容
                 cacheManager.set(LEVEL_1, cacheConfig, id, value, this);
-                cacheManager.set(LEVEL_2, cacheConfig, id, value, this);
+                staleValues.put(cacheConfig, id, value);
+                cacheManager.setEntry(LEVEL_2, cacheConfig, id, value, version, this);
             }
         }
 
@@ -172,10 +558,23 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
     }
 
     public <T extends RObject<String>> void setAll(CacheConfig cacheConfig, Map<String, T> objects) {
-        if (objects != null) {
-            _publishEvictCmd(cacheConfig.region(), CacheUtils.genCacheKeys(cacheConfig, Lists.newArrayList(objects.keySet().iterator())));// 清除原有的一级缓存的内容
-            cacheManager.setAll(LEVEL_2, cacheConfig, objects, this);
+        if (objects != null) setAll(cacheConfig, objects, VersionClock.next());
+    }
+
+    /**
+     * 以指定版本号写入, 后台刷新以回源开始的版本号写入, 回源期间被更新或删除的对象不再覆盖
+     *
+     * @param version 新值的版本号
+     */
+    private <T extends RObject<String>> void setAll(CacheConfig cacheConfig, Map<String, T> objects, long version) {
+        if (!objects.isEmpty()) {
+            List<String> cacheKeys = CacheUtils.genCacheKeys(cacheConfig, Lists.newArrayList(objects.keySet().iterator()));
+            membership.add(cacheConfig.region(), cacheKeys);
+            hotKeys.remove(cacheConfig.region(), cacheKeys);
+            _publishEvictCmd(cacheConfig.region(), cacheKeys, version);// 清除原有的一级缓存的内容
+            cacheManager.setAllEntries(LEVEL_2, cacheConfig, objects, version, this);
             cacheManager.setAll(LEVEL_1, cacheConfig, objects, this);
+            objects.forEach((id, value) -> staleValues.put(cacheConfig, id, value));
         }
     }
 
@@ -196,9 +595,12 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
      * @param id     object id, is not the finally key in cached Object identifier
      */
     public void evict(CacheConfig cacheConfig, String region, String id) {
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
         cacheManager.evict(LEVEL_1, cacheConfig, region, id, this); // 删除一级缓存
+        staleValues.remove(region, cacheKey);
+        hotKeys.remove(region, cacheKey);
         cacheManager.evict(LEVEL_2, cacheConfig, region, id, this); // 删除二级缓存
-        _publishEvictCmd(region, CacheUtils.genCacheKey(cacheConfig, id)); // 发送广播
+        _publishEvictCmd(region, cacheKey, VersionClock.next()); // 发送广播
     }
 
     /**
@@ -219,10 +621,12 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
      * @param ids         object id, is not the finally key in cached Object identifier
      */
     public void batchEvict(CacheConfig cacheConfig, String region, List<String> ids) {
+        List<String> cacheKeys = cacheConfig != null ? CacheUtils.genCacheKeys(cacheConfig, ids) : ids;
         cacheManager.batchEvict(LEVEL_1, cacheConfig, region, ids, this);
+        staleValues.remove(region, cacheKeys);
+        hotKeys.remove(region, cacheKeys);
         cacheManager.batchEvict(LEVEL_2, cacheConfig, region, ids, this);
-        if (cacheConfig != null) _publishEvictCmd(region, CacheUtils.genCacheKeys(cacheConfig, ids));
-        else _publishEvictCmd(region, ids);
+        _publishEvictCmd(region, cacheKeys, VersionClock.next());
     }
 
     /**
@@ -235,6 +639,201 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
         return cacheManager.keys(LEVEL_1, region, this);
     }
 
+    private void recordTombstones(String region, Object key, long version) {
+        if (tombstones == null) return;
+        if (key instanceof Collection) {
+            for (Object k : (Collection<?>) key) tombstones.invalidate(region, String.valueOf(k), version);
+        } else {
+            tombstones.invalidate(region, String.valueOf(key), version);
+        }
+    }
+
+    /**
+     * 以L2读到的值回填L1, 热点KEY同时钉住, 值的版本号早于最近收到的清除广播或是L2在宽限期内返回的过期值时不回填
+     */
+    private <T extends RObject<String>> void fillL1(CacheConfig cacheConfig, String id, CacheEntry<T> entry) {
+        if (isFillable(cacheConfig, id, entry, System.currentTimeMillis())) {
+            cacheManager.set(LEVEL_1, cacheConfig, id, entry.getValue(), this);
+            staleValues.put(cacheConfig, id, entry.getValue());
+            hotKeys.pin(cacheConfig, id, entry.getValue());
+        }
+    }
+
+    private <T extends RObject<String>> void fillL1(CacheConfig cacheConfig, Map<String, CacheEntry<T>> entries) {
+        Map<String, T> fresh = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        long now = System.currentTimeMillis();
+        entries.forEach((id, entry) -> {
+            if (isFillable(cacheConfig, id, entry, now)) fresh.put(id, entry.getValue());
+        });
+        cacheManager.setAll(LEVEL_1, cacheConfig, fresh, this);
+        fresh.forEach((id, value) -> {
+            staleValues.put(cacheConfig, id, value);
+            hotKeys.pin(cacheConfig, id, value);
+        });
+    }
+
+    private boolean isFillable(CacheConfig cacheConfig, String id, CacheEntry<? extends RObject<String>> entry, long now) {
+        // 空对象只在L2中按较短的时间缓存
+        if (cacheConfig.emptyExpiredTime() > 0 && entry.getValue() != null && entry.getValue().isBlank()) return false;
+        if (StalePolicy.stateOf(cacheConfig, entry.getExpireAt(), now) != StalePolicy.State.FRESH) return false;
+        return tombstones == null || !tombstones.isStale(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id), entry.getVersion());
+    }
+
+    /**
+     * L1 Miss时在stale-while-revalidate宽限期内返回L1的过期值, 并在后台经L2重新加载一次
+     *
+     * @return true 返回过期值
+     */
+    private <T extends RObject<String>> boolean serveWhileRevalidate(CacheConfig cacheConfig, String id, CacheEntry<T> stale,
+                                                                     DataPicker<String, T> dataPicker) {
+        if (stale == null || dataPicker == null
+                || StalePolicy.stateOf(cacheConfig, stale.getExpireAt(), System.currentTimeMillis()) != StalePolicy.State.REVALIDATE)
+            return false;
+        staleValues.getStalePolicy().servedWhileRevalidate();
+        refresher.schedule(cacheConfig.region(), Collections.singletonList(id), claimed -> {
+            Map<String, CacheEntry<T>> entries = cacheManager.getAllEntries(LEVEL_2, cacheConfig, claimed, this, dataPicker);
+            if (entries == null) throw new CacheException("revalidate");
+            fillL1(cacheConfig, entries);
+        });
+        return true;
+    }
+
+    /**
+     * L2读取失败(包括回源失败)时在宽限期内返回L1的过期值; L2正常返回的Miss不返回过期值
+     *
+     * @param error L2读取抛出的异常
+     * @return true 返回过期值
+     */
+    private boolean serveIfError(CacheConfig cacheConfig, CacheEntry<?> stale, DataPicker<String, ?> dataPicker, Throwable error) {
+        l2Failed(cacheConfig, error);
+        return isServableIfError(cacheConfig, stale, dataPicker);
+    }
+
+    /**
+     * 批量读取时L2失败, 以宽限期内的L1过期值代替
+     *
+     * @param error L2读取抛出的异常
+     */
+    private <T extends RObject<String>> Map<String, T> staleIfError(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker,
+                                                                   Throwable error) {
+        l2Failed(cacheConfig, error);
+        if (dataPicker == null || !StalePolicy.isEnabled(cacheConfig)) return null;
+        Map<String, T> bulk = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+        for (String id : ids) {
+            CacheEntry<T> stale = staleValues.get(cacheConfig, id);
+            if (isServableIfError(cacheConfig, stale, dataPicker)) bulk.put(id, stale.getValue());
+        }
+        return bulk.isEmpty() ? null : bulk;
+    }
+
+    private boolean isServableIfError(CacheConfig cacheConfig, CacheEntry<?> stale, DataPicker<String, ?> dataPicker) {
+        if (stale == null || dataPicker == null) return false;
+        StalePolicy.State state = StalePolicy.stateOf(cacheConfig, stale.getExpireAt(), System.currentTimeMillis());
+        if (state != StalePolicy.State.IF_ERROR && state != StalePolicy.State.REVALIDATE) return false;
+        staleValues.getStalePolicy().servedIfError();
+        return true;
+    }
+
+    private void l2Failed(CacheConfig cacheConfig, Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CacheException || cause instanceof CompletionException) && cause.getCause() != null)
+            cause = cause.getCause();
+        log.warn("L2 get {} exception| region={}| {}", cause.getClass(), cacheConfig.region(), cause.getLocalizedMessage());
+        if (log.isDebugEnabled()) {
+            log.error("L2 get", cause);
+        }
+    }
+
+    private static boolean isRefreshAhead(CacheConfig cacheConfig, DataPicker<String, ?> dataPicker) {
+        return dataPicker != null && cacheConfig.refreshAhead() > 0;
+    }
+
+    /**
+     * 批量读L1, 开启提前刷新时同时检查各对象的剩余寿命
+     */
+    private <T extends RObject<String>> Map<String, T> getAllL1(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+        if (!isRefreshAhead(cacheConfig, dataPicker)) return cacheManager.getAll(LEVEL_1, cacheConfig, ids, this, dataPicker);
+        Map<String, CacheEntry<T>> entries = cacheManager.getAllEntries(LEVEL_1, cacheConfig, ids, this, dataPicker);
+        if (entries == null) return null;
+        refreshIfNearExpiry(cacheConfig, entries, dataPicker);
+        return valuesOf(entries);
+    }
+
+    private <T extends RObject<String>> void refreshIfNearExpiry(CacheConfig cacheConfig, String id, CacheEntry<T> entry,
+                                                                 DataPicker<String, T> dataPicker) {
+        if (isRefreshAhead(cacheConfig, dataPicker)
+                && RefreshScheduler.isNearExpiry(cacheConfig, entry.getExpireAt(), System.currentTimeMillis()))
+            refresh(cacheConfig, Collections.singletonList(id), dataPicker);
+    }
+
+    private <T extends RObject<String>> void refreshIfNearExpiry(CacheConfig cacheConfig, Map<String, CacheEntry<T>> entries,
+                                                                 DataPicker<String, T> dataPicker) {
+        if (!isRefreshAhead(cacheConfig, dataPicker)) return;
+        long now = System.currentTimeMillis();
+        List<String> expiring = entries.entrySet().stream()
+                .filter(e -> RefreshScheduler.isNearExpiry(cacheConfig, e.getValue().getExpireAt(), now))
+                .map(Map.Entry::getKey).collect(Collectors.toList());
+        if (!expiring.isEmpty()) refresh(cacheConfig, expiring, dataPicker);
+    }
+
+    /**
+     * 后台重新加载并写入L2与L1, 同时广播清除其他节点的L1
+     */
+    private <T extends RObject<String>> void refresh(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+        refresher.schedule(cacheConfig.region(), ids, claimed -> {
+            long version = VersionClock.next();
+            Map<String, T> loaded = refreshLoader.pickupAll(cacheConfig, claimed, cacheManager.getMetrics().metered(cacheConfig.region(), dataPicker));
+            if (tombstones != null)
+                loaded.keySet().removeIf(id -> tombstones.isStale(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id), version));
+            setAll(cacheConfig, loaded, version);
+        });
+    }
+
+    private static <T extends RObject<String>> T emptyOf(DataPicker<String, T> dataPicker) {
+        return dataPicker == null ? null : dataPicker.makeEmptyData();
+    }
+
+    /**
+     * 把被成员过滤器排除的Id以空对象补入结果
+     */
+    private static <T extends RObject<String>> Map<String, T> withEmpty(Map<String, T> bulk, List<String> ids, List<String> members,
+                                                                       DataPicker<String, T> dataPicker) {
+        if (members == ids || dataPicker == null) return bulk;
+        Map<String, T> values = bulk != null ? bulk : new LinkedHashMap<>();
+        Set<String> admitted = new HashSet<>(members);
+        for (String id : ids) {
+            if (admitted.contains(id)) continue;
+            T empty = dataPicker.makeEmptyData();
+            if (empty != null) values.put(id, empty);
+        }
+        return values;
+    }
+
+    /**
+     * @return 需要读L2的Id, 没有钉住的值时返回members本身
+     */
+    private static List<String> without(List<String> members, Map<String, ?> pinned) {
+        if (pinned.isEmpty()) return members;
+        return members.stream().filter(id -> !pinned.containsKey(id)).collect(Collectors.toList());
+    }
+
+    /**
+     * 把钉住的热点值补入L2的结果
+     */
+    private static <T> Map<String, T> withPinned(Map<String, T> bulk, Map<String, T> pinned) {
+        if (pinned.isEmpty()) return bulk;
+        Map<String, T> values = bulk != null ? bulk : new LinkedHashMap<>();
+        values.putAll(pinned);
+        return values;
+    }
+
+    private static <T> Map<String, T> valuesOf(Map<String, CacheEntry<T>> entries) {
+        if (entries == null) return null;
+        Map<String, T> values = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        entries.forEach((id, entry) -> values.put(id, entry.getValue()));
+        return values;
+    }
+
     /**
      * 删除一级缓存的键对应内容
      *
@@ -243,6 +842,10 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
      */
     @SuppressWarnings({"unchecked", "rawtypes"})
     private void onDeleteCacheKey(String region, Object key) {
+        staleValues.remove(region, key);
+        hotKeys.remove(region, key);
+        // 清除广播也来自其他节点的写入, 新增的对象要能通过成员过滤器
+        membership.add(region, key);
         if (key instanceof List) {
             cacheManager.batchEvict(LEVEL_1, null, region, (List) key, this);
         } else if (key instanceof Set) {
@@ -265,9 +868,19 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
      */
     @Override
     public void onMessage(byte[] channel, byte[] message) {
+        dispatcher.dispatch(channel, message);
+    }
+
+    /**
+     * 解码并执行收到的消息, 在{@link MessageDispatcher}的工作线程中调用
+     *
+     * @param channel 来源
+     * @param message 消息
+     */
+    private void handleMessage(byte[] channel, byte[] message) {
 
         try {
-            Command cmd = serializer.deserialize(message);
+            Command cmd = commandCodec.decode(message);
             if (cmd == null)
                 return;
             // 同一进程的消息忽略掉
@@ -281,8 +894,20 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
                 log.debug("onMessage| 当前缓存管理器[{}]收到缓存管理器[{}]发来[{}]消息，清除region[{}]key[{}] ",
                         hostId, cmd.getHostId(), new String(channel), cmd.getRegion(), cmd.getKey());
 
+            // 序号不连续说明该频道上有清除命令丢失, 频道上各region的L1失效, 本条命令也随之生效
+            String channelName = new String(channel, StandardCharsets.UTF_8);
+            if (sequences.received(cmd.getHostId(), channelName, cmd.getSequence()) && resyncOnGap) {
+                resync(channelName);
+                return;
+            }
+            // 全局分片频道上有其他region的命令
+            if (!subscribedRegions.contains(cmd.getRegion())) return;
+            cacheManager.getMetrics().region(cmd.getRegion()).received();
+
             switch (cmd.getOperator()) {
                 case Command.OPT_DELETE_KEY:
+                    // 先记墓碑再删L1, 删除之后完成的L2读取不能再以旧值回填
+                    recordTombstones(cmd.getRegion(), cmd.getKey(), cmd.getVersion());
                     onDeleteCacheKey(cmd.getRegion(), cmd.getKey());
                     break;
                 default:
@@ -293,11 +918,92 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
         }
     }
 
+    /**
+     * @return 广播命令的序号跟踪, 可读取缺口与重同步次数
+     */
+    public SequenceTracker getSequenceTracker() {
+        return sequences;
+    }
+
+    /**
+     * @return 版本号墓碑, 可读取因墓碑而没有回填L1的次数; 未开启时为null
+     */
+    public VersionTombstones getVersionTombstones() {
+        return tombstones;
+    }
+
+    /**
+     * @return L1保留的过期值, 可读取从L1返回过期值的次数
+     */
+    public StaleValues getStaleValues() {
+        return staleValues;
+    }
+
+    /**
+     * 以持久层的全部Id重建region的成员过滤器, 开启后L1 Miss的Id先经过滤器判断, 一定不存在的Id直接返回空对象,
+     * 不再读L2与回源. 持久层有大量删除后可以定期重建
+     *
+     * @param cacheConfig 缓存配置
+     * @param picker      能遍历全部Id的数据提取器
+     * @return 加入的Id数
+     */
+    public long rebuildMembershipFilter(CacheConfig cacheConfig, IdStreamDataPicker<String, ?> picker) {
+        return membership.rebuild(cacheConfig, picker);
+    }
+
+    /**
+     * @return 各region的成员过滤器, 可读取被排除的次数
+     */
+    public MembershipFilters getMembershipFilters() {
+        return membership;
+    }
+
+    /**
+     * @return 各region的热点KEY统计, 可读取最热的KEY与钉住的值代替L2读取的次数
+     */
+    public HotKeys getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * @return 提前刷新的调度器, 可读取刷新的登记、完成与失败次数
+     */
+    public RefreshScheduler getRefreshScheduler() {
+        return refresher;
+    }
+
+    /**
+     * @return 收到的广播消息的分发器, 可读取队列深度与处理延迟
+     */
+    public MessageDispatcher getMessageDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * 同步发送所有已缓冲的清除广播, 用于写入后需要其他节点立即读到新值的场景
+     */
+    public void flushEvictions() {
+        evictPublisher.flush();
+    }
+
+    /**
+     * 同步发送指定region已缓冲的清除广播
+     *
+     * @param region Cache region name
+     */
+    public void flushEvictions(String region) {
+        evictPublisher.flush(region);
+    }
+
     /**
      * 关闭到通道的连接
      */
     public void close() {
-        CacheRedisBroadcast.this.punsubscribe();
+        retryWhenSubscribeFail = false;
+        evictPublisher.close();
+        transport.unsubscribe();
+        dispatcher.shutdown(1000);
+        refresher.shutdown();
         cacheManager.shutdown(LEVEL_1);
         cacheManager.shutdown(LEVEL_2);
     }
@@ -317,14 +1023,31 @@ public class CacheRedisBroadcast extends BinaryJedisPubSub implements CacheExpir
         obj.setKey(StringUtils.join(ids, ","));
         obj.setRegion(cacheConfig.region());
         if (ids != null && !ids.isEmpty()) {
-            Map<String, T> bulk = cacheManager.getAll(LEVEL_1, cacheConfig, ids, this, dataPicker);
+            Map<String, T> bulk = getAllL1(cacheConfig, ids, dataPicker);
             if (CollectionsUtils.isEmpty(bulk) || bulk.size() < ids.size()) {
-                bulk = cacheManager.getAll(LEVEL_2, cacheConfig, ids, this, dataPicker);
+                List<String> members = membership.filter(cacheConfig, ids);
+                Map<String, T> pinned = hotKeys.accessAll(cacheConfig, members);
+                List<String> remote = without(members, pinned);
+                Map<String, CacheEntry<T>> entries;
+                CacheException error = null;
+                try {
+                    entries = remote.isEmpty() ? new LinkedHashMap<>()
+                            : cacheManager.getAllEntriesOrThrow(LEVEL_2, cacheConfig, remote, this, dataPicker);
+                } catch (CacheException e) {
+                    entries = null;
+                    error = e;
+                }
+                bulk = valuesOf(entries);
 
-                if (CollectionsUtils.isNotEmpty(bulk) && bulk.size() == ids.size()) {
+                if (remote.isEmpty() && !pinned.isEmpty()) {
+                    obj.setLevel(LEVEL_1);
+                } else if (CollectionsUtils.isNotEmpty(bulk) && bulk.size() == remote.size()) {
                     obj.setLevel(LEVEL_2);
-                    cacheManager.setAll(LEVEL_1, cacheConfig, bulk, this);
+                    fillL1(cacheConfig, entries);
                 }
+                if (error != null) bulk = staleIfError(cacheConfig, remote, dataPicker, error);
+                else if (entries != null) refreshIfNearExpiry(cacheConfig, entries, dataPicker);
+                bulk = withEmpty(withPinned(bulk, pinned), ids, members, dataPicker);
             } else {
                 obj.setLevel(LEVEL_1);
             }
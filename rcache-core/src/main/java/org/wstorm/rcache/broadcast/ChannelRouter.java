@@ -0,0 +1,129 @@
+package org.wstorm.rcache.broadcast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 广播频道路由, 决定清除命令发到哪个频道以及订阅哪些频道
+ * <ul>
+ * <li>{@link BroadcastConfig.ShardMode#none}: 每个region一个频道, 频道名即region名(与旧版本兼容)</li>
+ * <li>{@link BroadcastConfig.ShardMode#region}: 每个region按KEY的hash分为N个频道, 如 udserv:usr#3</li>
+ * <li>{@link BroadcastConfig.ShardMode#global}: 所有region共用N个频道, 按KEY的hash分配, 如 rcache:evict#3</li>
+ * </ul>
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+final class ChannelRouter {
+
+    static final char SHARD_SEPARATOR = '#';
+
+    private final BroadcastConfig.ShardMode mode;
+    private final int shards;
+    private final String globalPrefix;
+    private final List<String> regions;
+
+    ChannelRouter(BroadcastConfig.ShardMode mode, int shards, String globalPrefix, List<String> regions) {
+        this.mode = shards > 1 ? mode : BroadcastConfig.ShardMode.none;
+        this.shards = Math.max(1, shards);
+        this.globalPrefix = globalPrefix;
+        this.regions = regions;
+    }
+
+    /**
+     * @param region 缓存区域
+     * @param key    缓存KEY
+     * @return KEY的清除命令所在频道
+     */
+    String channelOf(String region, String key) {
+        switch (mode) {
+            case region:
+                return region + SHARD_SEPARATOR + shard(key);
+            case global:
+                return globalPrefix + SHARD_SEPARATOR + shard(key);
+            default:
+                return region;
+        }
+    }
+
+    /**
+     * 将KEY按频道分组
+     *
+     * @param region 缓存区域
+     * @param key    单个KEY或KEY集合
+     * @return 频道与KEY(单个KEY或KEY列表), 不分片时原样返回
+     */
+    Map<String, Object> route(String region, Object key) {
+        if (mode == BroadcastConfig.ShardMode.none) return Collections.singletonMap(region, key);
+        if (!(key instanceof Collection)) return Collections.singletonMap(channelOf(region, String.valueOf(key)), key);
+
+        Map<String, List<String>> grouped = new LinkedHashMap<>();
+        for (Object k : (Collection<?>) key) {
+            String s = String.valueOf(k);
+            grouped.computeIfAbsent(channelOf(region, s), c -> new ArrayList<>()).add(s);
+        }
+        Map<String, Object> routed = new LinkedHashMap<>(grouped.size() * 2);
+        grouped.forEach((channel, keys) -> routed.put(channel, keys.size() == 1 ? keys.get(0) : keys));
+        return routed;
+    }
+
+    /**
+     * @return 需要订阅的全部频道
+     */
+    List<String> subscribeChannels() {
+        List<String> channels = new ArrayList<>();
+        switch (mode) {
+            case region:
+                for (String region : regions)
+                    for (int i = 0; i < shards; i++) channels.add(region + SHARD_SEPARATOR + i);
+                break;
+            case global:
+                for (int i = 0; i < shards; i++) channels.add(globalPrefix + SHARD_SEPARATOR + i);
+                break;
+            default:
+                channels.addAll(regions);
+        }
+        return channels;
+    }
+
+    /**
+     * @param channel 频道
+     * @return 该频道上可能有命令的已订阅region, 频道上的命令丢失时这些region的L1需要失效
+     */
+    List<String> regionsOf(String channel) {
+        switch (mode) {
+            case region:
+                int i = channel.lastIndexOf(SHARD_SEPARATOR);
+                return Collections.singletonList(i < 0 ? channel : channel.substring(0, i));
+            case global:
+                return regions;
+            default:
+                return Collections.singletonList(channel);
+        }
+    }
+
+    /**
+     * 将频道分给多个订阅连接, 第i个频道分给第i % connections个连接
+     *
+     * @param connections 订阅连接数
+     * @return 每个连接订阅的频道
+     */
+    List<List<String>> partition(int connections) {
+        List<String> channels = subscribeChannels();
+        int n = Math.max(1, Math.min(connections, channels.size()));
+        List<List<String>> groups = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) groups.add(new ArrayList<>());
+        for (int i = 0; i < channels.size(); i++) groups.get(i % n).add(channels.get(i));
+        return groups;
+    }
+
+    private int shard(String key) {
+        int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % shards;
+    }
+}
@@ -0,0 +1,330 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.entity.Command;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 广播命令的紧凑二进制编解码
+ * <p>
+ * 格式(版本1):
+ * <pre>
+ * [magic 0xC7][version][operator][flags]
+ * [sequence: varlong, flags含SEQUENCE时才有]
+ * [hostId: 12字节原始值 | varint长度 + UTF-8]
+ * [region: varint长度 + UTF-8]
+ * [prefix: varint长度 + UTF-8, flags含PREFIX_REGION时实际前缀为region + 该串]
+ * [key个数: varint][每个KEY去掉前缀后的 varint长度 + UTF-8]
+ * [version: varlong, flags含DATA_VERSION时才有. 放在末尾, 不认识该标志的节点读完KEY后会忽略]
+ * </pre>
+ * 解码时首字节不是magic的消息按旧的Kryo格式解析, 滚动升级期间新旧节点可以互相读到对方的消息;
+ * 旧节点读不了新格式, 所以升级期间应先以{@link BroadcastConfig#setCompactCommand(boolean)}为false部署, 全部升级后再打开.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月21日
+ */
+public final class CommandCodec {
+
+    static final byte MAGIC = (byte) 0xC7;
+    static final byte VERSION = 1;
+
+    private static final int KEY_NULL = 1;
+    private static final int KEY_LIST = 1 << 1;
+    private static final int KEY_SET = 1 << 2;
+    private static final int PREFIX_REGION = 1 << 3;
+    private static final int HOST_RAW = 1 << 4;
+    private static final int SEQUENCE = 1 << 5;
+    private static final int DATA_VERSION = 1 << 6;
+
+    private static final int HOST_RAW_SIZE = 12;
+
+    private final KryoPoolSerializer serializer = new KryoPoolSerializer();
+    private final boolean compact;
+
+    public CommandCodec() {
+        this(true);
+    }
+
+    /**
+     * @param compact 编码时是否使用紧凑格式, false时仍按Kryo编码. 解码总是两种格式都支持
+     */
+    public CommandCodec(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * @param cmd 广播命令
+     * @return 消息体
+     * @throws CacheException 序列化失败
+     */
+    public byte[] encode(Command cmd) throws CacheException {
+        if (!compact) {
+            try {
+                return serializer.serialize(cmd);
+            } catch (Exception e) {
+                throw new CacheException("encode command", e);
+            }
+        }
+
+        List<String> keys;
+        int flags = 0;
+        Object key = cmd.getKey();
+        if (key == null) {
+            keys = new ArrayList<>(0);
+            flags |= KEY_NULL;
+        } else if (key instanceof Collection) {
+            Collection<?> c = (Collection<?>) key;
+            keys = new ArrayList<>(c.size());
+            for (Object k : c) keys.add(String.valueOf(k));
+            flags |= key instanceof Set ? KEY_SET : KEY_LIST;
+        } else {
+            keys = new ArrayList<>(1);
+            keys.add(String.valueOf(key));
+        }
+
+        String region = cmd.getRegion() == null ? "" : cmd.getRegion();
+        String prefix = commonPrefix(keys, region);
+        String prefixTail = prefix;
+        if (!region.isEmpty() && prefix.startsWith(region)) {
+            flags |= PREFIX_REGION;
+            prefixTail = prefix.substring(region.length());
+        }
+        byte[] host = hostBytes(cmd.getHostId());
+        if (host != null) flags |= HOST_RAW;
+        if (cmd.getSequence() > 0) flags |= SEQUENCE;
+        if (cmd.getVersion() > 0) flags |= DATA_VERSION;
+
+        Writer out = new Writer(32 + region.length() + keys.size() * 16);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(cmd.getOperator());
+        out.write(flags);
+        if (cmd.getSequence() > 0) out.writeVarLong(cmd.getSequence());
+        if (host != null) out.write(host);
+        else out.writeString(cmd.getHostId() == null ? "" : cmd.getHostId());
+        out.writeString(region);
+        out.writeString(prefixTail);
+        out.writeVarInt(keys.size());
+        for (String k : keys) out.writeString(k, prefix.length());
+        if (cmd.getVersion() > 0) out.writeVarLong(cmd.getVersion());
+        return out.toBytes();
+    }
+
+    /**
+     * @param message 消息体, 紧凑格式或旧的Kryo格式
+     * @return 广播命令
+     * @throws CacheException 无法解析
+     */
+    public Command decode(byte[] message) throws CacheException {
+        if (message.length == 0 || message[0] != MAGIC) {
+            try {
+                return serializer.deserialize(message);
+            } catch (Exception e) {
+                throw new CacheException("decode kryo command", e);
+            }
+        }
+        if (message.length < 4 || message[1] != VERSION) {
+            throw new CacheException("unsupported command version: " + (message.length < 2 ? -1 : message[1]));
+        }
+
+        try {
+            Reader in = new Reader(message, 2);
+            byte operator = in.read();
+            int flags = in.read();
+            long sequence = (flags & SEQUENCE) != 0 ? in.readVarLong() : 0;
+            String hostId = (flags & HOST_RAW) != 0 ? in.readHex(HOST_RAW_SIZE) : in.readString();
+            String region = in.readString();
+            String prefix = in.readString();
+            if ((flags & PREFIX_REGION) != 0) prefix = region + prefix;
+
+            int count = in.readVarInt();
+            Collection<String> keys = (flags & KEY_SET) != 0 ? new HashSet<>(count * 2) : new ArrayList<>(count);
+            for (int i = 0; i < count; i++) keys.add(prefix.concat(in.readString()));
+
+            Object key;
+            if ((flags & KEY_NULL) != 0) key = null;
+            else if ((flags & (KEY_LIST | KEY_SET)) != 0) key = keys;
+            else key = keys.iterator().next();
+            Command cmd = new Command(hostId, operator, region, key);
+            cmd.setSequence(sequence);
+            if ((flags & DATA_VERSION) != 0) cmd.setVersion(in.readVarLong());
+            return cmd;
+        } catch (RuntimeException e) {
+            throw new CacheException("decode compact command", e);
+        }
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * 多个KEY时取公共前缀, 单个KEY时只在以"region:"开头时取该部分为前缀
+     */
+    private static String commonPrefix(List<String> keys, String region) {
+        if (keys.isEmpty()) return "";
+        String first = keys.get(0);
+        int len;
+        if (keys.size() == 1) {
+            len = !region.isEmpty() && first.startsWith(region) && first.length() > region.length() ? region.length() + 1 : 0;
+        } else {
+            len = first.length();
+            for (int i = 1; i < keys.size() && len > 0; i++) {
+                String k = keys.get(i);
+                int max = Math.min(len, k.length()), j = 0;
+                while (j < max && first.charAt(j) == k.charAt(j)) j++;
+                len = j;
+            }
+        }
+        if (len > 0 && Character.isHighSurrogate(first.charAt(len - 1))) len--;
+        return first.substring(0, len);
+    }
+
+    /**
+     * CacheRedisBroadcast生成的hostId为24位十六进制, 按12字节原始值传输
+     */
+    private static byte[] hostBytes(String hostId) {
+        if (hostId == null || hostId.length() != HOST_RAW_SIZE * 2) return null;
+        byte[] bytes = new byte[HOST_RAW_SIZE];
+        for (int i = 0; i < HOST_RAW_SIZE; i++) {
+            int hi = Character.digit(hostId.charAt(i * 2), 16), lo = Character.digit(hostId.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) return null;
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void write(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void writeVarInt(int v) {
+            while ((v & ~0x7F) != 0) {
+                write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        void writeString(String s) {
+            writeString(s, 0);
+        }
+
+        /**
+         * 写入s从from开始的部分, 全ASCII时直接逐字节写入, 避免substring与getBytes的中间对象
+         */
+        void writeString(String s, int from) {
+            int len = s.length() - from;
+            for (int i = from; i < s.length(); i++) {
+                if (s.charAt(i) >= 0x80) {
+                    byte[] bytes = s.substring(from).getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(bytes.length);
+                    write(bytes);
+                    return;
+                }
+            }
+            writeVarInt(len);
+            ensure(len);
+            for (int i = from; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+        }
+
+        byte[] toBytes() {
+            byte[] bytes = new byte[pos];
+            System.arraycopy(buf, 0, bytes, 0, pos);
+            return bytes;
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, pos + n)];
+                System.arraycopy(buf, 0, grown, 0, pos);
+                buf = grown;
+            }
+        }
+    }
+
+    private static final class Reader {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte read() {
+            if (pos >= buf.length) throw new IllegalArgumentException("truncated command");
+            return buf[pos++];
+        }
+
+        int readVarInt() {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = read();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("malformed varlong");
+        }
+
+        String readString() {
+            int len = readVarInt();
+            if (len < 0 || pos + len > buf.length) throw new IllegalArgumentException("truncated command");
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        String readHex(int n) {
+            char[] chars = new char[n * 2];
+            for (int i = 0; i < n; i++) {
+                int b = read() & 0xff;
+                chars[i * 2] = HEX[b >>> 4];
+                chars[i * 2 + 1] = HEX[b & 0x0f];
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.wstorm.rcache.broadcast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 清除广播合并发布器
+ * <p>
+ * 按region缓冲待广播的缓存KEY并去重, 在合并窗口结束或缓冲KEY数达到上限时, 由后台线程为每个region发送一条多KEY的清除命令,
+ * 以减少写密集场景下的发布次数. 需要跨节点读己之写的调用方可在写入后调用{@link #flush()}同步发送.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月20日
+ */
+final class EvictPublisher {
+
+    /**
+     * 真正发送清除命令的动作, key为单个KEY或KEY列表, version为这些KEY新值的最大版本号
+     */
+    interface Sink {
+        void publish(String region, Object key, long version);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Sink sink;
+    private final long window;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, RegionBuffer> buffers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder enqueuedKeys = new LongAdder();
+    private final LongAdder duplicateKeys = new LongAdder();
+    private final LongAdder publishedMessages = new LongAdder();
+    private final LongAdder publishedKeys = new LongAdder();
+
+    /**
+     * @param sink    真正发送清除命令的动作
+     * @param window  合并窗口, 单位毫秒, &lt;=0时不合并直接发送
+     * @param maxKeys 每个region缓冲的KEY达到该数量时立即发送
+     */
+    EvictPublisher(Sink sink, long window, int maxKeys) {
+        this.sink = sink;
+        this.window = window;
+        this.maxKeys = Math.max(1, maxKeys);
+        if (window > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rcache-evict-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * 登记待广播清除的KEY, 版本号未知
+     *
+     * @param region 缓存区域
+     * @param key    单个KEY或KEY集合
+     */
+    void evict(String region, Object key) {
+        evict(region, key, 0);
+    }
+
+    /**
+     * 登记待广播清除的KEY. 合并发送时一条命令只带一个版本号, 取缓冲中的最大值,
+     * 订阅端只会因此在墓碑窗口内少回填一些L1, 不会放过旧值
+     *
+     * @param region  缓存区域
+     * @param key     单个KEY或KEY集合
+     * @param version 新值的版本号
+     */
+    void evict(String region, Object key, long version) {
+        if (flusher == null) {
+            send(region, key, version);
+            return;
+        }
+
+        RegionBuffer buffer = buffers.computeIfAbsent(region, RegionBuffer::new);
+        boolean schedule;
+        boolean full = false;
+        synchronized (buffer) {
+            schedule = buffer.keys.isEmpty();
+            buffer.version = Math.max(buffer.version, version);
+            if (key instanceof Collection) {
+                for (Object k : (Collection<?>) key) buffer.add(String.valueOf(k));
+            } else {
+                buffer.add(String.valueOf(key));
+            }
+            if (buffer.keys.size() >= maxKeys && !buffer.flushPending) {
+                buffer.flushPending = full = true;
+            }
+        }
+
+        try {
+            if (full) flusher.execute(() -> flush(buffer));
+            else if (schedule) flusher.schedule(() -> flush(buffer), window, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flush(buffer); //已关闭, 在调用线程中发送
+        }
+    }
+
+    /**
+     * 在调用线程中立即发送所有region已缓冲的清除命令
+     */
+    void flush() {
+        buffers.values().forEach(this::flush);
+    }
+
+    /**
+     * 在调用线程中立即发送指定region已缓冲的清除命令
+     *
+     * @param region 缓存区域
+     */
+    void flush(String region) {
+        RegionBuffer buffer = buffers.get(region);
+        if (buffer != null) flush(buffer);
+    }
+
+    /**
+     * 停止后台线程并发送剩余的清除命令
+     */
+    void close() {
+        if (flusher != null) flusher.shutdown();
+        flush();
+    }
+
+    private void flush(RegionBuffer buffer) {
+        List<String> keys;
+        long version;
+        synchronized (buffer) {
+            if (buffer.keys.isEmpty()) return;
+            keys = new ArrayList<>(buffer.keys);
+            version = buffer.version;
+            buffer.keys.clear();
+            buffer.version = 0;
+            buffer.flushPending = false;
+        }
+        try {
+            send(buffer.region, keys.size() == 1 ? keys.get(0) : keys, version);
+        } catch (Exception e) {
+            log.error("flush evict command| region={}| keys={}", buffer.region, keys.size(), e);
+        }
+    }
+
+    private void send(String region, Object key, long version) {
+        sink.publish(region, key, version);
+        publishedMessages.increment();
+        publishedKeys.add(key instanceof Collection ? ((Collection<?>) key).size() : 1);
+    }
+
+    /**
+     * @return 登记过的KEY数量(含重复)
+     */
+    long getEnqueuedKeys() {
+        return enqueuedKeys.sum();
+    }
+
+    /**
+     * @return 因窗口内重复而被合并掉的KEY数量
+     */
+    long getDuplicateKeys() {
+        return duplicateKeys.sum();
+    }
+
+    /**
+     * @return 实际发送的清除命令数量
+     */
+    long getPublishedMessages() {
+        return publishedMessages.sum();
+    }
+
+    /**
+     * @return 实际发送的KEY数量
+     */
+    long getPublishedKeys() {
+        return publishedKeys.sum();
+    }
+
+    /**
+     * @return 当前缓冲中尚未发送的KEY数量
+     */
+    int getPendingKeys() {
+        int pending = 0;
+        for (RegionBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                pending += buffer.keys.size();
+            }
+        }
+        return pending;
+    }
+
+    long getWindow() {
+        return window;
+    }
+
+    private final class RegionBuffer {
+        private final String region;
+        private final LinkedHashSet<String> keys = new LinkedHashSet<>();
+        private boolean flushPending;
+        private long version;
+
+        RegionBuffer(String region) {
+            this.region = region;
+        }
+
+        private void add(String key) {
+            enqueuedKeys.increment();
+            if (!keys.add(key)) duplicateKeys.increment();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.wstorm.rcache.broadcast;
+
+/**
+ * 热点KEY及其估算的访问次数
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月30日
+ * @see HotKeys#getHotKeys(String)
+ */
+public final class HotKey {
+
+    private final String key;
+    private final long count;
+
+    HotKey(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    /**
+     * @return 缓存KEY, 即L2中的KEY
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 估算的访问次数, 按窗口衰减
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + count;
+    }
+}
@@ -0,0 +1,151 @@
+package org.wstorm.rcache.broadcast;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个region的访问频率估算与热点KEY统计
+ * <p>
+ * 4行的Count-Min Sketch估算各KEY的访问次数, 另以最多K个候选保存估算值最大的KEY(heavy hitter).
+ * 每个时间窗口结束时所有计数器减半, 估算值因此反映最近几个窗口的访问, 稳定访问时约为每窗口次数的2倍.
+ * 线程安全, 计数无锁, 只有新KEY进入候选与窗口衰减时加锁.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月30日
+ */
+final class HotKeySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final AtomicLongArray table;
+    private final int widthMask;
+    private final int topK;
+    private final long windowNanos;
+    private final AtomicLong windowEnd;
+    private final ConcurrentHashMap<String, AtomicLong> heavy = new ConcurrentHashMap<>();
+    /**
+     * 候选已满时其中最小的估算值, 新KEY超过它才能进入候选
+     */
+    private volatile long minHeavy;
+
+    /**
+     * @param width       每行的计数器数, 取不小于它的2的幂
+     * @param topK        候选的热点KEY数
+     * @param windowNanos 衰减窗口, 单位纳秒
+     */
+    HotKeySketch(int width, int topK, long windowNanos) {
+        int w = Integer.highestOneBit(Math.max(16, Math.min(width, 1 << 24)) * 2 - 1);
+        table = new AtomicLongArray(w * SEED.length);
+        widthMask = w - 1;
+        this.topK = Math.max(1, topK);
+        this.windowNanos = Math.max(1, windowNanos);
+        windowEnd = new AtomicLong(System.nanoTime() + this.windowNanos);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 缓存KEY
+     * @return 本次访问后的估算次数
+     */
+    long increment(String key) {
+        decayIfDue(System.nanoTime());
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < SEED.length; i++) {
+            estimate = Math.min(estimate, table.incrementAndGet(indexOf(hash, i)));
+        }
+        AtomicLong count = heavy.get(key);
+        if (count != null) count.accumulateAndGet(estimate, Math::max);
+        else if (heavy.size() < topK || estimate > minHeavy) admit(key, estimate);
+        return estimate;
+    }
+
+    /**
+     * @param key 缓存KEY
+     * @return 估算的访问次数
+     */
+    long estimate(String key) {
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < SEED.length; i++) {
+            estimate = Math.min(estimate, table.get(indexOf(hash, i)));
+        }
+        return estimate;
+    }
+
+    private synchronized void admit(String key, long estimate) {
+        if (heavy.containsKey(key)) return;
+        if (heavy.size() >= topK) {
+            Map.Entry<String, AtomicLong> min = minEntry();
+            if (min == null || min.getValue().get() >= estimate) return;
+            heavy.remove(min.getKey());
+        }
+        heavy.put(key, new AtomicLong(estimate));
+        updateMinHeavy();
+    }
+
+    private Map.Entry<String, AtomicLong> minEntry() {
+        Map.Entry<String, AtomicLong> min = null;
+        for (Map.Entry<String, AtomicLong> e : heavy.entrySet()) {
+            if (min == null || e.getValue().get() < min.getValue().get()) min = e;
+        }
+        return min;
+    }
+
+    private void updateMinHeavy() {
+        Map.Entry<String, AtomicLong> min = heavy.size() < topK ? null : minEntry();
+        minHeavy = min == null ? 0 : min.getValue().get();
+    }
+
+    /**
+     * 窗口结束后所有计数器减半, 跨越多个窗口时按经过的窗口数衰减
+     */
+    private void decayIfDue(long now) {
+        long end = windowEnd.get();
+        if (now - end < 0) return;
+        long windows = (now - end) / windowNanos + 1;
+        if (!windowEnd.compareAndSet(end, end + windows * windowNanos)) return;
+        int shift = (int) Math.min(windows, 63);
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != 0) table.getAndUpdate(i, v -> v >>> shift);
+        }
+        synchronized (this) {
+            heavy.values().forEach(count -> count.getAndUpdate(v -> v >>> shift));
+            heavy.values().removeIf(count -> count.get() == 0);
+            updateMinHeavy();
+        }
+    }
+
+    /**
+     * @return 候选的热点KEY, 按估算次数从大到小
+     */
+    List<HotKey> top() {
+        decayIfDue(System.nanoTime());
+        List<HotKey> keys = new ArrayList<>(heavy.size());
+        heavy.forEach((key, count) -> {
+            if (count.get() > 0) keys.add(new HotKey(key, count.get()));
+        });
+        keys.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+        return keys;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += (h >>> 32);
+        return i * (widthMask + 1) + ((int) h & widthMask);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
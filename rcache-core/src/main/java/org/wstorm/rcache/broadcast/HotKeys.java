@@ -0,0 +1,202 @@
+package org.wstorm.rcache.broadcast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 各region的热点KEY统计与钉住
+ * <p>
+ * L1 Miss后将要读L2的KEY按region计入{@link HotKeySketch}, L1命中的读取不到达L2, 不计入.
+ * 估算次数达到阈值的KEY记一次告警日志, 并可通过{@link #getHotKeys(String)}查看各region最热的KEY.
+ * region配置了{@link CacheConfig#hotKeyPinTime()}时, 热点KEY从L2读到的值在本地另外保留该时间,
+ * L1过期后直接返回, 不再读L2. 钉住的值与L1一样随清除广播、本地删除与重同步移除, 数量超过上限时随机淘汰.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月30日
+ */
+public final class HotKeys {
+
+    /**
+     * 默认每个region统计的热点KEY数
+     */
+    public static final int DEFAULT_TOP_K = 16;
+    /**
+     * 默认衰减窗口, 单位毫秒
+     */
+    public static final long DEFAULT_WINDOW = 1000L;
+    /**
+     * 默认判定为热点的估算次数
+     */
+    public static final long DEFAULT_THRESHOLD = 1000L;
+    /**
+     * 默认Count-Min Sketch每行的计数器数
+     */
+    public static final int DEFAULT_SKETCH_WIDTH = 1024;
+    /**
+     * 默认最多钉住的值数
+     */
+    public static final int DEFAULT_MAX_PINNED = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ConcurrentHashMap<String, HotKeySketch> sketches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CacheEntry<Object>> pinned = new ConcurrentHashMap<>();
+    private final Set<String> pinnedRegions = ConcurrentHashMap.newKeySet();
+    private final LongAdder pinnedHits = new LongAdder();
+    private final int topK;
+    private final long windowNanos;
+    private final long threshold;
+    private final int sketchWidth;
+    private final int maxPinned;
+
+    /**
+     * @param topK        每个region统计的热点KEY数, 不大于0时不统计
+     * @param window      衰减窗口, 单位毫秒
+     * @param threshold   判定为热点的估算次数
+     * @param sketchWidth Count-Min Sketch每行的计数器数
+     * @param maxPinned   最多钉住的值数
+     */
+    public HotKeys(int topK, long window, long threshold, int sketchWidth, int maxPinned) {
+        this.topK = topK;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        this.threshold = Math.max(1, threshold);
+        this.sketchWidth = sketchWidth;
+        this.maxPinned = Math.max(1, maxPinned);
+    }
+
+    /**
+     * 记录一次将要读L2的访问
+     *
+     * @param cacheConfig 缓存配置
+     * @param id          object id
+     * @return 钉住的值, 没有时为null
+     */
+    @SuppressWarnings("unchecked")
+    <T> T access(CacheConfig cacheConfig, String id) {
+        if (topK <= 0) return null;
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        long estimate = sketchOf(cacheConfig.region()).increment(cacheKey);
+        if (estimate == threshold)
+            log.warn("hot key detected| region={}| key={}| count={}", cacheConfig.region(), cacheKey, estimate);
+        if (cacheConfig.hotKeyPinTime() <= 0) return null;
+        String key = key(cacheConfig.region(), cacheKey);
+        CacheEntry<Object> entry = pinned.get(key);
+        if (entry == null) return null;
+        if (entry.getExpireAt() <= System.currentTimeMillis()) {
+            pinned.remove(key, entry);
+            return null;
+        }
+        pinnedHits.increment();
+        return (T) entry.getValue();
+    }
+
+    /**
+     * 批量记录将要读L2的访问
+     *
+     * @param cacheConfig 缓存配置
+     * @param ids         object ids
+     * @return 钉住的值, 没有时为空
+     */
+    <T> Map<String, T> accessAll(CacheConfig cacheConfig, List<String> ids) {
+        if (topK <= 0) return Collections.emptyMap();
+        Map<String, T> values = null;
+        for (String id : ids) {
+            T value = access(cacheConfig, id);
+            if (value == null) continue;
+            if (values == null) values = new LinkedHashMap<>();
+            values.put(id, value);
+        }
+        return values == null ? Collections.emptyMap() : values;
+    }
+
+    /**
+     * 热点KEY从L2读到的值钉住{@link CacheConfig#hotKeyPinTime()}, region未配置或KEY不是热点时忽略
+     *
+     * @param cacheConfig 缓存配置
+     * @param id          object id
+     * @param value       写入L1的值
+     */
+    void pin(CacheConfig cacheConfig, String id, Object value) {
+        if (topK <= 0 || value == null || cacheConfig.hotKeyPinTime() <= 0) return;
+        HotKeySketch sketch = sketches.get(cacheConfig.region());
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        if (sketch == null || sketch.estimate(cacheKey) < threshold) return;
+        pinnedRegions.add(cacheConfig.region());
+        String key = key(cacheConfig.region(), cacheKey);
+        if (pinned.size() >= maxPinned && !pinned.containsKey(key)) {
+            Iterator<String> it = pinned.keySet().iterator();
+            if (it.hasNext()) pinned.remove(it.next());
+        }
+        pinned.put(key, new CacheEntry<>(value, 0, System.currentTimeMillis() + cacheConfig.hotKeyPinTime() * 1000L));
+    }
+
+    /**
+     * 值被清除, 不能再返回
+     *
+     * @param region   缓存区域
+     * @param cacheKey 缓存KEY或KEY的集合
+     */
+    void remove(String region, Object cacheKey) {
+        if (!pinnedRegions.contains(region)) return;
+        if (cacheKey instanceof Collection) {
+            for (Object k : (Collection<?>) cacheKey) pinned.remove(key(region, String.valueOf(k)));
+        } else {
+            pinned.remove(key(region, String.valueOf(cacheKey)));
+        }
+    }
+
+    /**
+     * @param region 缓存区域
+     */
+    void clear(String region) {
+        if (!pinnedRegions.contains(region)) return;
+        String prefix = region + '\u0000';
+        pinned.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private HotKeySketch sketchOf(String region) {
+        HotKeySketch sketch = sketches.get(region);
+        return sketch != null ? sketch : sketches.computeIfAbsent(region, r -> new HotKeySketch(sketchWidth, topK, windowNanos));
+    }
+
+    private static String key(String region, String cacheKey) {
+        return region + '\u0000' + cacheKey;
+    }
+
+    /**
+     * @param region 缓存区域
+     * @return 最近访问L2最多的KEY, 按估算次数从大到小, 最多topK个
+     */
+    public List<HotKey> getHotKeys(String region) {
+        HotKeySketch sketch = sketches.get(region);
+        return sketch == null ? Collections.emptyList() : sketch.top();
+    }
+
+    /**
+     * @return 以钉住的值代替L2读取的次数
+     */
+    public long getPinnedHits() {
+        return pinnedHits.sum();
+    }
+
+    /**
+     * @return 当前钉住的值数
+     */
+    public int pinnedSize() {
+        return pinned.size();
+    }
+}
@@ -0,0 +1,153 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.IdStreamDataPicker;
+import org.wstorm.rcache.cache.ScalableBloomFilter;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 各region的成员过滤器, L1 Miss后在读L2与回源之前排除一定不存在的Id
+ * <p>
+ * region调用{@link #rebuild(CacheConfig, IdStreamDataPicker)}以持久层的全部Id建立过滤器后开启, 未开启的region不做判断.
+ * 本节点的写入与收到的清除广播中的KEY都加入过滤器, 其他节点新增的对象也能被读到.
+ * 重建期间的写入同时加入新旧两个过滤器, 切换后不会漏掉. 过滤器只增不减, 删除的对象要等下次重建才会被排除.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ */
+public final class MembershipFilters {
+
+    /**
+     * 默认的过滤器第一级容量
+     */
+    public static final long DEFAULT_EXPECTED_INSERTIONS = 100000L;
+    /**
+     * 默认的误判率
+     */
+    public static final double DEFAULT_FPP = 0.01;
+
+    private final ConcurrentHashMap<String, ScalableBloomFilter> filters = new ConcurrentHashMap<>();
+    /**
+     * 正在重建的过滤器
+     */
+    private final ConcurrentHashMap<String, ScalableBloomFilter> building = new ConcurrentHashMap<>();
+    private final long expectedInsertions;
+    private final double fpp;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param expectedInsertions 过滤器第一级的容量, 超过后自动扩容
+     * @param fpp                误判率
+     */
+    public MembershipFilters(long expectedInsertions, double fpp) {
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+    }
+
+    /**
+     * 以持久层的全部Id重建region的过滤器, 完成后替换原有的过滤器
+     *
+     * @param cacheConfig 缓存配置
+     * @param picker      能遍历全部Id的数据提取器
+     * @return 加入的Id数
+     */
+    public long rebuild(CacheConfig cacheConfig, IdStreamDataPicker<String, ?> picker) {
+        String region = cacheConfig.region();
+        ScalableBloomFilter filter = new ScalableBloomFilter(expectedInsertions, fpp);
+        building.put(region, filter);
+        long count = 0;
+        try (Stream<String> ids = picker.streamIds()) {
+            for (String id : (Iterable<String>) ids::iterator) {
+                filter.put(CacheUtils.genCacheKey(cacheConfig, id));
+                count++;
+            }
+            filters.put(region, filter);
+        } finally {
+            building.remove(region, filter);
+        }
+        return count;
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param id          object id
+     * @return false 开启过滤的region中一定不存在该Id
+     */
+    boolean mightContain(CacheConfig cacheConfig, String id) {
+        ScalableBloomFilter filter = filters.get(cacheConfig.region());
+        if (filter == null || filter.mightContain(CacheUtils.genCacheKey(cacheConfig, id))) return true;
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param ids         object ids
+     * @return 可能存在的Id, 都可能存在时返回ids本身
+     */
+    List<String> filter(CacheConfig cacheConfig, List<String> ids) {
+        if (!filters.containsKey(cacheConfig.region())) return ids;
+        List<String> members = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (mightContain(cacheConfig, id)) members.add(id);
+        }
+        return members.size() == ids.size() ? ids : members;
+    }
+
+    /**
+     * 加入写入或被其他节点清除的KEY
+     *
+     * @param region   缓存区域
+     * @param cacheKey 缓存KEY或KEY的集合
+     */
+    void add(String region, Object cacheKey) {
+        ScalableBloomFilter current = filters.get(region);
+        ScalableBloomFilter pending = building.get(region);
+        if (current == null && pending == null) return;
+        if (current != null) add(current, cacheKey);
+        if (pending != null) add(pending, cacheKey);
+        // 检查与加入之间重建完成时, 新过滤器可能没有看到本次写入
+        ScalableBloomFilter latest = filters.get(region);
+        if (latest != null && latest != current && latest != pending) add(latest, cacheKey);
+    }
+
+    private static void add(ScalableBloomFilter filter, Object cacheKey) {
+        if (cacheKey instanceof Collection) {
+            for (Object k : (Collection<?>) cacheKey) filter.put(String.valueOf(k));
+        } else {
+            filter.put(String.valueOf(cacheKey));
+        }
+    }
+
+    /**
+     * 关闭region的过滤
+     *
+     * @param region 缓存区域
+     */
+    public void remove(String region) {
+        filters.remove(region);
+    }
+
+    /**
+     * @param region 缓存区域
+     * @return region的过滤器, 未开启时为null
+     */
+    public ScalableBloomFilter get(String region) {
+        return filters.get(region);
+    }
+
+    /**
+     * @return 被过滤器排除, 没有读L2与回源的次数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
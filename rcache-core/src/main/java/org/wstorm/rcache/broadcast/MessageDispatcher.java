@@ -0,0 +1,244 @@
+package org.wstorm.rcache.broadcast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 收到的广播消息的分发器
+ * <p>
+ * Redis订阅线程只把原始消息放入队列后立即返回, 由工作线程解码并清除L1, 避免大批量清除阻塞订阅线程,
+ * 进而被Redis当作慢消费者断开(client-output-buffer-limit). 同一频道的消息总是分给同一个工作线程,
+ * 保证同一region的清除按收到的顺序执行. 队列满时订阅线程等待该工作线程腾出位置后再入队,
+ * 不丢消息也不越过队列中同一频道的消息; 等待期间Redis在服务端缓冲后续消息.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月22日
+ */
+public final class MessageDispatcher {
+
+    /**
+     * 消息处理动作
+     */
+    interface Handler {
+        void handle(byte[] channel, byte[] message);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Handler handler;
+    private final Worker[] workers;
+    private final int queueSize;
+    private volatile boolean running = true;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * @param handler   消息处理动作
+     * @param threads   工作线程数, &lt;=0时在订阅线程中直接处理
+     * @param queueSize 每个工作线程的队列长度
+     */
+    MessageDispatcher(Handler handler, int threads, int queueSize) {
+        this.handler = handler;
+        this.queueSize = Math.max(1, queueSize);
+        this.workers = new Worker[Math.max(0, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("rcache-broadcast-dispatcher-" + i);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * 分发一条消息, 在订阅线程中调用
+     *
+     * @param channel 来源频道
+     * @param message 消息
+     */
+    void dispatch(byte[] channel, byte[] message) {
+        dispatched.increment();
+        if (workers.length == 0 || !running) {
+            process(channel, message, System.nanoTime());
+            return;
+        }
+
+        Worker worker = workers[(Arrays.hashCode(channel) & 0x7fffffff) % workers.length];
+        Envelope envelope = new Envelope(channel, message, System.nanoTime());
+        if (worker.offer(envelope)) return;
+
+        // 在订阅线程中直接处理会越过队列中同一频道的消息, 等待工作线程腾出位置
+        overflows.increment();
+        long start = System.nanoTime();
+        try {
+            while (!worker.offer(envelope)) {
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    // 关闭中, 工作线程处理完已入队的消息后退出
+                    process(channel, message, envelope.enqueuedAt);
+                    return;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        } finally {
+            blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 停止工作线程, 已入队的消息处理完后线程退出
+     *
+     * @param timeout 等待的最长时间, 单位毫秒
+     */
+    void shutdown(long timeout) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+            try {
+                worker.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void process(byte[] channel, byte[] message, long enqueuedAt) {
+        long lag = System.nanoTime() - enqueuedAt;
+        lastLagNanos.set(lag);
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+        try {
+            handler.handle(channel, message);
+        } catch (Exception e) {
+            log.error("dispatch message| channel={}", new String(channel), e);
+        } finally {
+            processed.increment();
+        }
+    }
+
+    /**
+     * @return 工作线程数, 0表示在订阅线程中直接处理
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * @return 所有工作线程队列中等待处理的消息数
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) depth += worker.size.get();
+        return depth;
+    }
+
+    /**
+     * @return 每个工作线程的队列长度
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return 收到的消息数
+     */
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    /**
+     * @return 已处理完的消息数
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * @return 因队列满而阻塞订阅线程的次数
+     */
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    /**
+     * @return 订阅线程因队列满而等待的累计时间, 单位微秒
+     */
+    public long getBlockedMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(blockedNanos.sum());
+    }
+
+    /**
+     * @return 最近一条消息从入队到开始处理的时间, 单位微秒
+     */
+    public long getLastLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastLagNanos.get());
+    }
+
+    /**
+     * @return 最大的入队到开始处理的时间, 单位微秒
+     */
+    public long getMaxLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLagNanos.get());
+    }
+
+    private static final class Envelope {
+        private final byte[] channel;
+        private final byte[] message;
+        private final long enqueuedAt;
+
+        Envelope(byte[] channel, byte[] message, long enqueuedAt) {
+            this.channel = channel;
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final ConcurrentLinkedQueue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final Thread thread;
+        private volatile boolean parked;
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        boolean offer(Envelope envelope) {
+            if (size.incrementAndGet() > queueSize) {
+                size.decrementAndGet();
+                return false;
+            }
+            queue.offer(envelope);
+            if (parked) LockSupport.unpark(thread);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Envelope envelope = queue.poll();
+                if (envelope != null) {
+                    size.decrementAndGet();
+                    process(envelope.channel, envelope.message, envelope.enqueuedAt);
+                    continue;
+                }
+                if (!running) return;
+
+                parked = true;
+                if (queue.isEmpty() && running) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                parked = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.jedis.PubSuber;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.JedisPool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于Redis发布订阅的传输通道, 断线期间的消息会丢失
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月24日
+ */
+public class PubSubTransport implements BroadcastTransport {
+
+    private final PubSuber pubSuber;
+    private final List<BinaryJedisPubSub> subscriptions = new CopyOnWriteArrayList<>();
+
+    public PubSubTransport(JedisPool jedisPool) {
+        this.pubSuber = new PubSuber(jedisPool);
+    }
+
+    @Override
+    public void publish(String channel, byte[] message) throws Exception {
+        pubSuber.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(Listener listener, List<String> channels) {
+        BinaryJedisPubSub pubSub = new BinaryJedisPubSub() {
+            @Override
+            public void onMessage(byte[] channel, byte[] message) {
+                listener.onMessage(channel, message);
+            }
+
+            @Override
+            public void onSubscribe(byte[] channel, int subscribedChannels) {
+                listener.onSubscribe(channel, subscribedChannels);
+            }
+        };
+        subscriptions.add(pubSub);
+        try {
+            pubSuber.subscribeAndBlock(pubSub, channels.toArray(new String[channels.size()]));
+        } finally {
+            subscriptions.remove(pubSub);
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        for (BinaryJedisPubSub pubSub : subscriptions) {
+            if (pubSub.isSubscribed()) pubSub.unsubscribe();
+        }
+    }
+
+    @Override
+    public boolean isReplayable() {
+        return false;
+    }
+}
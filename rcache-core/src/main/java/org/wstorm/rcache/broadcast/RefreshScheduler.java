@@ -0,0 +1,153 @@
+package org.wstorm.rcache.broadcast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wstorm.rcache.annotation.CacheConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 提前刷新的调度器
+ * <p>
+ * 对象在过期前的最后一段时间({@link CacheConfig#refreshAhead()})被读取时, 读取方立即拿到当前值,
+ * 由本调度器在后台线程中重新加载. 同一对象同时只有一个刷新任务; 线程池与队列都有界, 队列满时放弃本次刷新,
+ * 对象到期后由正常的回源加载.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月26日
+ */
+public final class RefreshScheduler {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ThreadPoolExecutor executor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads   刷新线程数
+     * @param queueSize 等待执行的刷新任务数上限
+     */
+    RefreshScheduler(int threads, int queueSize) {
+        AtomicInteger seq = new AtomicInteger();
+        int size = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+            Thread thread = new Thread(r, "rcache-refresh-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param expireAt    对象的过期时间(毫秒时间戳), 0表示未知
+     * @param now         当前时间
+     * @return true 对象已进入提前刷新的时间段
+     */
+    static boolean isNearExpiry(CacheConfig cacheConfig, long expireAt, long now) {
+        float fraction = cacheConfig.refreshAhead();
+        if (fraction <= 0 || expireAt <= 0 || cacheConfig.expiredTime() <= 0) return false;
+        return expireAt - now <= cacheConfig.expiredTime() * 1000L * fraction;
+    }
+
+    /**
+     * 登记刷新任务, 已在刷新中的id被跳过
+     *
+     * @param region 缓存区域
+     * @param ids    要刷新的id
+     * @param reload 重新加载并写入缓存的动作, 只会收到本次登记成功的id
+     */
+    void schedule(String region, List<String> ids, Consumer<List<String>> reload) {
+        List<String> claimed = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (refreshing.add(key(region, id))) claimed.add(id);
+        }
+        if (claimed.isEmpty()) return;
+
+        scheduled.add(claimed.size());
+        try {
+            executor.execute(() -> {
+                boolean done = false;
+                try {
+                    reload.accept(claimed);
+                    done = true;
+                } catch (Exception e) {
+                    log.warn("refresh failed| region={}| ids={}| {}", region, claimed, e.getLocalizedMessage());
+                } finally {
+                    // 先释放再计数, 读到完成数时对象已可再次登记
+                    release(region, claimed);
+                    (done ? completed : failed).add(claimed.size());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduled.add(-claimed.size());
+            rejected.add(claimed.size());
+            release(region, claimed);
+        }
+    }
+
+    private void release(String region, List<String> ids) {
+        for (String id : ids) refreshing.remove(key(region, id));
+    }
+
+    private static String key(String region, String id) {
+        return region + '\u0000' + id;
+    }
+
+    /**
+     * 停止刷新线程, 不等待正在执行的刷新
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 已登记执行的刷新对象数
+     */
+    public long getScheduledCount() {
+        return scheduled.sum();
+    }
+
+    /**
+     * @return 刷新完成的对象数
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return 刷新失败的对象数
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 因队列满而放弃刷新的对象数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return 正在刷新或等待刷新的对象数
+     */
+    public int getRefreshingSize() {
+        return refreshing.size();
+    }
+}
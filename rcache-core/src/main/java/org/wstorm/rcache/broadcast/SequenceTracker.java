@@ -0,0 +1,91 @@
+package org.wstorm.rcache.broadcast;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 广播命令的序号分配与缺口检测
+ * <p>
+ * 发布端为每个频道分配从1开始连续递增的序号; 订阅端按(发布者hostId, 频道)记录最近收到的序号,
+ * 序号跳跃说明中间的清除命令丢失(如订阅断线期间的发布), 此时该频道上各region的L1需要整体失效.
+ * 不分片时频道即region.
+ * 序号为0的命令来自旧版本节点或旧格式, 不参与检测.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月23日
+ */
+public final class SequenceTracker {
+
+    private final ConcurrentHashMap<String, AtomicLong> published = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> received = new ConcurrentHashMap<>();
+    private final LongAdder gaps = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    /**
+     * @param channel 频道
+     * @return 该频道的发布序号计数器, 分配序号与发布应在该对象的锁内完成以保证发出顺序与序号一致
+     */
+    AtomicLong publisherSequence(String channel) {
+        return published.computeIfAbsent(channel, c -> new AtomicLong());
+    }
+
+    /**
+     * 记录收到的命令序号
+     *
+     * @param hostId   发布者
+     * @param channel  频道
+     * @param sequence 序号
+     * @return true 序号与上次收到的不连续, 中间有命令丢失
+     */
+    boolean received(String hostId, String channel, long sequence) {
+        if (sequence <= 0 || hostId == null) return false;
+
+        boolean[] gap = new boolean[1];
+        received.compute(channel + '\u0000' + hostId, (k, last) -> {
+            if (last == null) return sequence;
+            if (sequence > last + 1) gap[0] = true;
+            return Math.max(last, sequence);
+        });
+        if (gap[0]) gaps.increment();
+        return gap[0];
+    }
+
+    /**
+     * 频道上各region的L1已整体失效, 之前记录的序号作废, 之后各发布者的下一条命令作为新的起点
+     *
+     * @param channel 频道
+     */
+    void resynced(String channel) {
+        resyncs.increment();
+        String prefix = channel + '\u0000';
+        received.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    void reconnected() {
+        reconnects.increment();
+    }
+
+    /**
+     * @return 检测到的序号缺口次数
+     */
+    public long getGapCount() {
+        return gaps.sum();
+    }
+
+    /**
+     * @return 因缺口或重连而整体失效频道上L1的次数
+     */
+    public long getResyncCount() {
+        return resyncs.sum();
+    }
+
+    /**
+     * @return 订阅断开后重新订阅的次数
+     */
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+}
@@ -0,0 +1,129 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.cache.StalePolicy;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * L1的过期值, 用于stale-while-revalidate与stale-if-error
+ * <p>
+ * L1提供者在值过期时直接删除, 开启宽限的region写入L1时同时在这里保留一份引用(不复制对象), 记录逻辑过期时间.
+ * L1 Miss后在宽限期内可以直接返回过期值并在后台重新加载, 或在L2与回源都失败时返回过期值.
+ * 被清除广播或本地删除的值随之移除, 只有自然过期的值会被返回. 数量超过上限时随机淘汰.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ * @see StalePolicy
+ */
+public final class StaleValues {
+
+    /**
+     * 默认最多保留的过期值数
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final ConcurrentHashMap<String, CacheEntry<Object>> values = new ConcurrentHashMap<>();
+    private final Set<String> regions = ConcurrentHashMap.newKeySet();
+    private final StalePolicy stalePolicy = new StalePolicy();
+    private final int maxSize;
+
+    /**
+     * @param maxSize 最多保留的过期值数
+     */
+    public StaleValues(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 记录写入L1的值, region未开启宽限时忽略
+     *
+     * @param cacheConfig 缓存配置
+     * @param id          object id
+     * @param value       写入L1的值
+     */
+    void put(CacheConfig cacheConfig, String id, Object value) {
+        if (value == null || !StalePolicy.isEnabled(cacheConfig)) return;
+        regions.add(cacheConfig.region());
+        String key = key(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id));
+        if (values.size() >= maxSize && !values.containsKey(key)) {
+            Iterator<String> it = values.keySet().iterator();
+            if (it.hasNext()) values.remove(it.next());
+        }
+        values.put(key, new CacheEntry<>(value, 0, StalePolicy.expireAt(cacheConfig, System.currentTimeMillis())));
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param id          object id
+     * @return 宽限期内的值及其逻辑过期时间, 没有或已超过宽限期时为null
+     */
+    @SuppressWarnings("unchecked")
+    <T> CacheEntry<T> get(CacheConfig cacheConfig, String id) {
+        if (!StalePolicy.isEnabled(cacheConfig)) return null;
+        String key = key(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id));
+        CacheEntry<Object> entry = values.get(key);
+        if (entry == null) return null;
+        if (StalePolicy.stateOf(cacheConfig, entry.getExpireAt(), System.currentTimeMillis()) == StalePolicy.State.EXPIRED) {
+            values.remove(key, entry);
+            return null;
+        }
+        return (CacheEntry<T>) entry;
+    }
+
+    /**
+     * 值被清除, 不能再作为过期值返回
+     *
+     * @param region   缓存区域
+     * @param cacheKey 缓存KEY或KEY的集合
+     */
+    void remove(String region, Object cacheKey) {
+        if (!regions.contains(region)) return;
+        if (cacheKey instanceof Collection) {
+            for (Object k : (Collection<?>) cacheKey) values.remove(key(region, String.valueOf(k)));
+        } else {
+            values.remove(key(region, String.valueOf(cacheKey)));
+        }
+    }
+
+    /**
+     * @param region 缓存区域
+     */
+    void clear(String region) {
+        if (!regions.contains(region)) return;
+        String prefix = region + '\u0000';
+        values.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * @param region 缓存区域
+     * @return true 该region开启了宽限, 其L1过期时不应删除L2
+     */
+    boolean isTracked(String region) {
+        return regions.contains(region);
+    }
+
+    private static String key(String region, String cacheKey) {
+        return region + '\u0000' + cacheKey;
+    }
+
+    /**
+     * @return 可从中读取L1返回过期值的次数
+     */
+    public StalePolicy getStalePolicy() {
+        return stalePolicy;
+    }
+
+    /**
+     * @return 当前保留的值数
+     */
+    public int size() {
+        return values.size();
+    }
+}
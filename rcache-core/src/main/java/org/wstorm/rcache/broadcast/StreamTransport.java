@@ -0,0 +1,114 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.jedis.StreamSuber;
+import redis.clients.jedis.JedisPool;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于Redis Streams的传输通道(需要Redis 5.0及以上)
+ * <p>
+ * 每个频道对应一个按近似长度裁剪的Stream(XADD MAXLEN ~), 订阅端用阻塞的XREAD从上次读到的ID继续读取, 每次最多读取batchSize条.
+ * 断线重连后从上次的ID补收断线期间的消息; 首次订阅时可选择跳过历史消息或从头回放.
+ * 断线太久、未读的条目已被裁剪时仍会丢消息, 由广播命令的序号缺口检测兜底.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月24日
+ */
+public class StreamTransport implements BroadcastTransport {
+
+    private final StreamSuber streamSuber;
+    private final String keyPrefix;
+    private final long maxLen;
+    private final int batchSize;
+    private final long blockMillis;
+    private final boolean startFromLatest;
+    /**
+     * stream key与已读到的最后ID, 跨重连保留. 多个订阅连接各自读取不同的频道
+     */
+    private final Map<String, String> lastIds = new LinkedHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param jedisPool       连接池, socket超时须大于blockMillis
+     * @param keyPrefix       stream key前缀, 完整key为前缀+频道
+     * @param maxLen          每个stream保留的近似条目数
+     * @param batchSize       每次XREAD最多读取的条目数
+     * @param blockMillis     XREAD没有新条目时的阻塞时间
+     * @param startFromLatest 首次订阅时是否跳过历史消息
+     */
+    public StreamTransport(JedisPool jedisPool, String keyPrefix, long maxLen, int batchSize, long blockMillis, boolean startFromLatest) {
+        this.streamSuber = new StreamSuber(jedisPool);
+        this.keyPrefix = keyPrefix;
+        this.maxLen = maxLen;
+        this.batchSize = batchSize;
+        this.blockMillis = blockMillis;
+        this.startFromLatest = startFromLatest;
+    }
+
+    @Override
+    public void publish(String channel, byte[] message) throws Exception {
+        streamSuber.append(keyPrefix + channel, maxLen, message);
+    }
+
+    @Override
+    public void subscribe(Listener listener, List<String> channels) {
+        Map<String, String> ids = new LinkedHashMap<>();
+        for (String channel : channels) {
+            String key = keyPrefix + channel;
+            String id;
+            synchronized (lastIds) {
+                id = lastIds.get(key);
+            }
+            if (id == null) {
+                id = startFromLatest ? streamSuber.lastId(key) : "0-0";
+                synchronized (lastIds) {
+                    lastIds.put(key, id);
+                }
+            }
+            ids.put(key, id);
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            listener.onSubscribe(channels.get(i).getBytes(StandardCharsets.UTF_8), i + 1);
+        }
+
+        while (running) {
+            for (StreamSuber.StreamEntry entry : streamSuber.read(batchSize, blockMillis, ids)) {
+                ids.put(entry.getKey(), entry.getId());
+                synchronized (lastIds) {
+                    lastIds.put(entry.getKey(), entry.getId());
+                }
+                if (entry.getMessage() == null) continue;
+                byte[] channel = entry.getKey().substring(keyPrefix.length()).getBytes(StandardCharsets.UTF_8);
+                listener.onMessage(channel, entry.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 结束订阅, 之后不能再订阅
+     */
+    @Override
+    public void unsubscribe() {
+        running = false;
+    }
+
+    @Override
+    public boolean isReplayable() {
+        return true;
+    }
+
+    /**
+     * @param channel 频道
+     * @return 该频道已读到的最后ID, 未订阅时为null
+     */
+    public String getLastId(String channel) {
+        synchronized (lastIds) {
+            return lastIds.get(keyPrefix + channel);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.wstorm.rcache.broadcast;
+
+import org.wstorm.rcache.cache.VersionClock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已失效KEY的版本号墓碑, 防止L1被旧值重新填充
+ * <p>
+ * 发布端先广播清除命令再写L2, 订阅端处理完清除后若在L2写入前读到旧值并回填L1, L1就会一直持有旧值.
+ * 清除命令携带新值的版本号, 订阅端按KEY记录在墓碑中; 从L2读到的值版本号低于墓碑时不回填L1.
+ * <p>
+ * 墓碑是固定大小的槽位数组, 按KEY哈希取槽位, 槽位中保存落在该槽位的最大版本号. 哈希冲突只会让无关的KEY
+ * 在窗口内少回填一次L1, 不会放过旧值. 竞争只发生在失效后的短时间内, 所以只有窗口内的墓碑生效.
+ * 没有版本号的值(旧格式或不保存版本的L2)无法比较, 按原来的方式回填.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+public final class VersionTombstones {
+
+    /**
+     * 默认槽位数
+     */
+    public static final int DEFAULT_SLOTS = 1 << 16;
+    /**
+     * 默认墓碑生效窗口, 单位毫秒
+     */
+    public static final long DEFAULT_WINDOW = 5000L;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long window;
+    /**
+     * 各region整体失效(重同步)时的版本号, 对该region的所有KEY生效
+     */
+    private final ConcurrentHashMap<String, Long> floors = new ConcurrentHashMap<>();
+    private final LongAdder tombstones = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param slots  槽位数, 向上取整为2的幂
+     * @param window 墓碑生效窗口, 单位毫秒
+     */
+    public VersionTombstones(int slots, long window) {
+        int size = Integer.highestOneBit(Math.max(1, slots - 1) << 1);
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.window = window * 1000;
+    }
+
+    /**
+     * 记录KEY已失效
+     *
+     * @param region  缓存区域
+     * @param key     缓存KEY
+     * @param version 失效后新值的版本号, &lt;=0时(旧格式命令)取当前时间
+     */
+    public void invalidate(String region, String key, long version) {
+        long v = version > 0 ? version : VersionClock.now();
+        int index = index(region, key);
+        long current;
+        do {
+            current = slots.get(index);
+            if (current >= v) break;
+        } while (!slots.compareAndSet(index, current, v));
+        tombstones.increment();
+    }
+
+    /**
+     * 记录region的所有KEY已失效, 用于L1整体失效的重同步
+     *
+     * @param region 缓存区域
+     */
+    public void invalidateAll(String region) {
+        floors.put(region, VersionClock.now());
+    }
+
+    /**
+     * @param region  缓存区域
+     * @param key     缓存KEY
+     * @param version 从L2读到的值的版本号, 0表示未知
+     * @return true 该值早于窗口内最近一次失效, 不应回填L1
+     */
+    public boolean isStale(String region, String key, long version) {
+        if (version <= 0) return false;
+        long now = VersionClock.now();
+        if (isStale(slots.get(index(region, key)), version, now) || isStale(floorOf(region), version, now)) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isStale(long tombstone, long version, long now) {
+        return version < tombstone && now - tombstone < window;
+    }
+
+    private long floorOf(String region) {
+        if (region == null || floors.isEmpty()) return 0;
+        Long floor = floors.get(region);
+        return floor == null ? 0 : floor;
+    }
+
+    private int index(String region, String key) {
+        int h = (region == null ? 0 : region.hashCode()) * 31 + (key == null ? 0 : key.hashCode());
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return 记录过的墓碑数
+     */
+    public long getTombstoneCount() {
+        return tombstones.sum();
+    }
+
+    /**
+     * @return 因墓碑而没有回填L1的次数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return 墓碑生效窗口, 单位毫秒
+     */
+    public long getWindow() {
+        return window / 1000;
+    }
+}
@@ -0,0 +1,26 @@
+package org.wstorm.rcache.cache;
+
+import org.wstorm.rcache.RObject;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 支持批量提取的数据提取接口, getAll中Miss的ids会一次性交给{@link #pickupAll(Collection)}回源,
+ * 未实现该接口的DataPicker仍逐个调用{@link #pickup(Object)}
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月04日
+ */
+public interface BulkDataPicker<ID, T extends RObject<ID>> extends DataPicker<ID, T> {
+
+    /**
+     * 到持久数据层批量提取数据
+     *
+     * @param ids 提取的Id集合
+     * @return Id与数据对象的Map, 不存在的Id可以不出现在Map中
+     */
+    Map<ID, T> pickupAll(Collection<ID> ids);
+
+}
@@ -12,8 +12,11 @@ import org.wstorm.rcache.RObject;
 import org.wstorm.rcache.annotation.CacheConfig;
 import org.wstorm.rcache.exception.CacheException;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface Cache {
 
@@ -79,4 +82,164 @@ public interface Cache {
      */
     void evict(CacheConfig cacheConfig, List<String> ids) throws CacheException;
 
+    /**
+     * 清空缓存区域, 默认按{@link #keys()}逐个移除, 能整体清空的实现应覆盖此方法
+     *
+     * @throws CacheException 如果缓存无法提供服务异常
+     */
+    @SuppressWarnings("unchecked")
+    default void clear() throws CacheException {
+        List keys = keys();
+        if (keys != null && !keys.isEmpty()) evict(null, (List<String>) keys);
+    }
+
+    /**
+     * 提取单个缓存对象及其版本号与过期时间, 默认都为0(未知), 保存版本号或能提供过期时间的实现应覆盖此方法
+     *
+     * @param cacheConfig 缓存的配置
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param dataPicker  数据初始化器
+     * @return the cached entry or null
+     * @see VersionClock
+     */
+    default <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        T value = get(cacheConfig, id, dataPicker);
+        return value == null ? null : new CacheEntry<>(value, 0);
+    }
+
+    /**
+     * 取多个缓存对象及其版本号
+     *
+     * @see #getEntry(CacheConfig, String, DataPicker)
+     */
+    default <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) throws CacheException {
+        return toEntries(getAll(cacheConfig, ids, dataPicker));
+    }
+
+    /**
+     * 以指定版本号增加缓存对象, 默认忽略版本号
+     *
+     * @param cacheConfig 缓存对象的缓存策略配置注解对象
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param value       cache value
+     * @param version     版本号, 由{@link VersionClock#next()}分配
+     */
+    default <T extends RObject<String>> void putEntry(CacheConfig cacheConfig, String id, T value, long version) throws CacheException {
+        put(cacheConfig, id, value);
+    }
+
+    /**
+     * 以同一版本号缓存多个对象
+     *
+     * @see #putEntry(CacheConfig, String, RObject, long)
+     */
+    default <T extends RObject<String>> void putAllEntries(CacheConfig cacheConfig, Map<String, T> objectMap, long version) throws CacheException {
+        putAll(cacheConfig, objectMap);
+    }
+
+    /**
+     * 异步提取单个缓存对象及其版本号, 默认基于{@link #getAsync(CacheConfig, String, DataPicker, Executor)}, 版本号为0
+     *
+     * @see #getEntry(CacheConfig, String, DataPicker)
+     */
+    default <T extends RObject<String>> CompletableFuture<CacheEntry<T>> getEntryAsync(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, Executor executor) {
+        return getAsync(cacheConfig, id, dataPicker, executor).thenApply(value -> value == null ? null : new CacheEntry<>(value, 0));
+    }
+
+    /**
+     * 异步取多个缓存对象及其版本号
+     *
+     * @see #getEntryAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default <T extends RObject<String>> CompletableFuture<Map<String, CacheEntry<T>>> getAllEntriesAsync(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker, Executor executor) {
+        return getAllAsync(cacheConfig, ids, dataPicker, executor).thenApply(Cache::toEntries);
+    }
+
+    /**
+     * 异步以指定版本号增加缓存对象, 默认忽略版本号
+     *
+     * @see #putEntry(CacheConfig, String, RObject, long)
+     */
+    default <T extends RObject<String>> CompletableFuture<Void> putEntryAsync(CacheConfig cacheConfig, String id, T value, long version, Executor executor) {
+        return putAsync(cacheConfig, id, value, executor);
+    }
+
+    /**
+     * 异步以同一版本号缓存多个对象, 默认忽略版本号
+     *
+     * @see #putAllEntries(CacheConfig, Map, long)
+     */
+    default <T extends RObject<String>> CompletableFuture<Void> putAllEntriesAsync(CacheConfig cacheConfig, Map<String, T> objectMap, long version, Executor executor) {
+        return putAllAsync(cacheConfig, objectMap, executor);
+    }
+
+    /**
+     * 把没有版本号的结果包装成版本号为0的Entry
+     */
+    static <T> Map<String, CacheEntry<T>> toEntries(Map<String, T> values) {
+        if (values == null) return null;
+        Map<String, CacheEntry<T>> entries = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((id, value) -> entries.put(id, new CacheEntry<>(value, 0)));
+        return entries;
+    }
+
+    /**
+     * 异步提取单个缓存对象, 默认在executor中执行{@link #get(CacheConfig, String, DataPicker)},
+     * 有原生异步客户端的实现应覆盖此方法以不占用线程等待IO
+     *
+     * @param cacheConfig 缓存的配置
+     * @param id          object id, is not the finally key in cached Object identifier
+     * @param dataPicker  数据初始化器
+     * @param executor    执行阻塞IO的线程池
+     * @return the cached object or null future
+     */
+    default <T extends RObject<String>> CompletableFuture<T> getAsync(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> get(cacheConfig, id, dataPicker), executor);
+    }
+
+    /**
+     * 异步取多个缓存对象
+     *
+     * @see #getAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default <T extends RObject<String>> CompletableFuture<Map<String, T>> getAllAsync(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getAll(cacheConfig, ids, dataPicker), executor);
+    }
+
+    /**
+     * 异步增加缓存对象
+     *
+     * @see #getAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default <T extends RObject<String>> CompletableFuture<Void> putAsync(CacheConfig cacheConfig, String id, T value, Executor executor) {
+        return CompletableFuture.runAsync(() -> put(cacheConfig, id, value), executor);
+    }
+
+    /**
+     * 异步缓存多个对象
+     *
+     * @see #getAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default <T extends RObject<String>> CompletableFuture<Void> putAllAsync(CacheConfig cacheConfig, Map<String, T> objectMap, Executor executor) {
+        return CompletableFuture.runAsync(() -> putAll(cacheConfig, objectMap), executor);
+    }
+
+    /**
+     * 异步移除指定对象
+     *
+     * @see #getAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, String id, Executor executor) {
+        return CompletableFuture.runAsync(() -> evict(cacheConfig, id), executor);
+    }
+
+    /**
+     * 异步批量移除对象
+     *
+     * @see #getAsync(CacheConfig, String, DataPicker, Executor)
+     */
+    default CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, List<String> ids, Executor executor) {
+        return CompletableFuture.runAsync(() -> evict(cacheConfig, ids), executor);
+    }
+
 }
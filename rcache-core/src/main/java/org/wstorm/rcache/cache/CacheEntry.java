@@ -0,0 +1,46 @@
+package org.wstorm.rcache.cache;
+
+/**
+ * 带版本号与过期时间的缓存值, 由{@link Cache#getEntry(org.wstorm.rcache.annotation.CacheConfig, String, DataPicker)}返回
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+public final class CacheEntry<T> {
+
+    private final T value;
+    private final long version;
+    private final long expireAt;
+
+    /**
+     * @param value   缓存值
+     * @param version 写入时的版本号, 0表示未知(缓存实现不保存版本或是旧格式的值)
+     */
+    public CacheEntry(T value, long version) {
+        this(value, version, 0);
+    }
+
+    /**
+     * @param value    缓存值
+     * @param version  写入时的版本号, 0表示未知
+     * @param expireAt 过期时间(毫秒时间戳), 0表示未知或不过期
+     */
+    public CacheEntry(T value, long version, long expireAt) {
+        this.value = value;
+        this.version = version;
+        this.expireAt = expireAt;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+}
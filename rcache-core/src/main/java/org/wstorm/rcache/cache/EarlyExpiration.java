@@ -0,0 +1,78 @@
+package org.wstorm.rcache.cache;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 概率提前过期(XFetch), 每个region一个实例
+ * <p>
+ * 回源时记录加载耗时delta, 与过期时间一起保存在缓存值中. 每次读取命中时以
+ * {@code now - delta * beta * ln(rand()) >= expireAt} 判断是否提前重新加载, 越接近过期概率越高,
+ * 加载越慢的数据越早开始. 各节点独立抽样, 不需要协调就能把同一KEY的重新加载分散开,
+ * 避免所有节点在KEY过期的同一时刻回源.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月27日
+ * @see CacheConfig#earlyExpiration()
+ */
+public final class EarlyExpiration {
+
+    private final LongAdder recomputes = new LongAdder();
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @return true 该region开启了概率提前过期
+     */
+    public static boolean isEnabled(CacheConfig cacheConfig) {
+        return cacheConfig != null && cacheConfig.earlyExpiration() > 0 && cacheConfig.expiredTime() > 0;
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param now         当前时间
+     * @return 新写入值的过期时间戳, 未开启时为0
+     */
+    public static long expireAt(CacheConfig cacheConfig, long now) {
+        return isEnabled(cacheConfig) ? now + cacheConfig.expiredTime() * 1000L : 0;
+    }
+
+    /**
+     * 判断命中的值是否应提前重新加载, 命中时计数
+     *
+     * @param cacheConfig 缓存配置
+     * @param delta       值的加载耗时, 单位毫秒, 0表示未知
+     * @param expireAt    值的过期时间戳, 0表示未知
+     * @return true 应当重新加载
+     */
+    public boolean shouldRecompute(CacheConfig cacheConfig, long delta, long expireAt) {
+        if (!isEnabled(cacheConfig)) return false;
+        double random = 1 - ThreadLocalRandom.current().nextDouble(); //(0, 1]
+        if (!shouldRecompute(delta, expireAt, cacheConfig.earlyExpiration(), System.currentTimeMillis(), random))
+            return false;
+        recomputes.increment();
+        return true;
+    }
+
+    /**
+     * @param delta    加载耗时, 单位毫秒
+     * @param expireAt 过期时间戳
+     * @param beta     大于1时更早重新加载, 小于1时更晚
+     * @param now      当前时间
+     * @param random   (0, 1]之间的均匀随机数
+     * @return true 应当重新加载
+     */
+    static boolean shouldRecompute(long delta, long expireAt, float beta, long now, double random) {
+        if (delta <= 0 || expireAt <= 0) return false;
+        return now - delta * beta * Math.log(random) >= expireAt;
+    }
+
+    /**
+     * @return 提前重新加载的次数
+     */
+    public long getRecomputeCount() {
+        return recomputes.sum();
+    }
+}
@@ -0,0 +1,24 @@
+package org.wstorm.rcache.cache;
+
+import org.wstorm.rcache.RObject;
+
+import java.util.stream.Stream;
+
+/**
+ * 能遍历持久层全部Id的数据提取接口, 用于重建region的成员过滤器
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ * @see ScalableBloomFilter
+ */
+public interface IdStreamDataPicker<ID, T extends RObject<ID>> extends DataPicker<ID, T> {
+
+    /**
+     * 遍历持久数据层中存在的全部Id, 调用方负责关闭返回的Stream
+     *
+     * @return Id流
+     */
+    Stream<ID> streamIds();
+
+}
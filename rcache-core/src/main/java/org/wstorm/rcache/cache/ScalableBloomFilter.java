@@ -0,0 +1,167 @@
+package org.wstorm.rcache.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可扩容的布隆过滤器, 用于在回源前判断对象是否可能存在
+ * <p>
+ * 由多级布隆过滤器组成, 当前一级的元素数达到容量后新增一级, 容量翻倍、误判率减半, 总误判率不超过初始误判率的2倍.
+ * 只会误判存在, 不会漏判: {@link #mightContain(String)}返回false的元素一定没有{@link #put(String)}过.
+ * 位数组使用{@link AtomicLongArray}, 并发写入不会丢失已置位的bit.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ */
+public final class ScalableBloomFilter {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final double LN2 = Math.log(2);
+
+    private final double fpp;
+    private final CopyOnWriteArrayList<Stage> stages = new CopyOnWriteArrayList<>();
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * @param expectedInsertions 第一级的容量
+     * @param fpp                第一级的误判率, (0, 1)
+     */
+    public ScalableBloomFilter(long expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        this.fpp = fpp;
+        stages.add(new Stage(Math.max(1, expectedInsertions), fpp));
+    }
+
+    /**
+     * 加入元素
+     *
+     * @param key 元素
+     */
+    public void put(String key) {
+        ByteBuffer hash = hash(key);
+        long h1 = hash.getLong(0), h2 = hash.getLong(8);
+        if (mightContain(h1, h2)) return;
+        Stage stage = stages.get(stages.size() - 1);
+        if (stage.isFull()) stage = grow(stage);
+        if (stage.put(h1, h2)) count.increment();
+    }
+
+    /**
+     * @param key 元素
+     * @return false 元素一定不存在
+     */
+    public boolean mightContain(String key) {
+        ByteBuffer hash = hash(key);
+        return mightContain(hash.getLong(0), hash.getLong(8));
+    }
+
+    private boolean mightContain(long h1, long h2) {
+        for (Stage stage : stages) {
+            if (stage.mightContain(h1, h2)) return true;
+        }
+        return false;
+    }
+
+    private synchronized Stage grow(Stage full) {
+        Stage last = stages.get(stages.size() - 1);
+        if (last != full) return last;
+        Stage next = new Stage(full.capacity << 1, fpp / (1 << Math.min(stages.size(), 30)));
+        stages.add(next);
+        return next;
+    }
+
+    private static ByteBuffer hash(String key) {
+        return ByteBuffer.wrap(HASH.hashString(key == null ? "" : key, StandardCharsets.UTF_8).asBytes());
+    }
+
+    /**
+     * @return 加入的元素数的估计值, 重复加入的元素不计
+     */
+    public long getApproximateCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return 级数
+     */
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    /**
+     * @return 所有级占用的bit数
+     */
+    public long getBitSize() {
+        long bits = 0;
+        for (Stage stage : stages) bits += stage.bitSize;
+        return bits;
+    }
+
+    /**
+     * 一级固定容量的布隆过滤器, 以128位哈希的高低两半做双重哈希取k个bit
+     */
+    private static final class Stage {
+
+        private final long capacity;
+        private final AtomicLongArray bits;
+        private final long bitSize;
+        private final int hashes;
+        private final LongAdder inserted = new LongAdder();
+
+        Stage(long capacity, double fpp) {
+            this.capacity = capacity;
+            long size = (long) Math.ceil(-capacity * Math.log(fpp) / (LN2 * LN2));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (size + 63) >>> 6));
+            bits = new AtomicLongArray(words);
+            bitSize = (long) words << 6;
+            hashes = Math.max(1, (int) Math.round((double) bitSize / capacity * LN2));
+        }
+
+        boolean isFull() {
+            return inserted.sum() >= capacity;
+        }
+
+        /**
+         * @return true 至少置位了一个bit, 即元素之前不在本级中
+         */
+        boolean put(long h1, long h2) {
+            boolean changed = false;
+            long combined = h1;
+            for (int i = 0; i < hashes; i++) {
+                long index = (combined & Long.MAX_VALUE) % bitSize;
+                changed |= set(index);
+                combined += h2;
+            }
+            if (changed) inserted.increment();
+            return changed;
+        }
+
+        boolean mightContain(long h1, long h2) {
+            long combined = h1;
+            for (int i = 0; i < hashes; i++) {
+                long index = (combined & Long.MAX_VALUE) % bitSize;
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) return false;
+                combined += h2;
+            }
+            return true;
+        }
+
+        private boolean set(long index) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) return false;
+            } while (!bits.compareAndSet(word, current, current | mask));
+            return true;
+        }
+    }
+}
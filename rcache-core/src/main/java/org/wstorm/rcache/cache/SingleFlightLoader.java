@@ -0,0 +1,289 @@
+package org.wstorm.rcache.cache;
+
+import com.google.common.collect.Maps;
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * 缓存Miss后的回源合并加载器(single-flight), 每个region一个实例.
+ * <p>
+ * 同一缓存KEY的并发Miss只有第一个线程真正调用{@link DataPicker}回源, 其余线程等待并共享该次加载的结果,
+ * 以避免热点KEY过期瞬间大量相同的数据库查询.
+ * <p>
+ * 每次加载在回源前取一个版本号({@link VersionClock#next()}), 等待的线程得到同一版本号.
+ * 回源读到的值可能早于回源期间的写入, 以该版本号回填L1时, 回源期间收到的清除广播会据此拒绝.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月02日
+ */
+public class SingleFlightLoader {
+
+    /**
+     * 默认等待其他线程加载结果的超时时间, 单位毫秒
+     */
+    public static final long DEFAULT_WAIT_TIMEOUT = 3000L;
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executedLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private volatile long waitTimeout = DEFAULT_WAIT_TIMEOUT;
+
+    /**
+     * 加载缓存KEY对应的数据, 若该KEY已有线程在加载则等待其结果
+     *
+     * @param cacheKey 缓存KEY
+     * @param loader   真正的回源加载动作
+     * @param <T>      缓存对象类型
+     * @return 加载到的对象
+     * @throws CacheException 等待超时、被中断或加载本身抛出异常
+     */
+    public <T> T load(String cacheKey, Supplier<T> loader) throws CacheException {
+        CacheEntry<T> entry = loadEntry(cacheKey, version -> loader.get());
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * 同{@link #load(String, Supplier)}, 同时返回该次加载回源前取的版本号
+     *
+     * @param cacheKey 缓存KEY
+     * @param loader   真正的回源加载动作, 参数为回源前取的版本号
+     * @param <T>      缓存对象类型
+     * @return 加载到的对象与版本号, 没加载到时为null
+     * @throws CacheException 等待超时、被中断或加载本身抛出异常
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CacheEntry<T> loadEntry(String cacheKey, LongFunction<T> loader) throws CacheException {
+        Flight flight = new Flight();
+        Flight running = inFlight.putIfAbsent(cacheKey, flight);
+        if (running != null) {
+            coalescedLoads.increment();
+            T t = (T) await(cacheKey, running);
+            return t == null ? null : new CacheEntry<>(t, running.version);
+        }
+
+        executedLoads.increment();
+        flight.version = VersionClock.next();
+        try {
+            T t = loader.apply(flight.version);
+            flight.complete(t);
+            return t == null ? null : new CacheEntry<>(t, flight.version);
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, flight);
+        }
+    }
+
+    /**
+     * 批量加载多个id, 已有线程在加载的KEY等待其结果, 其余KEY由当前线程通过一次bulkLoader调用加载
+     *
+     * @param ids        未修饰过的id列表
+     * @param keyOf      id到缓存KEY的转换
+     * @param bulkLoader 批量回源动作, 只会收到当前线程负责加载的id
+     * @param <T>        缓存对象类型
+     * @return id与加载到的对象Map, 没加载到的id不在Map中
+     * @throws CacheException 等待超时、被中断或加载本身抛出异常
+     */
+    public <T> Map<String, T> loadAll(List<String> ids, Function<String, String> keyOf,
+                                      Function<List<String>, Map<String, T>> bulkLoader) throws CacheException {
+        return valuesOf(loadAllEntries(ids, keyOf, bulkLoader));
+    }
+
+    /**
+     * 同{@link #loadAll(List, Function, Function)}, 同时返回各对象所属加载回源前取的版本号
+     *
+     * @param ids        未修饰过的id列表
+     * @param keyOf      id到缓存KEY的转换
+     * @param bulkLoader 批量回源动作, 只会收到当前线程负责加载的id
+     * @param <T>        缓存对象类型
+     * @return id与加载到的对象及版本号Map, 没加载到的id不在Map中
+     * @throws CacheException 等待超时、被中断或加载本身抛出异常
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, CacheEntry<T>> loadAllEntries(List<String> ids, Function<String, String> keyOf,
+                                                         Function<List<String>, Map<String, T>> bulkLoader) throws CacheException {
+        Map<String, Flight> owned = new LinkedHashMap<>();
+        Map<String, Flight> waiting = new LinkedHashMap<>();
+        Map<String, String> cacheKeys = Maps.newHashMapWithExpectedSize(ids.size());
+
+        for (String id : ids) {
+            if (owned.containsKey(id) || waiting.containsKey(id)) continue;
+            String cacheKey = keyOf.apply(id);
+            Flight flight = new Flight();
+            Flight running = inFlight.putIfAbsent(cacheKey, flight);
+            cacheKeys.put(id, cacheKey);
+            if (running != null) {
+                coalescedLoads.increment();
+                waiting.put(id, running);
+            } else {
+                executedLoads.increment();
+                owned.put(id, flight);
+            }
+        }
+
+        Map<String, CacheEntry<T>> result = Maps.newHashMapWithExpectedSize(cacheKeys.size());
+        if (!owned.isEmpty()) {
+            long version = VersionClock.next();
+            owned.values().forEach(flight -> flight.version = version);
+            try {
+                Map<String, T> loaded = bulkLoader.apply(new ArrayList<>(owned.keySet()));
+                owned.forEach((id, flight) -> {
+                    T t = loaded == null ? null : loaded.get(id);
+                    flight.complete(t);
+                    if (t != null) result.put(id, new CacheEntry<>(t, version));
+                });
+            } catch (RuntimeException | Error e) {
+                owned.values().forEach(flight -> flight.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach((id, flight) -> inFlight.remove(cacheKeys.get(id), flight));
+            }
+        }
+
+        waiting.forEach((id, running) -> {
+            T t = (T) await(cacheKeys.get(id), running);
+            if (t != null) result.put(id, new CacheEntry<>(t, running.version));
+        });
+        return result;
+    }
+
+    /**
+     * 为getAll中Miss的ids回源, DataPicker实现了{@link BulkDataPicker}时一次批量提取, 否则逐个合并加载.
+     * 持久层不存在的id以{@link DataPicker#makeEmptyData()}填充
+     *
+     * @param cacheConfig 缓存配置
+     * @param ids         Miss的id列表
+     * @param dataPicker  数据提取器
+     * @param <T>         缓存对象类型
+     * @return id与对象Map
+     */
+    public <T extends RObject<String>> Map<String, T> pickupAll(CacheConfig cacheConfig, List<String> ids,
+                                                                DataPicker<String, T> dataPicker) throws CacheException {
+        return valuesOf(pickupAllEntries(cacheConfig, ids, dataPicker));
+    }
+
+    /**
+     * 同{@link #pickupAll(CacheConfig, List, DataPicker)}, 同时返回各对象所属加载回源前取的版本号
+     *
+     * @param cacheConfig 缓存配置
+     * @param ids         Miss的id列表
+     * @param dataPicker  数据提取器
+     * @param <T>         缓存对象类型
+     * @return id与对象及版本号Map
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends RObject<String>> Map<String, CacheEntry<T>> pickupAllEntries(CacheConfig cacheConfig, List<String> ids,
+                                                                                   DataPicker<String, T> dataPicker) throws CacheException {
+        if (dataPicker instanceof BulkDataPicker) {
+            BulkDataPicker<String, T> bulkDataPicker = (BulkDataPicker<String, T>) dataPicker;
+            return loadAllEntries(ids, id -> CacheUtils.genCacheKey(cacheConfig, id), owned -> {
+                Map<String, T> picked = bulkDataPicker.pickupAll(owned);
+                Map<String, T> loaded = Maps.newHashMapWithExpectedSize(owned.size());
+                for (String id : owned) {
+                    T t = picked == null ? null : picked.get(id);
+                    if (t == null) t = dataPicker.makeEmptyData();
+                    if (t != null) loaded.put(id, t);
+                }
+                return loaded;
+            });
+        }
+
+        Map<String, CacheEntry<T>> loaded = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String id : ids) {
+            CacheEntry<T> entry = loadEntry(CacheUtils.genCacheKey(cacheConfig, id), version -> pickup(id, dataPicker));
+            if (entry != null) loaded.put(id, entry);
+        }
+        return loaded;
+    }
+
+    private static <T> Map<String, T> valuesOf(Map<String, CacheEntry<T>> entries) {
+        Map<String, T> values = Maps.newHashMapWithExpectedSize(entries.size());
+        entries.forEach((id, entry) -> values.put(id, entry.getValue()));
+        return values;
+    }
+
+    /**
+     * 单个id回源, 持久层不存在时返回{@link DataPicker#makeEmptyData()}
+     *
+     * @param id         未修饰过的id
+     * @param dataPicker 数据提取器
+     * @param <T>        缓存对象类型
+     * @return 提取到的对象或空对象
+     */
+    public static <T extends RObject<String>> T pickup(String id, DataPicker<String, T> dataPicker) {
+        T t;
+        if ((t = dataPicker.pickup(id)) == null)
+            t = dataPicker.makeEmptyData();
+        return t;
+    }
+
+    private Object await(String cacheKey, Flight running) {
+        try {
+            return running.get(waitTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new CacheException("wait load timeout| key=" + cacheKey, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("wait load interrupted| key=" + cacheKey, e);
+        } catch (ExecutionException e) {
+            throw new CacheException("load failed| key=" + cacheKey, e.getCause());
+        }
+    }
+
+    /**
+     * @return 真正执行了回源的次数
+     */
+    public long getExecutedLoads() {
+        return executedLoads.sum();
+    }
+
+    /**
+     * @return 被合并到其他线程加载结果上的次数
+     */
+    public long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    /**
+     * @return 当前正在加载中的KEY数量
+     */
+    public int getInFlightSize() {
+        return inFlight.size();
+    }
+
+    public long getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    /**
+     * @param waitTimeout 等待其他线程加载结果的超时时间, 单位毫秒
+     */
+    public void setWaitTimeout(long waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * 一次加载, 版本号由执行回源的线程在回源前写入, 等待的线程在加载完成后读取
+     */
+    private static final class Flight extends CompletableFuture<Object> {
+        private volatile long version;
+    }
+}
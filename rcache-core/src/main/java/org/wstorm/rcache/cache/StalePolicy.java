@@ -0,0 +1,116 @@
+package org.wstorm.rcache.cache;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过期值的宽限策略(stale-while-revalidate / stale-if-error), 每个缓存实例一个, 记录返回过期值的次数
+ * <p>
+ * 开启后值的逻辑过期时间仍为{@link CacheConfig#expiredTime()}, 实际保留时间延长宽限期. 逻辑过期后:
+ * <ul>
+ * <li>在{@link CacheConfig#staleWhileRevalidate()}内读取, 立即返回过期值, 同时在后台重新加载一次</li>
+ * <li>在{@link CacheConfig#staleIfError()}内读取, 同步重新加载, DataPicker抛出异常时返回过期值</li>
+ * <li>超过宽限期, 与没有缓存值相同</li>
+ * </ul>
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ */
+public final class StalePolicy {
+
+    /**
+     * 值相对逻辑过期时间的状态
+     */
+    public enum State {
+        /**
+         * 未过期或过期时间未知
+         */
+        FRESH,
+        /**
+         * 已过期, 在stale-while-revalidate宽限期内
+         */
+        REVALIDATE,
+        /**
+         * 已过期, 在stale-if-error宽限期内
+         */
+        IF_ERROR,
+        /**
+         * 已超过宽限期
+         */
+        EXPIRED
+    }
+
+    private final LongAdder whileRevalidate = new LongAdder();
+    private final LongAdder ifError = new LongAdder();
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @return true 该region保留过期值
+     */
+    public static boolean isEnabled(CacheConfig cacheConfig) {
+        return cacheConfig != null && cacheConfig.expiredTime() > 0
+                && (cacheConfig.staleWhileRevalidate() > 0 || cacheConfig.staleIfError() > 0);
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @return 值的实际保留时间, 单位秒, 为过期时间加上较长的宽限期
+     */
+    public static int retention(CacheConfig cacheConfig) {
+        if (!isEnabled(cacheConfig)) return cacheConfig.expiredTime();
+        return cacheConfig.expiredTime() + Math.max(cacheConfig.staleWhileRevalidate(), cacheConfig.staleIfError());
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param now         当前时间
+     * @return 新写入值的逻辑过期时间戳, 未开启时为0
+     */
+    public static long expireAt(CacheConfig cacheConfig, long now) {
+        return isEnabled(cacheConfig) ? now + cacheConfig.expiredTime() * 1000L : 0;
+    }
+
+    /**
+     * @param cacheConfig 缓存配置
+     * @param expireAt    值的逻辑过期时间戳, 0表示未知
+     * @param now         当前时间
+     * @return 值的状态, 未开启时总是{@link State#FRESH}
+     */
+    public static State stateOf(CacheConfig cacheConfig, long expireAt, long now) {
+        if (!isEnabled(cacheConfig) || expireAt <= 0 || now < expireAt) return State.FRESH;
+        long stale = now - expireAt;
+        if (stale < cacheConfig.staleWhileRevalidate() * 1000L) return State.REVALIDATE;
+        if (stale < cacheConfig.staleIfError() * 1000L) return State.IF_ERROR;
+        return State.EXPIRED;
+    }
+
+    /**
+     * 记录一次在后台重新加载期间返回的过期值
+     */
+    public void servedWhileRevalidate() {
+        whileRevalidate.increment();
+    }
+
+    /**
+     * 记录一次因回源失败返回的过期值
+     */
+    public void servedIfError() {
+        ifError.increment();
+    }
+
+    /**
+     * @return 在后台重新加载期间返回过期值的次数
+     */
+    public long getServedWhileRevalidateCount() {
+        return whileRevalidate.sum();
+    }
+
+    /**
+     * @return 因回源失败返回过期值的次数
+     */
+    public long getServedIfErrorCount() {
+        return ifError.sum();
+    }
+}
@@ -0,0 +1,41 @@
+package org.wstorm.rcache.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存值的版本号时钟
+ * <p>
+ * 版本号为微秒级的墙上时间, 同一进程内严格递增. 各节点的版本号可以互相比较, 前提是节点间时钟已同步(NTP),
+ * 时钟偏差只会在失效后的短窗口内造成L1的误判, 见{@link org.wstorm.rcache.broadcast.VersionTombstones}.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+public final class VersionClock {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private VersionClock() {
+    }
+
+    /**
+     * @return 新的版本号, 大于本进程之前分配过的所有版本号
+     */
+    public static long next() {
+        long now = System.currentTimeMillis() * 1000;
+        long last;
+        do {
+            last = LAST.get();
+            if (now <= last) now = last + 1;
+        } while (!LAST.compareAndSet(last, now));
+        return now;
+    }
+
+    /**
+     * @return 当前时间对应的版本号, 不占用序号
+     */
+    public static long now() {
+        return System.currentTimeMillis() * 1000;
+    }
+}
@@ -8,6 +8,7 @@ import net.sf.ehcache.event.CacheEventListener;
 import org.wstorm.rcache.RObject;
 import org.wstorm.rcache.annotation.CacheConfig;
 import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
 import org.wstorm.rcache.cache.CacheExpiredListener;
 import org.wstorm.rcache.cache.DataPicker;
 import org.wstorm.rcache.exception.CacheException;
@@ -86,6 +87,33 @@ class EhCacheCache implements Cache, CacheEventListener {
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id == null) return null;
+        try {
+            if (cacheConfig != null) id = CacheUtils.genCacheKey(cacheConfig, id);
+            Element element = cache.get(id);
+            if (element == null) return null;
+            long expireAt = element.isEternal() ? 0 : element.getExpirationTime();
+            return new CacheEntry<>((T) element.getObjectValue(), 0, expireAt == Long.MAX_VALUE ? 0 : expireAt);
+        } catch (IllegalStateException | net.sf.ehcache.CacheException e) {
+            throw new CacheException("get", e);
+        }
+    }
+
+    @Override
+    public <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker)
+            throws CacheException {
+        Map<String, CacheEntry<T>> map = new HashMap<>();
+        if (ids == null) return map;
+        for (String id : ids) {
+            CacheEntry<T> entry = getEntry(cacheConfig, id, dataPicker);
+            if (entry != null) map.put(id, entry);
+        }
+        return map;
+    }
+
 
     @Override
     public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) throws CacheException {
@@ -146,14 +174,15 @@ class EhCacheCache implements Cache, CacheEventListener {
 
     }
 
-//    public void clear() throws CacheException {
-//        try {
-//            cache.removeAll();
-//        } catch (IllegalStateException | net.sf.ehcache.CacheException e) {
-//            throw new CacheException("clear", e);
-//        }
-//    }
-//
+    @Override
+    public void clear() throws CacheException {
+        try {
+            cache.removeAll();
+        } catch (IllegalStateException | net.sf.ehcache.CacheException e) {
+            throw new CacheException("clear", e);
+        }
+    }
+
 //    public void destroy() throws CacheException {
 //        try {
 //            cache.getCacheManager().removeCache(cache.getName());
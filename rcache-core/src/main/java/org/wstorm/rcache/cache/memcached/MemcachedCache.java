@@ -1,12 +1,15 @@
 package org.wstorm.rcache.cache.memcached;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.wstorm.rcache.RObject;
 import org.wstorm.rcache.annotation.CacheConfig;
 import org.wstorm.rcache.cache.Cache;
 import org.wstorm.rcache.cache.CacheProvider;
 import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.cache.EarlyExpiration;
+import org.wstorm.rcache.cache.SingleFlightLoader;
 import org.wstorm.rcache.exception.CacheException;
 import org.wstorm.rcache.memcached.SpyMemcachedClient;
 import org.wstorm.rcache.utils.CacheUtils;
@@ -15,6 +18,8 @@ import org.wstorm.rcache.utils.CollectionsUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * MemcachedCache
@@ -27,6 +32,8 @@ class MemcachedCache implements Cache {
 
     private static final List<String> EMPTY_KEYS_LIST = new ArrayList<>();
 
+    private final SingleFlightLoader loader = new SingleFlightLoader();
+    private final EarlyExpiration earlyExpiration = new EarlyExpiration();
     private SpyMemcachedClient memcached;
     private String region;
 
@@ -52,27 +59,10 @@ class MemcachedCache implements Cache {
 
             List<String> cacheKeys = CacheUtils.genCacheKeys(cacheConfig, ids);
 
-            Map<String, T> bulk = memcached.getBulk(cacheKeys);
-            if (dataPicker == null || CollectionsUtils.isEmpty(bulk) || bulk.size() == ids.size()) {
-                return bulk;
-            }
-
-            Map<String, T> map;
-            if (cacheKeys.get(0).equals(ids.get(0))) map = bulk;
-            else map = Maps.newHashMapWithExpectedSize(ids.size());
-
-            for (int i = 0; i < ids.size(); i++) {
-
-                T t = bulk.get(cacheKeys.get(i));
-
-                if (t == null) {
-                    t = getBackOff(cacheConfig, ids.get(i), dataPicker, cacheKeys.get(i), null);
-                }
-
-                if (t != null && !t.isBlank()) map.put(ids.get(i), t);
-            }
-
-            return map;
+            Map<String, T> map = Maps.newHashMapWithExpectedSize(ids.size());
+            List<String> missIds = Lists.newArrayList();
+            boolean missed = collect(cacheConfig, ids, cacheKeys, memcached.getBulk(cacheKeys), dataPicker, map, missIds);
+            return backOffAll(cacheConfig, missIds, missed, dataPicker, map);
         } catch (CacheException e) {
             throw new CacheException("getAll", e);
         }
@@ -89,18 +79,150 @@ class MemcachedCache implements Cache {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * 通过spymemcached的异步get读取, 命中时在其IO线程上完成; Miss且需要回源时才切换到executor执行DataPicker
+     */
+    @Override
+    public <T extends RObject<String>> CompletableFuture<T> getAsync(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, Executor executor) {
+        if (id == null) return CompletableFuture.completedFuture(null);
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        return memcached.asyncGet(cacheKey).thenCompose(o -> {
+            T current = unwrap(o);
+            if (current == null ? dataPicker == null : !isExpiredEarly(cacheConfig, o, dataPicker))
+                return CompletableFuture.completedFuture(current);
+            return CompletableFuture.supplyAsync(() -> current == null
+                    ? load(cacheConfig, id, dataPicker, cacheKey) : reload(cacheConfig, id, dataPicker, cacheKey, current), executor);
+        });
+    }
+
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Map<String, T>> getAllAsync(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker, Executor executor) {
+        if (CollectionsUtils.isEmpty(ids)) return CompletableFuture.completedFuture(Maps.newHashMap());
+        List<String> cacheKeys = CacheUtils.genCacheKeys(cacheConfig, ids);
+        return memcached.<Object>asyncGetBulk(cacheKeys).thenCompose(bulk -> {
+            Map<String, T> map = Maps.newHashMapWithExpectedSize(ids.size());
+            List<String> missIds = Lists.newArrayList();
+            boolean missed = collect(cacheConfig, ids, cacheKeys, bulk, dataPicker, map, missIds);
+            if (dataPicker == null || missIds.isEmpty()) return CompletableFuture.completedFuture(map);
+            return CompletableFuture.supplyAsync(() -> backOffAll(cacheConfig, missIds, missed, dataPicker, map), executor);
+        });
+    }
+
+    /**
+     * 合并批量读取的结果, 收集Miss与提前过期的ids
+     *
+     * @return true 有Miss的id
+     */
+    private <T extends RObject<String>> boolean collect(CacheConfig cacheConfig, List<String> ids, List<String> cacheKeys, Map<String, Object> bulk,
+                                                       DataPicker<String, T> dataPicker, Map<String, T> map, List<String> missIds) {
+        boolean missed = false;
+        for (int i = 0; i < ids.size(); i++) {
+            Object o = bulk == null ? null : bulk.get(cacheKeys.get(i));
+            T t = unwrap(o);
+            if (t == null) {
+                missIds.add(ids.get(i));
+                missed = true;
+                continue;
+            }
+            if (isExpiredEarly(cacheConfig, o, dataPicker)) missIds.add(ids.get(i));
+            if (!t.isBlank()) map.put(ids.get(i), t);
+        }
+        return missed;
+    }
+
+    /**
+     * Miss与提前过期的ids一次回源(BulkDataPicker)后回写, spymemcached的set是异步的
+     */
+    private <T extends RObject<String>> Map<String, T> backOffAll(CacheConfig cacheConfig, List<String> missIds, boolean missed,
+                                                                 DataPicker<String, T> dataPicker, Map<String, T> map) {
+        if (dataPicker != null && !missIds.isEmpty()) {
+            long start = System.currentTimeMillis();
+            Map<String, T> backOff;
+            try {
+                backOff = loader.pickupAll(cacheConfig, missIds, dataPicker);
+            } catch (RuntimeException e) {
+                // 只有提前过期的值时仍返回当前值
+                if (missed) throw e;
+                return map;
+            }
+            int delta = elapsed(start);
+            backOff.forEach((id, t) -> {
+                set(cacheConfig, CacheUtils.genCacheKey(cacheConfig, id), t, delta);
+                if (!t.isBlank()) map.put(id, t);
+                else map.remove(id);
+            });
+        }
+        return map;
+    }
+
     private <T extends RObject<String>> T getBackOff(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, String cacheKey, Object o) {
 
-        if (o != null) return (T) o;
+        T current = unwrap(o);
+        if (current == null) return dataPicker == null ? null : load(cacheConfig, id, dataPicker, cacheKey);
+        return isExpiredEarly(cacheConfig, o, dataPicker) ? reload(cacheConfig, id, dataPicker, cacheKey, current) : current;
+    }
 
-        T t;
-        if ((t = dataPicker.pickup(id)) != null || (t = dataPicker.makeEmptyData()) != null)
-            memcached.set(cacheKey, cacheConfig.expiredTime(), t);
-        return t;
+    private <T extends RObject<String>> T load(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, String cacheKey) {
+        // 同一KEY的并发Miss只回源一次, 由执行回源的线程负责回写
+        return loader.load(cacheKey, () -> {
+            long start = System.currentTimeMillis();
+            T t;
+            if ((t = dataPicker.pickup(id)) != null || (t = dataPicker.makeEmptyData()) != null)
+                set(cacheConfig, cacheKey, t, elapsed(start));
+            return t;
+        });
 //        return t != null ? (t.isBlank() ? null : t) : null;
     }
 
+    /**
+     * 提前过期的重新加载, 失败时仍返回当前值
+     */
+    private <T extends RObject<String>> T reload(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker, String cacheKey, T current) {
+        try {
+            T t = load(cacheConfig, id, dataPicker, cacheKey);
+            return t == null ? current : t;
+        } catch (RuntimeException e) {
+            return current;
+        }
+    }
+
+    private boolean isExpiredEarly(CacheConfig cacheConfig, Object o, DataPicker<String, ?> dataPicker) {
+        if (dataPicker == null || !(o instanceof StampedValue)) return false;
+        StampedValue stamped = (StampedValue) o;
+        return earlyExpiration.shouldRecompute(cacheConfig, stamped.getDelta(), stamped.getExpireAt());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unwrap(Object o) {
+        return (T) (o instanceof StampedValue ? ((StampedValue) o).getValue() : o);
+    }
+
+    /**
+     * 回写回源的值, 开启概率提前过期时附带加载耗时与过期时间
+     */
+    private void set(CacheConfig cacheConfig, String cacheKey, Object value, int delta) {
+        if (isEmptyValue(cacheConfig, value)) {
+            memcached.set(cacheKey, cacheConfig.emptyExpiredTime(), value);
+            return;
+        }
+        long expireAt = EarlyExpiration.expireAt(cacheConfig, System.currentTimeMillis());
+        memcached.set(cacheKey, cacheConfig.expiredTime(), expireAt > 0 ? new StampedValue(value, delta, expireAt) : value);
+    }
+
+    /**
+     * @return true 空对象, 以{@link CacheConfig#emptyExpiredTime()}过期
+     */
+    private static boolean isEmptyValue(CacheConfig cacheConfig, Object value) {
+        return cacheConfig.emptyExpiredTime() > 0 && value instanceof RObject && ((RObject) value).isBlank();
+    }
+
+    /**
+     * @return 回源耗时, 至少1毫秒, 使加载很快的值也参与提前过期
+     */
+    private static int elapsed(long start) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, System.currentTimeMillis() - start));
+    }
+
     /**
      * Puts an object into the cache.
      *
@@ -112,7 +234,8 @@ class MemcachedCache implements Cache {
     @Override
     public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) throws CacheException {
         try {
-            memcached.set(CacheUtils.genCacheKey(cacheConfig, id), cacheConfig.expiredTime(), value);
+            memcached.set(CacheUtils.genCacheKey(cacheConfig, id),
+                    isEmptyValue(cacheConfig, value) ? cacheConfig.emptyExpiredTime() : cacheConfig.expiredTime(), value);
         } catch (Exception e) {
             throw new CacheException("put", e);
         }
@@ -150,7 +273,58 @@ class MemcachedCache implements Cache {
         objectMap.entrySet().forEach(entry -> put(cacheConfig, entry.getKey(), entry.getValue()));
     }
 
+    /**
+     * 通过spymemcached的异步set写入, 在其IO线程上完成, 不占用executor; 写入失败时以CacheException异常完成
+     */
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Void> putAsync(CacheConfig cacheConfig, String id, T value, Executor executor) {
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
+        return memcached.asyncSet(cacheKey, isEmptyValue(cacheConfig, value) ? cacheConfig.emptyExpiredTime() : cacheConfig.expiredTime(), value)
+                .thenAccept(success -> {
+                    if (!success) throw new CacheException("put " + cacheKey);
+                });
+    }
+
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Void> putAllAsync(CacheConfig cacheConfig, Map<String, T> objectMap, Executor executor) {
+        Preconditions.checkNotNull(objectMap);
+        return CompletableFuture.allOf(objectMap.entrySet().stream()
+                .map(entry -> putAsync(cacheConfig, entry.getKey(), entry.getValue(), executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * 通过spymemcached的异步delete删除, 与{@link #evict(CacheConfig, String)}一样不考虑删除结果
+     */
+    @Override
+    public CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, String id, Executor executor) {
+        return memcached.asyncDelete(CacheUtils.genCacheKey(cacheConfig, id)).thenAccept(deleted -> {
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> evictAsync(CacheConfig cacheConfig, List<String> ids, Executor executor) {
+        if (ids == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.allOf(CacheUtils.genCacheKeys(cacheConfig, ids).stream()
+                .map(memcached::asyncDelete)
+                .toArray(CompletableFuture[]::new));
+    }
+
     public String getRegion() {
         return region;
     }
+
+    /**
+     * @return 本region的回源合并加载器, 可从中读取合并/执行次数
+     */
+    public SingleFlightLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * @return 本region的概率提前过期, 可从中读取提前重新加载的次数
+     */
+    public EarlyExpiration getEarlyExpiration() {
+        return earlyExpiration;
+    }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wstorm.rcache.cache.CacheExpiredListener;
 import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.cache.SingleFlightLoader;
 import org.wstorm.rcache.enums.CacheProviderType;
 import org.wstorm.rcache.exception.CacheException;
 import org.wstorm.rcache.memcached.SpyMemcachedClient;
@@ -29,6 +30,8 @@ public class MemcachedProvider implements CacheProvider {
 
     private ConcurrentHashMap<String, MemcachedCache> _cacheManager = new ConcurrentHashMap<>();
 
+    private long loadWaitTimeout = SingleFlightLoader.DEFAULT_WAIT_TIMEOUT;
+
     public MemcachedProvider(SpyMemcachedClient memcached) {
         super();
         this.memcached = memcached;
@@ -47,6 +50,7 @@ public class MemcachedProvider implements CacheProvider {
             synchronized (this) {
                 if ((cache = _cacheManager.get(regionName)) == null) {
                     cache = new MemcachedCache(regionName, memcached);
+                    cache.getLoader().setWaitTimeout(loadWaitTimeout);
                     _cacheManager.put(regionName, cache);
                 }
             }
@@ -72,6 +76,16 @@ public class MemcachedProvider implements CacheProvider {
         log.warn("memcached停止由容器管理,不由缓存提供者管理!");
     }
 
+    /**
+     * 设置并发Miss时等待其他线程回源结果的超时时间
+     *
+     * @param loadWaitTimeout 超时时间, 单位毫秒
+     */
+    public void setLoadWaitTimeout(long loadWaitTimeout) {
+        this.loadWaitTimeout = loadWaitTimeout;
+        _cacheManager.values().forEach(cache -> cache.getLoader().setWaitTimeout(loadWaitTimeout));
+    }
+
     /**
      * @param memcached the memcached to set
      */
@@ -0,0 +1,42 @@
+package org.wstorm.rcache.cache.memcached;
+
+import java.io.Serializable;
+
+/**
+ * 开启概率提前过期时保存在memcached中的值, 附带回源的加载耗时与过期时间
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月27日
+ */
+final class StampedValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+    private final int delta;
+    private final long expireAt;
+
+    /**
+     * @param value    缓存值
+     * @param delta    加载耗时, 单位毫秒
+     * @param expireAt 过期时间戳
+     */
+    StampedValue(Object value, int delta, long expireAt) {
+        this.value = value;
+        this.delta = delta;
+        this.expireAt = expireAt;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    int getDelta() {
+        return delta;
+    }
+
+    long getExpireAt() {
+        return expireAt;
+    }
+}
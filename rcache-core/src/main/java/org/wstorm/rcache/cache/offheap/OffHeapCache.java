@@ -0,0 +1,267 @@
+package org.wstorm.rcache.cache.offheap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+import org.wstorm.rcache.serializer.Serializer;
+import org.wstorm.rcache.utils.CacheUtils;
+import org.wstorm.rcache.utils.CollectionsUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 堆外缓存, 对象经Kryo序列化后存放在direct内存的分段环形日志中, get时反序列化
+ * <p>
+ * 按字节数限制容量, 平均分配给各分段, 分段写满后按FIFO覆盖最老的记录.
+ * 单个对象序列化后超过分段容量时不缓存.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+class OffHeapCache implements Cache {
+
+    private static final Serializer serializer = new KryoPoolSerializer();
+
+    private final String region;
+    private final CacheExpiredListener listener;
+    private final long timeToLive;
+    private final LongSupplier clock;
+    private final OffHeapSegment[] segments;
+    private final int segmentShift;
+
+    private volatile boolean alive = true;
+
+    /**
+     * @param region       缓存区域
+     * @param maximumBytes 最大占用的堆外内存字节数
+     * @param segmentCount 分段数, 取整为2的幂
+     * @param timeToLive   CacheConfig未指定过期时间时的默认存活时间, 单位秒, 0表示永不过期
+     * @param listener     过期监听器
+     * @param clock        毫秒时钟
+     */
+    OffHeapCache(String region, long maximumBytes, int segmentCount, long timeToLive,
+                 CacheExpiredListener listener, LongSupplier clock) {
+        int count = 1 << -Integer.numberOfLeadingZeros(Math.max(1, segmentCount) - 1);
+        long segmentBytes = maximumBytes / count;
+        if (segmentBytes < OffHeapSegment.HEADER_SIZE || segmentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("illegal segment size " + segmentBytes + "| region=" + region);
+
+        this.region = region;
+        this.timeToLive = timeToLive;
+        this.listener = listener;
+        this.clock = clock;
+        this.segments = new OffHeapSegment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new OffHeapSegment((int) segmentBytes);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    @Override
+    public List keys() throws CacheException {
+        checkAlive("keys");
+        long now = clock.getAsLong();
+        List<String> keys = Lists.newArrayList();
+        for (OffHeapSegment segment : segments) {
+            segment.keys(now, keys);
+        }
+        return keys;
+    }
+
+    @Override
+    public <T extends RObject<String>> Map<String, T> getAll(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker)
+            throws CacheException {
+        if (CollectionsUtils.isEmpty(ids)) return new HashMap<>();
+        checkAlive("getAll");
+
+        Map<String, T> map = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String id : ids) {
+            T t = getIfPresent(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+            if (t != null) map.put(id, t);
+        }
+        return map;
+    }
+
+    @Override
+    public <T extends RObject<String>> T get(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id == null) return null;
+        checkAlive("get");
+        return getIfPresent(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+    }
+
+    @Override
+    public <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id == null) return null;
+        checkAlive("get");
+        long[] expireAt = new long[1];
+        T t = getIfPresent(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id, expireAt);
+        return t == null ? null : new CacheEntry<>(t, 0, expireAt[0]);
+    }
+
+    @Override
+    public <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker)
+            throws CacheException {
+        if (CollectionsUtils.isEmpty(ids)) return new HashMap<>();
+        Map<String, CacheEntry<T>> map = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String id : ids) {
+            CacheEntry<T> entry = getEntry(cacheConfig, id, dataPicker);
+            if (entry != null) map.put(id, entry);
+        }
+        return map;
+    }
+
+    @Override
+    public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) throws CacheException {
+        checkAlive("put");
+        putValue(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id, value, expireAt(cacheConfig));
+    }
+
+    @Override
+    public <T extends RObject<String>> void putAll(CacheConfig cacheConfig, Map<String, T> objectMap) throws CacheException {
+        checkAlive("putAll");
+        long expireAt = expireAt(cacheConfig);
+        objectMap.forEach((id, value) ->
+                putValue(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id, value, expireAt));
+    }
+
+    @Override
+    public void evict(CacheConfig cacheConfig, String id) throws CacheException {
+        checkAlive("evict");
+        String key = cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        segmentFor(hash).remove(keyBytes, hash);
+    }
+
+    @Override
+    public void evict(CacheConfig cacheConfig, List<String> ids) throws CacheException {
+        checkAlive("evict-All");
+        if (CollectionsUtils.isEmpty(ids)) return;
+        for (String id : ids) {
+            evict(cacheConfig, id);
+        }
+    }
+
+    /**
+     * 清理所有已过期的对象并通知监听器, 由provider定时调用
+     */
+    void cleanUp() {
+        if (!alive) return;
+        long now = clock.getAsLong();
+        List<String> expired = Lists.newArrayList();
+        for (OffHeapSegment segment : segments) {
+            segment.expire(now, expired);
+        }
+        expired.forEach(this::notifyExpired);
+    }
+
+    /**
+     * 清空数据, 不通知过期监听器
+     */
+    @Override
+    public void clear() throws CacheException {
+        checkAlive("clear");
+        for (OffHeapSegment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 停止服务并释放索引, direct内存随缓存对象被GC回收
+     */
+    void shutdown() {
+        alive = false;
+        for (OffHeapSegment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return 当前内存占用
+     */
+    OffHeapMemoryUsage memoryUsage() {
+        long capacity = 0, used = 0, live = 0, entries = 0, evictions = 0;
+        for (OffHeapSegment segment : segments) {
+            capacity += segment.capacity();
+            used += segment.usedBytes();
+            live += segment.liveBytes();
+            entries += segment.size();
+            evictions += segment.evictions();
+        }
+        return new OffHeapMemoryUsage(region, capacity, used, live, entries, evictions);
+    }
+
+    private <T> T getIfPresent(String key) {
+        return getIfPresent(key, null);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private <T> T getIfPresent(String key, long[] expireAt) {
+        int hash = hash(key);
+        byte[] value = segmentFor(hash).get(key.getBytes(StandardCharsets.UTF_8), hash, clock.getAsLong(), expireAt);
+        if (value == null) return null;
+        if (value == OffHeapSegment.EXPIRED) {
+            notifyExpired(key);
+            return null;
+        }
+        try {
+            return (T) serializer.deserialize(value);
+        } catch (Exception e) {
+            throw new CacheException("get| key=" + key, e);
+        }
+    }
+
+    private void putValue(String key, Object value, long expireAt) {
+        int hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            // 序列化字节直接复制到堆外, 不经过中间数组
+            serializer.serialize(value, (bytes, offset, length) -> segmentFor(hash).put(keyBytes, hash, bytes, offset, length, expireAt));
+        } catch (Exception e) {
+            throw new CacheException("put| key=" + key, e);
+        }
+    }
+
+    private long expireAt(CacheConfig cacheConfig) {
+        long ttl = cacheConfig != null && cacheConfig.expiredTime() > 0 ? cacheConfig.expiredTime() : timeToLive;
+        return ttl > 0 ? clock.getAsLong() + ttl * 1000L : 0L;
+    }
+
+    private void notifyExpired(String key) {
+        if (listener != null) listener.notifyElementExpired(region, key);
+    }
+
+    private OffHeapSegment segmentFor(int hash) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void checkAlive(String operation) {
+        if (!alive) throw new CacheException(operation, new IllegalStateException("region " + region + " is not alive"));
+    }
+
+    String getRegion() {
+        return region;
+    }
+
+    @SuppressWarnings({"all"})
+    public Object clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException();
+    }
+}
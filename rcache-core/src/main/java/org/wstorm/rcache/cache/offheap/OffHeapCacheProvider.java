@@ -0,0 +1,118 @@
+package org.wstorm.rcache.cache.offheap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.RegionProperties;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 堆外内存缓存提供者, 用作L1缓存以减少大量小对象对老年代和GC停顿的影响
+ * <p>
+ * 配置文件为classpath下的properties文件(见{@link RegionProperties}), 可配置项:
+ * <ul>
+ * <li>maximumBytes: region最多占用的堆外内存, 支持k/m/g后缀, 默认64m</li>
+ * <li>segments: region的分段数, 默认16</li>
+ * <li>timeToLiveSeconds: CacheConfig.expiredTime()未指定时的存活时间, 默认0(永不过期)</li>
+ * <li>expiryCheckIntervalSeconds: 只能配在default下, 过期清理的周期, 默认10秒</li>
+ * </ul>
+ * 堆外内存受-XX:MaxDirectMemorySize限制.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+public class OffHeapCacheProvider implements CacheProvider {
+
+    private final static Logger log = LoggerFactory.getLogger(OffHeapCacheProvider.class);
+
+    static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+    static final int DEFAULT_SEGMENTS = 16;
+    static final long DEFAULT_EXPIRY_CHECK_INTERVAL = 10L;
+
+    private RegionProperties properties;
+    private ConcurrentHashMap<String, OffHeapCache> _CacheManager;
+    private ScheduledExecutorService cleaner;
+
+    @Override
+    public String name() {
+        return CacheProviderType.offheap.name();
+    }
+
+    @Override
+    public OffHeapCache buildCache(String regionName, CacheExpiredListener listener) throws CacheException {
+        if (_CacheManager == null) throw new CacheException("OffHeapCacheProvider is not started");
+        OffHeapCache cache;
+        if ((cache = _CacheManager.get(regionName)) == null) {
+            synchronized (this) {
+                if ((cache = _CacheManager.get(regionName)) == null) {
+                    long maximumBytes = properties.getLong(regionName, "maximumBytes", DEFAULT_MAXIMUM_BYTES);
+                    int segments = (int) properties.getLong(regionName, "segments", DEFAULT_SEGMENTS);
+                    long timeToLive = properties.getLong(regionName, "timeToLiveSeconds", 0L);
+                    try {
+                        cache = new OffHeapCache(regionName, maximumBytes, segments, timeToLive, listener, System::currentTimeMillis);
+                    } catch (IllegalArgumentException | OutOfMemoryError e) {
+                        throw new CacheException("build off-heap region " + regionName, e);
+                    }
+                    _CacheManager.put(regionName, cache);
+                    log.debug("started off-heap region: " + regionName + ", maximumBytes=" + maximumBytes);
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public void start(String cacheConfigFile) throws CacheException {
+        if (_CacheManager != null) {
+            log.warn("Attempt to restart an already started OffHeapCacheProvider. Using previously created OffHeapCacheProvider.");
+            return;
+        }
+        properties = RegionProperties.load(cacheConfigFile);
+        _CacheManager = new ConcurrentHashMap<>();
+
+        long interval = properties.getLong(null, "expiryCheckIntervalSeconds", DEFAULT_EXPIRY_CHECK_INTERVAL);
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rcache-offheap-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        ConcurrentHashMap<String, OffHeapCache> caches = _CacheManager;
+        cleaner.scheduleWithFixedDelay(() -> caches.values().forEach(cache -> {
+            try {
+                cache.cleanUp();
+            } catch (Exception e) {
+                log.error("clean up expired elements| region=" + cache.getRegion(), e);
+            }
+        }), interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (_CacheManager != null) {
+            cleaner.shutdownNow();
+            _CacheManager.values().forEach(OffHeapCache::shutdown);
+            _CacheManager = null;
+            cleaner = null;
+        }
+    }
+
+    /**
+     * @return 各region的堆外内存占用, 未启动时为空
+     */
+    public List<OffHeapMemoryUsage> memoryUsage() {
+        ConcurrentHashMap<String, OffHeapCache> caches = _CacheManager;
+        if (caches == null) return Collections.emptyList();
+        return caches.values().stream().map(OffHeapCache::memoryUsage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,69 @@
+package org.wstorm.rcache.cache.offheap;
+
+/**
+ * 一个堆外缓存region的内存占用快照
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+public final class OffHeapMemoryUsage {
+
+    private final String region;
+    private final long capacity;
+    private final long usedBytes;
+    private final long liveBytes;
+    private final long entries;
+    private final long evictions;
+
+    OffHeapMemoryUsage(String region, long capacity, long usedBytes, long liveBytes, long entries, long evictions) {
+        this.region = region;
+        this.capacity = capacity;
+        this.usedBytes = usedBytes;
+        this.liveBytes = liveBytes;
+        this.entries = entries;
+        this.evictions = evictions;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return 分配的堆外内存字节数
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 日志已写入的字节数, 包括已被更新或删除但尚未回收的记录
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return 有效记录占用的字节数
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 因空间不足被覆盖的有效记录数
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapMemoryUsage{region=" + region + ", capacity=" + capacity + ", usedBytes=" + usedBytes
+                + ", liveBytes=" + liveBytes + ", entries=" + entries + ", evictions=" + evictions + '}';
+    }
+}
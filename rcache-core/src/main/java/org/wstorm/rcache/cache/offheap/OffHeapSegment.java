@@ -0,0 +1,296 @@
+package org.wstorm.rcache.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 堆外缓存的一个分段: 一块direct ByteBuffer组成的环形日志加上堆内的开放寻址索引
+ * <p>
+ * 记录格式为 [hash:int][keyLength:int][valueLength:int][expireAt:long][key][value],
+ * 新记录总是追加在日志尾部, 空间不足时从头部按FIFO覆盖最老的记录; 更新和删除只修改索引,
+ * 旧记录占用的空间在日志头部经过时回收. 记录不跨越缓冲区末尾, 放不下时在末尾写入回绕标记.
+ * <p>
+ * 索引只保存hash与记录偏移两个int数组, 线性探测, 所有方法在分段锁内执行.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+final class OffHeapSegment {
+
+    static final int HEADER_SIZE = 20;
+    /**
+     * 已过期, 区别于未命中的null
+     */
+    static final byte[] EXPIRED = new byte[0];
+
+    private static final int WRAP = -1;
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final int MIN_INDEX_CAPACITY = 16;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    /**
+     * 日志的逻辑头尾位置, 单调递增, 物理位置为 pos % capacity
+     */
+    private long head;
+    private long tail;
+    private long liveBytes;
+    private long evictions;
+
+    private int[] hashes;
+    private int[] offsets;
+    private int size;
+    private int tombstones;
+
+    OffHeapSegment(int capacity) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        initIndex(MIN_INDEX_CAPACITY);
+    }
+
+    /**
+     * @return value字节, 不存在返回null, 已过期则删除并返回{@link #EXPIRED}
+     */
+    byte[] get(byte[] key, int hash, long now) {
+        return get(key, hash, now, null);
+    }
+
+    /**
+     * @param expireAt 不为null时写入该记录的过期时间
+     * @return value字节, 不存在返回null, 已过期则删除并返回{@link #EXPIRED}
+     */
+    synchronized byte[] get(byte[] key, int hash, long now, long[] expireAt) {
+        int slot = find(key, hash);
+        if (slot < 0) return null;
+        int offset = offsets[slot];
+        if (isExpired(offset, now)) {
+            removeAt(slot);
+            return EXPIRED;
+        }
+        if (expireAt != null) expireAt[0] = buffer.getLong(offset + 12);
+        int keyLength = buffer.getInt(offset + 4);
+        byte[] value = new byte[buffer.getInt(offset + 8)];
+        buffer.position(offset + HEADER_SIZE + keyLength);
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * @return 记录超过分段容量而无法缓存时返回false, 此时该key原有的值也被删除
+     */
+    synchronized boolean put(byte[] key, int hash, byte[] value, long expireAt) {
+        return put(key, hash, value, 0, value.length, expireAt);
+    }
+
+    /**
+     * @param value  值所在的数组, 只复制offset开始的length个字节
+     * @see #put(byte[], int, byte[], long)
+     */
+    synchronized boolean put(byte[] key, int hash, byte[] value, int offset, int length, long expireAt) {
+        int slot = find(key, hash);
+        if (slot >= 0) removeAt(slot);
+
+        int recordSize = HEADER_SIZE + key.length + length;
+        if (recordSize > capacity) return false;
+
+        int record = allocate(recordSize);
+        buffer.putInt(record, hash);
+        buffer.putInt(record + 4, key.length);
+        buffer.putInt(record + 8, length);
+        buffer.putLong(record + 12, expireAt);
+        buffer.position(record + HEADER_SIZE);
+        buffer.put(key);
+        buffer.put(value, offset, length);
+
+        insert(hash, record);
+        liveBytes += recordSize;
+        return true;
+    }
+
+    synchronized boolean remove(byte[] key, int hash) {
+        int slot = find(key, hash);
+        if (slot < 0) return false;
+        removeAt(slot);
+        return true;
+    }
+
+    synchronized void keys(long now, List<String> keys) {
+        for (int offset : offsets) {
+            if (offset >= 0 && !isExpired(offset, now)) keys.add(readKey(offset));
+        }
+    }
+
+    /**
+     * 删除所有已过期的记录
+     *
+     * @param expired 收集被删除的key
+     */
+    synchronized void expire(long now, List<String> expired) {
+        for (int i = 0; i < offsets.length; i++) {
+            int offset = offsets[i];
+            if (offset >= 0 && isExpired(offset, now)) {
+                expired.add(readKey(offset));
+                removeAt(i);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        head = tail = 0;
+        liveBytes = 0;
+        initIndex(MIN_INDEX_CAPACITY);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    synchronized long usedBytes() {
+        return tail - head;
+    }
+
+    synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * 在日志尾部分配recordSize字节, 空间不足时从头部淘汰
+     *
+     * @return 记录的物理偏移
+     */
+    private int allocate(int recordSize) {
+        int position = physical(tail);
+        int padding = capacity - position < recordSize ? capacity - position : 0;
+        while (tail - head + padding + recordSize > capacity) {
+            if (head == tail) {
+                head = tail = tail + padding; //已清空, 直接从缓冲区起点开始
+                padding = 0;
+                break;
+            }
+            evictHead();
+        }
+        if (padding > 0) {
+            if (padding >= HEADER_SIZE) buffer.putInt(position + 4, WRAP);
+            tail += padding;
+        }
+        int offset = physical(tail);
+        tail += recordSize;
+        return offset;
+    }
+
+    private void evictHead() {
+        int position = physical(head);
+        if (capacity - position < HEADER_SIZE || buffer.getInt(position + 4) == WRAP) {
+            head += capacity - position;
+            return;
+        }
+        int recordSize = recordSize(position);
+        int slot = slotOf(buffer.getInt(position), position);
+        if (slot >= 0) {
+            removeAt(slot);
+            evictions++;
+        }
+        head += recordSize;
+    }
+
+    private int physical(long position) {
+        return (int) (position % capacity);
+    }
+
+    private int recordSize(int offset) {
+        return HEADER_SIZE + buffer.getInt(offset + 4) + buffer.getInt(offset + 8);
+    }
+
+    private boolean isExpired(int offset, long now) {
+        long expireAt = buffer.getLong(offset + 12);
+        return expireAt > 0 && expireAt <= now;
+    }
+
+    private String readKey(int offset) {
+        byte[] key = new byte[buffer.getInt(offset + 4)];
+        buffer.position(offset + HEADER_SIZE);
+        buffer.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getInt(offset + 4) != key.length) return false;
+        int start = offset + HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private void initIndex(int indexCapacity) {
+        hashes = new int[indexCapacity];
+        offsets = new int[indexCapacity];
+        Arrays.fill(offsets, EMPTY);
+        size = 0;
+        tombstones = 0;
+    }
+
+    private int find(byte[] key, int hash) {
+        int mask = offsets.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int offset = offsets[i];
+            if (offset == EMPTY) return -1;
+            if (offset >= 0 && hashes[i] == hash && keyEquals(offset, key)) return i;
+        }
+    }
+
+    private int slotOf(int hash, int offset) {
+        int mask = offsets.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            if (offsets[i] == EMPTY) return -1;
+            if (offsets[i] == offset) return i;
+        }
+    }
+
+    private void insert(int hash, int offset) {
+        int mask = offsets.length - 1;
+        int i = hash & mask;
+        while (offsets[i] >= 0) i = (i + 1) & mask;
+        if (offsets[i] == DELETED) tombstones--;
+        hashes[i] = hash;
+        offsets[i] = offset;
+        size++;
+        if ((size + tombstones) * 2 > offsets.length) rehash();
+    }
+
+    private void removeAt(int slot) {
+        liveBytes -= recordSize(offsets[slot]);
+        offsets[slot] = DELETED;
+        size--;
+        tombstones++;
+    }
+
+    private void rehash() {
+        int[] oldHashes = hashes;
+        int[] oldOffsets = offsets;
+        int indexCapacity = MIN_INDEX_CAPACITY;
+        while (indexCapacity < size * 4) indexCapacity <<= 1;
+        initIndex(indexCapacity);
+        int mask = indexCapacity - 1;
+        for (int j = 0; j < oldOffsets.length; j++) {
+            if (oldOffsets[j] < 0) continue;
+            int i = oldHashes[j] & mask;
+            while (offsets[i] != EMPTY) i = (i + 1) & mask;
+            hashes[i] = oldHashes[j];
+            offsets[i] = oldOffsets[j];
+            size++;
+        }
+    }
+}
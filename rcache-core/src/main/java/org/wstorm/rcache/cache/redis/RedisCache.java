@@ -1,22 +1,43 @@
 package org.wstorm.rcache.cache.redis;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.wstorm.rcache.RObject;
 import org.wstorm.rcache.annotation.CacheConfig;
 import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
 import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.cache.EarlyExpiration;
+import org.wstorm.rcache.cache.SingleFlightLoader;
+import org.wstorm.rcache.cache.StalePolicy;
+import org.wstorm.rcache.cache.VersionClock;
+import org.wstorm.rcache.enums.RedisValueMode;
 import org.wstorm.rcache.exception.CacheException;
 import org.wstorm.rcache.jedis.JedisWrapper;
 import org.wstorm.rcache.serializer.KryoPoolSerializer;
 import org.wstorm.rcache.utils.CacheUtils;
 import org.wstorm.rcache.utils.CollectionsUtils;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Response;
 
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Redis cache implement
@@ -27,10 +48,22 @@ import java.util.Map;
  */
 public class RedisCache implements Cache {
 
+    /**
+     * 默认批量读写时每个命令包含的KEY数
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
     private static final List<String> EMPTY_KEYS_LIST = new ArrayList<>();
     private final KryoPoolSerializer serializer = new KryoPoolSerializer();
     private final String region;
+    private final SingleFlightLoader loader = new SingleFlightLoader();
+    private final EarlyExpiration earlyExpiration = new EarlyExpiration();
+    private final StalePolicy stalePolicy = new StalePolicy();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
     private JedisWrapper jedisWrapper;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile ExecutorService serializeExecutor;
+    private volatile Executor revalidateExecutor;
+    private volatile RedisValueCodec codec = new RedisValueCodec(RedisValueMode.base64, false);
 
 
     public RedisCache(String regionName, JedisWrapper jedisWrapper) {
@@ -43,126 +76,435 @@ public class RedisCache implements Cache {
                                                              final List<String> ids,
                                                              final DataPicker<String, T> dataPicker)
             throws CacheException {
+        Map<String, CacheEntry<T>> entries = getAllEntries(cacheConfig, ids, dataPicker);
+        Map<String, T> result = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        entries.forEach((id, entry) -> result.put(id, entry.getValue()));
+        return result;
+    }
+
+    @Override
+    public <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(CacheConfig cacheConfig,
+                                                                               final List<String> ids,
+                                                                               final DataPicker<String, T> dataPicker)
+            throws CacheException {
 
         if (CollectionsUtils.isEmpty(ids)) return Maps.newHashMap();
 
-        Map<String, Response<String>> responseMap = Maps.newHashMap();
+        byte[][] cacheKeys = new byte[ids.size()][];
+        for (int i = 0; i < cacheKeys.length; i++) {
+            cacheKeys[i] = CacheUtils.genCacheKeyBytes(cacheConfig, ids.get(i));
+        }
 
-        jedisWrapper.execute(jedis -> {
-            Pipeline pipelined = jedis.pipelined();
-            ids.forEach(id -> responseMap.put(id, pipelined.get(CacheUtils.genCacheKey(cacheConfig, id))));
-            pipelined.sync();
-            return null;
-        });
+        // 开启提前刷新时在同一管道中取剩余寿命
+        long[] ttls = cacheConfig.refreshAhead() > 0 ? new long[cacheKeys.length] : null;
+        long now = System.currentTimeMillis();
+        List<byte[]> values = jedisWrapper.execute(jedis -> ttls == null ? mget(jedis, cacheKeys) : mget(jedis, cacheKeys, ttls));
 
-        Map<String, T> backOff = Maps.newHashMap();
+        List<CacheEntry<T>> found = new ArrayList<>(ids.size());
+        List<String> missIds = Lists.newArrayList();
+        List<String> revalidateIds = Lists.newArrayList();
+        int[] deltas = new int[ids.size()];
+        boolean missed = false;
+        int staleIfError = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            CacheEntry<T> entry = deserializeEntry(values.get(i), ttls == null ? 0 : expireAt(ttls[i], now), dataPicker, deltas, i);
+            StalePolicy.State state = entry == null ? StalePolicy.State.EXPIRED : StalePolicy.stateOf(cacheConfig, entry.getExpireAt(), now);
+            found.add(state == StalePolicy.State.EXPIRED ? null : entry);
+            if (state == StalePolicy.State.EXPIRED) {
+                missIds.add(ids.get(i));
+                missed = true;
+            } else if (dataPicker == null) {
+                continue;
+            } else if (state == StalePolicy.State.REVALIDATE) {
+                revalidateIds.add(ids.get(i));
+            } else if (state == StalePolicy.State.IF_ERROR) {
+                missIds.add(ids.get(i));
+                staleIfError++;
+            } else if (earlyExpiration.shouldRecompute(cacheConfig, deltas[i], entry.getExpireAt())) {
+                missIds.add(ids.get(i));
+            }
+        }
+        if (!revalidateIds.isEmpty()) {
+            revalidate(cacheConfig, revalidateIds, dataPicker);
+            for (int i = 0; i < revalidateIds.size(); i++) stalePolicy.servedWhileRevalidate();
+        }
 
-        try {
+        // Miss与提前过期的ids一次回源(BulkDataPicker)后一次性回写, 版本号取回源开始的时间
+        long version = VersionClock.next();
+        long start = System.currentTimeMillis();
+        Map<String, CacheEntry<T>> backOff = Collections.emptyMap();
+        if (dataPicker != null && !missIds.isEmpty()) {
+            try {
+                backOff = loader.pickupAllEntries(cacheConfig, missIds, dataPicker);
+            } catch (RuntimeException e) {
+                // 只有提前过期或宽限期内的过期值时仍返回当前值
+                if (missed) throw e;
+                for (int i = 0; i < staleIfError; i++) stalePolicy.servedIfError();
+            }
+        }
 
-            Map<String, T> result = Maps.newHashMapWithExpectedSize(responseMap.size());
-            responseMap.forEach((id, responseEntry) -> {
-                T t = getBackOff(id, dataPicker, responseEntry.get());
-                if (t != null) {
-                    backOff.put(id, t);
-                    result.put(id, t);
-                }
-            });
-            return result;
-        } finally {
-            if (!backOff.isEmpty()) {
-                try {
-                    putAll(cacheConfig, backOff);
-                } catch (Exception ignored) {
-                }
+        Map<String, CacheEntry<T>> result = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+        for (int i = 0; i < ids.size(); i++) {
+            // 回源的值以其所属加载回源前的版本号返回, 回源期间收到的清除广播据此拒绝回填L1
+            CacheEntry<T> entry = backOff.getOrDefault(ids.get(i), found.get(i));
+            if (entry != null) result.put(ids.get(i), entry);
+        }
+
+        if (!backOff.isEmpty()) {
+            Map<String, T> loaded = Maps.newHashMapWithExpectedSize(backOff.size());
+            backOff.forEach((id, entry) -> loaded.put(id, entry.getValue()));
+            try {
+                putAllEntries(cacheConfig, loaded, version, elapsed(start));
+            } catch (Exception ignored) {
             }
         }
+        return result;
+    }
+
+    /**
+     * 按batchSize分块MGET, 多个分块在同一个管道中发出, 返回值与keys顺序一致
+     */
+    private List<byte[]> mget(Jedis jedis, byte[][] keys) {
+        if (keys.length <= batchSize) return jedis.mget(keys);
+
+        Pipeline pipelined = jedis.pipelined();
+        List<Response<List<byte[]>>> chunks = Lists.newArrayListWithCapacity(keys.length / batchSize + 1);
+        for (int from = 0; from < keys.length; from += batchSize) {
+            chunks.add(pipelined.mget(Arrays.copyOfRange(keys, from, Math.min(from + batchSize, keys.length))));
+        }
+        pipelined.sync();
+
+        List<byte[]> values = Lists.newArrayListWithCapacity(keys.length);
+        chunks.forEach(chunk -> values.addAll(chunk.get()));
+        return values;
+    }
+
+
+    /**
+     * 与{@link #mget(Jedis, byte[][])}相同, 并在同一管道中用PTTL取每个KEY的剩余寿命
+     */
+    private List<byte[]> mget(Jedis jedis, byte[][] keys, long[] ttls) {
+        Pipeline pipelined = jedis.pipelined();
+        List<Response<List<byte[]>>> chunks = Lists.newArrayListWithCapacity(keys.length / batchSize + 1);
+        for (int from = 0; from < keys.length; from += batchSize) {
+            chunks.add(pipelined.mget(Arrays.copyOfRange(keys, from, Math.min(from + batchSize, keys.length))));
+        }
+        List<Response<Long>> pttls = Lists.newArrayListWithCapacity(keys.length);
+        for (byte[] key : keys) pttls.add(pipelined.pttl(key));
+        pipelined.sync();
+
+        List<byte[]> values = Lists.newArrayListWithCapacity(keys.length);
+        chunks.forEach(chunk -> values.addAll(chunk.get()));
+        for (int i = 0; i < ttls.length; i++) ttls[i] = pttls.get(i).get();
+        return values;
+    }
+
+    /**
+     * @param pttl PTTL的结果, 负数表示不存在或不过期
+     * @return 过期时间戳, 0表示未知或不过期
+     */
+    private static long expireAt(long pttl, long now) {
+        return pttl > 0 ? now + pttl : 0;
     }
 
+    /**
+     * @param delta 回源的加载耗时, 0表示不是回源的值
+     * @return 保存在值中的逻辑过期时间, 保留过期值或回源的值参与提前过期时才需要, 否则为0
+     */
+    private static long logicalExpireAt(CacheConfig cacheConfig, int delta) {
+        long now = System.currentTimeMillis();
+        long expireAt = StalePolicy.expireAt(cacheConfig, now);
+        return expireAt > 0 || delta <= 0 ? expireAt : EarlyExpiration.expireAt(cacheConfig, now);
+    }
+
+    /**
+     * @return 回源耗时, 至少1毫秒, 使加载很快的值也参与提前过期
+     */
+    private static int elapsed(long start) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, System.currentTimeMillis() - start));
+    }
 
     @Override
     public <T extends RObject<String>> T get(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker)
             throws CacheException {
+        CacheEntry<T> entry = getEntry(cacheConfig, id, dataPicker);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker)
+            throws CacheException {
         try {
-            return jedisWrapper.execute(jedis -> {
-                String cacheKey = CacheUtils.genCacheKey(cacheConfig, id);
-                String serialData = jedis.get(cacheKey);
-                T t = getBackOff(id, dataPicker, serialData);
-                if (t != null) put(cacheConfig, id, t);
-                return t;
-            });
+            byte[] cacheKey = CacheUtils.genCacheKeyBytes(cacheConfig, id);
+            int[] delta = new int[1];
+            CacheEntry<T> entry = cacheConfig.refreshAhead() > 0 ? getWithTtl(cacheKey, dataPicker, delta)
+                    : deserializeEntry(jedisWrapper.execute(jedis -> jedis.get(cacheKey)), 0, dataPicker, delta, 0);
+            StalePolicy.State state = entry == null ? StalePolicy.State.EXPIRED
+                    : StalePolicy.stateOf(cacheConfig, entry.getExpireAt(), System.currentTimeMillis());
+            if (dataPicker == null) return state == StalePolicy.State.EXPIRED ? null : entry;
+
+            switch (state) {
+                case EXPIRED:
+                    return load(cacheConfig, id, dataPicker);
+                case REVALIDATE:
+                    stalePolicy.servedWhileRevalidate();
+                    revalidate(cacheConfig, Collections.singletonList(id), dataPicker);
+                    return entry;
+                case IF_ERROR:
+                    break;
+                default:
+                    if (!earlyExpiration.shouldRecompute(cacheConfig, delta[0], entry.getExpireAt())) return entry;
+            }
+
+            // 提前过期或宽限期内的过期值: 重新加载失败时仍返回当前值
+            try {
+                CacheEntry<T> loaded = load(cacheConfig, id, dataPicker);
+                return loaded == null ? entry : loaded;
+            } catch (Exception e) {
+                if (state == StalePolicy.State.IF_ERROR) stalePolicy.servedIfError();
+                return entry;
+            }
         } catch (Exception e) {
             throw new CacheException("get", e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends RObject<String>> T getBackOff(String id, DataPicker<String, T> dataPicker, String serialData) {
-        if (serialData != null) {
-            try {
-                return (T) serializer.deserialize(Base64.getDecoder().decode(serialData));
-            } catch (Exception e) {
-                throw new CacheException("getBackOff", e);
-            }
+    private <T extends RObject<String>> CacheEntry<T> load(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) {
+        // 同一KEY的并发Miss只回源一次, 由执行回源的线程以回源前的版本号回写, 等待的线程得到同一版本号
+        return loader.loadEntry(CacheUtils.genCacheKey(cacheConfig, id), version -> {
+            long start = System.currentTimeMillis();
+            T picked = SingleFlightLoader.pickup(id, dataPicker);
+            if (picked != null) putEntry(cacheConfig, id, picked, version, elapsed(start));
+            return picked;
+        });
+    }
+
+    /**
+     * 在后台重新加载宽限期内的过期值, 同一KEY同时只有一个任务; 线程池满时放弃, 下次读取再登记
+     */
+    private <T extends RObject<String>> void revalidate(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+        List<String> claimed = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (revalidating.add(CacheUtils.genCacheKey(cacheConfig, id))) claimed.add(id);
         }
+        if (claimed.isEmpty()) return;
+
+        Executor executor = revalidateExecutor;
+        try {
+            (executor == null ? RevalidateExecutorHolder.EXECUTOR : executor).execute(() -> {
+                try {
+                    long version = VersionClock.next();
+                    long start = System.currentTimeMillis();
+                    putAllEntries(cacheConfig, loader.pickupAll(cacheConfig, claimed, dataPicker), version, elapsed(start));
+                } catch (RuntimeException ignored) {
+                    // 过期值继续在宽限期内返回, 之后的读取会再次登记
+                } finally {
+                    claimed.forEach(id -> revalidating.remove(CacheUtils.genCacheKey(cacheConfig, id)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            claimed.forEach(id -> revalidating.remove(CacheUtils.genCacheKey(cacheConfig, id)));
+        }
+    }
+
+    @Override
+    public <T extends RObject<String>> CompletableFuture<CacheEntry<T>> getEntryAsync(CacheConfig cacheConfig, String id,
+                                                                                     DataPicker<String, T> dataPicker, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getEntry(cacheConfig, id, dataPicker), executor);
+    }
+
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Map<String, CacheEntry<T>>> getAllEntriesAsync(CacheConfig cacheConfig, List<String> ids,
+                                                                                                       DataPicker<String, T> dataPicker, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getAllEntries(cacheConfig, ids, dataPicker), executor);
+    }
 
-        if (dataPicker == null) return null;
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Void> putEntryAsync(CacheConfig cacheConfig, String id, T value,
+                                                                            long version, Executor executor) {
+        return CompletableFuture.runAsync(() -> putEntry(cacheConfig, id, value, version), executor);
+    }
 
-        T t;
-        if ((t = dataPicker.pickup(id)) == null)
-            t = dataPicker.makeEmptyData();
+    @Override
+    public <T extends RObject<String>> CompletableFuture<Void> putAllEntriesAsync(CacheConfig cacheConfig, Map<String, T> objectMap,
+                                                                                 long version, Executor executor) {
+        return CompletableFuture.runAsync(() -> putAllEntries(cacheConfig, objectMap, version), executor);
+    }
 
-        return t;
+    /**
+     * GET与PTTL在同一管道中发出, 只多一次Redis内部查找, 不多网络往返
+     */
+    private <T extends RObject<String>> CacheEntry<T> getWithTtl(byte[] key, DataPicker<String, T> dataPicker, int[] delta) {
+        long now = System.currentTimeMillis();
+        return jedisWrapper.execute(jedis -> {
+            Pipeline pipelined = jedis.pipelined();
+            Response<byte[]> value = pipelined.get(key);
+            Response<Long> pttl = pipelined.pttl(key);
+            pipelined.sync();
+            return deserializeEntry(value.get(), expireAt(pttl.get(), now), dataPicker, delta, 0);
+        });
+    }
 
+    /**
+     * @param expireAt   由PTTL得到的过期时间, 值中保存了逻辑过期时间时以后者为准
+     * @param dataPicker 空对象的标记由其{@link DataPicker#makeEmptyData()}还原, 为null时按不存在处理
+     * @param deltas     输出值中保存的加载耗时
+     * @param index      加载耗时在deltas中的位置
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends RObject<String>> CacheEntry<T> deserializeEntry(byte[] serialData, long expireAt, DataPicker<String, T> dataPicker,
+                                                                       int[] deltas, int index) {
+        if (serialData == null) return null;
+        if (RedisValueCodec.isEmptyValue(serialData)) {
+            T empty = dataPicker == null ? null : dataPicker.makeEmptyData();
+            return empty == null ? null : new CacheEntry<>(empty, 0, expireAt);
+        }
+        try {
+            byte[] decoded = codec.decode(serialData);
+            int payloadOffset = RedisValueCodec.payloadOffset(decoded);
+            T value = (T) serializer.deserialize(decoded, payloadOffset, decoded.length - payloadOffset);
+            if (value == null) return null;
+            deltas[index] = RedisValueCodec.deltaOf(decoded);
+            long logical = RedisValueCodec.expireAtOf(decoded);
+            return new CacheEntry<>(value, RedisValueCodec.versionOf(decoded), logical > 0 ? logical : expireAt);
+        } catch (Exception e) {
+            throw new CacheException("deserialize", e);
+        }
     }
 
     @Override
     public <T extends RObject<String>> void putAll(CacheConfig cacheConfig, Map<String, T> objectMap) throws CacheException {
+        putAllEntries(cacheConfig, objectMap, 0);
+    }
 
-        jedisWrapper.execute(jedis -> {
+    @Override
+    public <T extends RObject<String>> void putAllEntries(CacheConfig cacheConfig, Map<String, T> objectMap, long version) throws CacheException {
+        putAllEntries(cacheConfig, objectMap, version, 0);
+    }
+
+    /**
+     * @param delta 回源的加载耗时, 开启概率提前过期时与过期时间一起保存, 0表示不是回源的值
+     */
+    private <T extends RObject<String>> void putAllEntries(CacheConfig cacheConfig, Map<String, T> objectMap, long version, int delta) {
 
+        if (CollectionsUtils.isEmpty(objectMap)) return;
+
+        // 序列化可以并行, 但管道只由当前线程写入, Jedis的Pipeline不是线程安全的
+        List<Map.Entry<String, T>> entries = new ArrayList<>(objectMap.entrySet());
+        byte[][] keyValues = serializeAll(cacheConfig, entries, version, delta);
+
+        jedisWrapper.execute(jedis -> {
             Pipeline pipelined = jedis.pipelined();
             try {
-
-                objectMap.entrySet().parallelStream().forEach(
-                        tEntry -> {
-                            try {
-                                if (cacheConfig.expiredTime() > 0)
-                                    pipelined.setex(
-                                            jedisWrapper.serializeKey(CacheUtils.genCacheKey(cacheConfig, tEntry.getKey())),
-                                            cacheConfig.expiredTime(),
-                                            Base64.getEncoder().encode(serializer.serialize(tEntry.getValue()))
-                                    );
-                                else
-                                    pipelined.set(
-                                            jedisWrapper.serializeKey(CacheUtils.genCacheKey(cacheConfig, tEntry.getKey())),
-                                            Base64.getEncoder().encode(serializer.serialize(tEntry.getValue()))
-                                    );
-                            } catch (Exception e) {
-                                throw new CacheException("putAll", e);
-                            }
-                        });
+                int size = entries.size();
+                for (int from = 0; from < size; from += batchSize) {
+                    int to = Math.min(from + batchSize, size);
+                    if (cacheConfig.expiredTime() > 0 || hasEmpty(keyValues, from, to)) {
+                        for (int i = from; i < to; i++) set(pipelined, cacheConfig, keyValues[i << 1], keyValues[(i << 1) + 1]);
+                    } else {
+                        pipelined.mset(Arrays.copyOfRange(keyValues, from << 1, to << 1));
+                    }
+                }
             } finally {
                 pipelined.sync();
             }
-
             return null;
         });
     }
 
+    private static void set(Pipeline pipelined, CacheConfig cacheConfig, byte[] key, byte[] value) {
+        if (value == RedisValueCodec.EMPTY_VALUE) pipelined.setex(key, cacheConfig.emptyExpiredTime(), value);
+        else if (cacheConfig.expiredTime() > 0) pipelined.setex(key, StalePolicy.retention(cacheConfig), value);
+        else pipelined.set(key, value);
+    }
+
+    private static boolean hasEmpty(byte[][] keyValues, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (keyValues[(i << 1) + 1] == RedisValueCodec.EMPTY_VALUE) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true 以空对象的标记代替序列化的值, 并以{@link CacheConfig#emptyExpiredTime()}过期
+     */
+    private static boolean isEmptyValue(CacheConfig cacheConfig, RObject<String> value) {
+        return cacheConfig.emptyExpiredTime() > 0 && value != null && value.isBlank();
+    }
+
+    /**
+     * 序列化成交替存放的key, value数组; 数据量较大且配置了序列化线程池时分块并行序列化
+     */
+    private <T extends RObject<String>> byte[][] serializeAll(CacheConfig cacheConfig, List<Map.Entry<String, T>> entries, long version, int delta) {
+        byte[][] keyValues = new byte[entries.size() << 1][];
+        long expireAt = logicalExpireAt(cacheConfig, delta);
+        ExecutorService executor = serializeExecutor;
+        if (executor == null || entries.size() <= batchSize) {
+            serializeRange(cacheConfig, entries, version, delta, expireAt, keyValues, 0, entries.size());
+            return keyValues;
+        }
+
+        List<CompletableFuture<Void>> futures = Lists.newArrayList();
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            int start = from, end = Math.min(from + batchSize, entries.size());
+            futures.add(CompletableFuture.runAsync(
+                    () -> serializeRange(cacheConfig, entries, version, delta, expireAt, keyValues, start, end), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+        } catch (CompletionException e) {
+            throw new CacheException("putAll", e.getCause());
+        }
+        return keyValues;
+    }
+
+    private <T extends RObject<String>> void serializeRange(CacheConfig cacheConfig, List<Map.Entry<String, T>> entries, long version,
+                                                            int delta, long expireAt, byte[][] keyValues, int from, int to) {
+        try {
+            for (int i = from; i < to; i++) {
+                Map.Entry<String, T> entry = entries.get(i);
+                keyValues[i << 1] = CacheUtils.genCacheKeyBytes(cacheConfig, entry.getKey());
+                keyValues[(i << 1) + 1] = isEmptyValue(cacheConfig, entry.getValue()) ? RedisValueCodec.EMPTY_VALUE
+                        : serializer.serialize(entry.getValue(), (bytes, offset, length) -> codec.encode(bytes, offset, length, version, delta, expireAt));
+            }
+        } catch (Exception e) {
+            throw new CacheException("putAll", e);
+        }
+    }
+
     @Override
     public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) throws CacheException {
+        putEntry(cacheConfig, id, value, 0);
+    }
+
+    @Override
+    public <T extends RObject<String>> void putEntry(CacheConfig cacheConfig, String id, T value, long version) throws CacheException {
+        putEntry(cacheConfig, id, value, version, 0);
+    }
+
+    /**
+     * @param delta 回源的加载耗时, 开启概率提前过期时与过期时间一起保存, 0表示不是回源的值
+     */
+    private <T extends RObject<String>> void putEntry(CacheConfig cacheConfig, String id, T value, long version, int delta) {
+        long expireAt = logicalExpireAt(cacheConfig, delta);
         jedisWrapper.execute(jedis -> {
             try {
-                if (cacheConfig.expiredTime() > 0)
+                if (isEmptyValue(cacheConfig, value))
                     return jedis.setex(
-                            jedisWrapper.serializeKey(CacheUtils.genCacheKey(cacheConfig, id)),
-                            cacheConfig.expiredTime(),
-                            Base64.getEncoder().encode(serializer.serialize(value))
+                            CacheUtils.genCacheKeyBytes(cacheConfig, id),
+                            cacheConfig.emptyExpiredTime(),
+                            RedisValueCodec.EMPTY_VALUE
+                    );
+                else if (cacheConfig.expiredTime() > 0)
+                    return jedis.setex(
+                            CacheUtils.genCacheKeyBytes(cacheConfig, id),
+                            StalePolicy.retention(cacheConfig),
+                            serializer.serialize(value, (bytes, offset, length) -> codec.encode(bytes, offset, length, version, delta, expireAt))
                     );
                 else
                     return jedis.set(
-                            jedisWrapper.serializeKey(CacheUtils.genCacheKey(cacheConfig, id)),
-                            Base64.getEncoder().encode(serializer.serialize(value))
+                            CacheUtils.genCacheKeyBytes(cacheConfig, id),
+                            serializer.serialize(value, (bytes, offset, length) -> codec.encode(bytes, offset, length, version, 0, 0))
                     );
 
             } catch (Exception e) {
@@ -179,7 +521,7 @@ public class RedisCache implements Cache {
     @Override
     public void evict(CacheConfig cacheConfig, String id) throws CacheException {
         try {
-            jedisWrapper.execute(jedis -> jedis.del(CacheUtils.genCacheKey(cacheConfig, id)));
+            jedisWrapper.execute(jedis -> jedis.del(CacheUtils.genCacheKeyBytes(cacheConfig, id)));
         } catch (Exception e) {
             throw new CacheException("evict", e);
         }
@@ -188,7 +530,9 @@ public class RedisCache implements Cache {
     @Override
     public void evict(CacheConfig cacheConfig, List<String> ids) throws CacheException {
         try {
-            jedisWrapper.execute(jedis -> jedis.del(CacheUtils.genCacheKeys(cacheConfig, ids).toArray(new String[0])));
+            byte[][] cacheKeys = new byte[ids.size()][];
+            for (int i = 0; i < cacheKeys.length; i++) cacheKeys[i] = CacheUtils.genCacheKeyBytes(cacheConfig, ids.get(i));
+            jedisWrapper.execute(jedis -> jedis.del(cacheKeys));
         } catch (Exception e) {
             throw new CacheException("evict-All", e);
         }
@@ -197,4 +541,76 @@ public class RedisCache implements Cache {
     public String getRegion() {
         return region;
     }
+
+    /**
+     * @param batchSize 批量读写时每个命令包含的KEY数
+     */
+    void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param serializeExecutor putAll并行序列化所用的线程池, 为null时在调用线程中序列化
+     */
+    void setSerializeExecutor(ExecutorService serializeExecutor) {
+        this.serializeExecutor = serializeExecutor;
+    }
+
+    /**
+     * 设置缓存值在Redis中的存储格式
+     *
+     * @param valueMode      写入格式
+     * @param compatibleRead 是否同时兼容读取Base64和二进制两种格式, 用于迁移期间
+     */
+    void setValueMode(RedisValueMode valueMode, boolean compatibleRead) {
+        this.codec = new RedisValueCodec(valueMode, compatibleRead, codec.isVersioned());
+    }
+
+    /**
+     * @param versioned 写入时是否在值前保存版本号
+     */
+    void setVersioned(boolean versioned) {
+        this.codec = new RedisValueCodec(codec.getMode(), codec.isCompatibleRead(), versioned);
+    }
+
+    /**
+     * @return 本region的回源合并加载器, 可从中读取合并/执行次数
+     */
+    public SingleFlightLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * @param revalidateExecutor 后台重新加载过期值所用的线程池, 为null时使用内置的有界线程池
+     */
+    void setRevalidateExecutor(Executor revalidateExecutor) {
+        this.revalidateExecutor = revalidateExecutor;
+    }
+
+    /**
+     * @return 本region的过期值宽限策略, 可从中读取返回过期值的次数
+     */
+    public StalePolicy getStalePolicy() {
+        return stalePolicy;
+    }
+
+    /**
+     * @return 本region的概率提前过期, 可从中读取提前重新加载的次数
+     */
+    public EarlyExpiration getEarlyExpiration() {
+        return earlyExpiration;
+    }
+
+    /**
+     * 未设置线程池时后台重新加载所用的线程池, 所有region共用, 首次使用时创建
+     */
+    private static final class RevalidateExecutorHolder {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+        private static final Executor EXECUTOR = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000), r -> {
+            Thread thread = new Thread(r, "rcache-revalidate-" + SEQ.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 }
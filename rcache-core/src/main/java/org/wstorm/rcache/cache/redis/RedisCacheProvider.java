@@ -5,11 +5,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wstorm.rcache.cache.CacheExpiredListener;
 import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.cache.SingleFlightLoader;
 import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.enums.RedisValueMode;
 import org.wstorm.rcache.exception.CacheException;
 import org.wstorm.rcache.jedis.JedisWrapper;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Redis Cache Provider
@@ -23,6 +27,13 @@ public class RedisCacheProvider implements CacheProvider {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private JedisWrapper jedisWrapper;
     private ConcurrentHashMap<String, RedisCache> _cacheManager = new ConcurrentHashMap<>();
+    private long loadWaitTimeout = SingleFlightLoader.DEFAULT_WAIT_TIMEOUT;
+    private RedisValueMode valueMode = RedisValueMode.base64;
+    private int batchSize = RedisCache.DEFAULT_BATCH_SIZE;
+    private ExecutorService serializeExecutor;
+    private Executor revalidateExecutor;
+    private boolean compatibleRead;
+    private boolean versioned;
 
     public RedisCacheProvider(JedisWrapper jedisWrapper) {
         this.jedisWrapper = jedisWrapper;
@@ -32,6 +43,80 @@ public class RedisCacheProvider implements CacheProvider {
         this.jedisWrapper = jedisWrapper;
     }
 
+    /**
+     * 设置并发Miss时等待其他线程回源结果的超时时间
+     *
+     * @param loadWaitTimeout 超时时间, 单位毫秒
+     */
+    public void setLoadWaitTimeout(long loadWaitTimeout) {
+        this.loadWaitTimeout = loadWaitTimeout;
+        _cacheManager.values().forEach(cache -> cache.getLoader().setWaitTimeout(loadWaitTimeout));
+    }
+
+    /**
+     * 设置批量读写时每个命令包含的KEY数, getAll按此大小分块MGET, putAll按此大小分块MSET/SETEX
+     *
+     * @param batchSize KEY数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        _cacheManager.values().forEach(cache -> cache.setBatchSize(batchSize));
+    }
+
+    /**
+     * 设置putAll并行序列化所用的线程池, 不设置时在调用线程中序列化.
+     * 线程池由调用方管理, 避免占用ForkJoin公共线程池
+     *
+     * @param serializeExecutor 序列化线程池
+     */
+    public void setSerializeExecutor(ExecutorService serializeExecutor) {
+        this.serializeExecutor = serializeExecutor;
+        _cacheManager.values().forEach(cache -> cache.setSerializeExecutor(serializeExecutor));
+    }
+
+    /**
+     * 设置stale-while-revalidate在后台重新加载过期值所用的线程池, 不设置时使用内置的2线程有界线程池.
+     * 线程池由调用方管理
+     *
+     * @param revalidateExecutor 重新加载线程池
+     */
+    public void setRevalidateExecutor(Executor revalidateExecutor) {
+        this.revalidateExecutor = revalidateExecutor;
+        _cacheManager.values().forEach(cache -> cache.setRevalidateExecutor(revalidateExecutor));
+    }
+
+    /**
+     * 设置缓存值的写入格式, 默认为旧的Base64格式
+     *
+     * @param valueMode 写入格式
+     */
+    public void setValueMode(RedisValueMode valueMode) {
+        this.valueMode = valueMode;
+        _cacheManager.values().forEach(cache -> cache.setValueMode(valueMode, compatibleRead));
+    }
+
+    /**
+     * 迁移开关: 打开后同时兼容读取Base64和二进制两种格式, 与写入格式无关.
+     * 滚动升级时先全部节点打开兼容读取, 再切换写入格式为binary, 最后关闭兼容读取
+     *
+     * @param compatibleRead 是否兼容读取
+     */
+    public void setCompatibleRead(boolean compatibleRead) {
+        this.compatibleRead = compatibleRead;
+        _cacheManager.values().forEach(cache -> cache.setValueMode(valueMode, compatibleRead));
+    }
+
+    /**
+     * 写入L2时在值前保存版本号, 用于订阅端判断读到的值是否早于最近一次清除广播.
+     * 旧版本节点读不了带版本号的值, 滚动升级时应在全部节点升级后再打开; 新版本总能读取两种格式
+     *
+     * @param versioned 是否保存版本号
+     */
+    public void setVersioned(boolean versioned) {
+        this.versioned = versioned;
+        _cacheManager.values().forEach(cache -> cache.setVersioned(versioned));
+    }
+
     @Override
     public String name() {
         return CacheProviderType.redis.name();
@@ -45,6 +130,12 @@ public class RedisCacheProvider implements CacheProvider {
             synchronized (this) {
                 if ((cache = _cacheManager.get(regionName)) == null) {
                     cache = new RedisCache(regionName, jedisWrapper);
+                    cache.getLoader().setWaitTimeout(loadWaitTimeout);
+                    cache.setValueMode(valueMode, compatibleRead);
+                    cache.setVersioned(versioned);
+                    cache.setBatchSize(batchSize);
+                    cache.setSerializeExecutor(serializeExecutor);
+                    cache.setRevalidateExecutor(revalidateExecutor);
                     _cacheManager.put(regionName, cache);
                 }
             }
@@ -0,0 +1,204 @@
+package org.wstorm.rcache.cache.redis;
+
+import org.wstorm.rcache.enums.RedisValueMode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Redis缓存值的编解码, 负责Kryo字节与Redis中实际存储字节之间的转换
+ * <p>
+ * 兼容读取时按首字节判断格式: Kryo写出的首字节是类标识(按类名写出时为0x01, 默认注册类也小于0x10),
+ * 不会落在Base64字母表内, 因此首字节为Base64字符的值按旧的Base64格式解码.
+ * <p>
+ * 打开版本号后Kryo字节前加9字节的头[0xE5][版本号: 8字节], 同样不会与Kryo首字节冲突.
+ * 读取时总是识别版本头, 不论是否打开写入, 没有版本头的值版本号为0.
+ * <p>
+ * 开启概率提前过期或过期值宽限的region, 值改用21字节的头[0xE6][版本号: 8字节][加载耗时: 4字节][逻辑过期时间: 8字节],
+ * 未打开版本号时版本号写0, 不是回源写入的值加载耗时写0.
+ * <p>
+ * 开启空对象短过期的region, 空对象不序列化, 只写一个字节的标记{@link #EMPTY_VALUE}, 读取时不经过解码直接识别.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月06日
+ */
+final class RedisValueCodec {
+
+    static final byte VERSION_HEADER = (byte) 0xE5;
+    static final int VERSION_HEADER_SIZE = 9;
+    static final byte EXPIRY_HEADER = (byte) 0xE6;
+    static final int EXPIRY_HEADER_SIZE = 21;
+    static final byte EMPTY_MARKER = (byte) 0xE7;
+    /**
+     * 空对象的存储值, 写入时直接使用该数组
+     */
+    static final byte[] EMPTY_VALUE = {EMPTY_MARKER};
+
+    private final RedisValueMode mode;
+    private final boolean compatibleRead;
+    private final boolean versioned;
+
+    RedisValueCodec(RedisValueMode mode, boolean compatibleRead) {
+        this(mode, compatibleRead, false);
+    }
+
+    /**
+     * @param mode           写入格式
+     * @param compatibleRead 是否同时兼容读取Base64和二进制两种格式
+     * @param versioned      写入时是否带版本头
+     */
+    RedisValueCodec(RedisValueMode mode, boolean compatibleRead, boolean versioned) {
+        this.mode = mode;
+        this.compatibleRead = compatibleRead;
+        this.versioned = versioned;
+    }
+
+    /**
+     * @param serialized Kryo序列化后的字节
+     * @return 写入Redis的字节
+     */
+    byte[] encode(byte[] serialized) {
+        return mode == RedisValueMode.base64 ? Base64.getEncoder().encode(serialized) : serialized;
+    }
+
+    /**
+     * @param serialized Kryo序列化后的字节
+     * @param version    版本号, &lt;=0或未打开版本号时不写版本头
+     * @return 写入Redis的字节
+     */
+    byte[] encode(byte[] serialized, long version) {
+        return encode(serialized, version, 0, 0);
+    }
+
+    /**
+     * @param serialized Kryo序列化后的字节
+     * @param version    版本号, 未打开版本号时不保存
+     * @param delta      加载耗时, 单位毫秒, 0表示不是回源写入的值
+     * @param expireAt   逻辑过期时间戳; &lt;=0时与{@link #encode(byte[], long)}相同
+     * @return 写入Redis的字节
+     */
+    byte[] encode(byte[] serialized, long version, int delta, long expireAt) {
+        if (headerSize(version, expireAt) == 0) return encode(serialized);
+        return encode(serialized, 0, serialized.length, version, delta, expireAt);
+    }
+
+    /**
+     * 与{@link #encode(byte[], long, int, long)}相同, 但Kryo字节是借用的缓冲区中的一段, 总是复制到新的数组,
+     * 头与Kryo字节一次写入, 不再先复制出Kryo字节
+     *
+     * @param buffer 借用的缓冲区
+     * @param offset Kryo字节的起始位置
+     * @param length Kryo字节的长度
+     * @return 写入Redis的字节
+     */
+    byte[] encode(byte[] buffer, int offset, int length, long version, int delta, long expireAt) {
+        int headerSize = headerSize(version, expireAt);
+        byte[] stored = new byte[headerSize + length];
+        if (headerSize == EXPIRY_HEADER_SIZE) {
+            stored[0] = EXPIRY_HEADER;
+            ByteBuffer.wrap(stored, 1, EXPIRY_HEADER_SIZE - 1)
+                    .putLong(versioned ? Math.max(version, 0) : 0).putInt(Math.max(delta, 0)).putLong(expireAt);
+        } else if (headerSize == VERSION_HEADER_SIZE) {
+            stored[0] = VERSION_HEADER;
+            ByteBuffer.wrap(stored, 1, 8).putLong(version);
+        }
+        System.arraycopy(buffer, offset, stored, headerSize, length);
+        return encode(stored);
+    }
+
+    /**
+     * @return 写入时头的长度
+     */
+    private int headerSize(long version, long expireAt) {
+        if (expireAt > 0) return EXPIRY_HEADER_SIZE;
+        return versioned && version > 0 ? VERSION_HEADER_SIZE : 0;
+    }
+
+    /**
+     * @param stored 从Redis读出的字节
+     * @return Kryo序列化的字节
+     */
+    byte[] decode(byte[] stored) {
+        if (compatibleRead ? isBase64(stored) : mode == RedisValueMode.base64)
+            return Base64.getDecoder().decode(stored);
+        return stored;
+    }
+
+    /**
+     * @param stored 从Redis读出的字节
+     * @return true 是空对象的标记
+     */
+    static boolean isEmptyValue(byte[] stored) {
+        return stored.length == 1 && stored[0] == EMPTY_MARKER;
+    }
+
+    /**
+     * @param decoded {@link #decode(byte[])}的结果
+     * @return 版本号, 没有版本头时为0
+     */
+    static long versionOf(byte[] decoded) {
+        return headerSize(decoded) > 0 ? ByteBuffer.wrap(decoded, 1, 8).getLong() : 0;
+    }
+
+    /**
+     * @param decoded {@link #decode(byte[])}的结果
+     * @return 加载耗时, 单位毫秒, 没有过期头时为0
+     */
+    static int deltaOf(byte[] decoded) {
+        return headerSize(decoded) == EXPIRY_HEADER_SIZE ? ByteBuffer.wrap(decoded, 9, 4).getInt() : 0;
+    }
+
+    /**
+     * @param decoded {@link #decode(byte[])}的结果
+     * @return 过期时间戳, 没有过期头时为0
+     */
+    static long expireAtOf(byte[] decoded) {
+        return headerSize(decoded) == EXPIRY_HEADER_SIZE ? ByteBuffer.wrap(decoded, 13, 8).getLong() : 0;
+    }
+
+    /**
+     * @param decoded {@link #decode(byte[])}的结果
+     * @return 去掉头后的Kryo字节
+     */
+    static byte[] payloadOf(byte[] decoded) {
+        int size = headerSize(decoded);
+        return size > 0 ? Arrays.copyOfRange(decoded, size, decoded.length) : decoded;
+    }
+
+    /**
+     * @param decoded {@link #decode(byte[])}的结果
+     * @return Kryo字节的起始位置, 用于不复制地反序列化
+     */
+    static int payloadOffset(byte[] decoded) {
+        return headerSize(decoded);
+    }
+
+    /**
+     * @return 头的长度, 没有头时为0
+     */
+    private static int headerSize(byte[] decoded) {
+        if (decoded.length > VERSION_HEADER_SIZE && decoded[0] == VERSION_HEADER) return VERSION_HEADER_SIZE;
+        if (decoded.length > EXPIRY_HEADER_SIZE && decoded[0] == EXPIRY_HEADER) return EXPIRY_HEADER_SIZE;
+        return 0;
+    }
+
+    RedisValueMode getMode() {
+        return mode;
+    }
+
+    boolean isCompatibleRead() {
+        return compatibleRead;
+    }
+
+    boolean isVersioned() {
+        return versioned;
+    }
+
+    static boolean isBase64(byte[] stored) {
+        if (stored.length == 0) return false;
+        byte b = stored[0];
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '+' || b == '/';
+    }
+}
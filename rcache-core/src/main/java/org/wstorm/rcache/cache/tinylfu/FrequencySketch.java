@@ -0,0 +1,106 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+/**
+ * TinyLFU的访问频率估算器, 4-bit的Count-Min Sketch
+ * <p>
+ * 每个long存放16个4-bit计数器, 每个元素在4行中各取一个计数器, 频率取最小值.
+ * 累计增加次数达到采样数(10倍容量)后所有计数器减半, 使频率随时间衰减.
+ * 非线程安全, 由调用方在淘汰锁内访问.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param maximumSize 缓存的最大容量, 决定计数器数量
+     */
+    FrequencySketch(long maximumSize) {
+        int capacity = (int) Math.max(1, Math.min(maximumSize, 1 << 30));
+        table = new long[ceilingPowerOfTwo(capacity)];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * Math.max(1, maximumSize), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param e 元素
+     * @return 估算的访问频率, 最大15
+     */
+    int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 元素访问频率加1, 计数器已饱和时不再增加
+     *
+     * @param e 元素
+     */
+    void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
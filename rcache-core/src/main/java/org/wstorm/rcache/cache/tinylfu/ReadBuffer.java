@@ -0,0 +1,89 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 有损的分段读缓冲区, 记录读命中以便在淘汰锁内批量重放访问顺序
+ * <p>
+ * 读线程按线程id散列到不同分段, 只做一次CAS写入, 分段已满或CAS竞争失败时直接丢弃该次记录,
+ * 读路径上不加锁. 丢失少量访问记录只会轻微影响淘汰精度.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+final class ReadBuffer<E> {
+
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = BUFFER_SIZE / 2;
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int count = 1 << -Integer.numberOfLeadingZeros(Math.max(1, Runtime.getRuntime().availableProcessors()) - 1);
+        stripes = new Stripe[Math.max(2, count)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeMask = stripes.length - 1;
+    }
+
+    /**
+     * 记录一次读
+     *
+     * @param e 被读取的元素
+     * @return 是否应尽快重放缓冲区
+     */
+    boolean offer(E e) {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & stripeMask].offer(e);
+    }
+
+    /**
+     * 取出所有已记录的读, 只能在淘汰锁内调用
+     *
+     * @param consumer 消费者
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static final class Stripe<E> {
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+        private volatile long readCounter;
+
+        boolean offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long size = tail - head;
+            if (size >= BUFFER_SIZE) return true;
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & BUFFER_MASK), e);
+                return size + 1 >= DRAIN_THRESHOLD;
+            }
+            return false;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & BUFFER_MASK);
+                E e = buffer.get(index);
+                if (e == null) break; // 写入方已占位但还没发布
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+            }
+            readCounter = head;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+import org.wstorm.rcache.serializer.Serializer;
+
+/**
+ * 以Kryo序列化后的字节数加上KEY长度估算对象的内存占用
+ * <p>
+ * 堆内对象的实际占用通常大于序列化长度, 配置maximumWeight时应预留余量.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月12日
+ */
+public class SerializedSizeWeigher implements Weigher {
+
+    private final Serializer serializer;
+
+    public SerializedSizeWeigher() {
+        this(new KryoPoolSerializer());
+    }
+
+    public SerializedSizeWeigher(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public int weigh(String key, Object value) {
+        try {
+            return serializer.serialize(value, (bytes, offset, length) -> length) + key.length();
+        } catch (Exception e) {
+            throw new CacheException("weigh| key=" + key, e);
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.CacheUtils;
+import org.wstorm.rcache.utils.CollectionsUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * W-TinyLFU淘汰策略的进程内缓存
+ * <p>
+ * 数据存放在ConcurrentHashMap中, 读命中不加锁, 只把访问记录写入有损的{@link ReadBuffer},
+ * 由写操作或缓冲区满时在淘汰锁内批量重放. 写入、删除和淘汰在淘汰锁内完成.
+ * <p>
+ * 淘汰策略: 新对象先进入容量约1%的window LRU, 被挤出window的候选对象与probation队头的受害者
+ * 比较{@link FrequencySketch}估算的访问频率, 频率更高者留下; probation中再次被访问的对象晋升到
+ * 占主区80%的protected区.
+ * <p>
+ * 容量按权重计算, 默认每个对象权重为1即按个数限制; 配置了{@link Weigher}时按估算的字节数限制,
+ * 各队列的容量比例同样按权重计算.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+class TinyLfuCache implements Cache {
+
+    private static final double WINDOW_PERCENT = 0.01d;
+    private static final double PROTECTED_PERCENT = 0.80d;
+    /**
+     * 候选对象频率不低于该值时以1/128概率随机准入, 避免受害者被刻意刷高频率后无法淘汰
+     */
+    private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+    private final String region;
+    private final CacheExpiredListener listener;
+    private final long maximum;
+    private final Weigher weigher;
+    private final long timeToLive;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, Node> data;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<Node> readBuffer = new ReadBuffer<>();
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protect = new AccessOrderDeque();
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    private volatile boolean alive = true;
+
+    /**
+     * @param region      缓存区域
+     * @param maximum    最大权重, weigher为{@link Weigher#SINGLETON}时即最大对象个数
+     * @param weigher    权重计算器
+     * @param timeToLive CacheConfig未指定过期时间时的默认存活时间, 单位秒, 0表示永不过期
+     * @param listener   过期监听器
+     * @param clock      毫秒时钟
+     */
+    TinyLfuCache(String region, long maximum, Weigher weigher, long timeToLive, CacheExpiredListener listener, LongSupplier clock) {
+        if (maximum <= 0) throw new IllegalArgumentException("maximum must be positive| region=" + region);
+        this.region = region;
+        this.maximum = maximum;
+        this.weigher = weigher;
+        this.timeToLive = timeToLive;
+        this.listener = listener;
+        this.clock = clock;
+        //按权重限制时无法预知对象个数, 以平均1KB估算sketch容量
+        long expectedSize = weigher == Weigher.SINGLETON ? maximum : Math.max(1, maximum >>> 10);
+        this.data = new ConcurrentHashMap<>((int) Math.min(expectedSize, 1 << 16));
+        this.sketch = new FrequencySketch(expectedSize);
+        this.windowMaximum = Math.max(1, Math.round(maximum * WINDOW_PERCENT));
+        this.protectedMaximum = Math.round((maximum - windowMaximum) * PROTECTED_PERCENT);
+    }
+
+    @Override
+    public List keys() throws CacheException {
+        checkAlive("keys");
+        long now = clock.getAsLong();
+        List<String> keys = Lists.newArrayListWithCapacity(data.size());
+        data.forEach((key, node) -> {
+            if (!node.isExpired(now)) keys.add(key);
+        });
+        return keys;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public <T extends RObject<String>> Map<String, T> getAll(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker)
+            throws CacheException {
+        if (CollectionsUtils.isEmpty(ids)) return new HashMap<>();
+        checkAlive("getAll");
+
+        Map<String, T> map = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String id : ids) {
+            Object value = getIfPresent(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+            if (value != null) map.put(id, (T) value);
+        }
+        return map;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public <T extends RObject<String>> T get(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id == null) return null;
+        checkAlive("get");
+        return (T) getIfPresent(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) throws CacheException {
+        if (id == null) return null;
+        checkAlive("get");
+        Node node = getNode(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+        return node == null ? null : new CacheEntry<>((T) node.value, 0, node.expireAt);
+    }
+
+    @Override
+    public <T extends RObject<String>> Map<String, CacheEntry<T>> getAllEntries(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker)
+            throws CacheException {
+        if (CollectionsUtils.isEmpty(ids)) return new HashMap<>();
+        Map<String, CacheEntry<T>> map = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String id : ids) {
+            CacheEntry<T> entry = getEntry(cacheConfig, id, dataPicker);
+            if (entry != null) map.put(id, entry);
+        }
+        return map;
+    }
+
+    @Override
+    public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) throws CacheException {
+        checkAlive("put");
+        long expireAt = expireAt(cacheConfig, clock.getAsLong());
+        String key = cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id;
+        int weight = weigh(key, value);
+        evictionLock.lock();
+        try {
+            putLocked(key, value, weight, expireAt);
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public <T extends RObject<String>> void putAll(CacheConfig cacheConfig, Map<String, T> objectMap) throws CacheException {
+        checkAlive("putAll");
+        if (objectMap.isEmpty()) return;
+        long expireAt = expireAt(cacheConfig, clock.getAsLong());
+        Map<String, T> keyed = Maps.newHashMapWithExpectedSize(objectMap.size());
+        Map<String, Integer> weights = Maps.newHashMapWithExpectedSize(objectMap.size());
+        objectMap.forEach((id, value) -> {
+            String key = cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id;
+            keyed.put(key, value);
+            weights.put(key, weigh(key, value));
+        });
+        evictionLock.lock();
+        try {
+            keyed.forEach((key, value) -> putLocked(key, value, weights.get(key), expireAt));
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void evict(CacheConfig cacheConfig, String id) throws CacheException {
+        checkAlive("evict");
+        evictionLock.lock();
+        try {
+            removeLocked(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void evict(CacheConfig cacheConfig, List<String> ids) throws CacheException {
+        checkAlive("evict-All");
+        if (CollectionsUtils.isEmpty(ids)) return;
+        evictionLock.lock();
+        try {
+            for (String id : ids) {
+                removeLocked(cacheConfig != null ? CacheUtils.genCacheKey(cacheConfig, id) : id);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 清理所有已过期的对象并通知监听器, 由provider定时调用
+     */
+    void cleanUp() {
+        if (!alive) return;
+        long now = clock.getAsLong();
+        List<String> expired = Lists.newArrayList();
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            for (Node node : data.values()) {
+                if (node.isExpired(now) && data.remove(node.key, node)) {
+                    unlink(node);
+                    expired.add(node.key);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        expired.forEach(this::notifyExpired);
+    }
+
+    /**
+     * 清空数据, 不通知过期监听器
+     */
+    @Override
+    public void clear() throws CacheException {
+        checkAlive("clear");
+        clearAll();
+    }
+
+    /**
+     * 停止服务并清空数据, 之后的任何操作都会抛出CacheException
+     */
+    void shutdown() {
+        alive = false;
+        clearAll();
+    }
+
+    private void clearAll() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protect.clear();
+            weightedSize = windowWeight = protectedWeight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private Object getIfPresent(String key) {
+        Node node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    private Node getNode(String key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (node.isExpired(clock.getAsLong())) {
+            missCount.increment();
+            expire(node);
+            return null;
+        }
+        hitCount.increment();
+        if (readBuffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node;
+    }
+
+    private void expire(Node node) {
+        boolean removed;
+        evictionLock.lock();
+        try {
+            removed = data.remove(node.key, node);
+            if (removed) unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+        if (removed) notifyExpired(node.key);
+    }
+
+    private void notifyExpired(String key) {
+        expirationCount.increment();
+        if (listener != null) listener.notifyElementExpired(region, key);
+    }
+
+    private int weigh(String key, Object value) {
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) throw new CacheException("put| key=" + key, new IllegalArgumentException("negative weight " + weight));
+        return weight;
+    }
+
+    private long expireAt(CacheConfig cacheConfig, long now) {
+        long ttl = cacheConfig != null && cacheConfig.expiredTime() > 0 ? cacheConfig.expiredTime() : timeToLive;
+        return ttl > 0 ? now + ttl * 1000L : 0L;
+    }
+
+    private void putLocked(String key, Object value, int weight, long expireAt) {
+        Node node = data.get(key);
+        if (node != null) {
+            int delta = weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+            node.expireAt = expireAt;
+            weightedSize += delta;
+            if (node.queue == Node.WINDOW) windowWeight += delta;
+            else if (node.queue == Node.PROTECTED) protectedWeight += delta;
+            onAccess(node);
+        } else {
+            node = new Node(key, value, weight, expireAt);
+            data.put(key, node);
+            sketch.increment(key);
+            node.queue = Node.WINDOW;
+            window.addLast(node);
+            windowWeight += weight;
+            weightedSize += weight;
+        }
+    }
+
+    private void removeLocked(String key) {
+        Node node = data.remove(key);
+        if (node != null) unlink(node);
+    }
+
+    private void maintenance() {
+        drainReadBuffer();
+        evict();
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(this::onAccess);
+    }
+
+    private void onAccess(Node node) {
+        if (node.queue == Node.DEAD) return;
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case Node.WINDOW:
+                window.moveToBack(node);
+                break;
+            case Node.PROBATION:
+                probation.remove(node);
+                node.queue = Node.PROTECTED;
+                protect.addLast(node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaximum) {
+                    Node demoted = protect.pollFirst();
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = Node.PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protect.moveToBack(node);
+        }
+    }
+
+    private void unlink(Node node) {
+        switch (node.queue) {
+            case Node.WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case Node.PROBATION:
+                probation.remove(node);
+                break;
+            case Node.PROTECTED:
+                protect.remove(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                return;
+        }
+        weightedSize -= node.weight;
+        node.queue = Node.DEAD;
+    }
+
+    /**
+     * 把超出window容量的对象移入probation队尾作为候选, 再让候选与probation队头的受害者逐一比较频率,
+     * 直到总权重不超过maximum
+     */
+    private void evict() {
+        Node candidate = null;
+        while (windowWeight > windowMaximum) {
+            Node node = window.pollFirst();
+            windowWeight -= node.weight;
+            node.queue = Node.PROBATION;
+            probation.addLast(node);
+            if (candidate == null) candidate = node;
+        }
+
+        Node victim = probation.peekFirst();
+        while (weightedSize > maximum) {
+            if (victim == null) {
+                Node node = protect.peekFirst() != null ? protect.peekFirst() : window.peekFirst();
+                if (node == null) return;
+                evictNode(node);
+                continue;
+            }
+            Node evicted;
+            if (candidate == null) {
+                evicted = victim;
+                victim = victim.next;
+            } else if (candidate == victim) {
+                evicted = candidate;
+                candidate = candidate.next;
+                victim = victim.next;
+            } else if (admit(candidate.key, victim.key)) {
+                evicted = victim;
+                victim = victim.next;
+                candidate = candidate.next;
+            } else {
+                evicted = candidate;
+                candidate = candidate.next;
+            }
+            evictNode(evicted);
+        }
+    }
+
+    private boolean admit(String candidateKey, String victimKey) {
+        int candidateFreq = sketch.frequency(candidateKey);
+        int victimFreq = sketch.frequency(victimKey);
+        if (candidateFreq > victimFreq) return true;
+        if (candidateFreq < ADMIT_HASHDOS_THRESHOLD) return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evictNode(Node node) {
+        if (data.remove(node.key, node)) {
+            evictionCount.increment();
+            evictionWeight.add(node.weight);
+        }
+        unlink(node);
+    }
+
+    private void checkAlive(String operation) {
+        if (!alive) throw new CacheException(operation, new IllegalStateException("region " + region + " is not alive"));
+    }
+
+    String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return 最大权重
+     */
+    long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @return 当前总权重
+     */
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return 当前对象个数(包括尚未清理的已过期对象)
+     */
+    long estimatedSize() {
+        return data.size();
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return 被淘汰对象的权重之和
+     */
+    long getEvictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /**
+     * @return 命中率, 没有访问时为0
+     */
+    double hitRatio() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+        return requests == 0 ? 0d : (double) hits / requests;
+    }
+
+    /**
+     * @return 当前统计快照
+     */
+    TinyLfuRegionStats stats() {
+        return new TinyLfuRegionStats(region, maximum, weightedSize(), estimatedSize(), getHitCount(), getMissCount(),
+                getEvictionCount(), getEvictionWeight());
+    }
+
+    @SuppressWarnings({"all"})
+    public Object clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException();
+    }
+
+    /**
+     * 缓存对象节点, 除value与expireAt外的字段只在淘汰锁内访问
+     */
+    static final class Node {
+        static final int WINDOW = 0;
+        static final int PROBATION = 1;
+        static final int PROTECTED = 2;
+        static final int DEAD = -1;
+
+        final String key;
+        volatile Object value;
+        volatile long expireAt;
+        int weight;
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(String key, Object value, int weight, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            long at = expireAt;
+            return at > 0 && at <= now;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表, 队头最久未访问
+     */
+    static final class AccessOrderDeque {
+        private Node head;
+        private Node tail;
+
+        Node peekFirst() {
+            return head;
+        }
+
+        Node pollFirst() {
+            Node node = head;
+            if (node != null) remove(node);
+            return node;
+        }
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) head = node;
+            else tail.next = node;
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) head = node.next;
+            else node.prev.next = node.next;
+            if (node.next == null) tail = node.prev;
+            else node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+
+        void moveToBack(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = tail = null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.RegionProperties;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * W-TinyLFU进程内缓存提供者, 用作L1缓存
+ * <p>
+ * 配置文件为classpath下的properties文件(见{@link RegionProperties}), 可配置项:
+ * <ul>
+ * <li>maximumSize: region最大对象个数, 默认10000</li>
+ * <li>maximumWeight: region最大估算字节数, 支持k/m/g后缀, 配置后代替maximumSize按权重限制容量,
+ * 权重由{@link #registerWeigher(String, Weigher)}注册的计算器给出, 未注册时使用{@link SerializedSizeWeigher}</li>
+ * <li>timeToLiveSeconds: CacheConfig.expiredTime()未指定时的存活时间, 默认0(永不过期)</li>
+ * <li>expiryCheckIntervalSeconds: 只能配在default下, 过期清理的周期, 默认10秒</li>
+ * </ul>
+ * 配置文件为null时全部使用默认值.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+public class TinyLfuCacheProvider implements CacheProvider {
+
+    private final static Logger log = LoggerFactory.getLogger(TinyLfuCacheProvider.class);
+
+    static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+    static final long DEFAULT_EXPIRY_CHECK_INTERVAL = 10L;
+    private static final Weigher DEFAULT_WEIGHER = new SerializedSizeWeigher();
+
+    private RegionProperties properties;
+    private ConcurrentHashMap<String, TinyLfuCache> _CacheManager;
+    private ScheduledExecutorService cleaner;
+    private final ConcurrentHashMap<String, Weigher> weighers = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return CacheProviderType.tinylfu.name();
+    }
+
+    @Override
+    public TinyLfuCache buildCache(String regionName, CacheExpiredListener listener) throws CacheException {
+        if (_CacheManager == null) throw new CacheException("TinyLfuCacheProvider is not started");
+        TinyLfuCache cache;
+        if ((cache = _CacheManager.get(regionName)) == null) {
+            synchronized (this) {
+                if ((cache = _CacheManager.get(regionName)) == null) {
+                    long maximumWeight = properties.getLong(regionName, "maximumWeight", 0L);
+                    long timeToLive = properties.getLong(regionName, "timeToLiveSeconds", 0L);
+                    long maximum;
+                    Weigher weigher;
+                    if (maximumWeight > 0) {
+                        maximum = maximumWeight;
+                        weigher = weighers.getOrDefault(regionName, DEFAULT_WEIGHER);
+                    } else {
+                        maximum = properties.getLong(regionName, "maximumSize", DEFAULT_MAXIMUM_SIZE);
+                        weigher = Weigher.SINGLETON;
+                        if (weighers.containsKey(regionName))
+                            log.warn("maximumWeight of region " + regionName + " is not configured, registered weigher is ignored");
+                    }
+                    cache = new TinyLfuCache(regionName, maximum, weigher, timeToLive, listener, System::currentTimeMillis);
+                    _CacheManager.put(regionName, cache);
+                    log.debug("started TinyLFU region: " + regionName + ", maximum=" + maximum
+                            + (maximumWeight > 0 ? " bytes" : " elements"));
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 为配置了maximumWeight的region注册权重计算器, 只对之后构建的region生效
+     *
+     * @param regionName 缓存区域
+     * @param weigher    权重计算器
+     */
+    public void registerWeigher(String regionName, Weigher weigher) {
+        weighers.put(regionName, weigher);
+    }
+
+    /**
+     * @return 各region的统计, 包括当前权重与按权重淘汰的数量, 未启动时为空
+     */
+    public List<TinyLfuRegionStats> stats() {
+        ConcurrentHashMap<String, TinyLfuCache> caches = _CacheManager;
+        if (caches == null) return Collections.emptyList();
+        return caches.values().stream().map(TinyLfuCache::stats).collect(Collectors.toList());
+    }
+
+    @Override
+    public void start(String cacheConfigFile) throws CacheException {
+        if (_CacheManager != null) {
+            log.warn("Attempt to restart an already started TinyLfuCacheProvider. Using previously created TinyLfuCacheProvider.");
+            return;
+        }
+        properties = RegionProperties.load(cacheConfigFile);
+        _CacheManager = new ConcurrentHashMap<>();
+
+        long interval = properties.getLong(null, "expiryCheckIntervalSeconds", DEFAULT_EXPIRY_CHECK_INTERVAL);
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rcache-tinylfu-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        ConcurrentHashMap<String, TinyLfuCache> caches = _CacheManager;
+        cleaner.scheduleWithFixedDelay(() -> caches.values().forEach(cache -> {
+            try {
+                cache.cleanUp();
+            } catch (Exception e) {
+                log.error("clean up expired elements| region=" + cache.getRegion(), e);
+            }
+        }), interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (_CacheManager != null) {
+            cleaner.shutdownNow();
+            _CacheManager.values().forEach(TinyLfuCache::shutdown);
+            _CacheManager = null;
+            cleaner = null;
+        }
+    }
+}
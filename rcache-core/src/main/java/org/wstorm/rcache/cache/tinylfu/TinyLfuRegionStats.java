@@ -0,0 +1,80 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+/**
+ * 一个TinyLFU缓存region的统计快照
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月12日
+ */
+public final class TinyLfuRegionStats {
+
+    private final String region;
+    private final long maximum;
+    private final long weightedSize;
+    private final long entries;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long evictionWeight;
+
+    TinyLfuRegionStats(String region, long maximum, long weightedSize, long entries, long hitCount, long missCount,
+                       long evictionCount, long evictionWeight) {
+        this.region = region;
+        this.maximum = maximum;
+        this.weightedSize = weightedSize;
+        this.entries = entries;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.evictionWeight = evictionWeight;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return 最大权重, 未配置weigher时为最大对象个数
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @return 当前总权重
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 被淘汰对象的权重之和
+     */
+    public long getEvictionWeight() {
+        return evictionWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "TinyLfuRegionStats{region=" + region + ", maximum=" + maximum + ", weightedSize=" + weightedSize
+                + ", entries=" + entries + ", hitCount=" + hitCount + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount + ", evictionWeight=" + evictionWeight + '}';
+    }
+}
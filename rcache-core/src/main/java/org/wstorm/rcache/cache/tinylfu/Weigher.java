@@ -0,0 +1,26 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+/**
+ * 缓存对象的权重计算器, 用于按估算的内存占用而不是对象个数限制region容量
+ * <p>
+ * 在写入缓存时调用, 权重在对象被替换前保持不变. 实现必须是线程安全的.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月12日
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * 每个对象权重为1, 即按个数限制容量
+     */
+    Weigher SINGLETON = (key, value) -> 1;
+
+    /**
+     * @param key   缓存KEY
+     * @param value 缓存对象
+     * @return 非负的权重
+     */
+    int weigh(String key, Object value);
+}
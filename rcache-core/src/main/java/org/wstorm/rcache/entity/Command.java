@@ -18,6 +18,14 @@ public class Command implements Serializable {
     private String region;
     private Object key;
     private String hostId;
+    /**
+     * 发布者在该region上的序号, 0表示未知. transient以保持旧的Kryo格式不变, 只由紧凑格式传输
+     */
+    private transient long sequence;
+    /**
+     * 清除后新值的版本号, 0表示未知. 同样只由紧凑格式传输
+     */
+    private transient long version;
 
     public Command(String hostId, byte operator, String region, Object key) {
         super();
@@ -63,4 +71,20 @@ public class Command implements Serializable {
         this.hostId = hostId;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
 }
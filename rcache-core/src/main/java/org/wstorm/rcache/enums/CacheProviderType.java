@@ -8,5 +8,5 @@ package org.wstorm.rcache.enums;
  * @created 2016年05月06日
  */
 public enum CacheProviderType {
-    ehcache, memcached, redis, none
+    ehcache, tinylfu, offheap, memcached, redis, none
 }
\ No newline at end of file
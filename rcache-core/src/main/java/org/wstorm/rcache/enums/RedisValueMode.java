@@ -0,0 +1,16 @@
+package org.wstorm.rcache.enums;
+
+/**
+ * Redis中缓存值的存储格式
+ * <p>
+ * base64: 早期格式, Kryo序列化后的字节再做Base64编码存储
+ * <br>
+ * binary: Kryo序列化后的字节直接存储, 省去约33%的空间和编解码开销
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月06日
+ */
+public enum RedisValueMode {
+    base64, binary
+}
@@ -0,0 +1,174 @@
+package org.wstorm.rcache.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.cache.BulkDataPicker;
+import org.wstorm.rcache.cache.DataPicker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存指标, 按region分别记录各级缓存的命中、回源、清除、广播与延迟
+ * <p>
+ * 由{@link org.wstorm.rcache.CacheManager}持有并在各级缓存的读写中记录, 记录方无锁, 可以在生产环境常开.
+ * 通过{@link #report(MetricsReporter)}把快照交给{@link MetricsReporter}, 或用{@link #schedule(MetricsReporter, long, TimeUnit)}定期输出.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class CacheMetrics {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ConcurrentHashMap<String, RegionMetrics> regions = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @param region 缓存区域
+     * @return region的指标, 首次访问时创建
+     */
+    public RegionMetrics region(String region) {
+        RegionMetrics metrics = regions.get(region);
+        return metrics != null ? metrics : regions.computeIfAbsent(region, RegionMetrics::new);
+    }
+
+    /**
+     * @return 各region的快照, 同时清零各region的延迟分布
+     */
+    public List<RegionSnapshot> snapshot() {
+        List<RegionSnapshot> snapshots = new ArrayList<>(regions.size());
+        for (RegionMetrics metrics : regions.values()) snapshots.add(metrics.snapshot());
+        return snapshots;
+    }
+
+    /**
+     * 取快照并交给reporter
+     *
+     * @param reporter 指标输出
+     */
+    public void report(MetricsReporter reporter) {
+        reporter.report(snapshot());
+    }
+
+    /**
+     * 定期取快照并交给reporter, 多个reporter应组合成一个, 否则各自只能拿到部分延迟分布
+     *
+     * @param reporter 指标输出
+     * @param period   周期
+     * @param unit     周期的单位
+     */
+    public synchronized void schedule(MetricsReporter reporter, long period, TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rcache-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                report(reporter);
+            } catch (Exception e) {
+                log.warn("report metrics failed| reporter={}| {}", reporter, e.getLocalizedMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * 停止定期输出
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 包装DataPicker, 记录回源的对象数、失败数与耗时
+     *
+     * @param region     缓存区域
+     * @param dataPicker 数据提取器, 为null时返回null
+     * @return 记录指标的DataPicker, 原提取器实现{@link BulkDataPicker}时返回的也实现; 每次包装单独统计回源的对象数, 见{@link #pickedCount(DataPicker)}
+     */
+    public <T extends RObject<String>> DataPicker<String, T> metered(String region, DataPicker<String, T> dataPicker) {
+        if (dataPicker == null || dataPicker instanceof MeteredDataPicker) return dataPicker;
+        return dataPicker instanceof BulkDataPicker
+                ? new MeteredBulkDataPicker<>(region(region), (BulkDataPicker<String, T>) dataPicker)
+                : new MeteredDataPicker<>(region(region), dataPicker);
+    }
+
+    /**
+     * @param dataPicker {@link #metered(String, DataPicker)}返回的提取器
+     * @return 经该提取器回源得到的对象数, 不是记录指标的提取器时为0
+     */
+    public static long pickedCount(DataPicker<String, ?> dataPicker) {
+        return dataPicker instanceof MeteredDataPicker ? ((MeteredDataPicker<?>) dataPicker).picked.sum() : 0;
+    }
+
+    private static class MeteredDataPicker<T extends RObject<String>> implements DataPicker<String, T> {
+        final RegionMetrics metrics;
+        final LongAdder picked = new LongAdder();
+        private final DataPicker<String, T> delegate;
+
+        MeteredDataPicker(RegionMetrics metrics, DataPicker<String, T> delegate) {
+            this.metrics = metrics;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T pickup(String id) {
+            long start = System.nanoTime();
+            try {
+                T value = delegate.pickup(id);
+                metrics.loaded(1);
+                if (value != null) picked.increment();
+                return value;
+            } catch (RuntimeException e) {
+                metrics.loadFailed(1);
+                throw e;
+            } finally {
+                metrics.record(RegionMetrics.Timer.PICKUP, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public T makeEmptyData() {
+            return delegate.makeEmptyData();
+        }
+    }
+
+    private static final class MeteredBulkDataPicker<T extends RObject<String>> extends MeteredDataPicker<T> implements BulkDataPicker<String, T> {
+        private final BulkDataPicker<String, T> delegate;
+
+        MeteredBulkDataPicker(RegionMetrics metrics, BulkDataPicker<String, T> delegate) {
+            super(metrics, delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<String, T> pickupAll(Collection<String> ids) {
+            long start = System.nanoTime();
+            try {
+                Map<String, T> values = delegate.pickupAll(ids);
+                metrics.loaded(ids.size());
+                if (values != null) picked.add(values.size());
+                return values;
+            } catch (RuntimeException e) {
+                metrics.loadFailed(ids.size());
+                throw e;
+            } finally {
+                metrics.record(RegionMetrics.Timer.PICKUP, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.wstorm.rcache.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以JMX输出指标, 每个region注册一个{@link RegionMetricsMXBean},
+ * ObjectName为 {domain}:type=CacheMetrics,region="{region}"
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class JmxMetricsReporter implements MetricsReporter {
+
+    /**
+     * 默认的JMX域
+     */
+    public static final String DEFAULT_DOMAIN = "org.wstorm.rcache";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final MBeanServer server;
+    private final String domain;
+    private final Map<String, RegionBean> beans = new ConcurrentHashMap<>();
+
+    public JmxMetricsReporter() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    /**
+     * @param server 注册的MBeanServer
+     * @param domain JMX域, 同一进程中有多个CacheManager时应各不相同
+     */
+    public JmxMetricsReporter(MBeanServer server, String domain) {
+        this.server = server;
+        this.domain = domain;
+    }
+
+    @Override
+    public void report(List<RegionSnapshot> snapshots) {
+        for (RegionSnapshot snapshot : snapshots) {
+            RegionBean bean = beans.get(snapshot.getRegion());
+            if (bean != null) bean.snapshot = snapshot;
+            else register(snapshot);
+        }
+    }
+
+    private synchronized void register(RegionSnapshot snapshot) {
+        String region = snapshot.getRegion();
+        RegionBean bean = beans.get(region);
+        if (bean != null) {
+            bean.snapshot = snapshot;
+            return;
+        }
+        try {
+            bean = new RegionBean(snapshot);
+            server.registerMBean(bean, objectName(region));
+            beans.put(region, bean);
+        } catch (JMException e) {
+            log.warn("register metrics mbean failed| region={}| {}", region, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @param region 缓存区域
+     * @return region对应的ObjectName
+     */
+    public ObjectName objectName(String region) throws JMException {
+        return new ObjectName(domain + ":type=CacheMetrics,region=" + ObjectName.quote(region));
+    }
+
+    /**
+     * 注销所有已注册的MBean
+     */
+    public synchronized void close() {
+        for (String region : beans.keySet()) {
+            try {
+                server.unregisterMBean(objectName(region));
+            } catch (JMException e) {
+                log.warn("unregister metrics mbean failed| region={}| {}", region, e.getLocalizedMessage());
+            }
+        }
+        beans.clear();
+    }
+
+    private static final class RegionBean implements RegionMetricsMXBean {
+        private volatile RegionSnapshot snapshot;
+
+        RegionBean(RegionSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public long getL1Hits() {
+            return snapshot.getHits(1);
+        }
+
+        @Override
+        public long getL1Misses() {
+            return snapshot.getMisses(1);
+        }
+
+        @Override
+        public double getL1HitRate() {
+            return snapshot.getHitRate(1);
+        }
+
+        @Override
+        public long getL1Errors() {
+            return snapshot.getErrors(1);
+        }
+
+        @Override
+        public long getL1Evictions() {
+            return snapshot.getEvictions(1);
+        }
+
+        @Override
+        public long getL2Hits() {
+            return snapshot.getHits(2);
+        }
+
+        @Override
+        public long getL2Misses() {
+            return snapshot.getMisses(2);
+        }
+
+        @Override
+        public double getL2HitRate() {
+            return snapshot.getHitRate(2);
+        }
+
+        @Override
+        public long getL2Errors() {
+            return snapshot.getErrors(2);
+        }
+
+        @Override
+        public long getL2Evictions() {
+            return snapshot.getEvictions(2);
+        }
+
+        @Override
+        public long getLoads() {
+            return snapshot.getLoads();
+        }
+
+        @Override
+        public long getLoadFailures() {
+            return snapshot.getLoadFailures();
+        }
+
+        @Override
+        public long getPublished() {
+            return snapshot.getPublished();
+        }
+
+        @Override
+        public long getReceived() {
+            return snapshot.getReceived();
+        }
+
+        @Override
+        public LatencySnapshot getL1GetLatency() {
+            return snapshot.getLatency(RegionMetrics.Timer.L1_GET);
+        }
+
+        @Override
+        public LatencySnapshot getL2GetLatency() {
+            return snapshot.getLatency(RegionMetrics.Timer.L2_GET);
+        }
+
+        @Override
+        public LatencySnapshot getL2GetAllLatency() {
+            return snapshot.getLatency(RegionMetrics.Timer.L2_GET_ALL);
+        }
+
+        @Override
+        public LatencySnapshot getPickupLatency() {
+            return snapshot.getLatency(RegionMetrics.Timer.PICKUP);
+        }
+
+        @Override
+        public LatencySnapshot getPublishLatency() {
+            return snapshot.getLatency(RegionMetrics.Timer.PUBLISH);
+        }
+    }
+}
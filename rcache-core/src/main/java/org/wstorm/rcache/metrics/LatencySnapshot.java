@@ -0,0 +1,77 @@
+package org.wstorm.rcache.metrics;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * 一段时间内的延迟分布, 单位纳秒
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class LatencySnapshot {
+
+    static final LatencySnapshot EMPTY = new LatencySnapshot(0, 0, 0, 0, 0, 0, 0);
+
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    static LatencySnapshot of(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) return EMPTY;
+        return new LatencySnapshot(histogram.getTotalCount(), histogram.getMean(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+
+    /**
+     * @return 记录的次数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                count, mean / 1000, p50 / 1000.0, p99 / 1000.0, p999 / 1000.0, max / 1000.0);
+    }
+}
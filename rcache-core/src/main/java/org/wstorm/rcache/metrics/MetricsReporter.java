@@ -0,0 +1,21 @@
+package org.wstorm.rcache.metrics;
+
+import java.util.List;
+
+/**
+ * 指标输出接口, 接收{@link CacheMetrics}的快照, 可以输出到JMX、日志或其他监控系统
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ * @see JmxMetricsReporter
+ * @see TextMetricsReporter
+ */
+public interface MetricsReporter {
+
+    /**
+     * @param snapshots 各region的快照
+     */
+    void report(List<RegionSnapshot> snapshots);
+
+}
@@ -0,0 +1,140 @@
+package org.wstorm.rcache.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个region的指标
+ * <p>
+ * 计数器使用{@link LongAdder}, 延迟使用HdrHistogram的{@link Recorder}, 记录方无锁, 只有取快照时加锁.
+ * 计数器从创建起累计; 延迟分布在每次{@link #snapshot()}时取出并清零, 快照中是上次快照以来的分布.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class RegionMetrics {
+
+    /**
+     * 记录延迟的操作
+     */
+    public enum Timer {
+        L1_GET, L2_GET, L2_GET_ALL, PICKUP, PUBLISH
+    }
+
+    /**
+     * 延迟的有效数字位数, 2位时误差1%, 每个Recorder约数十KB
+     */
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final String region;
+    /**
+     * 按缓存级别(1, 2)计数, 下标0不用
+     */
+    private final LongAdder[] hits = adders(3);
+    private final LongAdder[] misses = adders(3);
+    private final LongAdder[] errors = adders(3);
+    private final LongAdder[] evictions = adders(3);
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final Recorder[] recorders = new Recorder[Timer.values().length];
+    private final Histogram[] intervals = new Histogram[Timer.values().length];
+
+    RegionMetrics(String region) {
+        this.region = region;
+        for (int i = 0; i < recorders.length; i++) recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static int level(int level) {
+        return level == 1 ? 1 : 2;
+    }
+
+    public void hit(int level, long count) {
+        if (count > 0) hits[level(level)].add(count);
+    }
+
+    public void miss(int level, long count) {
+        if (count > 0) misses[level(level)].add(count);
+    }
+
+    /**
+     * 缓存抛出异常, 由{@link org.wstorm.rcache.CacheManager}记录后屏蔽
+     */
+    public void error(int level) {
+        errors[level(level)].increment();
+    }
+
+    /**
+     * 主动清除或L1过期的对象数
+     */
+    public void evicted(int level, long count) {
+        if (count > 0) evictions[level(level)].add(count);
+    }
+
+    public void loaded(long count) {
+        loads.add(count);
+    }
+
+    public void loadFailed(long count) {
+        loadFailures.add(count);
+    }
+
+    /**
+     * 发出的清除广播消息数
+     */
+    public void published() {
+        published.increment();
+    }
+
+    /**
+     * 收到的清除广播消息数, 不含本节点自己的消息
+     */
+    public void received() {
+        received.increment();
+    }
+
+    /**
+     * @param timer 操作
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void record(Timer timer, long nanos) {
+        recorders[timer.ordinal()].recordValue(Math.max(0, nanos));
+    }
+
+    /**
+     * @return 当前计数与上次快照以来的延迟分布
+     */
+    public synchronized RegionSnapshot snapshot() {
+        Map<Timer, LatencySnapshot> latencies = new EnumMap<>(Timer.class);
+        for (Timer timer : Timer.values()) {
+            int i = timer.ordinal();
+            intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+            latencies.put(timer, LatencySnapshot.of(intervals[i]));
+        }
+        return new RegionSnapshot(region, System.currentTimeMillis(),
+                sums(hits), sums(misses), sums(errors), sums(evictions),
+                loads.sum(), loadFailures.sum(), published.sum(), received.sum(), latencies);
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) sums[i] = adders[i].sum();
+        return sums;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+}
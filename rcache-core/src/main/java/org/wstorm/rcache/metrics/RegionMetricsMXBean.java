@@ -0,0 +1,50 @@
+package org.wstorm.rcache.metrics;
+
+/**
+ * region指标的JMX接口, 属性取自最近一次输出的快照
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ * @see JmxMetricsReporter
+ */
+public interface RegionMetricsMXBean {
+
+    long getL1Hits();
+
+    long getL1Misses();
+
+    double getL1HitRate();
+
+    long getL1Errors();
+
+    long getL1Evictions();
+
+    long getL2Hits();
+
+    long getL2Misses();
+
+    double getL2HitRate();
+
+    long getL2Errors();
+
+    long getL2Evictions();
+
+    long getLoads();
+
+    long getLoadFailures();
+
+    long getPublished();
+
+    long getReceived();
+
+    LatencySnapshot getL1GetLatency();
+
+    LatencySnapshot getL2GetLatency();
+
+    LatencySnapshot getL2GetAllLatency();
+
+    LatencySnapshot getPickupLatency();
+
+    LatencySnapshot getPublishLatency();
+}
@@ -0,0 +1,109 @@
+package org.wstorm.rcache.metrics;
+
+import java.util.Map;
+
+/**
+ * region指标的快照, 由{@link RegionMetrics#snapshot()}生成
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class RegionSnapshot {
+
+    private final String region;
+    private final long timestamp;
+    private final long[] hits;
+    private final long[] misses;
+    private final long[] errors;
+    private final long[] evictions;
+    private final long loads;
+    private final long loadFailures;
+    private final long published;
+    private final long received;
+    private final Map<RegionMetrics.Timer, LatencySnapshot> latencies;
+
+    RegionSnapshot(String region, long timestamp, long[] hits, long[] misses, long[] errors, long[] evictions,
+                   long loads, long loadFailures, long published, long received,
+                   Map<RegionMetrics.Timer, LatencySnapshot> latencies) {
+        this.region = region;
+        this.timestamp = timestamp;
+        this.hits = hits;
+        this.misses = misses;
+        this.errors = errors;
+        this.evictions = evictions;
+        this.loads = loads;
+        this.loadFailures = loadFailures;
+        this.published = published;
+        this.received = received;
+        this.latencies = latencies;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return 快照时间(毫秒时间戳)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @param level 缓存级别, 1或2
+     */
+    public long getHits(int level) {
+        return hits[level == 1 ? 1 : 2];
+    }
+
+    public long getMisses(int level) {
+        return misses[level == 1 ? 1 : 2];
+    }
+
+    /**
+     * @return 命中率, 没有读取时为0
+     */
+    public double getHitRate(int level) {
+        long total = getHits(level) + getMisses(level);
+        return total == 0 ? 0 : (double) getHits(level) / total;
+    }
+
+    public long getErrors(int level) {
+        return errors[level == 1 ? 1 : 2];
+    }
+
+    public long getEvictions(int level) {
+        return evictions[level == 1 ? 1 : 2];
+    }
+
+    /**
+     * @return DataPicker回源的对象数
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return DataPicker抛出异常的对象数
+     */
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return 上次快照以来的延迟分布
+     */
+    public LatencySnapshot getLatency(RegionMetrics.Timer timer) {
+        LatencySnapshot latency = latencies.get(timer);
+        return latency == null ? LatencySnapshot.EMPTY : latency;
+    }
+}
@@ -0,0 +1,59 @@
+package org.wstorm.rcache.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 以纯文本输出指标, 默认写入日志
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public final class TextMetricsReporter implements MetricsReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextMetricsReporter.class);
+
+    private final Consumer<String> sink;
+
+    public TextMetricsReporter() {
+        this(LOG::info);
+    }
+
+    /**
+     * @param sink 接收格式化后的文本
+     */
+    public TextMetricsReporter(Consumer<String> sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void report(List<RegionSnapshot> snapshots) {
+        if (!snapshots.isEmpty()) sink.accept(format(snapshots));
+    }
+
+    /**
+     * @param snapshots 各region的快照
+     * @return 每个region一段, 先计数后延迟
+     */
+    public static String format(List<RegionSnapshot> snapshots) {
+        StringBuilder buf = new StringBuilder(512 * snapshots.size());
+        for (RegionSnapshot s : snapshots) {
+            buf.append("region=").append(s.getRegion()).append('\n');
+            for (int level = 1; level <= 2; level++) {
+                buf.append(String.format("  L%d hits=%d misses=%d hitRate=%.2f%% errors=%d evictions=%d%n", level,
+                        s.getHits(level), s.getMisses(level), s.getHitRate(level) * 100, s.getErrors(level), s.getEvictions(level)));
+            }
+            buf.append(String.format("  loads=%d loadFailures=%d published=%d received=%d%n",
+                    s.getLoads(), s.getLoadFailures(), s.getPublished(), s.getReceived()));
+            for (RegionMetrics.Timer timer : RegionMetrics.Timer.values()) {
+                LatencySnapshot latency = s.getLatency(timer);
+                if (latency.getCount() > 0) buf.append("  ").append(timer).append(' ').append(latency).append('\n');
+            }
+        }
+        return buf.toString();
+    }
+}
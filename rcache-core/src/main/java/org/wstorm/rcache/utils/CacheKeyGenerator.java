@@ -0,0 +1,104 @@
+package org.wstorm.rcache.utils;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预先拼好region与keyPrefix的缓存KEY生成器
+ * <p>
+ * 前缀"region:keyPrefix:"同时保存String与UTF-8字节, 生成String的KEY只分配结果本身, ASCII的Id生成byte[]的KEY
+ * 也只分配一个数组, 不再经过拼接数组、StringBuilder与再次编码. 生成结果与原{@link CacheUtils#genCacheKey}一致,
+ * 已带前缀的KEY原样返回.
+ * <p>
+ * 生成器按CacheConfig实例缓存, 注解与各处定义的CacheConfig都是固定的实例, 以对象标识查找, 不调用注解的hashCode.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年07月01日
+ */
+public final class CacheKeyGenerator {
+
+    /**
+     * 最多缓存的生成器数, 超过后不再缓存, 防止每次新建CacheConfig时无限增长
+     */
+    private static final int MAX_CACHED = 1024;
+    private static volatile Map<CacheConfig, CacheKeyGenerator> generators = new IdentityHashMap<>();
+
+    private final String prefix;
+    private final byte[] prefixBytes;
+
+    private CacheKeyGenerator(CacheConfig cacheConfig) {
+        prefix = CacheUtils.concat(cacheConfig.region(), cacheConfig.keyPrefix()) + ':';
+        prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param cacheConfig 缓存配置, 不能为null
+     * @return 该配置的KEY生成器
+     */
+    public static CacheKeyGenerator of(CacheConfig cacheConfig) {
+        CacheKeyGenerator generator = generators.get(cacheConfig);
+        return generator != null ? generator : register(cacheConfig);
+    }
+
+    private static synchronized CacheKeyGenerator register(CacheConfig cacheConfig) {
+        CacheKeyGenerator generator = generators.get(cacheConfig);
+        if (generator != null) return generator;
+        generator = new CacheKeyGenerator(cacheConfig);
+        if (generators.size() < MAX_CACHED) {
+            Map<CacheConfig, CacheKeyGenerator> copy = new IdentityHashMap<>(generators);
+            copy.put(cacheConfig, generator);
+            generators = copy;
+        }
+        return generator;
+    }
+
+    /**
+     * @param id object id
+     * @return 缓存KEY, id已带前缀时原样返回
+     */
+    public String key(Object id) {
+        String keyStr = id.toString();
+        return keyStr.startsWith(prefix) ? keyStr : prefix.concat(keyStr);
+    }
+
+    /**
+     * @param id object id
+     * @return UTF-8编码的缓存KEY, 与{@link #key(Object)}编码后相同
+     */
+    public byte[] keyBytes(Object id) {
+        String keyStr = id.toString();
+        if (keyStr.startsWith(prefix)) return keyStr.getBytes(StandardCharsets.UTF_8);
+        int length = keyStr.length();
+        byte[] bytes = new byte[prefixBytes.length + length];
+        System.arraycopy(prefixBytes, 0, bytes, 0, prefixBytes.length);
+        for (int i = 0, j = prefixBytes.length; i < length; i++, j++) {
+            char c = keyStr.charAt(i);
+            if (c >= 0x80) return prefix.concat(keyStr).getBytes(StandardCharsets.UTF_8);
+            bytes[j] = (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param ids object ids
+     * @return 缓存KEY列表, 顺序与ids相同
+     */
+    public List<String> keys(List<?> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) keys.add(key(id));
+        return keys;
+    }
+
+    /**
+     * @return 前缀"region:keyPrefix:"
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+}
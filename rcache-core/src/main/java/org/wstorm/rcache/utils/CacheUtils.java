@@ -6,6 +6,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.wstorm.rcache.annotation.CacheConfig;
 
 import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -43,6 +44,36 @@ public final class CacheUtils {
         public int expiredTime() {
             return 0;
         }
+
+        @Override
+        public float refreshAhead() {
+            return 0;
+        }
+
+        @Override
+        public float earlyExpiration() {
+            return 0;
+        }
+
+        @Override
+        public int staleWhileRevalidate() {
+            return 0;
+        }
+
+        @Override
+        public int staleIfError() {
+            return 0;
+        }
+
+        @Override
+        public int emptyExpiredTime() {
+            return 0;
+        }
+
+        @Override
+        public int hotKeyPinTime() {
+            return 0;
+        }
     };
     
     private static final String separator = ":";
@@ -110,16 +141,24 @@ public final class CacheUtils {
      * @return 缓存KEY
      */
     public static <ID> String genCacheKey(final CacheConfig cacheConfig, final ID key) {
-        String keyStr = key.toString();
         if (cacheConfig == null) {
-            return keyStr;
+            return key.toString();
         }
-        String ahead = concat(cacheConfig.region(), cacheConfig.keyPrefix());
-        if (keyStr.startsWith(ahead + separator)) {
-            return keyStr;
-        } else {
-            return concat(ahead, keyStr);
+        return CacheKeyGenerator.of(cacheConfig).key(key);
+    }
+
+    /**
+     * 生成UTF-8编码的缓存KEY, 与{@link #genCacheKey(CacheConfig, Object)}编码后相同, 用于二进制协议的客户端
+     *
+     * @param cacheConfig 缓存配置
+     * @param key         未修饰过的键
+     * @return 缓存KEY的字节
+     */
+    public static <ID> byte[] genCacheKeyBytes(final CacheConfig cacheConfig, final ID key) {
+        if (cacheConfig == null) {
+            return key.toString().getBytes(StandardCharsets.UTF_8);
         }
+        return CacheKeyGenerator.of(cacheConfig).keyBytes(key);
     }
 
     /**
@@ -133,11 +172,7 @@ public final class CacheUtils {
         if (cacheConfig == null) {
             return keys.stream().map(Object::toString).collect(Collectors.toList());
         }
-
-        String pp = concat(cacheConfig.region(), cacheConfig.keyPrefix()),
-                ahead = pp + separator;
-
-        return keys.stream().map(key -> key.toString().startsWith(ahead) ? key.toString() : concat(pp, key.toString())).collect(Collectors.toList());
+        return CacheKeyGenerator.of(cacheConfig).keys(keys);
     }
 
     /**
@@ -0,0 +1,109 @@
+package org.wstorm.rcache.utils;
+
+import org.wstorm.rcache.exception.CacheException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * 按region读取的缓存提供者配置, 用于没有自己配置格式的L1缓存提供者
+ * <p>
+ * 查找顺序为 region.&lt;region&gt;.&lt;name&gt; → default.&lt;name&gt; → 默认值, 如:
+ * <pre>
+ * default.maximumSize=10000
+ * region.udserv\:usr.maximumSize=500
+ * </pre>
+ * 注意properties文件中region名里的':'需要转义为'\:'. 容量类配置支持k/m/g后缀.
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+public final class RegionProperties {
+
+    private static final String DEFAULT_PREFIX = "default.";
+    private static final String REGION_PREFIX = "region.";
+
+    private final Properties properties;
+
+    public RegionProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 从classpath加载配置文件
+     *
+     * @param configFile 配置文件路径, 为null时返回空配置
+     * @return 配置
+     * @throws CacheException 配置文件不存在或无法读取
+     */
+    public static RegionProperties load(String configFile) throws CacheException {
+        Properties properties = new Properties();
+        if (configFile == null) return new RegionProperties(properties);
+
+        URL url = RegionProperties.class.getClassLoader().getResource(configFile);
+        if (url == null) url = RegionProperties.class.getResource(configFile);
+        if (url == null) throw new CacheException("cannot find " + configFile + " !!!");
+
+        try (InputStream in = url.openStream()) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new CacheException("load " + configFile, e);
+        }
+        return new RegionProperties(properties);
+    }
+
+    /**
+     * 解析容量, 支持k/m/g后缀(1024进制)
+     *
+     * @param value 如 64m
+     * @return 字节数或个数
+     */
+    public static long parseSize(String value) {
+        String v = value.trim().toLowerCase();
+        long unit = 1;
+        switch (v.charAt(v.length() - 1)) {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+            default:
+        }
+        if (unit > 1) v = v.substring(0, v.length() - 1).trim();
+        return Long.parseLong(v) * unit;
+    }
+
+    /**
+     * @param region       缓存区域
+     * @param name         配置名
+     * @param defaultValue 都没配置时的默认值
+     * @return 配置值
+     */
+    public long getLong(String region, String name, long defaultValue) {
+        String value = get(region, name);
+        return value == null ? defaultValue : parseSize(value);
+    }
+
+    /**
+     * @param region       缓存区域
+     * @param name         配置名
+     * @param defaultValue 都没配置时的默认值
+     * @return 配置值
+     */
+    public String getString(String region, String name, String defaultValue) {
+        String value = get(region, name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private String get(String region, String name) {
+        String value = region == null ? null : properties.getProperty(REGION_PREFIX + region + "." + name);
+        return value != null ? value : properties.getProperty(DEFAULT_PREFIX + name);
+    }
+}
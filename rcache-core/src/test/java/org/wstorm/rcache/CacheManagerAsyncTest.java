@@ -0,0 +1,224 @@
+package org.wstorm.rcache;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.tinylfu.TinyLfuCacheProvider;
+import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.metrics.RegionMetrics;
+import org.wstorm.rcache.metrics.RegionSnapshot;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以TinyLFU进程内缓存充当L2, 不依赖外部服务测试异步接口
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月13日
+ */
+public class CacheManagerAsyncTest {
+
+    private static final int L1 = 1;
+    private static final int L2 = 2;
+
+    private TinyLfuCacheProvider l2Provider = new TinyLfuCacheProvider();
+    private CacheManager cacheManager;
+    private CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+    private List<String> ids = Lists.newArrayList("9527", "9528", "9529");
+    private TestObjDatePicker dataPicker = new TestObjDatePicker(ids);
+    private TestExpiredListener listener = new TestExpiredListener();
+
+    @Before
+    public void setUp() throws Exception {
+        l2Provider.start("tinylfu.properties");
+        cacheManager = new CacheManager(l2Provider, CacheProviderType.ehcache.name(), "ehcache.xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cacheManager.shutdown(L1);
+        cacheManager.shutdown(L2);
+    }
+
+    @Test
+    public void getSetEvictAsync() throws Exception {
+        TestObj expect = new TestObj(ids.get(0), 200);
+        cacheManager.setAsync(L2, cacheConfig, ids.get(0), expect, listener).get(1, TimeUnit.SECONDS);
+
+        TestObj actual = cacheManager.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, dataPicker).get(1, TimeUnit.SECONDS);
+        assertThat(actual).isEqualTo(expect);
+
+        cacheManager.evictAsync(L2, cacheConfig, null, ids.get(0), listener).get(1, TimeUnit.SECONDS);
+        actual = cacheManager.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, null).get(1, TimeUnit.SECONDS);
+        assertThat(actual).isNull();
+
+        RegionSnapshot snapshot = cacheManager.getMetrics().snapshot().get(0);
+        assertThat(snapshot.getHits(L2)).isEqualTo(1);
+        assertThat(snapshot.getMisses(L2)).isEqualTo(1);
+        assertThat(snapshot.getEvictions(L2)).isEqualTo(1);
+        assertThat(snapshot.getLatency(RegionMetrics.Timer.L2_GET).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void pickedValuesAreCountedAsMisses() throws Exception {
+        CacheManager loading = new CacheManager(new LoadingCacheProvider(l2Provider), CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        try {
+            // L2 Miss后回源得到的对象计为Miss, 回写后再次读取才是命中
+            TestObj loaded = loading.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, dataPicker).get(1, TimeUnit.SECONDS);
+            assertThat(loaded.getSum()).isEqualTo(100);
+            assertThat(loading.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, dataPicker).get(1, TimeUnit.SECONDS)).isEqualTo(loaded);
+            assertThat(loading.<TestObj>get(L2, cacheConfig, ids.get(1), listener, dataPicker)).isNotNull();
+            assertThat(loading.<TestObj>getAll(L2, cacheConfig, ids, listener, dataPicker)).hasSize(3);
+
+            RegionSnapshot snapshot = loading.getMetrics().snapshot().get(0);
+            assertThat(snapshot.getHits(L2)).isEqualTo(3);
+            assertThat(snapshot.getMisses(L2)).isEqualTo(3);
+            assertThat(snapshot.getLoads()).isEqualTo(3);
+        } finally {
+            loading.shutdown(L1);
+        }
+    }
+
+    @Test
+    public void latencyIncludesWorkDoneBeforeReturn() throws Exception {
+        CacheManager loading = new CacheManager(new LoadingCacheProvider(l2Provider), CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        TestObjDatePicker slowPicker = new TestObjDatePicker(ids) {
+            @Override
+            public TestObj pickup(String key) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.pickup(key);
+            }
+        };
+        try {
+            // 在调用线程上执行时, 返回的future已经完成, 计时须从调用缓存之前开始
+            loading.setAsyncExecutor(Runnable::run);
+            loading.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, slowPicker).get(1, TimeUnit.SECONDS);
+            loading.<TestObj>getAllAsync(L2, cacheConfig, ids.subList(1, 2), listener, slowPicker).get(1, TimeUnit.SECONDS);
+
+            RegionSnapshot snapshot = loading.getMetrics().region(cacheConfig.region()).snapshot();
+            assertThat(snapshot.getLatency(RegionMetrics.Timer.L2_GET).getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+            assertThat(snapshot.getLatency(RegionMetrics.Timer.L2_GET_ALL).getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        } finally {
+            loading.shutdown(L1);
+        }
+    }
+
+    @Test
+    public void getAllSetAllAsync() throws Exception {
+        Map<String, TestObj> expected = ids.stream().collect(Collectors.toMap(String::toString, dataPicker::pickup));
+        cacheManager.setAllAsync(L2, cacheConfig, expected, listener).get(1, TimeUnit.SECONDS);
+        assertThat(cacheManager.<TestObj>getAllAsync(L2, cacheConfig, ids, listener, null).get(1, TimeUnit.SECONDS)).isEqualTo(expected);
+
+        cacheManager.batchEvictAsync(L2, cacheConfig, null, ids, listener).get(1, TimeUnit.SECONDS);
+        assertThat(cacheManager.<TestObj>getAllAsync(L2, cacheConfig, ids, listener, null).get(1, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    @Test
+    public void fanOutRegions() throws Exception {
+        List<String> regions = Lists.newArrayList("r1", "r2", "r3");
+        for (String region : regions) {
+            cacheManager.set(L2, regionConfig(region), "9527", new TestObj(region, 1), listener);
+        }
+        List<CompletableFuture<TestObj>> futures = regions.stream()
+                .map(region -> cacheManager.<TestObj>getAsync(L2, regionConfig(region), "9527", listener, null))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get(1, TimeUnit.SECONDS);
+        assertThat(futures.stream().map(f -> f.join().getId()).collect(Collectors.toList())).containsExactlyElementsOf(regions);
+    }
+
+    @Test
+    public void customExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            cacheManager.setAsyncExecutor(command -> {
+                executed.incrementAndGet();
+                executor.execute(command);
+            });
+            cacheManager.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, null).get(1, TimeUnit.SECONDS);
+            assertThat(executed.get()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void exceptionCompletesWithNull() throws Exception {
+        cacheManager.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, null).get(1, TimeUnit.SECONDS); //构建region
+        l2Provider.stop(); //模拟异常
+        TestObj actual = cacheManager.<TestObj>getAsync(L2, cacheConfig, ids.get(0), listener, null).get(1, TimeUnit.SECONDS);
+        assertThat(actual).isNull();
+        assertThat(cacheManager.setAsync(L2, cacheConfig, ids.get(0), new TestObj(), listener).get(1, TimeUnit.SECONDS)).isNull();
+    }
+
+    private static CacheConfig regionConfig(String region) {
+        return new CacheConfig() {
+            @Override
+            public String region() {
+                return region;
+            }
+
+            @Override
+            public String keyPrefix() {
+                return "testObj";
+            }
+
+            @Override
+            public int expiredTime() {
+                return 10;
+            }
+
+            @Override
+            public float refreshAhead() {
+                return 0;
+            }
+
+            @Override
+            public float earlyExpiration() {
+                return 0;
+            }
+
+            @Override
+            public int staleWhileRevalidate() {
+                return 0;
+            }
+
+            @Override
+            public int staleIfError() {
+                return 0;
+            }
+
+            @Override
+            public int emptyExpiredTime() {
+                return 0;
+            }
+
+            @Override
+            public int hotKeyPinTime() {
+                return 0;
+            }
+
+            @Override
+            public Class<? extends java.lang.annotation.Annotation> annotationType() {
+                return CacheConfig.class;
+            }
+        };
+    }
+}
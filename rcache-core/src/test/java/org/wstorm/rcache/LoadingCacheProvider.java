@@ -0,0 +1,88 @@
+package org.wstorm.rcache;
+
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.cache.DataPicker;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Miss时通过DataPicker回源并回写的L2, 与RedisCache的行为一致
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public class LoadingCacheProvider implements CacheProvider {
+    private final CacheProvider delegate;
+
+    public LoadingCacheProvider(CacheProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String name() {
+        return "loading";
+    }
+
+    @Override
+    public Cache buildCache(String regionName, CacheExpiredListener listener) {
+        Cache cache = delegate.buildCache(regionName, listener);
+        return new Cache() {
+            @Override
+            public <T extends RObject<String>> Map<String, T> getAll(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+                Map<String, T> result = new LinkedHashMap<>();
+                ids.forEach(id -> {
+                    T value = get(cacheConfig, id, dataPicker);
+                    if (value != null) result.put(id, value);
+                });
+                return result;
+            }
+
+            @Override
+            public <T extends RObject<String>> void putAll(CacheConfig cacheConfig, Map<String, T> objectMap) {
+                cache.putAll(cacheConfig, objectMap);
+            }
+
+            @Override
+            public <T extends RObject<String>> T get(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) {
+                T value = cache.get(cacheConfig, id, dataPicker);
+                if (value == null && dataPicker != null && (value = dataPicker.pickup(id)) != null)
+                    cache.put(cacheConfig, id, value);
+                return value;
+            }
+
+            @Override
+            public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) {
+                cache.put(cacheConfig, id, value);
+            }
+
+            @Override
+            public List keys() {
+                return cache.keys();
+            }
+
+            @Override
+            public void evict(CacheConfig cacheConfig, String id) {
+                cache.evict(cacheConfig, id);
+            }
+
+            @Override
+            public void evict(CacheConfig cacheConfig, List<String> ids) {
+                cache.evict(cacheConfig, ids);
+            }
+        };
+    }
+
+    @Override
+    public void start(String cacheConfigFile) {
+    }
+
+    @Override
+    public void stop() {
+    }
+}
@@ -0,0 +1,669 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.CacheManager;
+import org.wstorm.rcache.LoadingCacheProvider;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.RObject;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.CacheProvider;
+import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.cache.IdStreamDataPicker;
+import org.wstorm.rcache.cache.ScalableBloomFilter;
+import org.wstorm.rcache.cache.VersionClock;
+import org.wstorm.rcache.cache.tinylfu.TinyLfuCacheProvider;
+import org.wstorm.rcache.entity.CacheObject;
+import org.wstorm.rcache.entity.Command;
+import org.wstorm.rcache.enums.CacheProviderType;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以进程内的传输通道连接两个节点, 不依赖Redis测试广播逻辑
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月24日
+ */
+public class CacheBroadcastTransportTest {
+
+    private final TinyLfuCacheProvider l2Provider = new TinyLfuCacheProvider();
+    private final List<CacheRedisBroadcast> nodes = Lists.newArrayList();
+    private final CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+    private final List<String> ids = Lists.newArrayList("9527", "9528", "9529");
+    private final TestObjDatePicker dataPicker = new TestObjDatePicker(ids);
+    private final BroadcastConfig broadcastConfig = new BroadcastConfig().setDispatchThreads(0).setCompactCommand(true);
+
+    @Before
+    public void setUp() throws Exception {
+        l2Provider.start("tinylfu.properties");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        nodes.forEach(CacheRedisBroadcast::close);
+    }
+
+    @Test
+    public void evictionReachesOtherNode() throws Exception {
+        Bus bus = new Bus();
+        CacheRedisBroadcast node1 = node(new BusTransport(bus, false));
+        CacheRedisBroadcast node2 = node(new BusTransport(bus, false));
+        await(() -> bus.subscribers.size() == 2);
+
+        Map<String, TestObj> expected = ids.stream().collect(Collectors.toMap(String::toString, dataPicker::pickup));
+        node1.setAll(cacheConfig, expected);
+        assertThat(node2.getList(cacheConfig, ids, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(node2.getList(cacheConfig, ids, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+
+        TestObj changed = new TestObj(ids.get(0), 999);
+        node1.set(cacheConfig, ids.get(0), changed);
+        node1.flushEvictions();
+        CacheObject<TestObj> obj = node2.get(cacheConfig, ids.get(0), null);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(obj.getValue()).isEqualTo(changed);
+    }
+
+    @Test
+    public void sequenceGapResyncsRegion() throws Exception {
+        Bus bus = new Bus();
+        CacheRedisBroadcast node = node(new BusTransport(bus, false));
+        node.set(cacheConfig, ids.get(0), dataPicker.pickup(ids.get(0)));
+        node.set(cacheConfig, ids.get(1), dataPicker.pickup(ids.get(1)));
+
+        CommandCodec codec = new CommandCodec();
+        byte[] channel = cacheConfig.region().getBytes(StandardCharsets.UTF_8);
+        node.onMessage(channel, codec.encode(command(1, "none")));
+        assertThat(node.get(cacheConfig, ids.get(1), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+
+        node.onMessage(channel, codec.encode(command(3, "none"))); //序号2丢失
+        assertThat(node.getSequenceTracker().getGapCount()).isEqualTo(1);
+        assertThat(node.getSequenceTracker().getResyncCount()).isEqualTo(1);
+        assertThat(node.get(cacheConfig, ids.get(1), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+    }
+
+    @Test
+    public void reconnectResyncsOnlyWhenNotReplayable() throws Exception {
+        Bus bus = new Bus();
+        BusTransport lossy = new BusTransport(bus, false);
+        BusTransport replayable = new BusTransport(bus, true);
+        CacheRedisBroadcast lossyNode = node(lossy);
+        CacheRedisBroadcast replayableNode = node(replayable);
+        await(() -> bus.subscribers.size() == 2);
+
+        lossyNode.set(cacheConfig, ids.get(0), dataPicker.pickup(ids.get(0)));
+        replayableNode.get(cacheConfig, ids.get(0), null); //载入L1
+
+        lossy.disconnect();
+        replayable.disconnect();
+        await(() -> lossyNode.getSequenceTracker().getReconnectCount() == 1
+                && replayableNode.getSequenceTracker().getReconnectCount() == 1);
+        await(() -> bus.subscribers.size() == 2); //重新订阅完成
+
+        assertThat(lossyNode.getSequenceTracker().getResyncCount()).isEqualTo(1);
+        assertThat(lossyNode.get(cacheConfig, ids.get(0), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(replayableNode.getSequenceTracker().getResyncCount()).isZero();
+        assertThat(replayableNode.get(cacheConfig, ids.get(0), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+    }
+
+    @Test
+    public void globalShardedChannels() throws Exception {
+        Bus bus = new Bus();
+        BroadcastConfig sharded = new BroadcastConfig().setDispatchThreads(0).setCompactCommand(true)
+                .setShardMode(BroadcastConfig.ShardMode.global).setChannelShards(4).setSubscriberConnections(2);
+        CacheRedisBroadcast node1 = node(new BusTransport(bus, false), sharded);
+        CacheRedisBroadcast node2 = node(new BusTransport(bus, false), sharded);
+        await(() -> bus.subscribers.size() == 4);
+        assertThat(bus.subscribers.stream().map(sub -> sub.channels))
+                .contains(Lists.newArrayList("rcache:evict#0", "rcache:evict#2"), Lists.newArrayList("rcache:evict#1", "rcache:evict#3"));
+
+        Map<String, TestObj> expected = ids.stream().collect(Collectors.toMap(String::toString, dataPicker::pickup));
+        node1.setAll(cacheConfig, expected);
+        node2.getList(cacheConfig, ids, null);
+        assertThat(node2.getList(cacheConfig, ids, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+
+        bus.published.clear();
+        node1.batchEvict(cacheConfig, ids);
+        node1.flushEvictions();
+        assertThat(bus.published).hasSize((int) CacheUtils.genCacheKeys(cacheConfig, ids).stream()
+                .map(k -> Math.floorMod(k.hashCode() ^ (k.hashCode() >>> 16), 4)).distinct().count());
+        assertThat(node2.getList(cacheConfig, ids, null).getValue()).isEmpty();
+    }
+
+    @Test
+    public void legacyCommandsByDefault() throws Exception {
+        // 默认按旧的Kryo格式发送, 未升级的节点也能解析
+        BroadcastConfig defaults = new BroadcastConfig().setDispatchThreads(0);
+        assertThat(defaults.isCompactCommand()).isFalse();
+        Bus bus = new Bus();
+        CacheRedisBroadcast node1 = node(new BusTransport(bus, false), defaults);
+        CacheRedisBroadcast node2 = node(new BusTransport(bus, false), defaults);
+        await(() -> bus.subscribers.size() == 2);
+
+        node1.set(cacheConfig, ids.get(0), dataPicker.pickup(ids.get(0)));
+        node2.get(cacheConfig, ids.get(0), null);
+        assertThat(node2.get(cacheConfig, ids.get(0), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+
+        TestObj changed = new TestObj(ids.get(0), 999);
+        node1.set(cacheConfig, ids.get(0), changed);
+        node1.flushEvictions();
+        CacheObject<TestObj> obj = node2.get(cacheConfig, ids.get(0), null);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(obj.getValue()).isEqualTo(changed);
+    }
+
+    @Test
+    public void staleL2ValueIsNotFilledIntoL1() throws Exception {
+        VersionedCacheProvider versioned = new VersionedCacheProvider(l2Provider);
+        CacheManager cacheManager = new CacheManager(versioned, CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false), broadcastConfig, cacheManager);
+        String id = ids.get(0);
+        TestObj old = new TestObj(id, 1), updated = new TestObj(id, 2);
+        cacheManager.setEntry(CacheRedisBroadcast.LEVEL_2, cacheConfig, id, old, VersionClock.next(), node);
+
+        // 其他节点写入新值: 先广播带新值版本号的清除命令, 之后才写L2
+        long version = VersionClock.next();
+        Command cmd = command(0, CacheUtils.genCacheKey(cacheConfig, id));
+        cmd.setVersion(version);
+        node.onMessage(cacheConfig.region().getBytes(StandardCharsets.UTF_8), new CommandCodec().encode(cmd));
+
+        CacheObject<TestObj> obj = node.get(cacheConfig, id, null);
+        assertThat(obj.getValue()).isEqualTo(old);
+        assertThat(node.get(cacheConfig, id, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2); //旧值没有回填L1
+        assertThat(node.getVersionTombstones().getRejectedCount()).isEqualTo(2);
+
+        cacheManager.setEntry(CacheRedisBroadcast.LEVEL_2, cacheConfig, id, updated, version, node);
+        assertThat(node.get(cacheConfig, id, null).getValue()).isEqualTo(updated);
+        obj = node.get(cacheConfig, id, null);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        assertThat(obj.getValue()).isEqualTo(updated);
+    }
+
+    @Test
+    public void valueLoadedDuringEvictionIsNotFilledIntoL1() throws Exception {
+        VersionedCacheProvider versioned = new VersionedCacheProvider(l2Provider);
+        CacheManager cacheManager = new CacheManager(versioned, CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false), broadcastConfig, cacheManager);
+        String id = ids.get(0);
+        TestObj old = new TestObj(id, 1);
+        DataPicker<String, TestObj> picker = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                // 回源读到旧值后, 其他节点写入新值并广播清除命令
+                Command cmd = command(0, CacheUtils.genCacheKey(cacheConfig, key));
+                cmd.setVersion(VersionClock.next());
+                node.onMessage(cacheConfig.region().getBytes(StandardCharsets.UTF_8), new CommandCodec().encode(cmd));
+                return old;
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return new TestObj();
+            }
+        };
+
+        CacheObject<TestObj> obj = node.get(cacheConfig, id, picker);
+        assertThat(obj.getValue()).isEqualTo(old);
+        assertThat(node.getVersionTombstones().getRejectedCount()).isEqualTo(1);
+        assertThat(node.get(cacheConfig, id, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2); //回源的旧值没有回填L1
+    }
+
+    @Test
+    public void nearExpiryReadRefreshesInBackground() throws Exception {
+        CacheConfig refreshConfig = CacheUtils.getCacheAnnotation(RefreshAheadObj.class);
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false));
+        String id = ids.get(0);
+        AtomicInteger loads = new AtomicInteger();
+        DataPicker<String, TestObj> picker = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                return new TestObj(key, loads.incrementAndGet());
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return new TestObj();
+            }
+        };
+        node.set(refreshConfig, id, new TestObj(id, 0));
+
+        // refreshAhead=1 时任何有过期时间的对象都处于刷新时间段, 读取方仍立即拿到当前值
+        assertThat(node.get(refreshConfig, id, picker).getValue().getSum()).isEqualTo(0);
+        RefreshScheduler refresher = node.getRefreshScheduler();
+        await(() -> refresher.getCompletedCount() == 1);
+        assertThat(refresher.getScheduledCount()).isEqualTo(1);
+        assertThat(refresher.getRefreshingSize()).isZero();
+        assertThat(loads.get()).isEqualTo(1);
+        CacheObject<TestObj> refreshed = node.get(refreshConfig, id, null);
+        assertThat(refreshed.getValue().getSum()).isEqualTo(1);
+
+        // 不开启提前刷新的区域不受影响
+        node.set(cacheConfig, id, new TestObj(id, 0));
+        node.get(cacheConfig, id, picker);
+        node.getList(cacheConfig, ids.subList(0, 1), picker);
+        assertThat(refresher.getScheduledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshDoesNotOverwriteConcurrentWrite() throws Exception {
+        CacheConfig refreshConfig = CacheUtils.getCacheAnnotation(RefreshAheadObj.class);
+        CacheManager cacheManager = new CacheManager(l2Provider, CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false), broadcastConfig, cacheManager);
+        String id = ids.get(0);
+        TestObj updated = new TestObj(id, 2);
+        DataPicker<String, TestObj> picker = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                // 刷新读到旧值后, 业务写入了新值
+                node.set(refreshConfig, key, updated);
+                return new TestObj(key, 1);
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return new TestObj();
+            }
+        };
+        node.set(refreshConfig, id, new TestObj(id, 0));
+
+        node.get(refreshConfig, id, picker);
+        RefreshScheduler refresher = node.getRefreshScheduler();
+        await(() -> refresher.getCompletedCount() == 1);
+        assertThat(node.get(refreshConfig, id, null).getValue()).isEqualTo(updated);
+        assertThat(cacheManager.<TestObj>get(CacheRedisBroadcast.LEVEL_2, refreshConfig, id, node, null)).isEqualTo(updated);
+    }
+
+    @Test
+    public void expiredL1ValueIsServedWithinGracePeriod() throws Exception {
+        CacheConfig revalidateConfig = CacheUtils.getCacheAnnotation(RevalidateObj.class);
+        CacheConfig ifErrorConfig = CacheUtils.getCacheAnnotation(IfErrorObj.class);
+        CacheManager cacheManager = new CacheManager(new LoadingCacheProvider(l2Provider), CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false), broadcastConfig, cacheManager);
+        String id = ids.get(0);
+        AtomicInteger loads = new AtomicInteger();
+        DataPicker<String, TestObj> counting = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                return new TestObj(key, loads.incrementAndGet());
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return new TestObj();
+            }
+        };
+        DataPicker<String, TestObj> failing = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                throw new IllegalStateException("db down");
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return null;
+            }
+        };
+        node.set(revalidateConfig, id, new TestObj(id, 0));
+        node.set(ifErrorConfig, id, new TestObj(id, 0));
+        node.set(revalidateConfig, ids.get(1), new TestObj(ids.get(1), 0));
+        node.evict(revalidateConfig, ids.get(1)); //被清除的值不作为过期值返回
+        node.setAsync(ifErrorConfig, ids.get(1), new TestObj(ids.get(1), 0)).join();
+        node.evictAsync(ifErrorConfig, ids.get(1)).join(); //异步清除同样移除过期值
+        node.setAsync(ifErrorConfig, ids.get(2), new TestObj(ids.get(2), 0)).join();
+        Thread.sleep(1100);
+
+        // stale-while-revalidate: 立即返回过期值, 后台重新加载后L1为新值
+        CacheObject<TestObj> obj = node.get(revalidateConfig, id, counting);
+        assertThat(obj.getValue().getSum()).isEqualTo(0);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        await(() -> node.getRefreshScheduler().getCompletedCount() == 1);
+        obj = node.get(revalidateConfig, id, null);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        assertThat(obj.getValue().getSum()).isEqualTo(1);
+        assertThat(node.get(revalidateConfig, ids.get(1), counting).getValue().getSum()).isEqualTo(2);
+
+        // 回源正常返回null是Miss, 不返回过期值
+        DataPicker<String, TestObj> absent = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                return null;
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return null;
+            }
+        };
+        assertThat(node.get(ifErrorConfig, id, absent).getValue()).isNull();
+        assertThat(node.getList(ifErrorConfig, ids.subList(0, 1), absent).getValue()).isNullOrEmpty();
+        assertThat(node.getStaleValues().getStalePolicy().getServedIfErrorCount()).isZero();
+
+        // stale-if-error: 回源失败时返回过期值
+        assertThat(node.get(ifErrorConfig, id, failing).getValue().getSum()).isEqualTo(0);
+        assertThat(node.getList(ifErrorConfig, ids.subList(0, 1), failing).getValue()).containsKey(id);
+        assertThat(node.getAsync(ifErrorConfig, ids.get(2), failing).join().getValue().getSum()).isEqualTo(0);
+        assertThat(node.get(ifErrorConfig, ids.get(1), failing).getValue()).isNull();
+
+        // 未过期的值在L1中被淘汰后, 回源失败也不作为过期值返回
+        String fresh = "9530";
+        node.set(ifErrorConfig, fresh, new TestObj(fresh, 0));
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_1, ifErrorConfig, ifErrorConfig.region(), fresh, node);
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_2, ifErrorConfig, ifErrorConfig.region(), fresh, node);
+        assertThat(node.get(ifErrorConfig, fresh, failing).getValue()).isNull();
+        assertThat(node.getStaleValues().getStalePolicy().getServedWhileRevalidateCount()).isEqualTo(1);
+        assertThat(node.getStaleValues().getStalePolicy().getServedIfErrorCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void membershipFilterSkipsAbsentIds() throws Exception {
+        Bus bus = new Bus();
+        CacheRedisBroadcast node1 = node(new BusTransport(bus, false), broadcastConfig,
+                new CacheManager(new LoadingCacheProvider(l2Provider), CacheProviderType.tinylfu.name(), "tinylfu.properties"));
+        CacheRedisBroadcast node2 = node(new BusTransport(bus, false), broadcastConfig,
+                new CacheManager(new LoadingCacheProvider(l2Provider), CacheProviderType.tinylfu.name(), "tinylfu.properties"));
+        await(() -> bus.subscribers.size() == 2);
+        AtomicInteger loads = new AtomicInteger();
+        IdStreamDataPicker<String, TestObj> picker = new IdStreamDataPicker<String, TestObj>() {
+            @Override
+            public Stream<String> streamIds() {
+                return ids.stream();
+            }
+
+            @Override
+            public TestObj pickup(String key) {
+                loads.incrementAndGet();
+                return dataPicker.pickup(key);
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return dataPicker.makeEmptyData();
+            }
+        };
+        assertThat(node1.rebuildMembershipFilter(cacheConfig, picker)).isEqualTo(ids.size());
+        node2.rebuildMembershipFilter(cacheConfig, picker);
+
+        // 过滤器排除的Id不读L2也不回源, 直接返回空对象
+        assertThat(node1.get(cacheConfig, "404", picker).getValue().isBlank()).isTrue();
+        assertThat(node1.get(cacheConfig, ids.get(0), picker).getValue().getSum()).isEqualTo(100);
+        Map<String, TestObj> list = node1.getList(cacheConfig, Lists.newArrayList(ids.get(1), "404"), picker).getValue();
+        assertThat(list.get(ids.get(1)).getSum()).isEqualTo(100);
+        assertThat(list.get("404").isBlank()).isTrue();
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(node1.getMembershipFilters().getRejectedCount()).isEqualTo(2);
+
+        // L2读取失败时被排除的Id仍以空对象返回
+        DataPicker<String, TestObj> failing = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                throw new IllegalStateException("db down");
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return dataPicker.makeEmptyData();
+            }
+        };
+        list = node1.getList(cacheConfig, Lists.newArrayList(ids.get(2), "404"), failing).getValue();
+        assertThat(list).containsOnlyKeys("404");
+        assertThat(list.get("404").isBlank()).isTrue();
+
+        // 其他节点写入的对象随清除广播加入过滤器
+        TestObj added = new TestObj("9530", 1);
+        node1.set(cacheConfig, added.getId(), added);
+        node1.flushEvictions();
+        ScalableBloomFilter filter = node2.getMembershipFilters().get(cacheConfig.region());
+        await(() -> filter.mightContain(CacheUtils.genCacheKey(cacheConfig, added.getId())));
+        assertThat(node2.get(cacheConfig, added.getId(), picker).getValue()).isEqualTo(added);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void hotKeyIsPinnedAfterThreshold() throws Exception {
+        CacheConfig hotConfig = CacheUtils.getCacheAnnotation(HotObj.class);
+        CacheManager cacheManager = new CacheManager(l2Provider, CacheProviderType.tinylfu.name(), "tinylfu.properties");
+        CacheRedisBroadcast node = node(new BusTransport(new Bus(), false), new BroadcastConfig().setDispatchThreads(0).setCompactCommand(true).setHotKeyThreshold(2),
+                cacheManager);
+        String id = ids.get(0);
+        TestObj value = new TestObj(id, 1);
+        node.set(hotConfig, id, value);
+
+        // 前两次L1 Miss读L2, 达到阈值后L2读到的值被钉住
+        for (int i = 0; i < 2; i++) {
+            cacheManager.evict(CacheRedisBroadcast.LEVEL_1, hotConfig, hotConfig.region(), id, node);
+            assertThat(node.get(hotConfig, id, null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        }
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_1, hotConfig, hotConfig.region(), id, node);
+        CacheObject<TestObj> pinned = node.get(hotConfig, id, null);
+        assertThat(pinned.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        assertThat(pinned.getValue()).isEqualTo(value);
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_1, hotConfig, hotConfig.region(), id, node);
+        assertThat(node.getList(hotConfig, Lists.newArrayList(id), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        assertThat(node.getHotKeys().getPinnedHits()).isEqualTo(2);
+        assertThat(node.getHotKeys().getHotKeys(hotConfig.region()).get(0).getKey()).isEqualTo(CacheUtils.genCacheKey(hotConfig, id));
+
+        // 本地写入后钉住的旧值不再返回
+        TestObj changed = new TestObj(id, 2);
+        node.set(hotConfig, id, changed);
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_1, hotConfig, hotConfig.region(), id, node);
+        assertThat(node.get(hotConfig, id, null).getValue()).isEqualTo(changed);
+    }
+
+    @CacheConfig(region = "udserv:hot", keyPrefix = "hotObj", expiredTime = 10, hotKeyPinTime = 60)
+    private static class HotObj {
+    }
+
+    @CacheConfig(region = "udserv:swr", keyPrefix = "swrObj", expiredTime = 1, staleWhileRevalidate = 60)
+    private static class RevalidateObj {
+    }
+
+    @CacheConfig(region = "udserv:sie", keyPrefix = "sieObj", expiredTime = 1, staleIfError = 60)
+    private static class IfErrorObj {
+    }
+
+    @CacheConfig(region = "udserv:refresh", keyPrefix = "refreshObj", expiredTime = 10, refreshAhead = 1)
+    private static class RefreshAheadObj {
+    }
+
+    private Command command(long sequence, String key) {
+        Command cmd = new Command("5760f3a1c0ffee0012345678", Command.OPT_DELETE_KEY, cacheConfig.region(), key);
+        cmd.setSequence(sequence);
+        return cmd;
+    }
+
+    private CacheRedisBroadcast node(BroadcastTransport transport) {
+        return node(transport, broadcastConfig);
+    }
+
+    private CacheRedisBroadcast node(BroadcastTransport transport, BroadcastConfig broadcastConfig) {
+        return node(transport, broadcastConfig, new CacheManager(l2Provider, CacheProviderType.tinylfu.name(), "tinylfu.properties"));
+    }
+
+    private CacheRedisBroadcast node(BroadcastTransport transport, BroadcastConfig broadcastConfig, CacheManager cacheManager) {
+        CacheRedisBroadcast node = new CacheRedisBroadcast(transport, () -> Lists.newArrayList(cacheConfig.region()), cacheManager, broadcastConfig);
+        nodes.add(node);
+        return node;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static class Bus {
+        private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+        private final List<String> published = new CopyOnWriteArrayList<>();
+
+        void publish(String channel, byte[] message) {
+            published.add(channel);
+            subscribers.stream().filter(s -> s.channels.contains(channel))
+                    .forEach(s -> s.listener.onMessage(channel.getBytes(StandardCharsets.UTF_8), message));
+        }
+    }
+
+    private static class Subscription {
+        private final BroadcastTransport.Listener listener;
+        private final List<String> channels;
+
+        Subscription(BroadcastTransport.Listener listener, List<String> channels) {
+            this.listener = listener;
+            this.channels = channels;
+        }
+    }
+
+    /**
+     * 进程内的传输通道, disconnect模拟连接断开
+     */
+    private static class BusTransport implements BroadcastTransport {
+        private static final Object STOP = new Object(), DISCONNECT = new Object();
+        private final Bus bus;
+        private final boolean replayable;
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+
+        BusTransport(Bus bus, boolean replayable) {
+            this.bus = bus;
+            this.replayable = replayable;
+        }
+
+        @Override
+        public void publish(String channel, byte[] message) throws Exception {
+            bus.publish(channel, message);
+        }
+
+        @Override
+        public void subscribe(Listener listener, List<String> channels) {
+            for (int i = 0; i < channels.size(); i++) {
+                listener.onSubscribe(channels.get(i).getBytes(StandardCharsets.UTF_8), i + 1);
+            }
+            Subscription subscription = new Subscription(listener, channels);
+            bus.subscribers.add(subscription);
+            try {
+                Object signal = signals.take();
+                if (signal == DISCONNECT) throw new IllegalStateException("connection lost");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                bus.subscribers.remove(subscription);
+            }
+        }
+
+        void disconnect() {
+            signals.add(DISCONNECT);
+        }
+
+        @Override
+        public void unsubscribe() {
+            for (int i = 0; i < 8; i++) signals.add(STOP); //每个订阅连接一个
+        }
+
+        @Override
+        public boolean isReplayable() {
+            return replayable;
+        }
+    }
+
+    /**
+     * 在TinyLfu之上保存版本号的L2, 模拟打开版本号的RedisCache: Miss时回源并以回源开始的版本号回写
+     */
+    private static class VersionedCacheProvider implements CacheProvider {
+        private final CacheProvider delegate;
+        private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+        VersionedCacheProvider(CacheProvider delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String name() {
+            return "versioned";
+        }
+
+        @Override
+        public Cache buildCache(String regionName, CacheExpiredListener listener) {
+            Cache cache = delegate.buildCache(regionName, listener);
+            return new Cache() {
+                @Override
+                public <T extends RObject<String>> Map<String, T> getAll(CacheConfig cacheConfig, List<String> ids, DataPicker<String, T> dataPicker) {
+                    return cache.getAll(cacheConfig, ids, dataPicker);
+                }
+
+                @Override
+                public <T extends RObject<String>> void putAll(CacheConfig cacheConfig, Map<String, T> objectMap) {
+                    cache.putAll(cacheConfig, objectMap);
+                }
+
+                @Override
+                public <T extends RObject<String>> T get(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) {
+                    return cache.get(cacheConfig, id, dataPicker);
+                }
+
+                @Override
+                public <T extends RObject<String>> void put(CacheConfig cacheConfig, String id, T value) {
+                    putEntry(cacheConfig, id, value, 0);
+                }
+
+                @Override
+                public <T extends RObject<String>> CacheEntry<T> getEntry(CacheConfig cacheConfig, String id, DataPicker<String, T> dataPicker) {
+                    T value = cache.get(cacheConfig, id, dataPicker);
+                    if (value != null)
+                        return new CacheEntry<>(value, versions.getOrDefault(CacheUtils.genCacheKey(cacheConfig, id), 0L));
+                    if (dataPicker == null) return null;
+                    long version = VersionClock.next();
+                    if ((value = dataPicker.pickup(id)) == null) return null;
+                    putEntry(cacheConfig, id, value, version);
+                    return new CacheEntry<>(value, version);
+                }
+
+                @Override
+                public <T extends RObject<String>> void putEntry(CacheConfig cacheConfig, String id, T value, long version) {
+                    cache.put(cacheConfig, id, value);
+                    versions.put(CacheUtils.genCacheKey(cacheConfig, id), version);
+                }
+
+                @Override
+                public List keys() {
+                    return cache.keys();
+                }
+
+                @Override
+                public void evict(CacheConfig cacheConfig, String id) {
+                    cache.evict(cacheConfig, id);
+                }
+
+                @Override
+                public void evict(CacheConfig cacheConfig, List<String> ids) {
+                    cache.evict(cacheConfig, ids);
+                }
+            };
+        }
+
+        @Override
+        public void start(String cacheConfigFile) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
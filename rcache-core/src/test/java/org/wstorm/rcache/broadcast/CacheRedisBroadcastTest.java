@@ -11,6 +11,7 @@ import org.wstorm.rcache.enums.CacheProviderType;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,6 +42,52 @@ public class CacheRedisBroadcastTest extends TestBase {
     }
 
 
+    @Test
+    public void asyncApi() throws Exception {
+        TestObj expected = dataPicker.pickup(ids.get(0));
+        cacheRedisBroadcast.setAsync(cacheConfig, ids.get(0), expected).get(1, TimeUnit.SECONDS);
+
+        CacheObject<TestObj> obj = cacheRedisBroadcast.<TestObj>getAsync(cacheConfig, ids.get(0), null).get(1, TimeUnit.SECONDS);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+        assertThat(obj.getValue()).isEqualTo(expected);
+
+        cacheManager.evict(CacheRedisBroadcast.LEVEL_1, cacheConfig, null, ids.get(0), cacheRedisBroadcast);
+        obj = cacheRedisBroadcast.<TestObj>getAsync(cacheConfig, ids.get(0), null).get(1, TimeUnit.SECONDS);
+        assertThat(obj.getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(obj.getValue()).isEqualTo(expected);
+
+        Map<String, TestObj> all = ids.stream().collect(Collectors.toMap(String::toString, id -> dataPicker.pickup(id)));
+        cacheRedisBroadcast.setAllAsync(cacheConfig, all).get(1, TimeUnit.SECONDS);
+        CacheObject<Map<String, TestObj>> list = cacheRedisBroadcast.<TestObj>getListAsync(cacheConfig, ids, null).get(1, TimeUnit.SECONDS);
+        assertThat(list.getValue()).isEqualTo(all);
+
+        cacheRedisBroadcast.batchEvictAsync(cacheConfig, ids).get(1, TimeUnit.SECONDS);
+        list = cacheRedisBroadcast.<TestObj>getListAsync(cacheConfig, ids, null).get(1, TimeUnit.SECONDS);
+        assertThat(list.getValue()).isEmpty();
+    }
+
+    /**
+     * 需要Redis 5.0及以上
+     */
+    @Test
+    public void streamTransport() throws Exception {
+        BroadcastConfig streamConfig = new BroadcastConfig().setTransport(BroadcastConfig.Transport.stream);
+        CacheRedisBroadcast streamBroadcast = new CacheRedisBroadcast(pool, config, cacheManager, streamConfig);
+        CacheManager cacheManager2 = new CacheManager(redisCacheProvider, CacheProviderType.ehcache.name(), "ehcache-2.xml");
+        CacheRedisBroadcast otherStreamBroadcast = new CacheRedisBroadcast(pool, config, cacheManager2, streamConfig);
+        Thread.sleep(300); //等着订阅线程准备完毕启动
+        TestObj expected = dataPicker.pickup(ids.get(0));
+        streamBroadcast.set(cacheConfig, ids.get(0), expected);
+        assertThat(otherStreamBroadcast.get(cacheConfig, ids.get(0), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_2);
+        assertThat(otherStreamBroadcast.get(cacheConfig, ids.get(0), null).getLevel()).isEqualTo(CacheRedisBroadcast.LEVEL_1);
+
+        //经stream广播清除otherStreamBroadcast的1级缓存
+        streamBroadcast.evict(cacheConfig, ids.get(0));
+        streamBroadcast.flushEvictions();
+        Thread.sleep(100);
+        assertThat(otherStreamBroadcast.get(cacheConfig, ids.get(0), null).getValue()).isNull();
+    }
+
     @Test
     public void notifyElementExpired() throws Exception {
 
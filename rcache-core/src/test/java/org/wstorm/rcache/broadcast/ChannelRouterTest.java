@@ -0,0 +1,73 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+@SuppressWarnings("unchecked")
+public class ChannelRouterTest {
+
+    private final List<String> regions = Lists.newArrayList("udserv:usr", "udserv:app");
+
+    @Test
+    public void noneKeepsRegionChannels() throws Exception {
+        ChannelRouter router = new ChannelRouter(BroadcastConfig.ShardMode.region, 1, "g", regions); //1个分片等同于不分片
+        assertThat(router.subscribeChannels()).containsExactly("udserv:usr", "udserv:app");
+        assertThat(router.route("udserv:usr", Lists.newArrayList("a", "b"))).containsOnlyKeys("udserv:usr");
+        assertThat(router.regionsOf("udserv:usr")).containsExactly("udserv:usr");
+    }
+
+    @Test
+    public void regionShards() throws Exception {
+        ChannelRouter router = new ChannelRouter(BroadcastConfig.ShardMode.region, 4, "g", regions);
+        assertThat(router.subscribeChannels()).hasSize(8).contains("udserv:usr#0", "udserv:app#3");
+        assertThat(router.channelOf("udserv:usr", "k1")).startsWith("udserv:usr#");
+        assertThat(router.channelOf("udserv:usr", "k1")).isEqualTo(router.channelOf("udserv:usr", "k1"));
+        assertThat(router.regionsOf("udserv:usr#2")).containsExactly("udserv:usr");
+    }
+
+    @Test
+    public void globalShards() throws Exception {
+        ChannelRouter router = new ChannelRouter(BroadcastConfig.ShardMode.global, 4, "rcache:evict", regions);
+        assertThat(router.subscribeChannels()).containsExactly("rcache:evict#0", "rcache:evict#1", "rcache:evict#2", "rcache:evict#3");
+        assertThat(router.regionsOf("rcache:evict#1")).isEqualTo(regions);
+    }
+
+    @Test
+    public void routeGroupsKeysByShard() throws Exception {
+        ChannelRouter router = new ChannelRouter(BroadcastConfig.ShardMode.region, 4, "g", regions);
+        List<String> keys = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) keys.add("udserv:usr:testObj:" + i);
+
+        Map<String, Object> routed = router.route("udserv:usr", keys);
+        assertThat(routed).hasSize(4);
+        int total = 0;
+        for (Map.Entry<String, Object> e : routed.entrySet()) {
+            for (String key : (List<String>) e.getValue()) {
+                assertThat(router.channelOf("udserv:usr", key)).isEqualTo(e.getKey());
+                total++;
+            }
+        }
+        assertThat(total).isEqualTo(100);
+        assertThat(router.route("udserv:usr", "k1").values()).containsExactly("k1");
+    }
+
+    @Test
+    public void partition() throws Exception {
+        ChannelRouter router = new ChannelRouter(BroadcastConfig.ShardMode.global, 5, "g", regions);
+        List<List<String>> groups = router.partition(2);
+        assertThat(groups).hasSize(2);
+        assertThat(groups.get(0)).containsExactly("g#0", "g#2", "g#4");
+        assertThat(groups.get(1)).containsExactly("g#1", "g#3");
+        assertThat(router.partition(10)).hasSize(5);
+    }
+}
@@ -0,0 +1,117 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.wstorm.rcache.entity.Command;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月21日
+ */
+@SuppressWarnings("unchecked")
+public class CommandCodecTest {
+
+    private static final String HOST_ID = "5760f3a1c0ffee0012345678";
+
+    private final CommandCodec codec = new CommandCodec();
+
+    @Test
+    public void singleKey() throws Exception {
+        Command cmd = codec.decode(codec.encode(new Command(HOST_ID, Command.OPT_DELETE_KEY, "udserv:usr", "udserv:usr:id:9527")));
+        assertThat(cmd.getHostId()).isEqualTo(HOST_ID);
+        assertThat(cmd.getOperator()).isEqualTo(Command.OPT_DELETE_KEY);
+        assertThat(cmd.getRegion()).isEqualTo("udserv:usr");
+        assertThat(cmd.getKey()).isEqualTo("udserv:usr:id:9527");
+    }
+
+    @Test
+    public void keyListIsPrefixCompressed() throws Exception {
+        List<String> keys = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) keys.add("udserv:usr:id:" + (9500 + i));
+        Command origin = new Command(HOST_ID, Command.OPT_DELETE_KEY, "udserv:usr", keys);
+
+        byte[] compact = codec.encode(origin);
+        byte[] kryo = new KryoPoolSerializer().serialize(origin);
+        assertThat(compact.length).isLessThan(kryo.length / 3);
+
+        Command cmd = codec.decode(compact);
+        assertThat((List<String>) cmd.getKey()).containsExactlyElementsOf(keys);
+    }
+
+    @Test
+    public void sequence() throws Exception {
+        Command origin = new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", "r:1");
+        assertThat(codec.decode(codec.encode(origin)).getSequence()).isZero();
+        origin.setSequence(1L << 40);
+        assertThat(codec.decode(codec.encode(origin)).getSequence()).isEqualTo(1L << 40);
+        assertThat(codec.decode(new KryoPoolSerializer().serialize(origin)).getSequence()).isZero(); //旧格式不传输序号
+    }
+
+    @Test
+    public void dataVersion() throws Exception {
+        Command origin = new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", Lists.newArrayList("r:1", "r:2"));
+        origin.setSequence(7);
+        origin.setVersion(1466812800000000L);
+        Command cmd = codec.decode(codec.encode(origin));
+        assertThat(cmd.getVersion()).isEqualTo(1466812800000000L);
+        assertThat(cmd.getSequence()).isEqualTo(7);
+        assertThat((List<String>) cmd.getKey()).containsExactly("r:1", "r:2");
+
+        origin.setVersion(0);
+        byte[] withoutVersion = codec.encode(origin);
+        origin.setVersion(1466812800000000L);
+        byte[] withVersion = codec.encode(origin);
+        //版本号在末尾, 之前的部分与不带版本号时一致(标志位除外), 旧的解码逻辑读完KEY即结束
+        assertThat(withVersion.length).isGreaterThan(withoutVersion.length);
+        assertThat(Arrays.copyOfRange(withVersion, 4, withoutVersion.length))
+                .isEqualTo(Arrays.copyOfRange(withoutVersion, 4, withoutVersion.length));
+    }
+
+    @Test
+    public void keySetAndNonAsciiKeys() throws Exception {
+        Set<String> keys = Sets.newHashSet("区域:张三", "区域:李四");
+        Command cmd = codec.decode(codec.encode(new Command("host-1", Command.OPT_DELETE_KEY, "区域", keys)));
+        assertThat(cmd.getHostId()).isEqualTo("host-1");
+        assertThat((Set<String>) cmd.getKey()).isEqualTo(keys);
+    }
+
+    @Test
+    public void nullKeyAndEmptyList() throws Exception {
+        assertThat(codec.decode(codec.encode(new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", null))).getKey()).isNull();
+        assertThat((List<String>) codec.decode(codec.encode(new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", Lists.newArrayList()))).getKey()).isEmpty();
+    }
+
+    @Test
+    public void decodeLegacyKryoMessage() throws Exception {
+        byte[] legacy = new KryoPoolSerializer().serialize(new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", Lists.newArrayList("r:1", "r:2")));
+        Command cmd = codec.decode(legacy);
+        assertThat(cmd.getHostId()).isEqualTo(HOST_ID);
+        assertThat((List<String>) cmd.getKey()).containsExactly("r:1", "r:2");
+
+        Command fromLegacyEncoder = codec.decode(new CommandCodec(false).encode(new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", "r:1")));
+        assertThat(fromLegacyEncoder.getKey()).isEqualTo("r:1");
+    }
+
+    @Test(expected = CacheException.class)
+    public void unsupportedVersion() throws Exception {
+        codec.decode(new byte[]{CommandCodec.MAGIC, 9, 1, 0});
+    }
+
+    @Test(expected = CacheException.class)
+    public void truncated() throws Exception {
+        byte[] bytes = codec.encode(new Command(HOST_ID, Command.OPT_DELETE_KEY, "r", "r:1"));
+        byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        codec.decode(truncated);
+    }
+}
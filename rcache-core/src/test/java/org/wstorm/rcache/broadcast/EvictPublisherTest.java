@@ -0,0 +1,97 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月20日
+ */
+@SuppressWarnings("unchecked")
+public class EvictPublisherTest {
+
+    private final List<Object[]> sent = new CopyOnWriteArrayList<>();
+    private EvictPublisher publisher;
+
+    @After
+    public void tearDown() throws Exception {
+        if (publisher != null) publisher.close();
+    }
+
+    @Test
+    public void withoutWindowSendsImmediately() throws Exception {
+        publisher = new EvictPublisher((region, key, version) -> sent.add(new Object[]{region, key}), 0, 100);
+        publisher.evict("r", "k1");
+        publisher.evict("r", "k1");
+        assertThat(sent).hasSize(2);
+        assertThat(publisher.getPublishedMessages()).isEqualTo(2);
+    }
+
+    @Test
+    public void coalescesAndDeduplicatesPerRegion() throws Exception {
+        publisher = new EvictPublisher((region, key, version) -> sent.add(new Object[]{region, key}), 60_000, 100);
+        publisher.evict("r1", "k1");
+        publisher.evict("r1", Lists.newArrayList("k2", "k1"));
+        publisher.evict("r2", "k9");
+        assertThat(sent).isEmpty();
+        assertThat(publisher.getPendingKeys()).isEqualTo(3);
+
+        publisher.flush();
+
+        assertThat(sent).hasSize(2);
+        for (Object[] cmd : sent) {
+            if ("r1".equals(cmd[0])) assertThat((List<Object>) cmd[1]).containsExactly("k1", "k2");
+            else assertThat(cmd[1]).isEqualTo("k9"); //单个KEY仍以字符串发送
+        }
+        assertThat(publisher.getEnqueuedKeys()).isEqualTo(4);
+        assertThat(publisher.getDuplicateKeys()).isEqualTo(1);
+        assertThat(publisher.getPublishedKeys()).isEqualTo(3);
+        assertThat(publisher.getPendingKeys()).isZero();
+    }
+
+    @Test
+    public void flushAfterWindow() throws Exception {
+        publisher = new EvictPublisher((region, key, version) -> sent.add(new Object[]{region, key}), 20, 100);
+        publisher.evict("r", "k1");
+        publisher.evict("r", "k2");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+
+        assertThat(sent).hasSize(1);
+        assertThat((List<Object>) sent.get(0)[1]).containsExactly("k1", "k2");
+    }
+
+    @Test
+    public void flushWhenMaxKeysReached() throws Exception {
+        publisher = new EvictPublisher((region, key, version) -> sent.add(new Object[]{region, key}), 60_000, 3);
+        publisher.evict("r", Lists.newArrayList("k1", "k2", "k3"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+
+        assertThat(sent).hasSize(1);
+        assertThat((List<Object>) sent.get(0)[1]).hasSize(3);
+    }
+
+    @Test
+    public void flushRegionAndClose() throws Exception {
+        publisher = new EvictPublisher((region, key, version) -> sent.add(new Object[]{region, key}), 60_000, 100);
+        publisher.evict("r1", "k1");
+        publisher.evict("r2", "k2");
+        publisher.flush("r1");
+        assertThat(sent).hasSize(1);
+        assertThat(sent.get(0)[0]).isEqualTo("r1");
+
+        publisher.close();
+        assertThat(sent).hasSize(2);
+        publisher.evict("r3", "k3"); //关闭后在调用线程中发送
+        assertThat(sent).hasSize(3);
+        publisher = null;
+    }
+}
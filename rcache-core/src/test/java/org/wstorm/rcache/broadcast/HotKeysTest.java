@@ -0,0 +1,93 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月30日
+ */
+public class HotKeysTest {
+
+    private final CacheConfig pinnable = CacheUtils.getCacheAnnotation(HotObj.class);
+    private final CacheConfig plain = CacheUtils.getCacheAnnotation(TestObj.class);
+
+    @Test
+    public void topKeepsHeavyHitters() throws Exception {
+        HotKeySketch sketch = new HotKeySketch(1024, 4, TimeUnit.MINUTES.toNanos(1));
+        for (int round = 0; round < 200; round++) {
+            sketch.increment("hot");
+            if (round % 2 == 0) sketch.increment("warm");
+            sketch.increment("cold:" + round);
+        }
+        List<HotKey> top = sketch.top();
+        assertThat(top).hasSize(4);
+        assertThat(top.get(0).getKey()).isEqualTo("hot");
+        assertThat(top.get(0).getCount()).isGreaterThanOrEqualTo(200);
+        assertThat(top.get(1).getKey()).isEqualTo("warm");
+        assertThat(sketch.estimate("hot")).isGreaterThanOrEqualTo(200);
+    }
+
+    @Test
+    public void countsDecayPerWindow() throws Exception {
+        HotKeySketch sketch = new HotKeySketch(64, 4, TimeUnit.MILLISECONDS.toNanos(50));
+        for (int i = 0; i < 100; i++) sketch.increment("k");
+        Thread.sleep(60);
+        assertThat(sketch.increment("k")).isLessThanOrEqualTo(51L);
+        Thread.sleep(500);
+        assertThat(sketch.top()).isEmpty();
+    }
+
+    @Test
+    public void pinsOnlyHotKeysOfPinnableRegions() throws Exception {
+        HotKeys hotKeys = new HotKeys(8, 60_000, 3, 1024, 10);
+        TestObj value = new TestObj("1", 1);
+
+        assertThat(hotKeys.<TestObj>access(pinnable, "1")).isNull();
+        hotKeys.pin(pinnable, "1", value);
+        assertThat(hotKeys.pinnedSize()).isZero(); //还不是热点
+
+        hotKeys.access(pinnable, "1");
+        hotKeys.access(pinnable, "1");
+        hotKeys.pin(pinnable, "1", value);
+        assertThat(hotKeys.<TestObj>access(pinnable, "1")).isSameAs(value);
+        assertThat(hotKeys.getPinnedHits()).isEqualTo(1);
+        assertThat(hotKeys.getHotKeys(pinnable.region()).get(0).getKey()).isEqualTo(CacheUtils.genCacheKey(pinnable, "1"));
+
+        Map<String, TestObj> pinned = hotKeys.accessAll(pinnable, Lists.newArrayList("1", "2"));
+        assertThat(pinned).containsOnlyKeys("1");
+
+        // 清除广播或本地写入后不再返回
+        hotKeys.remove(pinnable.region(), Lists.newArrayList(CacheUtils.genCacheKey(pinnable, "1")));
+        assertThat(hotKeys.<TestObj>access(pinnable, "1")).isNull();
+
+        // 未配置钉住时间的region只统计
+        for (int i = 0; i < 5; i++) hotKeys.access(plain, "1");
+        hotKeys.pin(plain, "1", value);
+        assertThat(hotKeys.pinnedSize()).isZero();
+        assertThat(hotKeys.getHotKeys(plain.region())).extracting(HotKey::getCount).containsExactly(5L);
+    }
+
+    @Test
+    public void disabledWhenTopKIsZero() throws Exception {
+        HotKeys hotKeys = new HotKeys(0, 60_000, 1, 1024, 10);
+        hotKeys.access(pinnable, "1");
+        hotKeys.pin(pinnable, "1", new TestObj("1", 1));
+        assertThat(hotKeys.<TestObj>access(pinnable, "1")).isNull();
+        assertThat(hotKeys.getHotKeys(pinnable.region())).isEmpty();
+    }
+
+    @CacheConfig(region = "udserv:hot", keyPrefix = "hotObj", expiredTime = 10, hotKeyPinTime = 60)
+    private static class HotObj {
+    }
+}
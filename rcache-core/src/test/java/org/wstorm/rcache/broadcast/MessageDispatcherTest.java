@@ -0,0 +1,106 @@
+package org.wstorm.rcache.broadcast;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月22日
+ */
+public class MessageDispatcherTest {
+
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private MessageDispatcher dispatcher;
+
+    @After
+    public void tearDown() throws Exception {
+        if (dispatcher != null) dispatcher.shutdown(1000);
+    }
+
+    @Test
+    public void inlineWithoutThreads() throws Exception {
+        dispatcher = new MessageDispatcher(this::record, 0, 10);
+        dispatcher.dispatch("r".getBytes(), "m1".getBytes());
+        assertThat(handled).containsExactly("r/m1");
+        assertThat(threads).containsOnly(Thread.currentThread());
+    }
+
+    @Test
+    public void sameChannelKeepsOrderOffCallerThread() throws Exception {
+        dispatcher = new MessageDispatcher(this::record, 4, 1000);
+        for (int i = 0; i < 500; i++) dispatcher.dispatch("r1".getBytes(), String.valueOf(i).getBytes());
+        awaitProcessed(500);
+
+        assertThat(threads).doesNotContain(Thread.currentThread());
+        for (int i = 0; i < 500; i++) assertThat(handled.get(i)).isEqualTo("r1/" + i);
+        assertThat(dispatcher.getQueueDepth()).isZero();
+        assertThat(dispatcher.getOverflowCount()).isZero();
+    }
+
+    @Test
+    public void overflowBlocksCallerUntilWorkerHasRoom() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher = new MessageDispatcher((channel, message) -> {
+            if ("block".equals(new String(message))) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            record(channel, message);
+        }, 1, 2);
+
+        dispatcher.dispatch("r".getBytes(), "block".getBytes());
+        while (dispatcher.getQueueDepth() > 0) Thread.sleep(1); //工作线程已取走并阻塞
+        dispatcher.dispatch("r".getBytes(), "q1".getBytes());
+        dispatcher.dispatch("r".getBytes(), "q2".getBytes());
+        Thread subscriber = new Thread(() -> dispatcher.dispatch("r".getBytes(), "overflow".getBytes()));
+        subscriber.start();
+        while (dispatcher.getOverflowCount() == 0) Thread.sleep(1);
+
+        subscriber.join(50);
+        assertThat(subscriber.isAlive()).isTrue(); //订阅线程等待, 不越过队列中的消息
+        assertThat(handled).isEmpty();
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(2);
+
+        release.countDown();
+        subscriber.join(1000);
+        assertThat(subscriber.isAlive()).isFalse();
+        awaitProcessed(4);
+        assertThat(handled).containsExactly("r/block", "r/q1", "r/q2", "r/overflow");
+        assertThat(dispatcher.getBlockedMicros()).isGreaterThan(0);
+        assertThat(dispatcher.getMaxLagMicros()).isGreaterThan(0);
+    }
+
+    @Test
+    public void handlerExceptionDoesNotKillWorker() throws Exception {
+        dispatcher = new MessageDispatcher((channel, message) -> {
+            if ("bad".equals(new String(message))) throw new IllegalStateException("bad message");
+            record(channel, message);
+        }, 1, 10);
+        dispatcher.dispatch("r".getBytes(), "bad".getBytes());
+        dispatcher.dispatch("r".getBytes(), "good".getBytes());
+        awaitProcessed(2);
+        assertThat(handled).containsExactly("r/good");
+    }
+
+    private void record(byte[] channel, byte[] message) {
+        threads.add(Thread.currentThread());
+        handled.add(new String(channel) + "/" + new String(message));
+    }
+
+    private void awaitProcessed(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getProcessedCount() < count && System.currentTimeMillis() < deadline) Thread.sleep(2);
+        assertThat(dispatcher.getProcessedCount()).isEqualTo(count);
+    }
+}
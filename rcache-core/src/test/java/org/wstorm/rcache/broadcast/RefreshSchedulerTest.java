@@ -0,0 +1,108 @@
+package org.wstorm.rcache.broadcast;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月26日
+ */
+public class RefreshSchedulerTest {
+
+    private final RefreshScheduler scheduler = new RefreshScheduler(1, 1);
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void isNearExpiry() throws Exception {
+        CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(RefreshAheadObj.class); //10秒过期, 最后2秒刷新
+        long now = System.currentTimeMillis();
+        assertThat(RefreshScheduler.isNearExpiry(cacheConfig, now + 1000, now)).isTrue();
+        assertThat(RefreshScheduler.isNearExpiry(cacheConfig, now + 2000, now)).isTrue();
+        assertThat(RefreshScheduler.isNearExpiry(cacheConfig, now + 5000, now)).isFalse();
+        assertThat(RefreshScheduler.isNearExpiry(cacheConfig, 0, now)).isFalse(); //过期时间未知
+        assertThat(RefreshScheduler.isNearExpiry(CacheUtils.getCacheAnnotation(null), now + 1, now)).isFalse();
+    }
+
+    @Test
+    public void refreshingIdIsSkipped() throws Exception {
+        CountDownLatch block = new CountDownLatch(1);
+        List<List<String>> reloaded = new CopyOnWriteArrayList<>();
+        scheduler.schedule("r", Lists.newArrayList("1", "2"), claimed -> {
+            reloaded.add(claimed);
+            await(block);
+        });
+        scheduler.schedule("r", Lists.newArrayList("2", "3"), reloaded::add); //排队中
+        scheduler.schedule("r", Lists.newArrayList("1", "3"), reloaded::add); //都在刷新中
+
+        assertThat(scheduler.getRefreshingSize()).isEqualTo(3);
+        assertThat(scheduler.getScheduledCount()).isEqualTo(3);
+        block.countDown();
+        waitFor(() -> scheduler.getCompletedCount() == 3);
+        assertThat(reloaded).containsExactly(Lists.newArrayList("1", "2"), Lists.newArrayList("3"));
+        assertThat(scheduler.getRefreshingSize()).isZero();
+
+        scheduler.schedule("r", Lists.newArrayList("1"), reloaded::add); //刷新完成后可再次登记
+        waitFor(() -> scheduler.getCompletedCount() == 4);
+    }
+
+    @Test
+    public void fullQueueDropsRefresh() throws Exception {
+        CountDownLatch block = new CountDownLatch(1);
+        scheduler.schedule("r", Lists.newArrayList("1"), claimed -> await(block));
+        scheduler.schedule("r", Lists.newArrayList("2"), claimed -> {
+        });
+        waitFor(() -> scheduler.getRefreshingSize() == 2);
+        scheduler.schedule("r", Lists.newArrayList("3", "4"), claimed -> {
+        });
+
+        assertThat(scheduler.getRejectedCount()).isEqualTo(2);
+        assertThat(scheduler.getScheduledCount()).isEqualTo(2);
+        assertThat(scheduler.getRefreshingSize()).isEqualTo(2); //被放弃的id不占用刷新标记
+        block.countDown();
+        waitFor(() -> scheduler.getCompletedCount() == 2);
+    }
+
+    @Test
+    public void failedRefreshReleasesId() throws Exception {
+        scheduler.schedule("r", Lists.newArrayList("1"), claimed -> {
+            throw new IllegalStateException("db down");
+        });
+        waitFor(() -> scheduler.getFailedCount() == 1);
+        waitFor(() -> scheduler.getRefreshingSize() == 0);
+        assertThat(scheduler.getCompletedCount()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    @CacheConfig(region = "udserv:refresh", keyPrefix = "refreshObj", expiredTime = 10, refreshAhead = 0.2f)
+    private static class RefreshAheadObj {
+    }
+}
@@ -0,0 +1,61 @@
+package org.wstorm.rcache.broadcast;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月23日
+ */
+public class SequenceTrackerTest {
+
+    private final SequenceTracker tracker = new SequenceTracker();
+
+    @Test
+    public void publisherSequence() throws Exception {
+        assertThat(tracker.publisherSequence("r1").incrementAndGet()).isEqualTo(1);
+        assertThat(tracker.publisherSequence("r1").incrementAndGet()).isEqualTo(2);
+        assertThat(tracker.publisherSequence("r2").incrementAndGet()).isEqualTo(1);
+    }
+
+    @Test
+    public void gapDetection() throws Exception {
+        assertThat(tracker.received("h1", "r", 5)).isFalse(); //第一条作为起点
+        assertThat(tracker.received("h1", "r", 6)).isFalse();
+        assertThat(tracker.received("h1", "r", 6)).isFalse(); //重复
+        assertThat(tracker.received("h1", "r", 9)).isTrue();
+        assertThat(tracker.received("h1", "r", 8)).isFalse(); //迟到的旧序号
+        assertThat(tracker.received("h1", "r", 10)).isFalse();
+        assertThat(tracker.getGapCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void hostsAndRegionsAreIndependent() throws Exception {
+        tracker.received("h1", "r1", 1);
+        tracker.received("h2", "r1", 7);
+        tracker.received("h1", "r2", 3);
+        assertThat(tracker.received("h1", "r1", 2)).isFalse();
+        assertThat(tracker.received("h2", "r1", 8)).isFalse();
+        assertThat(tracker.received("h1", "r2", 5)).isTrue();
+    }
+
+    @Test
+    public void legacyCommandsAreIgnored() throws Exception {
+        tracker.received("h1", "r", 1);
+        assertThat(tracker.received("h1", "r", 0)).isFalse();
+        assertThat(tracker.received(null, "r", 9)).isFalse();
+        assertThat(tracker.received("h1", "r", 2)).isFalse();
+    }
+
+    @Test
+    public void resyncResetsRegion() throws Exception {
+        tracker.received("h1", "r1", 1);
+        tracker.received("h1", "r2", 1);
+        tracker.resynced("r1");
+        assertThat(tracker.received("h1", "r1", 9)).isFalse(); //重同步后重新起算
+        assertThat(tracker.received("h1", "r2", 9)).isTrue();
+        assertThat(tracker.getResyncCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,71 @@
+package org.wstorm.rcache.broadcast;
+
+import org.junit.Test;
+import org.wstorm.rcache.cache.VersionClock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月25日
+ */
+public class VersionTombstonesTest {
+
+    @Test
+    public void olderVersionIsStale() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(1024, 60_000);
+        long old = VersionClock.next();
+        long updated = VersionClock.next();
+        tombstones.invalidate("r", "r:1", updated);
+
+        assertThat(tombstones.isStale("r", "r:1", old)).isTrue();
+        assertThat(tombstones.isStale("r", "r:1", updated)).isFalse();
+        assertThat(tombstones.isStale("r", "r:1", VersionClock.next())).isFalse();
+        assertThat(tombstones.isStale("r", "r:1", 0)).isFalse(); //没有版本号的值无法比较
+        assertThat(tombstones.isStale("r2", "r:1", old)).isFalse();
+        assertThat(tombstones.getTombstoneCount()).isEqualTo(1);
+        assertThat(tombstones.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void slotKeepsMaxVersion() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(1, 60_000); //所有KEY落在同一槽位
+        long v1 = VersionClock.next(), v2 = VersionClock.next(), v3 = VersionClock.next();
+        tombstones.invalidate("r", "r:1", v3);
+        tombstones.invalidate("r", "r:2", v2);
+        assertThat(tombstones.isStale("r", "r:1", v2)).isTrue();
+        assertThat(tombstones.isStale("r", "r:3", v1)).isTrue(); //冲突只会多拒绝, 不会放过旧值
+    }
+
+    @Test
+    public void legacyCommandUsesReceiveTime() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(1024, 60_000);
+        long old = VersionClock.next();
+        Thread.sleep(2);
+        tombstones.invalidate("r", "r:1", 0);
+        assertThat(tombstones.isStale("r", "r:1", old)).isTrue();
+    }
+
+    @Test
+    public void tombstoneExpiresAfterWindow() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(1024, 20);
+        long old = VersionClock.next();
+        tombstones.invalidate("r", "r:1", VersionClock.next());
+        assertThat(tombstones.isStale("r", "r:1", old)).isTrue();
+        Thread.sleep(40);
+        assertThat(tombstones.isStale("r", "r:1", old)).isFalse();
+    }
+
+    @Test
+    public void invalidateAll() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(1024, 60_000);
+        long old = VersionClock.next();
+        Thread.sleep(2);
+        tombstones.invalidateAll("r");
+        assertThat(tombstones.isStale("r", "any", old)).isTrue();
+        assertThat(tombstones.isStale("other", "any", old)).isFalse(); //只影响重同步的region
+        Thread.sleep(2);
+        assertThat(tombstones.isStale("r", "any", VersionClock.next())).isFalse();
+    }
+}
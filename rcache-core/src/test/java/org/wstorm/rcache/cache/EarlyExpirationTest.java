@@ -0,0 +1,56 @@
+package org.wstorm.rcache.cache;
+
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月27日
+ */
+public class EarlyExpirationTest {
+
+    @Test
+    public void probabilityRisesTowardsExpiry() throws Exception {
+        long expireAt = 100_000;
+        // 加载耗时100ms, 随机数0.5时提前约69ms
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt - 80, 0.5)).isFalse();
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt - 60, 0.5)).isTrue();
+        // 离过期越远, 需要越小的随机数才会提前
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt - 1000, 0.5)).isFalse();
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt - 1000, 0.00001)).isTrue();
+        // beta越大越早
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 2, expireAt - 120, 0.5)).isTrue();
+        // 已过期的值总是重新加载, 随机数为1时只有过期才重新加载
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt, 1)).isTrue();
+        assertThat(EarlyExpiration.shouldRecompute(100, expireAt, 1, expireAt - 1, 1)).isFalse();
+        // 没有加载耗时或过期时间的值不参与
+        assertThat(EarlyExpiration.shouldRecompute(0, expireAt, 1, expireAt, 0.1)).isFalse();
+        assertThat(EarlyExpiration.shouldRecompute(100, 0, 1, expireAt, 0.1)).isFalse();
+    }
+
+    @Test
+    public void enabledByCacheConfig() throws Exception {
+        CacheConfig enabled = CacheUtils.getCacheAnnotation(XFetchObj.class);
+        CacheConfig disabled = CacheUtils.getCacheAnnotation(TestObj.class);
+        assertThat(EarlyExpiration.isEnabled(enabled)).isTrue();
+        assertThat(EarlyExpiration.isEnabled(disabled)).isFalse();
+        assertThat(EarlyExpiration.expireAt(enabled, 1000)).isEqualTo(61_000);
+        assertThat(EarlyExpiration.expireAt(disabled, 1000)).isZero();
+
+        EarlyExpiration earlyExpiration = new EarlyExpiration();
+        long now = System.currentTimeMillis();
+        assertThat(earlyExpiration.shouldRecompute(enabled, 100, now - 1)).isTrue();
+        assertThat(earlyExpiration.shouldRecompute(disabled, 100, now - 1)).isFalse();
+        assertThat(earlyExpiration.shouldRecompute(enabled, 1, now + 3_600_000)).isFalse();
+        assertThat(earlyExpiration.getRecomputeCount()).isEqualTo(1);
+    }
+
+    @CacheConfig(region = "udserv:xfetch", keyPrefix = "xfetchObj", expiredTime = 60, earlyExpiration = 1)
+    private static class XFetchObj {
+    }
+}
@@ -0,0 +1,74 @@
+package org.wstorm.rcache.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ */
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void noFalseNegative() throws Exception {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) filter.put("obj:" + i);
+        for (int i = 0; i < 1000; i++) assertThat(filter.mightContain("obj:" + i)).isTrue();
+        assertThat(filter.getStageCount()).isEqualTo(1);
+        assertThat(filter.getApproximateCount()).isBetween(990L, 1000L);
+
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) if (filter.mightContain("obj:" + i)) falsePositives++;
+        assertThat(falsePositives).isLessThan(300); //1%的误判率, 留足余量
+    }
+
+    @Test
+    public void growsWhenFull() throws Exception {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        long bits = filter.getBitSize();
+        for (int i = 0; i < 1000; i++) filter.put("obj:" + i);
+        assertThat(filter.getStageCount()).isGreaterThan(1);
+        assertThat(filter.getBitSize()).isGreaterThan(bits);
+        for (int i = 0; i < 1000; i++) assertThat(filter.mightContain("obj:" + i)).isTrue();
+
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) if (filter.mightContain("obj:" + i)) falsePositives++;
+        assertThat(falsePositives).isLessThan(500); //总误判率不超过初始误判率的2倍
+    }
+
+    @Test
+    public void repeatedPutIsNotCounted() throws Exception {
+        ScalableBloomFilter filter = new ScalableBloomFilter(10, 0.01);
+        for (int i = 0; i < 100; i++) filter.put("obj:1");
+        assertThat(filter.getApproximateCount()).isEqualTo(1);
+        assertThat(filter.getStageCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentPutLosesNothing() throws Exception {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                for (int i = offset; i < 20000; i += 4) filter.put("obj:" + i);
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 20000; i++) assertThat(filter.mightContain("obj:" + i)).isTrue();
+    }
+}
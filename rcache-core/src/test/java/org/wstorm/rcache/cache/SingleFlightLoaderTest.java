@@ -0,0 +1,231 @@
+package org.wstorm.rcache.cache;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月02日
+ */
+public class SingleFlightLoaderTest {
+
+    private SingleFlightLoader loader;
+    private CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+
+    @Before
+    public void setUp() throws Exception {
+        loader = new SingleFlightLoader();
+    }
+
+    @Test
+    public void load() throws Exception {
+        assertThat((String) loader.load("k", () -> "v")).isEqualTo("v");
+        assertThat((String) loader.load("k", () -> "v2")).isEqualTo("v2"); //上一次加载完成后不再合并
+        assertThat(loader.getExecutedLoads()).isEqualTo(2);
+        assertThat(loader.getCoalescedLoads()).isZero();
+        assertThat(loader.getInFlightSize()).isZero();
+    }
+
+    @Test
+    public void concurrentLoadsAreCoalesced() throws Exception {
+        int threads = 20;
+        AtomicInteger pickups = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = Lists.newArrayList();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> loader.load("hot", () -> {
+                    pickups.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "db";
+                })));
+            }
+            while (loader.getExecutedLoads() + loader.getCoalescedLoads() < threads) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("db");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(pickups.get()).isEqualTo(1);
+        assertThat(loader.getExecutedLoads()).isEqualTo(1);
+        assertThat(loader.getCoalescedLoads()).isEqualTo(threads - 1);
+    }
+
+    @Test
+    public void waitTimeout() throws Exception {
+        loader.setWaitTimeout(50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(() -> loader.load("slow", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "late";
+        }));
+        leader.start();
+        started.await();
+        try {
+            loader.load("slow", () -> "never");
+            fail("should wait timeout");
+        } catch (CacheException e) {
+            assertThat(e.getCause()).isInstanceOf(java.util.concurrent.TimeoutException.class);
+        } finally {
+            release.countDown();
+            leader.join();
+        }
+    }
+
+    @Test
+    public void pickupAllWithBulkDataPicker() throws Exception {
+        List<String> ids = Lists.newArrayList("9527", "9528", "9529");
+        List<Collection<String>> calls = Lists.newArrayList();
+        BulkDataPicker<String, TestObj> picker = new BulkTestObjDataPicker(ids, calls);
+
+        Map<String, TestObj> loaded = loader.pickupAll(cacheConfig, Lists.newArrayList("9527", "9528", "404"), picker);
+
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).containsOnly("9527", "9528", "404");
+        assertThat(loaded).hasSize(3);
+        assertThat(loaded.get("9527")).isEqualTo(new TestObj("9527", 100));
+        assertThat(loaded.get("404").isBlank()).isTrue();
+        assertThat(loader.getExecutedLoads()).isEqualTo(3);
+    }
+
+    @Test
+    public void pickupAllWithoutBulkDataPicker() throws Exception {
+        List<String> ids = Lists.newArrayList("9527", "9528");
+        Map<String, TestObj> loaded = loader.pickupAll(cacheConfig, Lists.newArrayList("9527", "404"), new TestObjDatePicker(ids));
+        assertThat(loaded.get("9527")).isEqualTo(new TestObj("9527", 100));
+        assertThat(loaded.get("404").isBlank()).isTrue();
+        assertThat(loader.getExecutedLoads()).isEqualTo(2);
+    }
+
+    @Test
+    public void loadAllJoinsRunningLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(() -> loader.load(CacheUtils.genCacheKey(cacheConfig, "9527"), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new TestObj("9527", 1);
+        }));
+        leader.start();
+        started.await();
+
+        List<Collection<String>> calls = Lists.newArrayList();
+        BulkDataPicker<String, TestObj> picker = new BulkTestObjDataPicker(Lists.newArrayList("9527", "9528"), calls) {
+            @Override
+            public Map<String, TestObj> pickupAll(Collection<String> keys) {
+                release.countDown(); //此时9527已登记为等待正在加载的线程
+                return super.pickupAll(keys);
+            }
+        };
+        Map<String, TestObj> loaded = loader.pickupAll(cacheConfig, Lists.newArrayList("9527", "9528"), picker);
+        leader.join();
+
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).containsOnly("9528");
+        assertThat(loaded.get("9527").getSum()).isEqualTo(1); //由正在加载的线程提供
+        assertThat(loader.getCoalescedLoads()).isEqualTo(1);
+    }
+
+    @Test
+    public void entriesCarryLeaderVersion() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong pickupStart = new AtomicLong();
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, "9527");
+        Thread leader = new Thread(() -> loader.loadEntry(cacheKey, version -> {
+            pickupStart.set(version);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new TestObj("9527", 1);
+        }));
+        leader.start();
+        started.await();
+        long tombstone = VersionClock.next(); //回源期间的写入
+
+        BulkDataPicker<String, TestObj> picker = new BulkTestObjDataPicker(Lists.newArrayList("9527", "9528"), Lists.newArrayList()) {
+            @Override
+            public Map<String, TestObj> pickupAll(Collection<String> keys) {
+                release.countDown();
+                return super.pickupAll(keys);
+            }
+        };
+        Map<String, CacheEntry<TestObj>> loaded = loader.pickupAllEntries(cacheConfig, Lists.newArrayList("9527", "9528"), picker);
+        leader.join();
+
+        // 等待的线程得到执行回源的线程在回源前取的版本号, 早于回源期间的写入
+        assertThat(loaded.get("9527").getVersion()).isEqualTo(pickupStart.get()).isLessThan(tombstone);
+        assertThat(loaded.get("9528").getVersion()).isGreaterThan(tombstone);
+        assertThat(loader.<TestObj>loadEntry("404", version -> null)).isNull();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loadException() throws Exception {
+        loader.load("error", () -> {
+            throw new IllegalStateException("db down");
+        });
+    }
+
+    private static class BulkTestObjDataPicker extends TestObjDatePicker implements BulkDataPicker<String, TestObj> {
+
+        private final List<String> ids;
+        private final List<Collection<String>> calls;
+
+        BulkTestObjDataPicker(List<String> ids, List<Collection<String>> calls) {
+            super(ids);
+            this.ids = ids;
+            this.calls = calls;
+        }
+
+        @Override
+        public Map<String, TestObj> pickupAll(Collection<String> keys) {
+            calls.add(Lists.newArrayList(keys));
+            return keys.stream().filter(ids::contains).collect(Collectors.toMap(id -> id, id -> new TestObj(id, 100)));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.wstorm.rcache.cache;
+
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.wstorm.rcache.cache.StalePolicy.State.*;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月28日
+ */
+public class StalePolicyTest {
+
+    private final CacheConfig stale = CacheUtils.getCacheAnnotation(StaleObj.class);
+    private final CacheConfig plain = CacheUtils.getCacheAnnotation(TestObj.class);
+
+    @Test
+    public void stateOf() throws Exception {
+        long expireAt = 100_000;
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt - 1)).isEqualTo(FRESH);
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt)).isEqualTo(REVALIDATE);
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt + 9_999)).isEqualTo(REVALIDATE);
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt + 10_000)).isEqualTo(IF_ERROR);
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt + 29_999)).isEqualTo(IF_ERROR);
+        assertThat(StalePolicy.stateOf(stale, expireAt, expireAt + 30_000)).isEqualTo(EXPIRED);
+        assertThat(StalePolicy.stateOf(stale, 0, expireAt)).isEqualTo(FRESH); //过期时间未知
+        assertThat(StalePolicy.stateOf(plain, expireAt, expireAt + 1)).isEqualTo(FRESH); //未开启
+    }
+
+    @Test
+    public void retention() throws Exception {
+        assertThat(StalePolicy.isEnabled(stale)).isTrue();
+        assertThat(StalePolicy.isEnabled(plain)).isFalse();
+        assertThat(StalePolicy.retention(stale)).isEqualTo(90);
+        assertThat(StalePolicy.retention(plain)).isEqualTo(plain.expiredTime());
+        assertThat(StalePolicy.expireAt(stale, 1000)).isEqualTo(61_000);
+        assertThat(StalePolicy.expireAt(plain, 1000)).isZero();
+    }
+
+    @Test
+    public void counters() throws Exception {
+        StalePolicy policy = new StalePolicy();
+        policy.servedWhileRevalidate();
+        policy.servedIfError();
+        policy.servedIfError();
+        assertThat(policy.getServedWhileRevalidateCount()).isEqualTo(1);
+        assertThat(policy.getServedIfErrorCount()).isEqualTo(2);
+    }
+
+    @CacheConfig(region = "udserv:stale", keyPrefix = "staleObj", expiredTime = 60, staleWhileRevalidate = 10, staleIfError = 30)
+    private static class StaleObj {
+    }
+}
@@ -60,6 +60,14 @@ public class EhCacheCacheTest {
         assertThat(keys.get(0)).isEqualTo(CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
     }
 
+    @Test
+    public void clear() throws Exception {
+        ids.forEach(id -> cache.put(cacheConfig, id, new TestObj(id, 200)));
+        assertThat(cache.keys()).hasSize(ids.size());
+        cache.clear();
+        assertThat(cache.keys()).isEmpty();
+    }
+
 
     @Test(expected = CacheException.class)
     public void getPutAll() throws Exception {
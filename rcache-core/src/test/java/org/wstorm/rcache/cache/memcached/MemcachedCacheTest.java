@@ -0,0 +1,79 @@
+package org.wstorm.rcache.cache.memcached;
+
+import com.google.common.collect.Lists;
+import net.spy.memcached.MemcachedClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.memcached.SpyMemcachedClient;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月13日
+ */
+public class MemcachedCacheTest {
+
+    /**
+     * 异步写入与删除在spymemcached的IO线程上完成, 不应使用executor
+     */
+    private static final Executor UNUSED = command -> {
+        throw new IllegalStateException("executor should not be used");
+    };
+
+    private final CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+    private final List<String> ids = Lists.newArrayList("9527", "9528", "9529");
+    private final TestObjDatePicker dataPicker = new TestObjDatePicker(ids);
+    private SpyMemcachedClient memcached;
+    private MemcachedCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        ResourceBundle bundle = ResourceBundle.getBundle("memcached");
+        memcached = new SpyMemcachedClient();
+        memcached.setMemcachedClient(new MemcachedClient(new InetSocketAddress(
+                bundle.getString("memcached.ip"), Integer.parseInt(bundle.getString("memcached.port")))));
+        cache = new MemcachedProvider(memcached).buildCache(cacheConfig.region(), null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.evict(cacheConfig, ids);
+        memcached.destroy();
+    }
+
+    @Test
+    public void putEvictAsync() throws Exception {
+        TestObj expect = dataPicker.pickup(ids.get(0));
+        cache.putAsync(cacheConfig, ids.get(0), expect, UNUSED).get(1, TimeUnit.SECONDS);
+        assertThat(cache.<TestObj>get(cacheConfig, ids.get(0), null)).isEqualTo(expect);
+
+        cache.evictAsync(cacheConfig, ids.get(0), UNUSED).get(1, TimeUnit.SECONDS);
+        assertThat(cache.<TestObj>get(cacheConfig, ids.get(0), null)).isNull();
+        cache.evictAsync(cacheConfig, ids.get(0), UNUSED).get(1, TimeUnit.SECONDS); //不存在的KEY正常完成
+    }
+
+    @Test
+    public void putAllEvictAllAsync() throws Exception {
+        Map<String, TestObj> expected = ids.stream().collect(Collectors.toMap(String::toString, dataPicker::pickup));
+        cache.putAllAsync(cacheConfig, expected, UNUSED).get(1, TimeUnit.SECONDS);
+        assertThat(cache.<TestObj>getAll(cacheConfig, ids, null)).isEqualTo(expected);
+
+        cache.evictAsync(cacheConfig, ids, UNUSED).get(1, TimeUnit.SECONDS);
+        assertThat(cache.<TestObj>getAll(cacheConfig, ids, null)).isEmpty();
+    }
+}
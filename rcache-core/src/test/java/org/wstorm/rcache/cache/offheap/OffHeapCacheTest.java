@@ -0,0 +1,126 @@
+package org.wstorm.rcache.cache.offheap;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+public class OffHeapCacheTest {
+
+    private OffHeapCacheProvider provider = new OffHeapCacheProvider();
+    private OffHeapCache cache;
+
+    private List<String> expired = new CopyOnWriteArrayList<>();
+    private CacheExpiredListener listener = new CacheExpiredListener() {
+        @Override
+        public <ID> void notifyElementExpired(String region, ID key) {
+            expired.add(region + "|" + key);
+        }
+    };
+    private CacheConfig cacheConfig;
+    private List<String> ids;
+    private TestObjDatePicker datePicker;
+
+    @Before
+    public void setUp() throws Exception {
+        provider.start("offheap.properties");
+        cache = provider.buildCache("test", listener);
+        ids = Lists.newArrayList("9527", "9528", "9529");
+        cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+        datePicker = new TestObjDatePicker(ids);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.stop();
+    }
+
+    @Test
+    public void getPut() throws Exception {
+        TestObj actual = cache.get(cacheConfig, ids.get(0), datePicker);
+        assertThat(actual).isNull();
+        TestObj expect = new TestObj(ids.get(0), 200);
+        cache.put(cacheConfig, ids.get(0), expect);
+        actual = cache.get(cacheConfig, ids.get(0), null);
+        assertThat(actual).isEqualTo(expect).isNotSameAs(expect); //反序列化出的新对象
+        assertThat(cache.keys()).containsOnly(CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
+    }
+
+    @Test
+    public void getPutAllEvict() throws Exception {
+        Map<String, TestObj> rs = ids.stream().collect(Collectors.toMap(String::toString, id -> datePicker.pickup(id)));
+        cache.putAll(cacheConfig, rs);
+        assertThat(cache.getAll(cacheConfig, ids, null)).isEqualTo(rs);
+
+        cache.evict(null, CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
+        assertThat(cache.getAll(cacheConfig, ids, null)).hasSize(2);
+        cache.evict(cacheConfig, ids);
+        assertThat(cache.getAll(cacheConfig, ids, null)).isEmpty();
+        assertThat(cache.keys()).isEmpty();
+    }
+
+    @Test
+    public void boundedByBytes() throws Exception {
+        OffHeapCache small = provider.buildCache("udserv:usr", listener);
+        for (int i = 0; i < 1000; i++) {
+            small.put(cacheConfig, "id" + i, new TestObj("id" + i, i));
+        }
+        OffHeapMemoryUsage usage = small.memoryUsage();
+        assertThat(usage.getCapacity()).isEqualTo(4096);
+        assertThat(usage.getUsedBytes()).isLessThanOrEqualTo(4096);
+        assertThat(usage.getEntries()).isGreaterThan(0).isLessThan(1000);
+        assertThat(usage.getEvictions()).isEqualTo(1000 - usage.getEntries());
+        TestObj last = small.get(cacheConfig, "id999", null);
+        assertThat(last).isEqualTo(new TestObj("id999", 999));
+
+        assertThat(provider.memoryUsage()).extracting(OffHeapMemoryUsage::getRegion).containsOnly("test", "udserv:usr");
+    }
+
+    @Test
+    public void expire() throws Exception {
+        AtomicLong now = new AtomicLong(1000L);
+        OffHeapCache ttlCache = new OffHeapCache("ttl", 4096, 1, 60, listener, now::get);
+        ttlCache.put(cacheConfig, ids.get(0), new TestObj(ids.get(0), 1)); //CacheConfig 10秒
+        ttlCache.put(null, "noConfig", new TestObj("noConfig", 1)); //region默认60秒
+
+        now.addAndGet(10_000L);
+        TestObj actual = ttlCache.get(cacheConfig, ids.get(0), null);
+        assertThat(actual).isNull();
+        assertThat(expired).containsExactly("ttl|" + CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
+
+        now.addAndGet(50_000L);
+        ttlCache.cleanUp();
+        assertThat(expired).hasSize(2).contains("ttl|noConfig");
+        assertThat(ttlCache.memoryUsage().getEntries()).isZero();
+    }
+
+    @Test(expected = CacheException.class)
+    public void mockGetException() throws Exception {
+        provider.stop(); //模拟异常
+        cache.get(cacheConfig, ids.get(0), datePicker);
+    }
+
+    @Test(expected = CacheException.class)
+    public void notStarted() throws Exception {
+        new OffHeapCacheProvider().buildCache("test", listener);
+    }
+}
@@ -0,0 +1,102 @@
+package org.wstorm.rcache.cache.offheap;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月11日
+ */
+public class OffHeapSegmentTest {
+
+    private static final int RECORD = OffHeapSegment.HEADER_SIZE + 2 + 10; //key2字节, value10字节
+
+    @Test
+    public void putGetRemove() throws Exception {
+        OffHeapSegment segment = new OffHeapSegment(1024);
+        assertThat(segment.put(key("k1"), 1, value(1), 0)).isTrue();
+        assertThat(segment.get(key("k1"), 1, 0)).isEqualTo(value(1));
+        assertThat(segment.get(key("k2"), 1, 0)).isNull(); //hash相同key不同
+
+        assertThat(segment.put(key("k1"), 1, value(2), 0)).isTrue();
+        assertThat(segment.get(key("k1"), 1, 0)).isEqualTo(value(2));
+        assertThat(segment.size()).isEqualTo(1);
+        assertThat(segment.liveBytes()).isEqualTo(RECORD);
+        assertThat(segment.usedBytes()).isEqualTo(2 * RECORD); //旧记录等日志头部经过时回收
+
+        assertThat(segment.remove(key("k1"), 1)).isTrue();
+        assertThat(segment.get(key("k1"), 1, 0)).isNull();
+        assertThat(segment.liveBytes()).isZero();
+    }
+
+    @Test
+    public void fifoOverwriteAndWrap() throws Exception {
+        OffHeapSegment segment = new OffHeapSegment(RECORD * 3 + 7); //末尾7字节放不下记录
+        for (int i = 0; i < 10; i++) {
+            assertThat(segment.put(key("k" + i), i, value(i), 0)).isTrue();
+            assertThat(segment.size()).isLessThanOrEqualTo(3);
+        }
+        assertThat(segment.get(key("k9"), 9, 0)).isEqualTo(value(9));
+        assertThat(segment.get(key("k8"), 8, 0)).isEqualTo(value(8));
+        assertThat(segment.get(key("k0"), 0, 0)).isNull();
+        assertThat(segment.evictions()).isEqualTo(10 - segment.size());
+        assertThat(segment.usedBytes()).isLessThanOrEqualTo(segment.capacity());
+    }
+
+    @Test
+    public void tooLarge() throws Exception {
+        OffHeapSegment segment = new OffHeapSegment(64);
+        segment.put(key("k1"), 1, value(1), 0);
+        assertThat(segment.put(key("k1"), 1, new byte[64], 0)).isFalse();
+        assertThat(segment.get(key("k1"), 1, 0)).isNull();
+    }
+
+    @Test
+    public void expire() throws Exception {
+        OffHeapSegment segment = new OffHeapSegment(1024);
+        segment.put(key("k1"), 1, value(1), 100);
+        segment.put(key("k2"), 2, value(2), 200);
+        segment.put(key("k3"), 3, value(3), 0);
+        assertThat(segment.get(key("k1"), 1, 100)).isSameAs(OffHeapSegment.EXPIRED);
+        assertThat(segment.get(key("k1"), 1, 100)).isNull();
+
+        List<String> expired = Lists.newArrayList();
+        segment.expire(300, expired);
+        assertThat(expired).containsExactly("k2");
+        List<String> keys = Lists.newArrayList();
+        segment.keys(300, keys);
+        assertThat(keys).containsExactly("k3");
+    }
+
+    @Test
+    public void indexRehash() throws Exception {
+        OffHeapSegment segment = new OffHeapSegment(1 << 20);
+        for (int i = 0; i < 5000; i++) {
+            String k = "key" + i;
+            segment.put(key(k), k.hashCode(), value(i), 0);
+            if (i % 2 == 0) segment.remove(key(k), k.hashCode());
+        }
+        assertThat(segment.size()).isEqualTo(2500);
+        for (int i = 0; i < 5000; i++) {
+            String k = "key" + i;
+            assertThat(segment.get(key(k), k.hashCode(), 0)).isEqualTo(i % 2 == 0 ? null : value(i));
+        }
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] value(int i) {
+        byte[] value = new byte[10];
+        value[0] = (byte) i;
+        value[9] = (byte) (i >>> 8);
+        return value;
+    }
+}
@@ -1,12 +1,29 @@
 package org.wstorm.rcache.cache.redis;
 
+import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.wstorm.rcache.TestBase;
 import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.broadcast.VersionTombstones;
+import org.wstorm.rcache.cache.BulkDataPicker;
+import org.wstorm.rcache.cache.CacheEntry;
+import org.wstorm.rcache.cache.DataPicker;
+import org.wstorm.rcache.cache.VersionClock;
+import org.wstorm.rcache.enums.RedisValueMode;
+import org.wstorm.rcache.utils.CacheUtils;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,6 +60,211 @@ public class RedisCacheTest extends TestBase {
         });
     }
 
+    @Test
+    public void versionedEntry() throws Exception {
+        redisCacheProvider.setVersioned(true);
+        try {
+            TestObj obj = dataPicker.pickup(ids.get(0));
+            cache.putEntry(cacheConfig, ids.get(0), obj, 1466812800000000L);
+            CacheEntry<TestObj> entry = cache.getEntry(cacheConfig, ids.get(0), null);
+            assertThat(entry.getValue()).isEqualTo(obj);
+            assertThat(entry.getVersion()).isEqualTo(1466812800000000L);
+            assertThat(cache.<TestObj>getAllEntries(cacheConfig, ids.subList(0, 1), null).get(ids.get(0)).getVersion())
+                    .isEqualTo(1466812800000000L);
+
+            cache.put(cacheConfig, ids.get(0), obj);
+            assertThat(cache.<TestObj>getEntry(cacheConfig, ids.get(0), null).getVersion()).isZero();
+        } finally {
+            redisCacheProvider.setVersioned(false);
+        }
+        //关闭后仍能读取带版本号的值
+        cache.putEntry(cacheConfig, ids.get(1), dataPicker.pickup(ids.get(1)), 1466812800000000L);
+        assertThat(cache.<TestObj>get(cacheConfig, ids.get(1), null)).isEqualTo(dataPicker.pickup(ids.get(1)));
+    }
+
+    @Test
+    public void loadedEntryCarriesPickupStartVersion() throws Exception {
+        VersionTombstones tombstones = new VersionTombstones(16, 60_000);
+        TestObjDatePicker evictingPicker = new TestObjDatePicker(ids) {
+            @Override
+            public TestObj pickup(String key) {
+                // 回源期间其他节点写入并广播了清除命令
+                tombstones.invalidate(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, key), VersionClock.next());
+                return super.pickup(key);
+            }
+        };
+        CacheEntry<TestObj> entry = cache.getEntry(cacheConfig, ids.get(0), evictingPicker);
+        assertThat(entry.getVersion()).isPositive();
+        assertThat(tombstones.isStale(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, ids.get(0)), entry.getVersion())).isTrue();
+
+        Map<String, CacheEntry<TestObj>> entries = cache.getAllEntries(cacheConfig, ids.subList(1, 3), evictingPicker);
+        assertThat(entries).hasSize(2);
+        entries.forEach((id, e) -> assertThat(tombstones.isStale(cacheConfig.region(), CacheUtils.genCacheKey(cacheConfig, id), e.getVersion())).isTrue());
+    }
+
+    @Test
+    public void earlyExpiration() throws Exception {
+        CacheConfig xfetch = CacheUtils.getCacheAnnotation(XFetchObj.class);
+        String id = ids.get(0);
+        try {
+            assertThat(cache.get(xfetch, id, dataPicker)).isEqualTo(dataPicker.pickup(id));
+            CacheEntry<TestObj> entry = cache.getEntry(xfetch, id, null);
+            assertThat(entry.getExpireAt()).isGreaterThan(System.currentTimeMillis());
+
+            // beta极大时每次命中都提前重新加载, 并在同一次读取中返回新值
+            AtomicInteger loads = new AtomicInteger();
+            DataPicker<String, TestObj> counting = new DataPicker<String, TestObj>() {
+                @Override
+                public TestObj pickup(String key) {
+                    return new TestObj(key, loads.incrementAndGet());
+                }
+
+                @Override
+                public TestObj makeEmptyData() {
+                    return null;
+                }
+            };
+            assertThat(cache.get(xfetch, id, counting).getSum()).isEqualTo(1);
+            assertThat(cache.getAll(xfetch, ids.subList(0, 1), counting).get(id).getSum()).isEqualTo(2);
+            assertThat(cache.getEarlyExpiration().getRecomputeCount()).isEqualTo(2);
+
+            // 重新加载失败时仍返回当前值
+            DataPicker<String, TestObj> failing = new DataPicker<String, TestObj>() {
+                @Override
+                public TestObj pickup(String key) {
+                    throw new IllegalStateException("db down");
+                }
+
+                @Override
+                public TestObj makeEmptyData() {
+                    return null;
+                }
+            };
+            assertThat(cache.get(xfetch, id, failing).getSum()).isEqualTo(2);
+            assertThat(cache.getAll(xfetch, ids.subList(0, 1), failing).get(id).getSum()).isEqualTo(2);
+
+            // 直接写入的值没有加载耗时, 不参与提前过期
+            cache.put(xfetch, id, new TestObj(id, 0));
+            assertThat(cache.get(xfetch, id, counting).getSum()).isEqualTo(0);
+            assertThat(cache.<TestObj>getEntry(xfetch, id, null).getExpireAt()).isZero();
+        } finally {
+            cache.evict(xfetch, ids);
+        }
+    }
+
+    @Test
+    public void staleWhileRevalidateAndIfError() throws Exception {
+        CacheConfig swr = CacheUtils.getCacheAnnotation(RevalidateObj.class);
+        CacheConfig sie = CacheUtils.getCacheAnnotation(IfErrorObj.class);
+        String id = ids.get(0);
+        AtomicInteger loads = new AtomicInteger();
+        DataPicker<String, TestObj> counting = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                return new TestObj(key, loads.incrementAndGet());
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return null;
+            }
+        };
+        DataPicker<String, TestObj> failing = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String key) {
+                throw new IllegalStateException("db down");
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return null;
+            }
+        };
+        redisCacheProvider.setRevalidateExecutor(Runnable::run); //在读取线程中重新加载, 便于断言
+        try {
+            cache.put(swr, id, new TestObj(id, 0));
+            cache.put(sie, id, new TestObj(id, 0));
+            Thread.sleep(1100);
+
+            // 逻辑过期后值仍在Redis中, 返回过期值并重新加载
+            assertThat(cache.get(swr, id, counting).getSum()).isEqualTo(0);
+            assertThat(cache.get(swr, id, counting).getSum()).isEqualTo(1);
+            assertThat(cache.getStalePolicy().getServedWhileRevalidateCount()).isEqualTo(1);
+
+            assertThat(cache.get(sie, id, failing).getSum()).isEqualTo(0);
+            assertThat(cache.getAll(sie, ids.subList(0, 1), failing).get(id).getSum()).isEqualTo(0);
+            assertThat(cache.getStalePolicy().getServedIfErrorCount()).isEqualTo(2);
+            assertThat(cache.get(sie, id, counting).getSum()).isEqualTo(2);
+            // 重新加载后逻辑过期时间随之更新
+            assertThat(cache.<TestObj>getEntry(sie, id, null).getExpireAt()).isGreaterThan(System.currentTimeMillis());
+        } finally {
+            redisCacheProvider.setRevalidateExecutor(null);
+            cache.evict(swr, ids);
+            cache.evict(sie, ids);
+        }
+    }
+
+    @CacheConfig(region = "udserv:swr", keyPrefix = "swrObj", expiredTime = 1, staleWhileRevalidate = 60)
+    private static class RevalidateObj {
+    }
+
+    @CacheConfig(region = "udserv:sie", keyPrefix = "sieObj", expiredTime = 1, staleIfError = 60)
+    private static class IfErrorObj {
+    }
+
+    @CacheConfig(region = "udserv:xfetch", keyPrefix = "xfetchObj", expiredTime = 60, earlyExpiration = 1e9f)
+    private static class XFetchObj {
+    }
+
+    @Test
+    public void getAllChunked() throws Exception {
+        redisCacheProvider.setBatchSize(2);
+        try {
+            Map<String, TestObj> objectMap = ids.stream().collect(
+                    Collectors.toMap(String::toString, dataPicker::pickup));
+            cache.putAll(cacheConfig, objectMap);
+
+            List<String> reversed = Lists.reverse(ids);
+            Map<String, TestObj> getAll = cache.getAll(cacheConfig, reversed, null);
+            assertThat(getAll).isEqualTo(objectMap);
+            assertThat(getAll.keySet()).containsExactlyElementsOf(reversed); //按ids顺序返回
+        } finally {
+            redisCacheProvider.setBatchSize(RedisCache.DEFAULT_BATCH_SIZE);
+        }
+    }
+
+    @Test
+    public void getAllWithBulkDataPicker() throws Exception {
+        List<Collection<String>> calls = Lists.newArrayList();
+        BulkDataPicker<String, TestObj> bulkDataPicker = new BulkDataPicker<String, TestObj>() {
+            @Override
+            public Map<String, TestObj> pickupAll(Collection<String> keys) {
+                calls.add(keys);
+                return keys.stream().collect(Collectors.toMap(String::toString, dataPicker::pickup));
+            }
+
+            @Override
+            public TestObj pickup(String key) {
+                return dataPicker.pickup(key);
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return dataPicker.makeEmptyData();
+            }
+        };
+        cache.put(cacheConfig, ids.get(0), dataPicker.pickup(ids.get(0)));
+
+        Map<String, TestObj> getAll = cache.getAll(cacheConfig, ids, bulkDataPicker);
+        assertThat(getAll).hasSize(ids.size());
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).containsOnly(ids.get(1), ids.get(2));
+
+        getAll = cache.getAll(cacheConfig, ids, bulkDataPicker); //已回写到缓存
+        assertThat(getAll).hasSize(ids.size());
+        assertThat(calls).hasSize(1);
+    }
+
     @Test
     public void putAll() throws Exception {
         Map<String, TestObj> getAll = cache.getAll(noExpiredCacheConfig, ids, null);
@@ -60,6 +282,47 @@ public class RedisCacheTest extends TestBase {
         });
     }
 
+    @Test
+    public void putAllConcurrently() throws Exception {
+        int threads = 16, perThread = 625; //共1万条
+        ExecutorService serializeExecutor = Executors.newFixedThreadPool(4);
+        redisCacheProvider.setSerializeExecutor(serializeExecutor);
+        List<String> allIds = Lists.newArrayList();
+        try {
+            for (CacheConfig config : Lists.newArrayList(cacheConfig, noExpiredCacheConfig)) {
+                CyclicBarrier barrier = new CyclicBarrier(threads);
+                List<Thread> writers = Lists.newArrayList();
+                List<Throwable> errors = new CopyOnWriteArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    List<String> batch = Lists.newArrayList();
+                    for (int i = 0; i < perThread; i++) batch.add("stress-" + t + "-" + i);
+                    allIds.addAll(batch);
+                    writers.add(new Thread(() -> {
+                        try {
+                            barrier.await();
+                            cache.putAll(config, batch.stream().collect(
+                                    Collectors.toMap(String::toString, id -> new TestObj(id, id.hashCode()))));
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }));
+                }
+                writers.forEach(Thread::start);
+                for (Thread writer : writers) writer.join();
+                assertThat(errors).isEmpty();
+
+                Map<String, TestObj> all = cache.getAll(config, allIds, null);
+                assertThat(all).hasSize(threads * perThread);
+                all.forEach((id, obj) -> assertThat(obj).isEqualTo(new TestObj(id, id.hashCode())));
+                cache.evict(config, allIds);
+                allIds.clear();
+            }
+        } finally {
+            redisCacheProvider.setSerializeExecutor(null);
+            serializeExecutor.shutdown();
+        }
+    }
+
     @Test
     public void get() throws Exception {
         TestObj obj = cache.get(cacheConfig, ids.get(0), null);
@@ -72,6 +335,39 @@ public class RedisCacheTest extends TestBase {
         assertThat(obj.isBlank()).isTrue();
     }
 
+    @Test
+    public void getCoalesced() throws Exception {
+        long executed = cache.getLoader().getExecutedLoads();
+        TestObjDatePicker slowPicker = new TestObjDatePicker(ids) {
+            @Override
+            public TestObj pickup(String key) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                }
+                return super.pickup(key);
+            }
+        };
+        List<Thread> threads = Lists.newArrayList();
+        List<TestObj> results = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    results.add(cache.get(cacheConfig, ids.get(0), slowPicker));
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) thread.join();
+
+        assertThat(errors).isEmpty();
+        assertThat(results).hasSize(10).doesNotContainNull();
+        assertThat(cache.getLoader().getExecutedLoads() - executed).isEqualTo(1);
+    }
+
     @Test
     public void put() throws Exception {
         TestObj obj = cache.get(noExpiredCacheConfig, ids.get(0), null);
@@ -83,6 +379,31 @@ public class RedisCacheTest extends TestBase {
         assertThat(get).isEqualTo(obj);
     }
 
+    @Test
+    public void binaryValueMigration() throws Exception {
+        TestObj obj = dataPicker.pickup(ids.get(0));
+        cache.put(cacheConfig, obj.id(), obj); //旧的Base64格式
+
+        redisCacheProvider.setValueMode(RedisValueMode.binary);
+        redisCacheProvider.setCompatibleRead(true);
+        try {
+            TestObj actual = cache.get(cacheConfig, ids.get(0), null);
+            assertThat(actual).isEqualTo(obj);
+            TestObj other = dataPicker.pickup(ids.get(1));
+            cache.put(cacheConfig, other.id(), other);
+            Map<String, TestObj> all = cache.getAll(cacheConfig, ids.subList(0, 2), null);
+            assertThat(all.get(ids.get(0))).isEqualTo(obj);
+            assertThat(all.get(ids.get(1))).isEqualTo(other);
+
+            redisCacheProvider.setCompatibleRead(false);
+            actual = cache.get(cacheConfig, ids.get(1), null);
+            assertThat(actual).isEqualTo(other);
+        } finally {
+            redisCacheProvider.setValueMode(RedisValueMode.base64);
+            redisCacheProvider.setCompatibleRead(false);
+        }
+    }
+
     @Test
     public void keys() throws Exception {
         assertThat(cache.keys()).isEmpty();
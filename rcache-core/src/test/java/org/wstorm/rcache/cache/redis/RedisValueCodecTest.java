@@ -0,0 +1,126 @@
+package org.wstorm.rcache.cache.redis;
+
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.enums.RedisValueMode;
+import org.wstorm.rcache.serializer.KryoPoolSerializer;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月06日
+ */
+public class RedisValueCodecTest {
+
+    private KryoPoolSerializer serializer = new KryoPoolSerializer();
+
+    @Test
+    public void base64() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        RedisValueCodec codec = new RedisValueCodec(RedisValueMode.base64, false);
+        byte[] stored = codec.encode(serialized);
+        assertThat(stored).isEqualTo(Base64.getEncoder().encode(serialized));
+        assertThat(codec.decode(stored)).isEqualTo(serialized);
+    }
+
+    @Test
+    public void binary() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        RedisValueCodec codec = new RedisValueCodec(RedisValueMode.binary, false);
+        byte[] stored = codec.encode(serialized);
+        assertThat(stored).isSameAs(serialized);
+        assertThat(codec.decode(stored)).isEqualTo(serialized);
+    }
+
+    @Test
+    public void compatibleRead() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        assertThat(RedisValueCodec.isBase64(serialized)).isFalse();
+
+        RedisValueCodec codec = new RedisValueCodec(RedisValueMode.binary, true);
+        assertThat(codec.decode(Base64.getEncoder().encode(serialized))).isEqualTo(serialized);
+        assertThat(codec.decode(serialized)).isEqualTo(serialized);
+
+        codec = new RedisValueCodec(RedisValueMode.base64, true);
+        assertThat(codec.decode(serialized)).isEqualTo(serialized);
+        assertThat((TestObj) serializer.deserialize(codec.decode(codec.encode(serialized)))).isEqualTo(new TestObj("9527", 100));
+    }
+
+    @Test
+    public void versioned() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        RedisValueCodec codec = new RedisValueCodec(RedisValueMode.base64, false, true);
+        byte[] decoded = codec.decode(codec.encode(serialized, 1466812800000000L));
+        assertThat(RedisValueCodec.versionOf(decoded)).isEqualTo(1466812800000000L);
+        assertThat(RedisValueCodec.payloadOf(decoded)).isEqualTo(serialized);
+
+        //未分配版本号或未打开时不写版本头, 读取时总是识别版本头
+        assertThat(codec.encode(serialized, 0)).isEqualTo(codec.encode(serialized));
+        RedisValueCodec plain = new RedisValueCodec(RedisValueMode.binary, true);
+        assertThat(plain.encode(serialized, 1466812800000000L)).isSameAs(serialized);
+        assertThat(RedisValueCodec.versionOf(plain.decode(serialized))).isZero();
+        assertThat(RedisValueCodec.payloadOf(plain.decode(codec.encode(serialized, 1466812800000000L)))).isEqualTo(serialized);
+    }
+
+    @Test
+    public void encodeLentBuffer() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        byte[] lent = new byte[serialized.length + 8];
+        System.arraycopy(serialized, 0, lent, 4, serialized.length);
+        for (RedisValueMode mode : RedisValueMode.values()) {
+            RedisValueCodec codec = new RedisValueCodec(mode, true, true);
+            assertThat(codec.encode(lent, 4, serialized.length, 0, 0, 0)).isEqualTo(codec.encode(serialized));
+            assertThat(codec.encode(lent, 4, serialized.length, 1466812800000000L, 0, 0))
+                    .isEqualTo(codec.encode(serialized, 1466812800000000L));
+            assertThat(codec.encode(lent, 4, serialized.length, 1466812800000000L, 30, 1466812860000L))
+                    .isEqualTo(codec.encode(serialized, 1466812800000000L, 30, 1466812860000L));
+            // 借用的缓冲区总是复制
+            assertThat(new RedisValueCodec(mode, true).encode(serialized, 0, serialized.length, 0, 0, 0)).isNotSameAs(serialized);
+
+            byte[] decoded = codec.decode(codec.encode(lent, 4, serialized.length, 1466812800000000L, 0, 0));
+            int offset = RedisValueCodec.payloadOffset(decoded);
+            assertThat((TestObj) serializer.deserialize(decoded, offset, decoded.length - offset)).isEqualTo(new TestObj("9527", 100));
+        }
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        byte[] serialized = serializer.serialize(new TestObj("9527", 100));
+        RedisValueCodec codec = new RedisValueCodec(RedisValueMode.binary, true, true);
+        byte[] decoded = codec.decode(codec.encode(serialized, 1466812800000000L, 35, 1466812920000L));
+        assertThat(RedisValueCodec.versionOf(decoded)).isEqualTo(1466812800000000L);
+        assertThat(RedisValueCodec.deltaOf(decoded)).isEqualTo(35);
+        assertThat(RedisValueCodec.expireAtOf(decoded)).isEqualTo(1466812920000L);
+        assertThat(RedisValueCodec.payloadOf(decoded)).isEqualTo(serialized);
+
+        //未打开版本号时版本号写0, 只有版本头的值没有加载耗时
+        RedisValueCodec plain = new RedisValueCodec(RedisValueMode.base64, false);
+        decoded = plain.decode(plain.encode(serialized, 1466812800000000L, 35, 1466812920000L));
+        assertThat(RedisValueCodec.versionOf(decoded)).isZero();
+        assertThat(RedisValueCodec.deltaOf(decoded)).isEqualTo(35);
+        assertThat(RedisValueCodec.payloadOf(decoded)).isEqualTo(serialized);
+        decoded = codec.decode(codec.encode(serialized, 1466812800000000L));
+        assertThat(RedisValueCodec.deltaOf(decoded)).isZero();
+        assertThat(RedisValueCodec.expireAtOf(decoded)).isZero();
+        assertThat(codec.encode(serialized, 1466812800000000L, 35, 0)).isEqualTo(codec.encode(serialized, 1466812800000000L));
+        //直接写入的值只保存逻辑过期时间
+        decoded = codec.decode(codec.encode(serialized, 1466812800000000L, 0, 1466812920000L));
+        assertThat(RedisValueCodec.deltaOf(decoded)).isZero();
+        assertThat(RedisValueCodec.expireAtOf(decoded)).isEqualTo(1466812920000L);
+    }
+
+    @Test
+    public void emptyValue() throws Exception {
+        assertThat(RedisValueCodec.isEmptyValue(RedisValueCodec.EMPTY_VALUE)).isTrue();
+        assertThat(RedisValueCodec.isEmptyValue(new byte[]{(byte) 0xE7, 0})).isFalse();
+        //Kryo与Base64写出的值都不会与标记相同
+        byte[] serialized = serializer.serialize(new TestObj());
+        assertThat(RedisValueCodec.isEmptyValue(serialized)).isFalse();
+        assertThat(RedisValueCodec.isEmptyValue(new RedisValueCodec(RedisValueMode.base64, false).encode(serialized))).isFalse();
+        assertThat(RedisValueCodec.isBase64(RedisValueCodec.EMPTY_VALUE)).isFalse();
+    }
+}
@@ -0,0 +1,37 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void increment() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(512);
+        assertThat(sketch.frequency("a")).isZero();
+        for (int i = 0; i < 5; i++) sketch.increment("a");
+        assertThat(sketch.frequency("a")).isEqualTo(5);
+        assertThat(sketch.frequency("b")).isZero();
+    }
+
+    @Test
+    public void saturate() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 20; i++) sketch.increment("a");
+        assertThat(sketch.frequency("a")).isEqualTo(15);
+    }
+
+    @Test
+    public void reset() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 10; i++) sketch.increment("hot");
+        for (int i = 0; i < 640; i++) sketch.increment("k" + i); //达到采样数后所有计数减半
+        assertThat(sketch.frequency("hot")).isBetween(4, 7);
+    }
+}
@@ -0,0 +1,245 @@
+package org.wstorm.rcache.cache.tinylfu;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.TestObjDatePicker;
+import org.wstorm.rcache.annotation.CacheConfig;
+import org.wstorm.rcache.cache.Cache;
+import org.wstorm.rcache.cache.CacheExpiredListener;
+import org.wstorm.rcache.cache.ehcache.EhCacheProvider;
+import org.wstorm.rcache.exception.CacheException;
+import org.wstorm.rcache.utils.CacheUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月10日
+ */
+public class TinyLfuCacheTest {
+
+    private TinyLfuCacheProvider provider = new TinyLfuCacheProvider();
+    private TinyLfuCache cache;
+
+    private List<String> expired = new CopyOnWriteArrayList<>();
+    private CacheExpiredListener listener = new CacheExpiredListener() {
+        @Override
+        public <ID> void notifyElementExpired(String region, ID key) {
+            expired.add(region + "|" + key);
+        }
+    };
+    private CacheConfig cacheConfig;
+    private List<String> ids;
+    private TestObjDatePicker datePicker;
+
+    @Before
+    public void setUp() throws Exception {
+        provider.start("tinylfu.properties");
+        cache = provider.buildCache("test", listener);
+        ids = Lists.newArrayList("9527", "9528", "9529");
+        cacheConfig = CacheUtils.getCacheAnnotation(TestObj.class);
+        datePicker = new TestObjDatePicker(ids);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.stop();
+    }
+
+    @Test
+    public void regionConfig() throws Exception {
+        assertThat(cache.getMaximum()).isEqualTo(100);
+        assertThat(provider.buildCache("udserv:usr", listener).getMaximum()).isEqualTo(3);
+        assertThat(provider.buildCache("weighted", listener).getMaximum()).isEqualTo(8192);
+        assertThat(provider.buildCache("test", listener)).isSameAs(cache);
+    }
+
+    @Test
+    public void getPut() throws Exception {
+        TestObj actual = cache.get(cacheConfig, ids.get(0), datePicker);
+        assertThat(actual).isNull(); //L1有无数据返回与dataPicker无关
+        TestObj expect = new TestObj(ids.get(0), 200);
+        cache.put(cacheConfig, ids.get(0), expect);
+        actual = cache.get(cacheConfig, ids.get(0), null);
+        assertThat(actual).isEqualTo(expect);
+        assertThat(cache.keys()).containsOnly(CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getPutAllEvict() throws Exception {
+        Map<String, TestObj> rs = ids.stream().collect(Collectors.toMap(String::toString, id -> datePicker.pickup(id)));
+        cache.putAll(cacheConfig, rs);
+        assertThat(cache.getAll(cacheConfig, ids, null)).isEqualTo(rs);
+
+        cache.evict(cacheConfig, ids.get(0));
+        assertThat(cache.getAll(cacheConfig, ids, null)).hasSize(2);
+        cache.evict(cacheConfig, ids);
+        assertThat(cache.getAll(cacheConfig, ids, null)).isEmpty();
+        assertThat(cache.estimatedSize()).isZero();
+    }
+
+    @Test
+    public void clear() throws Exception {
+        Map<String, TestObj> rs = ids.stream().collect(Collectors.toMap(String::toString, id -> datePicker.pickup(id)));
+        cache.putAll(cacheConfig, rs);
+        cache.clear();
+        assertThat(cache.keys()).isEmpty();
+        assertThat(cache.weightedSize()).isZero();
+        cache.put(cacheConfig, ids.get(0), rs.get(ids.get(0)));
+        assertThat(cache.keys()).hasSize(1);
+    }
+
+    @Test
+    public void maximumSize() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            cache.put(null, "k" + i, new TestObj("k" + i, i));
+        }
+        assertThat(cache.estimatedSize()).isEqualTo(100);
+        assertThat(cache.getEvictionCount()).isEqualTo(900);
+        assertThat(expired).isEmpty(); //容量淘汰不通知过期
+    }
+
+    @Test
+    public void maximumWeight() throws Exception {
+        TinyLfuCache weighted = provider.buildCache("weighted", listener);
+        int weight = new SerializedSizeWeigher().weigh("k0", new TestObj("k0", 0));
+        for (int i = 0; i < 1000; i++) {
+            weighted.put(null, "k" + i, new TestObj("k" + i, 0));
+        }
+        TinyLfuRegionStats stats = weighted.stats();
+        assertThat(stats.getWeightedSize()).isLessThanOrEqualTo(8192).isGreaterThan(8192 - 2 * weight);
+        assertThat(stats.getEntries()).isLessThan(1000);
+        assertThat(stats.getEvictionCount()).isEqualTo(1000 - stats.getEntries());
+        assertThat(stats.getEvictionWeight()).isGreaterThanOrEqualTo(stats.getEvictionCount() * (weight - 1));
+        assertThat(provider.stats()).extracting(TinyLfuRegionStats::getRegion).contains("test", "weighted");
+    }
+
+    @Test
+    public void registeredWeigher() throws Exception {
+        provider.registerWeigher("custom", (key, value) -> ((TestObj) value).getSum());
+        TinyLfuCache custom = provider.buildCache("custom", listener);
+        custom.put(null, "a", new TestObj("a", 400));
+        custom.put(null, "b", new TestObj("b", 400));
+        assertThat(custom.weightedSize()).isEqualTo(800);
+
+        custom.put(null, "a", new TestObj("a", 100)); //替换后按新权重计算
+        assertThat(custom.weightedSize()).isEqualTo(500);
+
+        custom.put(null, "c", new TestObj("c", 700)); //超出1000需要淘汰
+        assertThat(custom.weightedSize()).isLessThanOrEqualTo(1000);
+        assertThat(custom.getEvictionWeight()).isGreaterThanOrEqualTo(200);
+
+        custom.put(null, "huge", new TestObj("huge", 2000)); //单个对象超过最大权重不会被缓存
+        TestObj huge = custom.get(null, "huge", null);
+        assertThat(huge).isNull();
+        assertThat(custom.weightedSize()).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    public void frequentKeySurvivesScan() throws Exception {
+        TestObj hot = new TestObj("hot", 1);
+        cache.put(null, "hot", hot);
+        for (int i = 0; i < 10; i++) cache.get(null, "hot", null);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(null, "scan" + i, new TestObj("scan" + i, i));
+        }
+        TestObj actual = cache.get(null, "hot", null);
+        assertThat(actual).isEqualTo(hot);
+    }
+
+    @Test
+    public void expire() throws Exception {
+        AtomicLong now = new AtomicLong(1000L);
+        TinyLfuCache ttlCache = new TinyLfuCache("ttl", 100, Weigher.SINGLETON, 60, listener, now::get);
+        ttlCache.put(cacheConfig, ids.get(0), new TestObj(ids.get(0), 1)); //CacheConfig 10秒
+        ttlCache.put(null, "noConfig", new TestObj("noConfig", 1)); //region默认60秒
+
+        now.addAndGet(10_000L);
+        TestObj actual = ttlCache.get(cacheConfig, ids.get(0), null);
+        assertThat(actual).isNull();
+        assertThat(expired).containsExactly("ttl|" + CacheUtils.genCacheKey(cacheConfig, ids.get(0)));
+        assertThat(ttlCache.keys()).containsOnly("noConfig");
+
+        now.addAndGet(50_000L);
+        ttlCache.cleanUp();
+        assertThat(expired).hasSize(2).contains("ttl|noConfig");
+        assertThat(ttlCache.estimatedSize()).isZero();
+        assertThat(ttlCache.getExpirationCount()).isEqualTo(2);
+    }
+
+    @Test(expected = CacheException.class)
+    public void mockGetException() throws Exception {
+        provider.stop(); //模拟异常
+        cache.get(cacheConfig, ids.get(0), datePicker);
+    }
+
+    @Test(expected = CacheException.class)
+    public void mockPutAllException() throws Exception {
+        provider.stop(); //模拟异常
+        cache.putAll(cacheConfig, ids.stream().collect(Collectors.toMap(String::toString, id -> datePicker.pickup(id))));
+    }
+
+    /**
+     * 同样100个对象的容量, Zipf分布的访问下TinyLFU命中率应明显高于Ehcache的LRU
+     */
+    @Test
+    public void hitRatioBetterThanEhcache() throws Exception {
+        EhCacheProvider ehCacheProvider = new EhCacheProvider();
+        ehCacheProvider.start("ehcache.xml");
+        try {
+            Cache ehcache = ehCacheProvider.buildCache("hitRatio", null); //defaultCache 100个对象
+            String[] trace = zipfTrace(5000, 0.9, 200_000, 9527L);
+
+            double tinyLfu = replay(cache, trace);
+            double lru = replay(ehcache, trace);
+            assertThat(tinyLfu).as("hit ratio: tinylfu=%.4f, ehcache=%.4f", tinyLfu, lru).isGreaterThan(lru * 1.1);
+        } finally {
+            ehCacheProvider.stop();
+        }
+    }
+
+    private static double replay(Cache cache, String[] trace) {
+        long hits = 0;
+        for (String key : trace) {
+            TestObj obj = cache.get(null, key, null);
+            if (obj != null) hits++;
+            else cache.put(null, key, new TestObj(key, 1));
+        }
+        return (double) hits / trace.length;
+    }
+
+    private static String[] zipfTrace(int items, double exponent, int length, long seed) {
+        double[] cdf = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1.0d / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        String[] trace = new String[length];
+        for (int i = 0; i < length; i++) {
+            double r = random.nextDouble() * sum;
+            int lo = 0, hi = items - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < r) lo = mid + 1;
+                else hi = mid;
+            }
+            trace[i] = "item" + lo;
+        }
+        return trace;
+    }
+}
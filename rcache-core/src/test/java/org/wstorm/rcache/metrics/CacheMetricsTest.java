@@ -0,0 +1,130 @@
+package org.wstorm.rcache.metrics;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.wstorm.rcache.TestObj;
+import org.wstorm.rcache.cache.BulkDataPicker;
+import org.wstorm.rcache.cache.DataPicker;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月29日
+ */
+public class CacheMetricsTest {
+
+    @Test
+    public void countersAndLatency() throws Exception {
+        CacheMetrics metrics = new CacheMetrics();
+        RegionMetrics region = metrics.region("r");
+        assertThat(metrics.region("r")).isSameAs(region);
+        region.hit(1, 3);
+        region.miss(1, 1);
+        region.hit(2, 1);
+        region.evicted(2, 2);
+        for (int i = 1; i <= 100; i++) region.record(RegionMetrics.Timer.L2_GET, i * 1000L);
+
+        RegionSnapshot snapshot = metrics.snapshot().get(0);
+        assertThat(snapshot.getRegion()).isEqualTo("r");
+        assertThat(snapshot.getHits(1)).isEqualTo(3);
+        assertThat(snapshot.getHitRate(1)).isEqualTo(0.75);
+        assertThat(snapshot.getHitRate(2)).isEqualTo(1.0);
+        assertThat(snapshot.getEvictions(2)).isEqualTo(2);
+        LatencySnapshot latency = snapshot.getLatency(RegionMetrics.Timer.L2_GET);
+        assertThat(latency.getCount()).isEqualTo(100);
+        assertThat(latency.getP50()).isBetween(49_000L, 51_000L);
+        assertThat(latency.getMax()).isBetween(99_000L, 101_000L);
+
+        // 延迟分布在快照时清零, 计数器累计
+        snapshot = metrics.snapshot().get(0);
+        assertThat(snapshot.getLatency(RegionMetrics.Timer.L2_GET).getCount()).isZero();
+        assertThat(snapshot.getHits(1)).isEqualTo(3);
+    }
+
+    @Test
+    public void meteredDataPicker() throws Exception {
+        CacheMetrics metrics = new CacheMetrics();
+        DataPicker<String, TestObj> picker = new DataPicker<String, TestObj>() {
+            @Override
+            public TestObj pickup(String id) {
+                if ("bad".equals(id)) throw new IllegalStateException("db down");
+                return new TestObj(id, 1);
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return new TestObj();
+            }
+        };
+        DataPicker<String, TestObj> metered = metrics.metered("r", picker);
+        assertThat(metrics.metered("r", metered)).isSameAs(metered);
+        assertThat(metered).isNotInstanceOf(BulkDataPicker.class);
+        metered.pickup("1");
+        try {
+            metered.pickup("bad");
+            fail("pickup should fail");
+        } catch (IllegalStateException ignored) {
+        }
+
+        BulkDataPicker<String, TestObj> bulk = new BulkDataPicker<String, TestObj>() {
+            @Override
+            public Map<String, TestObj> pickupAll(Collection<String> ids) {
+                return ids.stream().collect(Collectors.toMap(id -> id, picker::pickup));
+            }
+
+            @Override
+            public TestObj pickup(String id) {
+                return picker.pickup(id);
+            }
+
+            @Override
+            public TestObj makeEmptyData() {
+                return picker.makeEmptyData();
+            }
+        };
+        DataPicker<String, TestObj> meteredBulk = metrics.metered("r", bulk);
+        assertThat(meteredBulk).isInstanceOf(BulkDataPicker.class);
+        ((BulkDataPicker<String, TestObj>) meteredBulk).pickupAll(Lists.newArrayList("2", "3"));
+
+        RegionSnapshot snapshot = metrics.snapshot().get(0);
+        assertThat(snapshot.getLoads()).isEqualTo(3);
+        assertThat(snapshot.getLoadFailures()).isEqualTo(1);
+        assertThat(snapshot.getLatency(RegionMetrics.Timer.PICKUP).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void reporters() throws Exception {
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.region("udserv:usr").hit(1, 1);
+        metrics.region("udserv:usr").record(RegionMetrics.Timer.L1_GET, 500);
+        List<RegionSnapshot> snapshots = metrics.snapshot();
+
+        String text = TextMetricsReporter.format(snapshots);
+        assertThat(text).contains("region=udserv:usr").contains("L1 hits=1").contains("L1_GET count=1");
+
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsReporter jmx = new JmxMetricsReporter(server, "test");
+        jmx.report(snapshots);
+        ObjectName name = jmx.objectName("udserv:usr");
+        assertThat(server.getAttribute(name, "L1Hits")).isEqualTo(1L);
+        assertThat(((CompositeData) server.getAttribute(name, "L1GetLatency")).get("count")).isEqualTo(1L);
+
+        metrics.region("udserv:usr").hit(1, 1);
+        metrics.report(jmx);
+        assertThat(server.getAttribute(name, "L1Hits")).isEqualTo(2L);
+        jmx.close();
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+}
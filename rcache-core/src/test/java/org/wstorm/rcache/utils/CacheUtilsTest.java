@@ -5,6 +5,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.wstorm.rcache.annotation.CacheConfig;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -107,6 +108,27 @@ public class CacheUtilsTest {
         assertThat(days.get(3)).isEqualTo(7);
     }
 
+    @Test
+    public void keyGenerator() throws Exception {
+        CacheConfig cacheConfig = CacheUtils.getCacheAnnotation(TestCacheObject.class);
+        CacheKeyGenerator generator = CacheKeyGenerator.of(cacheConfig);
+        assertThat(CacheKeyGenerator.of(cacheConfig)).isSameAs(generator);
+        assertThat(generator.getPrefix()).isEqualTo("junit:cacheUtils:");
+
+        String cacheKey = CacheUtils.genCacheKey(cacheConfig, ID);
+        assertThat(cacheKey).isEqualTo(CacheUtils.concat(region, keyPrefix, ID));
+        assertThat(CacheUtils.genCacheKey(cacheConfig, cacheKey)).isSameAs(cacheKey); //已带前缀的KEY原样返回
+        assertThat(CacheUtils.genCacheKey(cacheConfig, 9527L)).isEqualTo("junit:cacheUtils:9527");
+        assertThat(CacheUtils.genCacheKey(null, ID)).isEqualTo(ID);
+        assertThat(CacheUtils.genCacheKeys(cacheConfig, Arrays.asList(ID, cacheKey))).containsExactly(cacheKey, cacheKey);
+
+        assertThat(CacheUtils.genCacheKeyBytes(cacheConfig, ID)).isEqualTo(cacheKey.getBytes(StandardCharsets.UTF_8));
+        assertThat(CacheUtils.genCacheKeyBytes(cacheConfig, cacheKey)).isEqualTo(cacheKey.getBytes(StandardCharsets.UTF_8));
+        assertThat(CacheUtils.genCacheKeyBytes(cacheConfig, "用户1"))
+                .isEqualTo("junit:cacheUtils:用户1".getBytes(StandardCharsets.UTF_8));
+        assertThat(CacheUtils.genCacheKeyBytes(null, ID)).isEqualTo(ID.getBytes(StandardCharsets.UTF_8));
+    }
+
     @CacheConfig(keyPrefix = keyPrefix, expiredTime = expiredTime, region = region)
     private class TestCacheObject {
 
@@ -0,0 +1,179 @@
+package org.wstorm.rcache.jedis;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis Streams读写器
+ * <p>
+ * 当前的Jedis版本没有Stream命令, 通过Connection.sendCommand发送原始命令, 需要Redis 5.0及以上
+ *
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年06月24日
+ */
+public class StreamSuber extends JedisWrapper {
+
+    /**
+     * 消息体在Stream条目中的字段名
+     */
+    private static final byte[] FIELD = SafeEncoder.encode("m");
+    private static final Method SEND_COMMAND;
+
+    static {
+        try {
+            SEND_COMMAND = Connection.class.getDeclaredMethod("sendCommand", ProtocolCommand.class, byte[][].class);
+            SEND_COMMAND.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public StreamSuber(JedisPool jedisPool) {
+        super(jedisPool);
+    }
+
+    /**
+     * XADD key MAXLEN ~ maxLen * m message
+     *
+     * @param key     stream key
+     * @param maxLen  近似的最大长度, &lt;=0时不裁剪
+     * @param message 消息体
+     * @return 新条目的ID
+     */
+    public String append(final String key, final long maxLen, final byte[] message) {
+        return execute(jedis -> {
+            List<byte[]> args = new ArrayList<>(7);
+            args.add(serializeKey(key));
+            if (maxLen > 0) {
+                args.add(SafeEncoder.encode("MAXLEN"));
+                args.add(SafeEncoder.encode("~"));
+                args.add(SafeEncoder.encode(String.valueOf(maxLen)));
+            }
+            args.add(SafeEncoder.encode("*"));
+            args.add(FIELD);
+            args.add(message);
+            send(jedis, StreamCommand.XADD, args);
+            return jedis.getClient().getBulkReply();
+        });
+    }
+
+    /**
+     * @param key stream key
+     * @return 最后一个条目的ID, 为空时返回"0-0"
+     */
+    public String lastId(final String key) {
+        return execute(jedis -> {
+            List<byte[]> args = new ArrayList<>(5);
+            args.add(serializeKey(key));
+            args.add(SafeEncoder.encode("+"));
+            args.add(SafeEncoder.encode("-"));
+            args.add(SafeEncoder.encode("COUNT"));
+            args.add(SafeEncoder.encode("1"));
+            send(jedis, StreamCommand.XREVRANGE, args);
+            List<Object> reply = jedis.getClient().getObjectMultiBulkReply();
+            if (reply == null || reply.isEmpty()) return "0-0";
+            return SafeEncoder.encode((byte[]) ((List<?>) reply.get(0)).get(0));
+        });
+    }
+
+    /**
+     * XREAD COUNT count BLOCK blockMillis STREAMS key... id..., 阻塞时间须小于连接池的socket超时
+     *
+     * @param count       每个stream最多读取的条目数
+     * @param blockMillis 没有新条目时的最长阻塞时间
+     * @param lastIds     stream key与已读到的最后ID, 按该顺序读取
+     * @return 读到的条目, 超时没有新条目时为空列表
+     */
+    public List<StreamEntry> read(final int count, final long blockMillis, final Map<String, String> lastIds) {
+        return execute(jedis -> {
+            List<byte[]> args = new ArrayList<>(5 + lastIds.size() * 2);
+            args.add(SafeEncoder.encode("COUNT"));
+            args.add(SafeEncoder.encode(String.valueOf(count)));
+            args.add(SafeEncoder.encode("BLOCK"));
+            args.add(SafeEncoder.encode(String.valueOf(blockMillis)));
+            args.add(SafeEncoder.encode("STREAMS"));
+            for (String key : lastIds.keySet()) args.add(serializeKey(key));
+            for (String id : lastIds.values()) args.add(SafeEncoder.encode(id));
+            send(jedis, StreamCommand.XREAD, args);
+
+            List<Object> reply = jedis.getClient().getObjectMultiBulkReply();
+            List<StreamEntry> entries = new ArrayList<>();
+            if (reply == null) return entries;
+            for (Object stream : reply) {
+                List<?> s = (List<?>) stream;
+                String key = SafeEncoder.encode((byte[]) s.get(0));
+                for (Object item : (List<?>) s.get(1)) {
+                    List<?> entry = (List<?>) item;
+                    List<?> fields = (List<?>) entry.get(1);
+                    byte[] value = null;
+                    for (int i = 0; i + 1 < fields.size(); i += 2) {
+                        if (Arrays.equals(FIELD, (byte[]) fields.get(i))) value = (byte[]) fields.get(i + 1);
+                    }
+                    entries.add(new StreamEntry(key, SafeEncoder.encode((byte[]) entry.get(0)), value));
+                }
+            }
+            return entries;
+        });
+    }
+
+    private static void send(Jedis jedis, ProtocolCommand command, List<byte[]> args) {
+        try {
+            SEND_COMMAND.invoke(jedis.getClient(), command, args.toArray(new byte[args.size()][]));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new JedisException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new JedisException(e);
+        }
+    }
+
+    private enum StreamCommand implements ProtocolCommand {
+        XADD, XREAD, XREVRANGE;
+
+        private final byte[] raw = SafeEncoder.encode(name());
+
+        @Override
+        public byte[] getRaw() {
+            return raw;
+        }
+    }
+
+    /**
+     * Stream中的一个条目
+     */
+    public static class StreamEntry {
+        private final String key;
+        private final String id;
+        private final byte[] message;
+
+        public StreamEntry(String key, String id, byte[] message) {
+            this.key = key;
+            this.id = id;
+            this.message = message;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public byte[] getMessage() {
+            return message;
+        }
+    }
+}
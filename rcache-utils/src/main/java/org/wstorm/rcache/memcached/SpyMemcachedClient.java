@@ -2,12 +2,14 @@ package org.wstorm.rcache.memcached;
 
 import com.google.common.base.Preconditions;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationFuture;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.DisposableBean;
 import org.wstorm.rcache.ErrorHandler;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -70,6 +72,109 @@ public class SpyMemcachedClient implements ErrorHandler, DisposableBean {
         }
     }
 
+    /**
+     * 异步Get方法, 由spymemcached的IO线程在取回结果时完成返回的Future, 不占用调用线程.
+     * 与{@link #get(String)}一样屏蔽异常, 失败时以null完成.
+     *
+     * @param key key
+     * @param <T> value type
+     * @return cache object value future
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> asyncGet(String key) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(key), "key不能为空!");
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            memcachedClient.asyncGet(key).addListener(future -> {
+                try {
+                    result.complete((T) future.get());
+                } catch (Exception e) {
+                    handleException(e, key);
+                    result.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            handleException(e, key);
+            result.complete(null);
+        }
+        return result;
+    }
+
+    /**
+     * 异步GetBulk方法, 失败时以null完成.
+     *
+     * @param keys keys
+     * @param <T>  value type
+     * @return map<key value> future
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> CompletableFuture<Map<String, T>> asyncGetBulk(Collection<String> keys) {
+        CompletableFuture<Map<String, T>> result = new CompletableFuture<>();
+        try {
+            memcachedClient.asyncGetBulk(keys).addListener(future -> {
+                try {
+                    result.complete((Map<String, T>) future.get());
+                } catch (Exception e) {
+                    handleException(e, StringUtils.join(keys, ","));
+                    result.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            handleException(e, StringUtils.join(keys, ","));
+            result.complete(null);
+        }
+        return result;
+    }
+
+    /**
+     * 异步Set方法, 由spymemcached的IO线程在写入完成时完成返回的Future, 不占用调用线程.
+     * 与{@link #asyncGet(String)}一样屏蔽异常, 失败时以false完成.
+     *
+     * @param key         key
+     * @param expiredTime expiration time
+     * @param value       value
+     * @return true for success
+     */
+    public final CompletableFuture<Boolean> asyncSet(String key, int expiredTime, Object value) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(key), "key不能为空");
+        Preconditions.checkNotNull(value, "对象不能为空");
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            memcachedClient.set(key, expiredTime < 0 ? 0 : expiredTime, value).addListener(future -> complete(result, future, key));
+        } catch (RuntimeException e) {
+            handleException(e, key);
+            result.complete(false);
+        }
+        return result;
+    }
+
+    /**
+     * 异步Delete方法, 屏蔽异常, 失败或key不存在时以false完成.
+     *
+     * @param key key
+     * @return true for success
+     */
+    public CompletableFuture<Boolean> asyncDelete(String key) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(key), "key不能为空");
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            memcachedClient.delete(key).addListener(future -> complete(result, future, key));
+        } catch (RuntimeException e) {
+            handleException(e, key);
+            result.complete(false);
+        }
+        return result;
+    }
+
+    private void complete(CompletableFuture<Boolean> result, OperationFuture<?> future, String key) {
+        try {
+            result.complete(future.getStatus().isSuccess());
+        } catch (Exception e) {
+            handleException(e, key);
+            result.complete(false);
+        }
+    }
+
     /**
      * 异步Set方法, 不考虑执行结果.
      *
@@ -0,0 +1,23 @@
+package org.wstorm.rcache.serializer;
+
+/**
+ * 接收借出的序列化字节, 字节数组只在回调期间有效, 回调返回后会被重用
+ *
+ * @param <R> 返回类型
+ * @author sunyp
+ * @version 1.0
+ * @created 2016年07月01日
+ * @see Serializer#serialize(Object, BytesFunction)
+ */
+@FunctionalInterface
+public interface BytesFunction<R> {
+
+    /**
+     * @param bytes  缓冲区, 不能在回调之外保留
+     * @param offset 序列化字节的起始位置
+     * @param length 序列化字节的长度
+     * @return 回调的结果
+     * @throws Exception exception
+     */
+    R apply(byte[] bytes, int offset, int length) throws Exception;
+}
@@ -8,9 +8,14 @@ import com.esotericsoftware.kryo.pool.KryoPool;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * Kryo序列化器
+ * <p>
+ * 每个池化的Kryo带一个1KB起的Output, 序列化大对象时按需扩容; 归还时超过{@link #MAX_RETAINED_BUFFER_SIZE}的缓冲区
+ * 换回1KB, 偶尔的大对象不会让池中的每个Kryo一直占用同样大的内存. 反序列化后也不再引用传入的数组.
  *
  * @author sunyp
  * @version 1.0
@@ -18,6 +23,11 @@ import java.io.IOException;
  */
 public class KryoPoolSerializer implements Serializer {
 
+    /**
+     * 归还到池中时保留的Output缓冲区上限
+     */
+    public static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Serialize object
      *
@@ -27,14 +37,55 @@ public class KryoPoolSerializer implements Serializer {
      */
     @Override
     public byte[] serialize(Object obj) throws Exception {
+        return serialize(obj, (bytes, offset, length) -> Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
+    /**
+     * 序列化到池化的缓冲区并借给function, 不复制
+     *
+     * @param obj      object need to serialize
+     * @param function 接收序列化字节, 不能在回调之外保留字节数组
+     * @return function的结果
+     * @throws Exception 序列化或function失败, 都包装为"Serialize obj exception"
+     */
+    @Override
+    public <R> R serialize(Object obj, BytesFunction<R> function) throws Exception {
+
+        if (obj == null) throw new Exception("obj can not be null");
+
+        try (KryoWrapper kryoWrapper = (KryoWrapper) Holder.kryoPool.borrow()) {
+
+            Output output = kryoWrapper.output;
+            output.clear();
+            kryoWrapper.writeClassAndObject(output, obj);
+            return function.apply(output.getBuffer(), 0, output.position());
+        } catch (Exception e) {
+            throw new Exception("Serialize obj exception", e);
+        }
+    }
+
+    /**
+     * 序列化并直接写入out, 缓冲区满时即写出, 大对象也不会扩容缓冲区
+     *
+     * @param obj object need to serialize
+     * @param out 输出流, 不会被关闭
+     * @throws Exception exception
+     */
+    @Override
+    public void serialize(Object obj, OutputStream out) throws Exception {
 
         if (obj == null) throw new Exception("obj can not be null");
 
         try (KryoWrapper kryoWrapper = (KryoWrapper) Holder.kryoPool.borrow()) {
 
-            kryoWrapper.output.clear();
-            kryoWrapper.writeClassAndObject(kryoWrapper.output, obj);
-            return kryoWrapper.output.toBytes();
+            Output output = kryoWrapper.output;
+            output.setOutputStream(out);
+            try {
+                kryoWrapper.writeClassAndObject(output, obj);
+                output.flush();
+            } finally {
+                output.setOutputStream(null);
+            }
         } catch (Exception e) {
             throw new Exception("Serialize obj exception", e);
         }
@@ -48,20 +99,46 @@ public class KryoPoolSerializer implements Serializer {
      * @throws Exception exception
      */
     @Override
-    @SuppressWarnings("unchecked")
     public <T> T deserialize(byte[] bytes) throws Exception {
 
         if (bytes == null) throw new Exception("bytes can not be null");
 
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 直接反序列化数组中的一段, 不复制
+     *
+     * @param bytes  data
+     * @param offset 起始位置
+     * @param length 长度
+     * @return object
+     * @throws Exception exception
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] bytes, int offset, int length) throws Exception {
+
+        if (bytes == null) throw new Exception("bytes can not be null");
+
         try (KryoWrapper kryoWrapper = (KryoWrapper) Holder.kryoPool.borrow()) {
 
-            kryoWrapper.input.setBuffer(bytes, 0, bytes.length);
+            kryoWrapper.input.setBuffer(bytes, offset, length);
             return (T) kryoWrapper.readClassAndObject(kryoWrapper.input);
         } catch (Exception e) {
             throw new Exception("Deserialize bytes exception", e);
         }
     }
 
+    /**
+     * @return 池中Kryo当前保留的Output缓冲区大小, 用于检查大对象序列化后是否缩回
+     */
+    static int retainedBufferSize() throws IOException {
+        try (KryoWrapper kryoWrapper = (KryoWrapper) Holder.kryoPool.borrow()) {
+            return kryoWrapper.output.getBuffer().length;
+        }
+    }
+
     /**
      * 保证单例和延迟加载
      */
@@ -79,6 +156,7 @@ public class KryoPoolSerializer implements Serializer {
 
     private static class KryoWrapper extends Kryo implements Closeable {
         private static final int BUFFER_SIZE = 1024;
+        private static final byte[] EMPTY = new byte[0];
         private KryoPool pool;
         private Output output = new Output(BUFFER_SIZE, -1);
         private Input input = new Input();
@@ -87,8 +165,13 @@ public class KryoPoolSerializer implements Serializer {
             this.pool = pool;
         }
 
+        /**
+         * 归还前缩回过大的缓冲区, 并释放对反序列化数组的引用
+         */
         @Override
         public void close() throws IOException {
+            if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) output.setBuffer(new byte[BUFFER_SIZE], -1);
+            input.setBuffer(EMPTY);
             this.pool.release(this);
         }
     }
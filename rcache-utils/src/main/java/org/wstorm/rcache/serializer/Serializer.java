@@ -1,6 +1,9 @@
 package org.wstorm.rcache.serializer;
 
 
+import java.io.OutputStream;
+import java.util.Arrays;
+
 /**
  * 对象序列化接口
  *
@@ -14,4 +17,42 @@ public interface Serializer {
 
     <T> T deserialize(byte[] bytes) throws Exception;
 
+    /**
+     * 序列化并把字节借给function, 需要在序列化结果前后加内容或只需要长度时可以少一次复制.
+     * 默认实现基于{@link #serialize(Object)}
+     *
+     * @param obj      object need to serialize
+     * @param function 接收序列化字节, 不能在回调之外保留字节数组
+     * @return function的结果
+     * @throws Exception exception
+     */
+    default <R> R serialize(Object obj, BytesFunction<R> function) throws Exception {
+        byte[] bytes = serialize(obj);
+        return function.apply(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 序列化并直接写入out, 不生成完整的字节数组. 默认实现基于{@link #serialize(Object)}
+     *
+     * @param obj object need to serialize
+     * @param out 输出流, 不会被关闭
+     * @throws Exception exception
+     */
+    default void serialize(Object obj, OutputStream out) throws Exception {
+        out.write(serialize(obj));
+    }
+
+    /**
+     * 反序列化数组中的一段, 默认实现复制该段后调用{@link #deserialize(byte[])}
+     *
+     * @param bytes  data
+     * @param offset 起始位置
+     * @param length 长度
+     * @return object
+     * @throws Exception exception
+     */
+    default <T> T deserialize(byte[] bytes, int offset, int length) throws Exception {
+        return deserialize(offset == 0 && length == bytes.length ? bytes : Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
 }
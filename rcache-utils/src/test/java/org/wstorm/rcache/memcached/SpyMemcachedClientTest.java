@@ -104,6 +104,42 @@ public class SpyMemcachedClientTest {
         assertThat(o).isNull();
     }
 
+    @Test
+    public void asyncGet() throws Exception {
+        assertThat(spyMemcachedClient.<String>asyncGet(key).get(1, TimeUnit.SECONDS)).isNull();
+        spyMemcachedClient.set(key, expired, "asyncGet");
+        assertThat(spyMemcachedClient.<String>asyncGet(key).get(1, TimeUnit.SECONDS)).isEqualTo("asyncGet");
+    }
+
+    @Test
+    public void asyncGetBulk() throws Exception {
+        String key1 = "asyncGetBulk1", key2 = "asyncGetBulk2";
+        spyMemcachedClient.set(key1, expired, key1);
+        spyMemcachedClient.set(key2, expired, key2);
+        Map<String, Object> bulk = spyMemcachedClient.asyncGetBulk(Arrays.asList(key1, key2, "asyncGetBulk3")).get(1, TimeUnit.SECONDS);
+        assertThat(bulk).containsOnlyKeys(key1, key2);
+        assertThat(bulk.get(key1)).isEqualTo(key1);
+    }
+
+    @Test
+    public void asyncSet() throws Exception {
+        assertThat(spyMemcachedClient.asyncSet(key, expired, "asyncSet").get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat((String) spyMemcachedClient.get(key)).isEqualTo("asyncSet");
+    }
+
+    @Test
+    public void asyncDelete() throws Exception {
+        spyMemcachedClient.safeSet(key, expired, "asyncDelete");
+        assertThat(spyMemcachedClient.asyncDelete(key).get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat((Object) spyMemcachedClient.get(key)).isNull();
+        assertThat(spyMemcachedClient.asyncDelete(key).get(1, TimeUnit.SECONDS)).isFalse(); //key不存在
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void asyncDeleteBlankKey() throws Exception {
+        spyMemcachedClient.asyncDelete(" ");
+    }
+
     @Test
     public void incr() throws Exception {
         long defaultValue = 11;
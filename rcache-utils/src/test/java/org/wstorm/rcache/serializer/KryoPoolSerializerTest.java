@@ -2,7 +2,11 @@ package org.wstorm.rcache.serializer;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * @author sunyp
@@ -43,4 +47,63 @@ public class KryoPoolSerializerTest {
         assertThat(desObj.sum).isEqualTo(999);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void lendBuffer() throws Exception {
+        SObject o = new SObject();
+        o.id = "101";
+        o.sum = 999;
+        int length = serializer.serialize(o, (buffer, offset, len) -> {
+            assertThat(Arrays.copyOfRange(buffer, offset, offset + len)).isEqualTo(bytes);
+            return len;
+        });
+        assertThat(length).isEqualTo(bytes.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(o, out);
+        assertThat(out.toByteArray()).isEqualTo(bytes);
+
+        byte[] framed = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, framed, 2, bytes.length);
+        SObject desObj = serializer.deserialize(framed, 2, bytes.length);
+        assertThat(desObj).isEqualTo(o);
+    }
+
+    @Test
+    public void largeObject() throws Exception {
+        SObject large = new SObject();
+        char[] id = new char[KryoPoolSerializer.MAX_RETAINED_BUFFER_SIZE * 2];
+        Arrays.fill(id, 'x');
+        large.id = new String(id);
+        large.sum = 1;
+
+        // 超过1KB时缓冲区扩容, 归还时缩回1KB
+        int capacity = serializer.serialize(large, (buffer, offset, length) -> buffer.length);
+        assertThat(capacity).isGreaterThan(KryoPoolSerializer.MAX_RETAINED_BUFFER_SIZE);
+        assertThat(KryoPoolSerializer.retainedBufferSize()).isEqualTo(1024);
+
+        // 写入输出流时不扩容
+        byte[] serialized = serializer.serialize(large);
+        assertThat(serialized.length).isGreaterThan(KryoPoolSerializer.MAX_RETAINED_BUFFER_SIZE * 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(large, out);
+        assertThat(out.toByteArray()).isEqualTo(serialized);
+        assertThat(KryoPoolSerializer.retainedBufferSize()).isEqualTo(1024);
+        assertThat((SObject) serializer.deserialize(serialized)).isEqualTo(large);
+
+        // 缩回后的缓冲区仍可正常使用
+        SObject o = new SObject();
+        o.id = "101";
+        o.sum = 999;
+        assertThat(serializer.serialize(o)).isEqualTo(bytes);
+    }
+
+    @Test
+    public void functionExceptionIsWrapped() throws Exception {
+        SObject o = new SObject();
+        o.id = "101";
+        IllegalStateException cause = new IllegalStateException("write failed");
+        assertThatThrownBy(() -> serializer.serialize(o, (buffer, offset, length) -> {
+            throw cause;
+        })).hasMessage("Serialize obj exception").hasCause(cause);
+    }
+}